@@ -77,8 +77,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final String version = "4.5";
     /** List of accepted file extensions for MIPS assembly source files. */
       public static final ArrayList fileExtensions = getFileExtensions();
-    /** Maximum length of scrolled message window (MARS Messages and Run I/O) */
+    /** Maximum length of scrolled message window (MARS Messages) */
       public static final int maximumMessageCharacters = getMessageLimit();
+    /** Maximum number of lines of program output kept by the Run I/O window */
+      public static final int maximumRunLines = getRunLineLimit();
     /** Maximum number of assembler errors produced by one assemble operation */
       public static final int maximumErrorMessages = getErrorLimit();
     /** Maximum number of back-step operations to buffer */
@@ -131,11 +133,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       }
    	
-   	// Read byte limit of Run I/O or MARS Messages text to buffer.
+   	// Read byte limit of MARS Messages text to buffer.
        private static int getMessageLimit() {
          return getIntegerProperty(configPropertiesFile, "MessageLimit", 1000000);
       }
 		
+   	// Read limit on number of lines of Run I/O text to buffer.
+       private static int getRunLineLimit() {
+         return getIntegerProperty(configPropertiesFile, "RunLineLimit", 2000000);
+      }
+		
    	// Read limit on number of error messages produced by one assemble operation.
        private static int getErrorLimit() {
          return getIntegerProperty(configPropertiesFile, "ErrorLimit", 200);
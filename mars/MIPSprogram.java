@@ -148,6 +148,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return parsedList;
       }
    
+   /**
+    * Releases the token list and the list of parsed statements, which are needed only
+    * while the program is assembled.  The statements themselves stay in the machine
+    * list.  Reassembling the program rebuilds both lists.
+    **/
+    
+       public void releaseTokens() {
+         tokenList = null;
+         parsedList = null;
+      }
+   
    /**
     * Produces list of machine statements that are assembled from the program.
     * @return ArrayList of ProgramStatement.  Each ProgramStatement represents an assembled
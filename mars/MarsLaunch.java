@@ -4,6 +4,10 @@
    import mars.mips.dump.*;
    import mars.mips.hardware.*;
    import mars.simulator.*;
+   import mars.tools.BranchPredictorBench;
+   import mars.tools.CacheSweep;
+   import mars.mips.instructions.syscalls.MidiScheduler;
+   import mars.mips.instructions.syscalls.RandomStreams;
    import java.io.*;
    import java.util.*;
    import java.awt.*;
@@ -68,6 +72,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             h  -- display help.  Use by itself and with no filename</br>
           hex  -- display memory or register contents in hexadecimal (default)<br>
            ic  -- display count of MIPS basic instructions 'executed'");
+         prof  -- display execution profile: per-function and hottest instruction counts.<br>
+         heap  -- display statistics of the allocator behind the Malloc, Free and Realloc syscalls.<br>
+       stacks  -- write execution profile as collapsed call stacks for flame graph tools.<br>
+                  Option has 1 argument, e.g. <tt>stacks &lt;file&gt;</tt><br>
+          cov  -- write line coverage of source files to an LCOV tracefile.  Option has 1<br>
+                  argument, e.g. <tt>cov &lt;file&gt;</tt>.  Hit counts already in the file are added to.<br>
+        trace  -- record every instruction fetch, load and store to a binary trace file<br>
+                  (see TraceRecorder).  Option has 1 argument, e.g. <tt>trace &lt;file&gt;</tt><br>
+           in  -- take program input from a file instead of the keyboard, from its start in every run.<br>
+                  A recording made with <tt>record</tt> replays the run exactly (see InputScript).<br>
+                  Option has 1 argument, e.g. <tt>in &lt;file&gt;</tt><br>
+       record  -- record program input and random number seeds to a file for replay with <tt>in</tt><br>
+                  (see InputRecorder).  Option has 1 argument, e.g. <tt>record &lt;file&gt;</tt><br>
+         midi  -- render the notes of the MidiOut syscalls to a standard MIDI file instead of the audio device<br>
+                  (see MidiScheduler).  Option has 1 argument, e.g. <tt>midi &lt;file&gt;</tt><br>
+           bp  -- compare branch predictors (bimodal, gshare, local history, tournament, perceptron)<br>
+                  on the program's conditional branches: accuracy and MPKI overall and per branch.<br>
+         pipe  -- estimate cycles and CPI on a 5-stage pipeline with forwarding, with stalls broken<br>
+                  down by cause, basic block and instruction (see PipelineModel).<br>
+       caches  -- estimate cycles, CPI and average memory access time with a two-level<br>
+                  cache hierarchy timing model (see CacheHierarchy).<br>
+   cachesweep  -- simulate a grid of data cache configurations over the program's loads and<br>
+                  stores and display their hit rates, best first (see CacheSweep).<br>
            mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
                   <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
                   for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
@@ -78,6 +105,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    		  np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
    		   p  -- Project mode - assemble all files in the same directory as given file.<br>
    	  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
+   	  be<n>  -- terminate MARS with integer exit code <n> if an execution limit (il, tl, sl, ol) is exceeded.<br>
+   	  le<n>  -- terminate MARS with integer exit code <n> if an infinite loop is detected (see lp).<br>
+         il<n>  -- Instruction limit - stop as an error after <n> instructions (unlike <n> alone, see below).<br>
+         tl<n>  -- Time limit - stop as an error after <n> milliseconds of wall-clock time.<br>
+         sl<n>  -- Syscall limit - stop as an error after <n> syscalls.<br>
+         ol<n>  -- Output limit - stop as an error after <n> bytes of program output.<br>
+           lp  -- Loop detection - stop a tight loop whose registers repeat with no memory or syscall activity.<br>
+         ml<n>  -- Memory limit - at most <n> megabytes of data, heap, stack and kernel data memory (default 256).<br>
+         rr<n>  -- run <n> harts (hardware threads) sharing memory, interleaved one instruction at a time.<br>
+        smp<n>  -- run <n> harts sharing memory, each on a host thread of its own (see Hart).<br>
+        timer  -- attach an interval timer device to memory mapped I/O (see IntervalTimer).<br>
+         vt<n>  -- Virtual time - each instruction takes <n> nanoseconds of simulated time, Sleep only advances it,<br>
+                  and Time and the interval timer read it (see VirtualClock).<br>
+       seed<n>  -- Seed the random number streams the program does not seed itself from <n>, so that runs repeat (see RandomStreams).<br>
            sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
           smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
            we  -- assembler Warnings will be considered Errors<br>
@@ -108,6 +149,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean startAtMain; // Whether to start execution at statement labeled 'main' 
       private boolean countInstructions; // Whether to count and report number of instructions executed 
       private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+      private boolean profile; // Whether to profile execution and report hot spots
+      private boolean heapStatistics; // Whether to report heap allocator statistics
+      private String stacksFileName; // Where to write collapsed call stacks, null if not requested
+      private Profiler profiler; // Profiler used by the prof and stacks options, null if neither given
+      private String coverageFileName; // Where to write LCOV line coverage, null if not requested
+      private Coverage coverage; // Coverage used by the cov option
+      private String traceFileName; // Where to record the memory reference trace, null if not requested
+      private InputScript inputScript; // Program input given by the in option, null if none
+      private String recordFileName; // Where to record program input, null if not requested
+      private String midiFileName; // Where to render MIDI output, null to play it
+      private BranchPredictorBench branchPredictors; // Predictors compared by the bp option, null if not requested
+      private PipelineModel pipelineModel; // Pipeline timing model used by the pipe option, null if not requested
+      private CacheHierarchy cacheHierarchy; // Cache timing model used by the caches option, null if not requested
+      private CacheSweep cacheSweep; // Cache configurations simulated by the cachesweep option, null if not requested
       private static final String rangeSeparator = "-";
       private static final int splashDuration = 2000; // time in MS to show splash screen
       private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
@@ -125,6 +180,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
       private int assembleErrorExitCode;  // MARS command exit code to return if assemble error occurs
       private int simulateErrorExitCode;// MARS command exit code to return if simulation error occurs
+      private int budgetExceededExitCode;// MARS command exit code to return if an execution limit is exceeded
+      private int infiniteLoopExitCode;// MARS command exit code to return if an infinite loop is detected
+      private ExecutionBudget executionBudget; // execution limits, null if none specified
+      private int harts; // number of harts sharing memory, 1 unless rr<n> or smp<n> given
+      private int hartScheduling; // Hart.ROUND_ROBIN or Hart.PARALLEL
+      private boolean intervalTimer; // Whether to attach an IntervalTimer to the DeviceBus
+      private long memoryLimit; // Bytes of memory the program may allocate, see Memory.setMemoryLimit()
+      private long nanosPerInstruction; // Simulated time per instruction for the vt<n> option, -1 for host time
+      private Long randomSeed; // Global seed of random number streams for the seed<n> option, null for none
    		
       public MarsLaunch(String[] args) {
          boolean gui = (args.length == 0);
@@ -145,9 +209,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             startAtMain = false;
             countInstructions = false;
 				selfModifyingCode = false;
+            profile = false;
+            heapStatistics = false;
+            stacksFileName = null;
+            profiler = null;
+            coverageFileName = null;
+            coverage = null;
+            traceFileName = null;
+            inputScript = null;
+            recordFileName = null;
+            midiFileName = null;
+            branchPredictors = null;
+            pipelineModel = null;
+            cacheHierarchy = null;
+            cacheSweep = null;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
+            budgetExceededExitCode = 0;
+            infiniteLoopExitCode = 0;
+            executionBudget = null;
+            harts = 1;
+            hartScheduling = Hart.ROUND_ROBIN;
+            intervalTimer = false;
+            memoryLimit = Memory.DEFAULT_MEMORY_LIMIT_BYTES;
+            nanosPerInstruction = -1;
+            randomSeed = null;
             registerDisplayList = new ArrayList();
             memoryDisplayList = new ArrayList();
             filenameList = new ArrayList();
@@ -344,6 +431,111 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   catch (NumberFormatException nfe) {
                    // Let it fall thru and get handled by catch-all
                   }
+            }
+         	// Set MARS exit code for execution limit exceeded
+            if (args[i].toLowerCase().indexOf("be")==0) {
+               String s = args[i].substring(2);					   
+               try {
+                  budgetExceededExitCode = Integer.decode(s).intValue();
+                  continue;
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+         	// Set MARS exit code for infinite loop detected
+            if (args[i].toLowerCase().indexOf("le")==0) {
+               String s = args[i].substring(2);					   
+               try {
+                  infiniteLoopExitCode = Integer.decode(s).intValue();
+                  continue;
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+         	// Execution limits: instructions, time (ms), syscalls, output bytes
+            String which = (args[i].length() > 2) ? args[i].substring(0,2).toLowerCase() : "";
+            if (which.equals("il") || which.equals("tl") || which.equals("sl") || which.equals("ol")) {
+               String s = args[i].substring(2);
+               try {
+                  long limit = Long.decode(s).longValue();
+                  if (executionBudget == null) 
+                     executionBudget = new ExecutionBudget();
+                  if (which.equals("il")) 
+                     executionBudget.setMaxInstructions(limit);
+                  else if (which.equals("tl")) 
+                     executionBudget.setMaxMillis(limit);
+                  else if (which.equals("sl")) 
+                     executionBudget.setMaxSyscalls(limit);
+                  else 
+                     executionBudget.setMaxOutputBytes(limit);
+                  continue;
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+         	// Multiple harts: interleaved on one thread (rr) or each on its own thread (smp)
+            String hartOption = args[i].toLowerCase();
+            if (hartOption.startsWith("rr") || hartOption.startsWith("smp")) {
+               String s = args[i].substring(hartOption.startsWith("rr") ? 2 : 3);
+               try {
+                  int count = Integer.decode(s).intValue();
+                  if (count >= 1) {
+                     harts = count;
+                     hartScheduling = hartOption.startsWith("rr") ? Hart.ROUND_ROBIN : Hart.PARALLEL;
+                     continue;
+                  }
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+         	// Memory limit, in megabytes
+            if (args[i].toLowerCase().startsWith("ml")) {
+               String s = args[i].substring(2);
+               try {
+                  int megabytes = Integer.decode(s).intValue();
+                  if (megabytes > 0) {
+                     memoryLimit = megabytes * 1024L * 1024L;
+                     continue;
+                  }
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+         	// Virtual time, in nanoseconds per instruction
+            if (args[i].toLowerCase().startsWith("vt")) {
+               String s = args[i].substring(2);
+               try {
+                  long nanos = Long.decode(s).longValue();
+                  if (nanos >= 0) {
+                     nanosPerInstruction = nanos;
+                     continue;
+                  }
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+         	// Global seed of random number streams
+            if (args[i].toLowerCase().startsWith("seed")) {
+               String s = args[i].substring(4);
+               try {
+                  randomSeed = Long.decode(s);
+                  continue;
+               }              
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+            if (args[i].toLowerCase().equals("lp")) { 
+               if (executionBudget == null) 
+                  executionBudget = new ExecutionBudget();
+               executionBudget.setDetectInfiniteLoops(true);
+               continue;
             }
             if (args[i].toLowerCase().equals("d")) { 
                Globals.debug = true;
@@ -403,6 +595,100 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                countInstructions = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("prof")) {
+               profile = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("heap")) {
+               heapStatistics = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("stacks")) {
+               if (args.length <= (i+1)) {
+                  out.println("Stacks command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  stacksFileName = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("cov")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cov command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  coverageFileName = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("timer")) {
+               intervalTimer = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("trace")) {
+               if (args.length <= (i+1)) {
+                  out.println("Trace command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  traceFileName = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("in")) {
+               if (args.length <= (i+1)) {
+                  out.println("In command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     inputScript = new InputScript(new File(args[++i]));
+                  } 
+                     catch (IOException e) {
+                        out.println("Cannot read input file "+args[i]+": "+e.getMessage());
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("record")) {
+               if (args.length <= (i+1)) {
+                  out.println("Record command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  recordFileName = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("midi")) {
+               if (args.length <= (i+1)) {
+                  out.println("Midi command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  midiFileName = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("bp")) {
+               branchPredictors = new BranchPredictorBench();
+               continue;
+            }
+            if (args[i].toLowerCase().equals("pipe")) {
+               pipelineModel = new PipelineModel();
+               continue;
+            }
+            if (args[i].toLowerCase().equals("caches")) {
+               cacheHierarchy = new CacheHierarchy();
+               continue;
+            }
+            if (args[i].toLowerCase().equals("cachesweep")) {
+               cacheSweep = new CacheSweep();
+               continue;
+            }
          
          
             if (args[i].indexOf("$") == 0) {
@@ -466,7 +752,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          try {
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
+            Memory.setMemoryLimit(memoryLimit);
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            SystemIO.setInputScript(inputScript);
+            SystemIO.setInputRecorder((recordFileName == null) ? null : new InputRecorder(new File(recordFileName)));
+            MidiScheduler.getInstance().setOutputFile((midiFileName == null) ? null : new File(midiFileName));
             File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
             ArrayList filesToAssemble;
             if (assembleProject) { 
@@ -506,6 +796,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                out.println(warnings.generateWarningReport());
             }
             RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
+            // Drop the assembly detail kept in the text segment, as RunAssembleAction
+            // does; statements rebuild it on demand.  Large programs take much less heap.
+            for (int i = 0; i < MIPSprogramsToAssemble.size(); i++) {
+               ((MIPSprogram) MIPSprogramsToAssemble.get(i)).releaseTokens();
+            }
+            Globals.memory.compactTextSegment();
             if (simulate) {
                // store program args (if any) in MIPS memory
                new ProgramArgumentList(programArgumentList).storeProgramArguments();
@@ -515,9 +811,105 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   out.println("--------  SIMULATION BEGINS  -----------");
                }
                programRan = true;
-               boolean done = code.simulate(maxSteps);
-               if (!done) {
-                  out.println("\nProgram terminated when maximum step limit "+maxSteps+" reached.");
+               Simulator.getInstance().setExecutionBudget(executionBudget);
+               Simulator.getInstance().setHarts(harts, hartScheduling);
+               Simulator.getInstance().setClock((nanosPerInstruction < 0) ? null : new VirtualClock(nanosPerInstruction));
+               RandomStreams.setGlobalSeed(randomSeed);
+               if (intervalTimer) {
+                  try {
+                     DeviceBus.attach(IntervalTimer.getDefaultAddress(), IntervalTimer.WINDOW_LENGTH, new IntervalTimer());
+                  } 
+                     catch (IllegalArgumentException e) {
+                        out.println("Cannot attach interval timer: "+e.getMessage());
+                     }
+               }
+               if (profile || stacksFileName != null) {
+                  profiler = new Profiler();
+                  Simulator.getInstance().setProfiler(profiler);
+               }
+               if (coverageFileName != null) {
+                  coverage = new Coverage();
+                  Simulator.getInstance().setCoverage(coverage);
+               }
+               TraceRecorder traceRecorder = null;
+               if (traceFileName != null) {
+                  try {
+                     traceRecorder = new TraceRecorder(new File(traceFileName));
+                  } 
+                     catch (IOException e) {
+                        out.println("Error while creating trace file "+traceFileName+": "+e.getMessage());
+                     }
+                  Simulator.getInstance().setTraceRecorder(traceRecorder);
+               }
+               Simulator.getInstance().setPipelineModel(pipelineModel);
+               Simulator.getInstance().setCacheHierarchy(cacheHierarchy);
+               AccessEventStream cacheSweepStream = null;
+               if (cacheSweep != null) {
+                  cacheSweepStream = new AccessEventStream(1 << 16, Memory.dataSegmentBaseAddress, Memory.stackBaseAddress,
+                         false, AccessEventStream.BLOCK, 1, 
+                         new AccessEventStream.Consumer() {
+                            public void accessEvents(AccessEventStream events, int count) {
+                               for (int i = 0; i < count; i++) {
+                                  cacheSweep.access(events.getAddress(i));
+                               }
+                            }
+                         });
+                  cacheSweepStream.open();
+               }
+               SimulationResult result = null;
+               Throwable failure = null; // of the simulator itself, not of the program
+               try {
+                  result = Simulator.getInstance().startSimulation(
+                         code, RegisterFile.getProgramCounter(), maxSteps, null, null).getCompletion().join();
+               } 
+                  catch (java.util.concurrent.CompletionException e) {
+                     failure = (e.getCause() == null) ? e : e.getCause();
+                  }
+               if (cacheSweepStream != null) {
+                  cacheSweepStream.flush(Long.MAX_VALUE / 2);
+                  cacheSweepStream.close();
+               }
+               if (traceRecorder != null) {
+                  Simulator.getInstance().setTraceRecorder(null);
+                  try {
+                     traceRecorder.close();
+                  } 
+                     catch (IOException e) {
+                        out.println("Error while writing trace file "+traceFileName+": "+e.getMessage());
+                     }
+               }
+               try {
+                  MidiScheduler.getInstance().save();
+               } 
+                  catch (IOException e) {
+                     out.println("Error while writing MIDI file "+midiFileName+": "+e.getMessage());
+                  }
+               if (failure != null) {
+                  Globals.exitCode = simulateErrorExitCode;
+                  out.println("\nSimulator error: "+failure);
+                  out.println("Processing terminated due to errors.");
+                  return programRan;
+               }
+               if (harts > 1) {
+                  // the observer cannot tell the harts' fetches apart, nor see parallel ones
+                  instructionCount = (int) result.getInstructionCount();
+               }
+               if (result.getProcessingException() != null) {
+                  throw result.getProcessingException();
+               }
+               switch (result.getReason()) {
+                  case Simulator.MAX_STEPS :
+                     out.println("\nProgram terminated when maximum step limit "+maxSteps+" reached.");
+                     break;
+                  case Simulator.BUDGET_EXCEEDED :
+                     out.println("\nProgram terminated when "+executionBudget.getExceededLimit()+" was exceeded.");
+                     Globals.exitCode = budgetExceededExitCode;
+                     break;
+                  case Simulator.INFINITE_LOOP :
+                     out.println("\nProgram terminated due to infinite loop at "+
+                               Binary.intToHexString(result.getProgramCounter())+".");
+                     Globals.exitCode = infiniteLoopExitCode;
+                     break;
                }
             }
             if (Globals.debug) {
@@ -589,6 +981,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   out.println("Internal error: MarsLaunch uses incorrect text segment address for instruction observer");
                }
          }		
+         if (branchPredictors != null) {
+            Observer branchObserver = 
+               new Observer() {
+                  public void update(Observable o, Object obj) { 
+                     if (obj instanceof MemoryAccessNotice) {
+                        MemoryAccessNotice notice = (MemoryAccessNotice) obj;
+                        if (!notice.accessIsFromMIPS() || notice.getAccessType() != AccessNotice.READ) 
+                           return;
+                        try {
+                           ProgramStatement statement = Globals.memory.getStatementNoNotify(notice.getAddress());
+                           if (statement != null) {
+                              branchPredictors.instruction(statement);
+                           }
+                        } 
+                           catch (AddressErrorException aee) {
+                           }
+                     }
+                  }
+               };
+            try {
+               Globals.memory.addObserver(branchObserver, Memory.textBaseAddress, Memory.textLimitAddress);
+            } 
+               catch (AddressErrorException aee) {
+                  out.println("Internal error: MarsLaunch uses incorrect text segment address for branch observer");
+               }
+         }
       }
    	     		   	
    	//////////////////////////////////////////////////////////////////////
@@ -598,6 +1016,65 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (countInstructions) {
             out.println("\n"+instructionCount);
          }
+         if (profile) {
+            out.println();
+            profiler.writeReport(new PrintWriter(out), 20);
+         }
+         if (heapStatistics) {
+            out.println();
+            Globals.memory.getHeapAllocator().writeReport(new PrintWriter(out));
+         }
+         if (stacksFileName != null) {
+            try {
+               PrintWriter stacks = new PrintWriter(new FileWriter(stacksFileName));
+               profiler.writeCollapsedStacks(stacks);
+               stacks.close();
+            } 
+               catch (IOException e) {
+                  out.println("Error while writing collapsed stacks to "+stacksFileName+": "+e.getMessage());
+               }
+         }
+         if (coverageFileName != null) {
+            writeCoverage();
+         }
+         if (branchPredictors != null) {
+            out.println();
+            branchPredictors.writeReport(new PrintWriter(out), 20);
+         }
+         if (pipelineModel != null) {
+            out.println();
+            pipelineModel.writeReport(new PrintWriter(out), 20);
+         }
+         if (cacheHierarchy != null) {
+            out.println();
+            cacheHierarchy.writeReport(new PrintWriter(out));
+         }
+         if (cacheSweep != null) {
+            cacheSweep.finish();
+            out.println();
+            cacheSweep.printTable(out);
+         }
+      }
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Writes the LCOV tracefile for the "cov" option.  Counts from an existing
+   	// tracefile are merged in, so repeated runs with different inputs accumulate.
+      private void writeCoverage() {
+         File file = new File(coverageFileName);
+         try {
+            Map previous = null;
+            if (file.exists()) {
+               BufferedReader in = new BufferedReader(new FileReader(file));
+               previous = Coverage.readLcov(in);
+               in.close();
+            }
+            PrintWriter lcov = new PrintWriter(new FileWriter(file));
+            coverage.writeLcov(code, lcov, previous);
+            lcov.close();
+         } 
+            catch (IOException e) {
+               out.println("Error while writing coverage to "+coverageFileName+": "+e.getMessage());
+            }
       }
    
    	     		   	
@@ -804,6 +1281,38 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("      h  -- display this help.  Use by itself with no filename.");
          out.println("    hex  -- display memory or register contents in hexadecimal (default)");
          out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+         out.println("   prof  -- display execution profile: instructions executed per function (self and");
+         out.println("            inclusive, functions identified by jal/jr $ra) and hottest instructions.");
+         out.println("   heap  -- display statistics of the heap allocator behind syscalls 61-63 (Malloc,");
+         out.println("            Free, Realloc): counts, live and peak bytes, fragmentation.");
+         out.println("   stacks <file>  -- write execution profile to <file> as collapsed call stacks,");
+         out.println("            one 'main;callee;... count' line per stack, for flame graph tools.");
+         out.println("   cov <file>  -- write line coverage to <file> as an LCOV tracefile.  If <file>");
+         out.println("            exists its hit counts are added to, accumulating coverage across runs.");
+         out.println("   trace <file>  -- record every instruction fetch, load and store to <file> in");
+         out.println("            compact binary form, for replay with mars.simulator.TraceReader.");
+         out.println("   in <file>  -- take program input from <file> instead of the keyboard, from its");
+         out.println("            start in every run.  A recording made with 'record' or the IDE's");
+         out.println("            Record input setting also restores the seeds of random number");
+         out.println("            streams, so the run is repeated exactly.");
+         out.println("   record <file>  -- record program input and random number seeds to <file>.");
+         out.println("   midi <file>  -- render the notes of MidiOut and MidiOutSync (syscalls 31 and 33)");
+         out.println("            to <file> as a standard MIDI file instead of playing them.  With");
+         out.println("            vt<n>, the file's notes are timed in virtual time and MidiOutSync");
+         out.println("            does not wait; notes played on the audio device always take real time.");
+         out.println("     bp  -- compare branch predictors (bimodal, gshare, local history, tournament and");
+         out.println("            perceptron) on the conditional branches executed: accuracy and");
+         out.println("            mispredictions per thousand instructions, overall and per branch.");
+         out.println("   pipe  -- estimate cycles and CPI on a classic 5-stage pipeline with forwarding");
+         out.println("            (load-use, branch operand and control stalls; respects 'db'), with");
+         out.println("            the stalls broken down by basic block and by instruction.");
+         out.println("  caches  -- estimate cycles, CPI and average memory access time (AMAT) using a");
+         out.println("            timing model of split 8KB L1 instruction and data caches, a unified");
+         out.println("            256KB L2 cache and 100-cycle memory.");
+         out.println(" cachesweep  -- simulate a grid of data cache configurations (block size, number");
+         out.println("            of blocks, associativity, LRU/random) over the program's loads and");
+         out.println("            stores, and display their hit rates best first.  Recorded traces can");
+         out.println("            be swept with java mars.tools.CacheSweep <trace file>.");
          out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
          out.println("            case-sensitive and possible values are: Default for the default");
          out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
@@ -815,6 +1324,31 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("     np  -- use of pseudo instructions and formats not permitted");
          out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
          out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
+         out.println("  be<n>  -- terminate MARS with integer exit code <n> if an execution limit (il, tl, sl, ol) is exceeded.");
+         out.println("  le<n>  -- terminate MARS with integer exit code <n> if an infinite loop is detected (see lp).");
+         out.println("  il<n>  -- instruction limit: stop with error after <n> instructions (unlike <n> alone).");
+         out.println("  tl<n>  -- time limit: stop with error after <n> milliseconds of wall-clock time.");
+         out.println("  sl<n>  -- syscall limit: stop with error after <n> syscalls.");
+         out.println("  ol<n>  -- output limit: stop with error after <n> bytes of program output.");
+         out.println("     lp  -- loop detection: stop a loop whose register state repeats with no memory");
+         out.println("            or syscall activity in between, since it can never terminate.");
+         out.println("  ml<n>  -- memory limit: stop with error when data, heap, stack and kernel data");
+         out.println("            need more than <n> megabytes of memory (default 256).");
+         out.println("  rr<n>  -- run <n> harts (hardware threads) that share memory, interleaved one");
+         out.println("            instruction at a time.  Each has its own registers and starts at the");
+         out.println("            same address; syscall 60 returns the hart number.");
+         out.println(" smp<n>  -- like rr<n> but each hart runs on a host thread of its own.  The");
+         out.println("            prof, stacks, cov, trace, bp, pipe and caches options are ignored.");
+         out.println("  timer  -- attach an interval timer at memory mapped address 0xffff0020: write");
+         out.println("            the period in milliseconds to 0xffff0024 (0 stops it) and set bit 1");
+         out.println("            of 0xffff0020 to get a timer interrupt (cause bit 10) at every tick;");
+         out.println("            0xffff0028 counts the ticks.");
+         out.println("  vt<n>  -- virtual time: each instruction takes <n> nanoseconds of simulated time,");
+         out.println("            Sleep (syscall 32) advances it without waiting, and Time (syscall 30)");
+         out.println("            and the interval timer read it, so runs are fast and reproducible.");
+         out.println("seed<n>  -- seed the random number streams (syscalls 41-44 and custom language");
+         out.println("            instructions) that the program does not seed itself from <n>, so");
+         out.println("            that every run gets the same random numbers.");
          out.println("     sm  -- start execution at statement with global label main, if defined");
          out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
          out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
@@ -55,6 +55,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int sourceLine;
       private int binaryStatement;
       private boolean altered;
+      private boolean released; // assembly detail released, rebuilt on demand; see releaseSourceDetail()
       private static final String invalidOperator = "<INVALID>";
     
     //////////////////////////////////////////////////////////////////////////////////
@@ -373,6 +374,41 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
     
     /////////////////////////////////////////////////////////////////////////////
+    //////////////////////////////////////////////////////////////////////////////
+    /**
+     * Releases the token lists, basic statement list and display strings built during
+     * assembly, keeping what simulation needs: the binary machine code, the operands
+     * and the source line (shared with the MIPSprogram).  Each released item is rebuilt
+     * on demand by its getter, from the source line or the binary code, and is released
+     * only if the rebuilt one is the same.  Statements generated by pseudo-instructions
+     * keep their token lists, which come from the expansion, not the source.  Used after
+     * assembly to reduce the memory taken by large programs.
+     * @see mars.mips.hardware.Memory#compactTextSegment()
+     **/
+       public void releaseSourceDetail() {
+         if (released || sourceMIPSprogram == null || !(instruction instanceof BasicInstruction)) {
+            return;
+         }
+         BasicStatementList rebuilt = buildBasicStatementListFromBinaryCode(binaryStatement, 
+                (BasicInstruction) instruction, operands, numOperands);
+         if (basicStatementList != null && rebuilt.isSameAs(basicStatementList) && basicAssemblyStatement != null
+             && basicAssemblyStatement.equals(rebuilt.toString(mars.venus.NumberDisplayBaseChooser.DECIMAL,
+                                                               mars.venus.NumberDisplayBaseChooser.DECIMAL))) {
+            basicStatementList = null;
+            basicAssemblyStatement = null;
+         }
+         if (machineStatement != null && machineStatement.equals(Binary.intToBinaryString(binaryStatement))) {
+            machineStatement = null;
+         }
+         if (originalTokenList != null && originalTokenList != strippedTokenList && source.length() > 0) {
+            TokenList tokens = tokenizeSource();
+            if (isSameTokenList(tokens, originalTokenList) && isSameTokenList(stripTokens(tokens), strippedTokenList)) {
+               originalTokenList = strippedTokenList = null;
+            }
+         }
+         released = true;
+      }
+
     /**
      * Crude attempt at building String representation of this complex structure.
      * @return A String representing the ProgramStatement.
@@ -488,6 +524,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      **/
      
        public String getBasicAssemblyStatement() {
+         if (basicAssemblyStatement == null && released) {
+            return getBasicStatementList().toString(mars.venus.NumberDisplayBaseChooser.DECIMAL,
+                                                    mars.venus.NumberDisplayBaseChooser.DECIMAL);
+         }
          return basicAssemblyStatement;
       }
     
@@ -499,7 +539,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return The Basic Assembly statement.
      **/   
        public String getPrintableBasicAssemblyStatement() {
-         return basicStatementList.toString();
+         return getBasicStatementList().toString();
       }
    	 
     /**
@@ -508,6 +548,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      **/
      
        public String getMachineStatement() {
+         if (machineStatement == null && released) {
+            return Binary.intToBinaryString(binaryStatement);
+         }
          return machineStatement;
       }
     
@@ -523,6 +566,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return The TokenList of Token objects generated from original source.
      **/
        public TokenList getOriginalTokenList() {
+         if (originalTokenList == null && released) {
+            return tokenizeSource();
+         }
          return originalTokenList;
       }
     /**
@@ -531,6 +577,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * except operator and operand tokens.
      **/
        public TokenList getStrippedTokenList() {
+         if (strippedTokenList == null && released) {
+            return stripTokens(tokenizeSource());
+         }
          return strippedTokenList;
       }
     /**
@@ -570,6 +619,61 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
     
+    //////////////////////////////////////////////////////////////////////////////
+    //  Basic statement list, rebuilt from the binary code if released.
+       private BasicStatementList getBasicStatementList() {
+         BasicStatementList list = this.basicStatementList;
+         if (list == null && released) {
+            list = buildBasicStatementListFromBinaryCode(binaryStatement, 
+                      (BasicInstruction) instruction, operands, numOperands);
+         }
+         return list;
+      }
+   
+    //////////////////////////////////////////////////////////////////////////////
+    //  Tokenize the source statement again, as the assembler did.  Tokens are
+    //  attributed to this statement's program and line.
+       private TokenList tokenizeSource() {
+         TokenList tokens = new Tokenizer(sourceMIPSprogram).tokenizeLine(sourceMIPSprogram, sourceLine, source, false);
+         for (int i = 0; i < tokens.size(); i++) {
+            tokens.get(i).setOriginal(sourceMIPSprogram, sourceLine);
+         }
+         return tokens;
+      }
+   
+    //////////////////////////////////////////////////////////////////////////////
+    //  Strip comment and label from a source token list, as the assembler does,
+    //  leaving the operator and operands.
+       private static TokenList stripTokens(TokenList tokens) {
+         TokenList stripped = (TokenList) tokens.clone();
+         if (!stripped.isEmpty() && stripped.get(stripped.size() - 1).getType() == TokenTypes.COMMENT) {
+            stripped.remove(stripped.size() - 1);
+         }
+         if (stripped.size() >= 2 && stripped.get(1).getType() == TokenTypes.COLON) {
+            stripped.remove(0);
+            stripped.remove(0);
+         }
+         return stripped;
+      }
+   
+    //////////////////////////////////////////////////////////////////////////////
+    //  Whether two token lists hold the same tokens, from the same place.
+       private static boolean isSameTokenList(TokenList a, TokenList b) {
+         if (a.size() != b.size()) {
+            return false;
+         }
+         for (int i = 0; i < a.size(); i++) {
+            Token s = a.get(i), t = b.get(i);
+            if (s.getType() != t.getType() || !s.getValue().equals(t.getValue())
+                || s.getSourceMIPSprogram() != t.getSourceMIPSprogram() || s.getSourceLine() != t.getSourceLine()
+                || s.getStartPos() != t.getStartPos() || s.getOriginalProgram() != t.getOriginalProgram()
+                || s.getOriginalSourceLine() != t.getOriginalSourceLine()) {
+               return false;
+            }
+         }
+         return true;
+      }
+   
     //////////////////////////////////////////////////////////////////////////////
     //  Given operand (register or integer) and mask character ('f', 's', or 't'),
     //  generate the correct sequence of bits and replace the mask with them.
@@ -690,7 +794,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           public String toString() {
             int addressBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_ADDRESSES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
             int valueBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_VALUES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
-         	
+            return toString(addressBase, valueBase);
+         }
+      
+          // Render with addresses and values in the given number bases.
+          String toString(int addressBase, int valueBase) {
             StringBuffer result = new StringBuffer();
             for (int i=0; i<list.size(); i++) {
                ListElement e = (ListElement) list.get(i);
@@ -715,6 +823,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return result.toString();
          }
       	
+          // Whether the other list has the same elements.
+          boolean isSameAs(BasicStatementList other) {
+            if (list.size() != other.list.size()) {
+               return false;
+            }
+            for (int i=0; i<list.size(); i++) {
+               ListElement e = (ListElement) list.get(i);
+               ListElement f = (ListElement) other.list.get(i);
+               if (e.type != f.type || e.iValue != f.iValue || 
+                   (e.sValue == null ? f.sValue != null : !e.sValue.equals(f.sValue))) {
+                  return false;
+               }
+            }
+            return true;
+         }
+      	
           private class ListElement {
             int type;
             String sValue;
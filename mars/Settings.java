@@ -1,6 +1,7 @@
    package mars;
    import mars.*;
    import mars.util.*;
+   import mars.simulator.ExecutionBudget;
    import mars.venus.editors.jeditsyntax.*;
    import java.io.*;
    import java.util.*;
@@ -112,6 +113,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     /** Flag to determine whether a program can write binary code to the text or data segment and
         execute that code.  */
       public static final int SELF_MODIFYING_CODE_ENABLED = 20;	
+    /** Flag to control whether or not the simulator records which instructions are executed and
+        the Text Segment window shades source lines by coverage. */
+      public static final int CODE_COVERAGE = 21;
+    /** Flag to control whether or not the input given to a program run in the IDE, and the seeds of
+        its random number streams, are recorded next to its source file for replay from the command line. */
+      public static final int RECORD_INPUT = 22;
+    /** Flag to control whether or not a program run in the IDE is terminated when it enters a loop
+        whose state repeats exactly (see mars.simulator.LoopDetector). */
+      public static final int DETECT_INFINITE_LOOPS = 23;
    
       // NOTE: key sequence must match up with labels above which are used for array indexes!
       private static String[] booleanSettingsKeys = {"ExtendedAssembler", "BareMachine", "AssembleOnOpen", "AssembleAll",
@@ -120,7 +130,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          												"WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting",
          												"RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting",
          												"PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor", 
-         												"AutoIndent", "SelfModifyingCode" };
+         												"AutoIndent", "SelfModifyingCode", "CodeCoverage", "RecordInput",
+         												"DetectInfiniteLoops" };
    
       /** Last resort default values for boolean settings; will use only  if neither
    	 *  the Preferences nor the properties file work. If you wish to change them, 
@@ -129,7 +140,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
       public static boolean[] defaultBooleanSettingsValues = { // match the above list by position
                                               true, false, false, false, false, true, true, false, false, 
-         												 true, false, false, true, true, false, true, true, false, false, true, false };
+         												 true, false, false, true, true, false, true, true, false, false, true, false, false, false, false };
    
       // STRING SETTINGS.  Each array position has associated name.
    	/** Current specified exception handler file (a MIPS assembly source file) */
@@ -146,15 +157,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int EDITOR_TAB_SIZE = 5;
    	/** Number of letters to be matched by editor's instruction guide before popup generated (if popup enabled) */
       public static final int EDITOR_POPUP_PREFIX_LENGTH = 6;
+   	/** Execution limits for programs run in the IDE: instructions, milliseconds, syscalls and output bytes, 0 means none */
+      public static final int EXECUTION_LIMITS = 7;
    	// Match the above by position.
-      private static final String[] stringSettingsKeys = { "ExceptionHandler", "TextColumnOrder", "LabelSortState", "MemoryConfiguration", "CaretBlinkRate", "EditorTabSize", "EditorPopupPrefixLength" };
+      private static final String[] stringSettingsKeys = { "ExceptionHandler", "TextColumnOrder", "LabelSortState", "MemoryConfiguration", "CaretBlinkRate", "EditorTabSize", "EditorPopupPrefixLength", "ExecutionLimits" };
    
       /** Last resort default values for String settings; 
    	 *  will use only if neither the Preferences nor the properties file work.
    	 *  If you wish to change, do so before instantiating the Settings object.
    	 *  Must match key by list position.
    	 */
-      private static String[] defaultStringSettingsValues = { "", "0 1 2 3 4", "0", "", "500", "8", "2" }; 
+      private static String[] defaultStringSettingsValues = { "", "0 1 2 3 4", "0", "", "500", "8", "2", "0 0 0 0" }; 
    
    
       // FONT SETTINGS.  Each array position has associated name.
@@ -746,6 +759,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public String getLabelSortState() {
          return stringSettingsValues[LABEL_SORT_STATE];
       }
+   
+   	/**
+   	 * Get the execution budget for programs run in the IDE, built from the
+   	 * execution limits and the infinite loop detection flag.
+   	 * @return ExecutionBudget with the current limits, or null if no limit is
+   	 * set and loop detection is off.
+   	 */
+       public ExecutionBudget getExecutionBudget() {
+         long[] limits = getExecutionLimits(stringSettingsValues[EXECUTION_LIMITS]);
+         boolean detectInfiniteLoops = getBooleanSetting(DETECT_INFINITE_LOOPS);
+         if (!detectInfiniteLoops && limits[0] <= 0 && limits[1] <= 0 && limits[2] <= 0 && limits[3] <= 0) {
+            return null;
+         }
+         return new ExecutionBudget(limits[0], limits[1], limits[2], limits[3], detectInfiniteLoops);
+      }
    	 
    	 /**
    	  * Get Color object for specified settings key.
@@ -1112,6 +1140,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          setStringSetting(LABEL_SORT_STATE, state);
       }
    
+   	 /**
+   	  * Store the execution limits and infinite loop detection flag for programs
+   	  * run in the IDE.
+   	  * @param budget ExecutionBudget holding the new limits, or null for none.
+   	  */
+       public void setExecutionBudget(ExecutionBudget budget) {
+         if (budget == null) {
+            budget = new ExecutionBudget();
+         }
+         setStringSetting(EXECUTION_LIMITS, budget.getMaxInstructions()+" "+budget.getMaxMillis()+" "+
+                                            budget.getMaxSyscalls()+" "+budget.getMaxOutputBytes());
+         setBooleanSetting(DETECT_INFINITE_LOOPS, budget.getDetectInfiniteLoops());
+      }
+   
    	 
    	 /**
    	  * Set Color object for specified settings key.  Has no effect if key is invalid.
@@ -1404,5 +1446,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          return list;
       }
+   
+      // Parse the execution limits string: instructions, milliseconds, syscalls and
+   	// output bytes separated by spaces.  Missing or malformed values mean no limit.
+       private long[] getExecutionLimits(String stringOfLimits) {
+         long[] limits = new long[4];
+         StringTokenizer st = new StringTokenizer(stringOfLimits);
+         for (int i=0; i<limits.length && st.hasMoreTokens(); i++) {
+            try {
+               limits[i] = Long.parseLong(st.nextToken());
+            } 
+                catch (NumberFormatException e) {
+                  return new long[4];
+               }
+         }
+         return limits;
+      }
    	
    }
\ No newline at end of file
@@ -0,0 +1,78 @@
+   package mars.mips.dump;
+
+   import mars.Globals;
+   import mars.mips.hardware.*;
+   import mars.util.Binary;
+   import java.io.*;
+
+/**
+ * Incremental memory dump format.  Only the pages of the range written since
+ * the previous dump in this format (or, for the first dump, since memory was
+ * last cleared) are written, so successive dumps of a running program hold
+ * just what changed in between.  Each line holds the address of its first word
+ * and 8 words, all in hexadecimal; rows of words never allocated are omitted.
+ * Page boundaries are Memory.PAGE_LENGTH_BYTES apart.
+ */
+
+    public class ChangedPagesDumpFormat extends AbstractDumpFormat {
+
+      private static final int WORDS_PER_LINE = 8;
+      private int mark = 0; // generation of the previous dump, 0 for none
+
+   /**
+   *  Constructor.  There is no standard file extension for this format.
+   */
+       public ChangedPagesDumpFormat() {
+         super("Changed Pages", "ChangedPages", "Pages written since the previous dump, as hex text", null);
+      }
+
+
+   /**
+   *  Write the pages of the range modified since the previous dump in this format.
+   *
+   *  @param  file  File in which to store MIPS memory contents.
+   *  @param firstAddress first (lowest) memory address to dump.  In bytes but
+   *  must be on word boundary.
+   *  @param lastAddress last (highest) memory address to dump.  In bytes but
+   *  must be on word boundary.  Will dump the word that starts at this address.
+   *  @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+   *  @throws IOException if error occurs during file output.
+   */
+       public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
+        throws AddressErrorException, IOException {
+         int previous = mark;
+         mark = Globals.memory.markGeneration();
+         int[] pages = Globals.memory.getModifiedPages(firstAddress, lastAddress, previous);
+         PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+         try {
+            for (int i = 0; i < pages.length; i++) {
+               // only the first and last pages may be partly in the range
+               int first = (pages[i] == (firstAddress & -Memory.PAGE_LENGTH_BYTES)) ? firstAddress : pages[i];
+               int last = (pages[i] == (lastAddress & -Memory.PAGE_LENGTH_BYTES)) 
+                        ? lastAddress : pages[i] + Memory.PAGE_LENGTH_BYTES - Memory.WORD_LENGTH_BYTES;
+               dumpLines(out, first, last);
+            }
+         }
+         finally {
+            out.close();
+         }
+      }
+
+      // Write the words from first to last, both in one page, WORDS_PER_LINE to a line.
+       private void dumpLines(PrintStream out, int first, int last) throws AddressErrorException {
+         int count = (last - first) / Memory.WORD_LENGTH_BYTES + 1;
+         for (int line = 0; line < count; line += WORDS_PER_LINE) {
+            int address = first + line * Memory.WORD_LENGTH_BYTES;
+            Integer word = Globals.memory.getRawWordOrNull(address);
+            if (word == null)
+               continue;
+            StringBuffer string = new StringBuffer(Binary.intToHexString(address));
+            for (int i = line; i < count && i < line + WORDS_PER_LINE; i++) {
+               word = Globals.memory.getRawWordOrNull(first + i * Memory.WORD_LENGTH_BYTES);
+               string.append(' ').append(Binary.intToHexString(word == null ? 0 : word.intValue()));
+            }
+            out.println(string);
+         }
+      }
+
+   }
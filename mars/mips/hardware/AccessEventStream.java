@@ -0,0 +1,307 @@
+   package mars.mips.hardware;
+   import java.util.concurrent.locks.*;
+   import mars.simulator.Simulator;
+
+/**
+ * Allocation-free alternative to Observer notification for tools that watch MIPS
+ * memory and register accesses.  Instead of receiving a new MemoryAccessNotice
+ * or RegisterAccessNotice synchronously on the simulation thread, a tool opens a
+ * stream: the simulator appends each access (type, address, length, value and
+ * program counter) to a preallocated ring buffer, and a consumer thread owned by
+ * the stream hands the tool batches of events.  The simulation only pays for a
+ * few array stores per access, so tools can keep up with unlimited-speed runs.
+ * <p>
+ * When the consumer falls behind and the buffer fills, the stream applies its
+ * backpressure policy: BLOCK makes the simulation wait for room, so no event is
+ * lost; DROP discards new events until there is room; SAMPLE records only one in
+ * every sampling interval events while the buffer is more than half full, and
+ * discards when full.  Discarded events are counted.
+ * <p>
+ * Only accesses made by the executing MIPS program are recorded.  Register events
+ * identify the register by Register.getNumber(), so general purpose and floating
+ * point registers share numbers; accesses to the program counter register itself
+ * are not recorded.  The accessors getType() through getProgramCounter() are
+ * only meaningful within Consumer.accessEvents().
+ */
+
+    public class AccessEventStream {
+   	/** Event type of a memory read.  Same value as AccessNotice.READ. */
+      public static final int MEMORY_READ = AccessNotice.READ;
+   	/** Event type of a memory write.  Same value as AccessNotice.WRITE. */
+      public static final int MEMORY_WRITE = AccessNotice.WRITE;
+   	/** Event type of a register read. */
+      public static final int REGISTER_READ = 2 + AccessNotice.READ;
+   	/** Event type of a register write. */
+      public static final int REGISTER_WRITE = 2 + AccessNotice.WRITE;
+
+   	/** Backpressure policy: simulation waits until the consumer makes room. */
+      public static final int BLOCK = 0;
+   	/** Backpressure policy: events that do not fit are discarded. */
+      public static final int DROP = 1;
+   	/** Backpressure policy: events are sampled when the buffer is over half full. */
+      public static final int SAMPLE = 2;
+
+   	/**
+   	 * Receives batches of access events on the stream's consumer thread.
+   	 */
+       public interface Consumer {
+      	/**
+      	 * Process the events of one batch.  Event i, for 0 &lt;= i &lt; count, is
+      	 * read using the stream's accessors.  The stream must not be retained.
+      	 * @param events the stream, positioned at the start of the batch
+      	 * @param count number of events in the batch
+      	 */
+          public void accessEvents(AccessEventStream events, int count);
+      }
+
+      // Streams currently receiving events, replaced (never modified) on open and close.
+      private static volatile AccessEventStream[] active = new AccessEventStream[0];
+
+      private final int mask;
+      private final int[] types, addresses, lengths, values, pcs;
+      private final int lowAddress, highAddress;
+      private final boolean registerEvents;
+      private final int policy;
+      private final int samplingInterval;
+      private final Consumer consumer;
+
+      private volatile long head;  // events appended; written only by the simulation thread
+      private volatile long tail;  // events consumed; written only by the consumer thread
+      private long batchStart;
+      private long discarded;
+      private int sampleCountdown;
+      private volatile boolean open;
+      private volatile Thread producerWaiting;
+      private Thread consumerThread;
+
+   	/**
+   	 * Create a stream.  It receives no events until opened.
+   	 * @param capacity number of events the ring buffer holds; rounded up to a power of 2
+   	 * @param lowAddress lowest memory address of interest
+   	 * @param highAddress highest memory address of interest
+   	 * @param registerEvents whether register accesses are wanted too
+   	 * @param policy backpressure policy: BLOCK, DROP or SAMPLE
+   	 * @param samplingInterval for SAMPLE, record one event out of this many while congested
+   	 * @param consumer receives the batches of events
+   	 */
+       public AccessEventStream(int capacity, int lowAddress, int highAddress, boolean registerEvents,
+                                int policy, int samplingInterval, Consumer consumer) {
+         if (policy != BLOCK && policy != DROP && policy != SAMPLE) {
+            throw new IllegalArgumentException("invalid backpressure policy "+policy);
+         }
+         int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+         this.mask = size - 1;
+         this.types = new int[size];
+         this.addresses = new int[size];
+         this.lengths = new int[size];
+         this.values = new int[size];
+         this.pcs = new int[size];
+         this.lowAddress = lowAddress;
+         this.highAddress = highAddress;
+         this.registerEvents = registerEvents;
+         this.policy = policy;
+         this.samplingInterval = Math.max(1, samplingInterval);
+         this.consumer = consumer;
+      }
+
+   	/**
+   	 * Start the consumer thread and begin receiving events.
+   	 */
+       public synchronized void open() {
+         if (open)
+            return;
+         open = true;
+         consumerThread =
+               new Thread("MARS access events") {
+                  public void run() {
+                     consume();
+                  }
+               };
+         consumerThread.setDaemon(true);
+         consumerThread.start();
+         synchronized (AccessEventStream.class) {
+            AccessEventStream[] streams = new AccessEventStream[active.length + 1];
+            System.arraycopy(active, 0, streams, 0, active.length);
+            streams[active.length] = this;
+            active = streams;
+         }
+      }
+
+   	/**
+   	 * Stop receiving events.  Events already in the buffer are still delivered
+   	 * before the consumer thread ends.
+   	 */
+       public synchronized void close() {
+         if (!open)
+            return;
+         synchronized (AccessEventStream.class) {
+            AccessEventStream[] streams = new AccessEventStream[Math.max(0, active.length - 1)];
+            int j = 0;
+            for (int i = 0; i < active.length; i++) {
+               if (active[i] != this && j < streams.length) {
+                  streams[j++] = active[i];
+               }
+            }
+            active = streams;
+         }
+         open = false;
+         LockSupport.unpark(consumerThread);
+         Thread waiting = producerWaiting;
+         if (waiting != null) {
+            LockSupport.unpark(waiting);
+         }
+      }
+
+   	/**
+   	 * @return true if the stream is open
+   	 */
+       public boolean isOpen() {
+         return open;
+      }
+
+   	/**
+   	 * @return number of events discarded because the buffer was full or being sampled
+   	 */
+       public long getDiscardedCount() {
+         return discarded;
+      }
+
+   	/**
+   	 * Wait until every event appended so far has been delivered to the consumer.
+   	 * @param millis maximum time to wait
+   	 * @return true if all events were delivered
+   	 */
+       public boolean flush(long millis) {
+         long target = head;
+         long deadline = System.currentTimeMillis() + millis;
+         while (tail < target && consumerThread != null && consumerThread.isAlive()) {
+            if (System.currentTimeMillis() >= deadline) {
+               return false;
+            }
+            LockSupport.parkNanos(100000L);
+         }
+         return tail >= target;
+      }
+
+   	/** @param i index of event within the current batch @return event type, e.g. MEMORY_WRITE */
+       public int getType(int i) {
+         return types[(int) (batchStart + i) & mask];
+      }
+   	/** @param i index of event within the current batch @return memory address or register number */
+       public int getAddress(int i) {
+         return addresses[(int) (batchStart + i) & mask];
+      }
+   	/** @param i index of event within the current batch @return number of bytes accessed */
+       public int getLength(int i) {
+         return lengths[(int) (batchStart + i) & mask];
+      }
+   	/** @param i index of event within the current batch @return value read or written */
+       public int getValue(int i) {
+         return values[(int) (batchStart + i) & mask];
+      }
+   	/** @param i index of event within the current batch @return address of the instruction that made the access */
+       public int getProgramCounter(int i) {
+         return pcs[(int) (batchStart + i) & mask];
+      }
+
+   	/**
+   	 * Called by Memory for every access, before any Observer is notified.
+   	 */
+       static void memoryAccess(int type, int address, int length, int value) {
+         AccessEventStream[] streams = active;
+         if (streams.length == 0 || !fromMIPS())
+            return;
+         int pc = RegisterFile.getProgramCounterRegister().getValueNoNotify() - Memory.WORD_LENGTH_BYTES;
+         for (int i = 0; i < streams.length; i++) {
+            AccessEventStream stream = streams[i];
+            if (address >= stream.lowAddress && address <= stream.highAddress) {
+               stream.append(type, address, length, value, pc);
+            }
+         }
+      }
+
+   	/**
+   	 * Called by Register for every access, before any Observer is notified.
+   	 */
+       static void registerAccess(int type, Register register, int value) {
+         AccessEventStream[] streams = active;
+         if (streams.length == 0 || register == RegisterFile.getProgramCounterRegister() || !fromMIPS())
+            return;
+         int pc = RegisterFile.getProgramCounterRegister().getValueNoNotify() - Memory.WORD_LENGTH_BYTES;
+         for (int i = 0; i < streams.length; i++) {
+            if (streams[i].registerEvents) {
+               streams[i].append(2 + type, register.getNumber(), Memory.WORD_LENGTH_BYTES, value, pc);
+            }
+         }
+      }
+
+   	/**
+   	 * @return true if any stream is open, so that Memory need not gather the
+   	 * values of a bulk access for none
+   	 */
+       static boolean anyOpen() {
+         return active.length > 0;
+      }
+
+      // Same test as AccessNotice.accessIsFromMIPS()
+       private static boolean fromMIPS() {
+         return Simulator.isExecutionThread();
+      }
+
+       private void append(int type, int address, int length, int value, int pc) {
+         long h = head;
+         long used = h - tail;
+         if (used > mask) {
+            if (policy == BLOCK) {
+               producerWaiting = Thread.currentThread();
+               while (h - tail > mask && open) {
+                  LockSupport.parkNanos(this, 50000L);
+               }
+               producerWaiting = null;
+               if (!open)
+                  return;
+            }
+            else {
+               discarded++;
+               return;
+            }
+         }
+         else if (policy == SAMPLE && used > (mask >> 1)) {
+            if (--sampleCountdown > 0) {
+               discarded++;
+               return;
+            }
+            sampleCountdown = samplingInterval;
+         }
+         int slot = (int) h & mask;
+         types[slot] = type;
+         addresses[slot] = address;
+         lengths[slot] = length;
+         values[slot] = value;
+         pcs[slot] = pc;
+         head = h + 1;
+      }
+
+      // Body of the consumer thread: deliver whatever has accumulated, or idle briefly.
+       private void consume() {
+         while (true) {
+            long t = tail;
+            long h = head;
+            if (h == t) {
+               if (!open)
+                  return;
+               LockSupport.parkNanos(this, 1000000L);
+               continue;
+            }
+            int count = (int) (h - t);
+            batchStart = t;
+            try {
+               consumer.accessEvents(this, count);
+            }
+                catch (RuntimeException e) {
+                  e.printStackTrace();
+               }
+            tail = t + count;
+         }
+      }
+   }
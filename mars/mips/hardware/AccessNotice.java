@@ -1,4 +1,5 @@
 package mars.mips.hardware;
+import mars.simulator.Simulator;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -46,6 +47,7 @@ public abstract class AccessNotice {
 	
 	private int accessType;
 	private Thread thread;
+	private boolean fromMIPS;
 	
 	protected AccessNotice(int type) {
 	   if (type != READ && type != WRITE) {
@@ -53,6 +55,7 @@ public abstract class AccessNotice {
 		}
 		accessType = type;
 		thread = Thread.currentThread();
+		fromMIPS = Simulator.isExecutionThread();
 	}
 	/** Get the access type: READ or WRITE.  
 	 * @return Access type, either AccessNotice.READ or AccessNotice.WRITE
@@ -80,10 +83,10 @@ public abstract class AccessNotice {
 	/** Query whether the access originated from executing MIPS program
 	 * @return true if this access originated from executing MIPS program, false otherwise
 	 */
-	 // Thread to execute the MIPS program is instantiated in SwingWorker.java.
-	 // There it is given the name "MIPS" to replace the default "Thread-x". 
+	 // The thread executing the MIPS program is the one running Simulator's SimThread,
+	 // named "MIPS" unless an executor given to Simulator.startSimulation() provides it.
 	public boolean accessIsFromMIPS() {
-	   return thread.getName().startsWith("MIPS");
+	   return fromMIPS;
 	}	
 	
 }
\ No newline at end of file
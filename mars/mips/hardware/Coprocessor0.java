@@ -49,7 +49,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		// bit 1 (exception level) not set, bit 0 (interrupt enable) set.
 		public static final int DEFAULT_STATUS_VALUE = 0x0000FF11;
 		
-      private static Register [] registers = 
+      // Registers of hart 0.  Methods operate on the registers of Hart.current(),
+   	// which are these except in a multi-hart simulation.
+      static Register [] registers = 
           { new Register("$8 (vaddr)", 8, 0),  
             new Register("$12 (status)", 12, DEFAULT_STATUS_VALUE),
          	new Register("$13 (cause)", 13, 0),  
@@ -78,11 +80,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int updateRegister(String n, int val){
+         Register[] cp0 = Hart.current().cp0;
 		   int oldValue = 0;
-         for (int i=0; i< registers.length; i++){
-            if(("$"+registers[i].getNumber()).equals(n) || registers[i].getName().equals(n)) {
-				   oldValue = registers[i].getValue();
-               registers[i].setValue(val);
+         for (int i=0; i< cp0.length; i++){
+            if(("$"+cp0[i].getNumber()).equals(n) || cp0[i].getName().equals(n)) {
+				   oldValue = cp0[i].getValue();
+               cp0[i].setValue(val);
                break;
             }
          }
@@ -96,12 +99,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		  *   @return old value in register prior to update
    	  **/
        public static int updateRegister(int num, int val){
+         Register[] cp0 = Hart.current().cp0;
          int old = 0;
-         for (int i=0; i< registers.length; i++){
-            if(registers[i].getNumber()== num) {
+         for (int i=0; i< cp0.length; i++){
+            if(cp0[i].getNumber()== num) {
                old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor0Restore(num,registers[i].setValue(val))
-                  		: registers[i].setValue(val);
+                        ? Globals.program.getBackStepper().addCoprocessor0Restore(num,cp0[i].setValue(val))
+                  		: cp0[i].setValue(val);
                break;
             }
          }
@@ -116,9 +120,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
-         for (int i=0; i< registers.length; i++){
-            if(registers[i].getNumber()== num) {
-               return registers[i].getValue();
+         Register[] cp0 = Hart.current().cp0;
+         for (int i=0; i< cp0.length; i++){
+            if(cp0[i].getNumber()== num) {
+               return cp0[i].getValue();
             }
          }
          return 0;
@@ -145,7 +150,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register[] getRegisters(){
-         return registers;
+         return Hart.current().cp0;
       }
 
       
@@ -158,8 +163,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getRegisterPosition(Register r){
-         for (int i=0; i< registers.length; i++){
-            if(registers[i]==r) {
+         Register[] cp0 = Hart.current().cp0;
+         for (int i=0; i< cp0.length; i++){
+            if(cp0[i]==r) {
                return i;
             }
          } 
@@ -173,9 +179,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register getRegister(String rname) {
-         for (int i=0; i< registers.length; i++){
-            if(("$"+registers[i].getNumber()).equals(rname) || registers[i].getName().equals(rname)) {
-               return registers[i];
+         Register[] cp0 = Hart.current().cp0;
+         for (int i=0; i< cp0.length; i++){
+            if(("$"+cp0[i].getNumber()).equals(rname) || cp0[i].getName().equals(rname)) {
+               return cp0[i];
             }
          } 
          return null;
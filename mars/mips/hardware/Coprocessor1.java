@@ -48,7 +48,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 // storing into registers, and reassembled upon retrieval.
 
     public  class Coprocessor1 {
-      private static Register [] registers = 
+      // Registers of hart 0.  Methods operate on the registers of Hart.current(),
+   	// which are these except in a multi-hart simulation.
+      static Register [] registers = 
           { new Register("$f0", 0, 0),  new Register("$f1", 1, 0),
          	new Register("$f2", 2, 0),  new Register("$f3", 3, 0),
          	new Register("$f4", 4, 0),  new Register("$f5", 5, 0),
@@ -67,7 +69,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	new Register("$f30", 30, 0),new Register("$f31", 31, 0)
            };
    	// The 8 condition flags will be stored in bits 0-7 for flags 0-7.
-      private static Register condition = new Register("cf",32, 0);	 
+      static Register condition = new Register("cf",32, 0);	 
       private static int numConditionFlags = 8;
    	
    	/**
@@ -102,8 +104,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static void setRegisterToFloat(int reg, float val){
-         if(reg >= 0 && reg < registers.length) {
-            registers[reg].setValue(Float.floatToRawIntBits(val));
+         Register[] cp1 = Hart.current().cp1;
+         if(reg >= 0 && reg < cp1.length) {
+            cp1[reg].setValue(Float.floatToRawIntBits(val));
          }
       }
    
@@ -127,8 +130,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static void setRegisterToInt(int reg, int val){
-         if(reg >= 0 && reg < registers.length) {
-            registers[reg].setValue(val);
+         Register[] cp1 = Hart.current().cp1;
+         if(reg >= 0 && reg < cp1.length) {
+            cp1[reg].setValue(val);
          }
       }
    
@@ -144,12 +148,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static void setRegisterPairToDouble(int reg, double val) 
                                     throws InvalidRegisterAccessException {
+         Register[] cp1 = Hart.current().cp1;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
          } 
          long bits = Double.doubleToRawLongBits(val); 
-         registers[reg+1].setValue(Binary.highOrderLongToInt(bits));  // high order 32 bits
-         registers[reg].setValue(Binary.lowOrderLongToInt(bits)); // low order 32 bits
+         cp1[reg+1].setValue(Binary.highOrderLongToInt(bits));  // high order 32 bits
+         cp1[reg].setValue(Binary.lowOrderLongToInt(bits)); // low order 32 bits
       }
    
    
@@ -179,11 +184,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static void setRegisterPairToLong(int reg, long val) 
                                     throws InvalidRegisterAccessException {
+         Register[] cp1 = Hart.current().cp1;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
          } 
-         registers[reg+1].setValue(Binary.highOrderLongToInt(val));  // high order 32 bits
-         registers[reg].setValue(Binary.lowOrderLongToInt(val)); // low order 32 bits
+         cp1[reg+1].setValue(Binary.highOrderLongToInt(val));  // high order 32 bits
+         cp1[reg].setValue(Binary.lowOrderLongToInt(val)); // low order 32 bits
       }
    
    
@@ -210,9 +216,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static float getFloatFromRegister(int reg){
+         Register[] cp1 = Hart.current().cp1;
          float result = 0F;
-         if(reg >= 0 && reg < registers.length) {
-            result = Float.intBitsToFloat(registers[reg].getValue());
+         if(reg >= 0 && reg < cp1.length) {
+            result = Float.intBitsToFloat(cp1[reg].getValue());
          }
          return result;
       }
@@ -236,9 +243,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getIntFromRegister(int reg){
+         Register[] cp1 = Hart.current().cp1;
          int result = 0;
-         if(reg >= 0 && reg < registers.length) {
-            result = registers[reg].getValue();
+         if(reg >= 0 && reg < cp1.length) {
+            result = cp1[reg].getValue();
          }
          return result;
       }
@@ -264,11 +272,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static double getDoubleFromRegisterPair(int reg) 
                                     throws InvalidRegisterAccessException {
+         Register[] cp1 = Hart.current().cp1;
          double result = 0.0;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
          } 
-         long bits = Binary.twoIntsToLong(registers[reg+1].getValue(),registers[reg].getValue());
+         long bits = Binary.twoIntsToLong(cp1[reg+1].getValue(),cp1[reg].getValue());
          return Double.longBitsToDouble(bits);
       }
    
@@ -296,11 +305,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static long getLongFromRegisterPair(int reg) 
                                     throws InvalidRegisterAccessException {
+         Register[] cp1 = Hart.current().cp1;
          double result = 0.0;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
          } 
-         return Binary.twoIntsToLong(registers[reg+1].getValue(),registers[reg].getValue());
+         return Binary.twoIntsToLong(cp1[reg+1].getValue(),cp1[reg].getValue());
       }
    
    
@@ -326,12 +336,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static int updateRegister(int num, int val){
+         Register[] cp1 = Hart.current().cp1;
          int old = 0;
-         for (int i=0; i< registers.length; i++){
-            if(registers[i].getNumber()== num) {
+         for (int i=0; i< cp1.length; i++){
+            if(cp1[i].getNumber()== num) {
                old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor1Restore(num,registers[i].setValue(val))
-                  		: registers[i].setValue(val);
+                        ? Globals.program.getBackStepper().addCoprocessor1Restore(num,cp1[i].setValue(val))
+                  		: cp1[i].setValue(val);
                break;
             }
          }
@@ -347,7 +358,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
-         return registers[num].getValue();
+         Register[] cp1 = Hart.current().cp1;
+         return cp1[num].getValue();
       }
       		
       	/**
@@ -373,7 +385,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register[] getRegisters(){
-         return registers;
+         return Hart.current().cp1;
       }
       
    	/**
@@ -383,11 +395,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register getRegister(String rName) {
+         Register[] cp1 = Hart.current().cp1;
          Register reg = null;
          if (rName.charAt(0) == '$' && rName.length() > 1 && rName.charAt(1) == 'f') {
             try {
                    // check for register number 0-31.
-               reg = registers[Binary.stringToInt(rName.substring(2))];    // KENV 1/6/05
+               reg = cp1[Binary.stringToInt(rName.substring(2))];    // KENV 1/6/05
             }
                 catch (Exception e) {
                    // handles both NumberFormat and ArrayIndexOutOfBounds
@@ -437,10 +450,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return previous flag setting (0 or 1)
    	 */
        public static int setConditionFlag(int flag) {
+         Register flags = Hart.current().condition;
          int old = 0;
          if (flag >= 0 && flag < numConditionFlags) {
             old = getConditionFlag(flag);
-            condition.setValue(Binary.setBit(condition.getValue(),flag));
+            flags.setValue(Binary.setBit(flags.getValue(),flag));
             if (Globals.getSettings().getBackSteppingEnabled())
                if (old==0) {
                   Globals.program.getBackStepper().addConditionFlagClear(flag);
@@ -459,10 +473,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return previous flag setting (0 or 1)
    	 */
        public static int clearConditionFlag(int flag) {
+         Register flags = Hart.current().condition;
          int old = 0;
          if (flag >= 0 && flag < numConditionFlags) {
             old = getConditionFlag(flag);
-            condition.setValue(Binary.clearBit(condition.getValue(),flag));
+            flags.setValue(Binary.clearBit(flags.getValue(),flag));
             if (Globals.getSettings().getBackSteppingEnabled())
                if (old==0) {
                   Globals.program.getBackStepper().addConditionFlagClear(flag);
@@ -482,9 +497,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return 0 if condition is false, 1 if condition is true
    	 */
        public static int getConditionFlag(int flag) {
+         Register flags = Hart.current().condition;
          if (flag < 0 || flag >= numConditionFlags) 
             flag = 0;
-         return Binary.bitValue(condition.getValue(), flag);
+         return Binary.bitValue(flags.getValue(), flag);
       }		
    	
    	
@@ -494,7 +510,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return array of int condition flags
    	 */
        public static int getConditionFlags() {
-         return condition.getValue();
+         Register flags = Hart.current().condition;
+         return flags.getValue();
       }	
    	
    	
@@ -503,7 +520,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *
    	 */
        public static void clearConditionFlags() {
-         condition.setValue(0);  // sets all 32 bits to 0.
+         Register flags = Hart.current().condition;
+         flags.setValue(0);  // sets all 32 bits to 0.
       }		
    	
       /**
@@ -511,7 +529,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *
    	 */
        public static void setConditionFlags() {
-         condition.setValue(-1);  // sets all 32 bits to 1.
+         Register flags = Hart.current().condition;
+         flags.setValue(-1);  // sets all 32 bits to 1.
       }	
    	
       /**
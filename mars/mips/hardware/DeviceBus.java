@@ -0,0 +1,143 @@
+   package mars.mips.hardware;
+   import java.util.*;
+   import mars.simulator.Simulator;
+
+/**
+ * Routes memory mapped I/O to devices.  A MemoryMappedDevice is attached to a
+ * window of the memory mapped I/O segment, and from then on Memory passes the
+ * program's loads and stores within that window to the device instead of its
+ * memory map table.  Routing is a single lookup in an array indexed by word,
+ * made only for addresses already known to be in the memory mapped I/O segment,
+ * so devices cost nothing for other accesses.  Unlike tools that observe Memory,
+ * devices need neither a GUI nor the Observer machinery.
+ * <p>
+ * Window addresses are kept relative to Memory.memoryMapBaseAddress, so windows
+ * move with the segment if the memory configuration changes.
+ * <p>
+ * The bus also drives the simulator's external interrupt line: a device calls
+ * raiseInterrupt(), and the interrupt is taken before the next instruction.
+ *
+ * @see MemoryMappedDevice
+ * @see IntervalTimer
+ */
+
+    public class DeviceBus {
+      // Memory mapped I/O segment is at most 64KB, see Memory.
+      private static final int SEGMENT_WORDS = 0x10000 / Memory.WORD_LENGTH_BYTES;
+
+      // Routing table, indexed by word offset into the segment; null until the first
+   	// attach.  Replaced, never modified, so that lookups need no lock.
+      private static volatile Window[] routes = null;
+      private static final ArrayList windows = new ArrayList();
+
+      // A device and the window it occupies, as byte offsets into the segment.
+       static final class Window {
+         final MemoryMappedDevice device;
+         final int start, end; // end is exclusive
+          Window(MemoryMappedDevice device, int start, int end) {
+            this.device = device;
+            this.start = start;
+            this.end = end;
+         }
+      }
+
+   	/**
+   	 * Attach a device to a window of the memory mapped I/O segment.
+   	 * @param address first address of the window, word aligned
+   	 * @param length length of the window in bytes, a positive multiple of 4
+   	 * @param device the device
+   	 * @throws IllegalArgumentException if the window is misaligned, not within the
+   	 * memory mapped I/O segment or overlaps that of an attached device
+   	 */
+       public static synchronized void attach(int address, int length, MemoryMappedDevice device) {
+         int start = address - Memory.memoryMapBaseAddress;
+         if (address % Memory.WORD_LENGTH_BYTES != 0 || length <= 0 || length % Memory.WORD_LENGTH_BYTES != 0) {
+            throw new IllegalArgumentException("device window must be a whole number of aligned words");
+         }
+         if (address < Memory.memoryMapBaseAddress || address >= Memory.memoryMapLimitAddress
+             || length > Memory.memoryMapLimitAddress - address) {
+            throw new IllegalArgumentException("device window is outside the memory mapped I/O segment");
+         }
+         for (int i = 0; i < windows.size(); i++) {
+            Window w = (Window) windows.get(i);
+            if (start < w.end && w.start < start + length) {
+               throw new IllegalArgumentException("device window overlaps that of another device");
+            }
+         }
+         windows.add(new Window(device, start, start + length));
+         buildRoutes();
+      }
+
+   	/**
+   	 * Detach a device from all windows it is attached to.
+   	 * @param device the device
+   	 */
+       public static synchronized void detach(MemoryMappedDevice device) {
+         for (Iterator it = windows.iterator(); it.hasNext();) {
+            if (((Window) it.next()).device == device) {
+               it.remove();
+            }
+         }
+         buildRoutes();
+      }
+
+   	/**
+   	 * Return the device attached at the given address.
+   	 * @param address a memory address
+   	 * @return the device whose window includes the address, or null if none
+   	 */
+       public static MemoryMappedDevice getDevice(int address) {
+         Window w = windowAt(address - Memory.memoryMapBaseAddress);
+         return (w == null) ? null : w.device;
+      }
+
+   	/**
+   	 * Signal an external interrupt to the simulator, which takes it before the next
+   	 * instruction it executes (on hart 0).  May be called from any thread.
+   	 * @param cause the interrupt code, e.g. Exceptions.EXTERNAL_INTERRUPT_TIMER
+   	 */
+       public static void raiseInterrupt(int cause) {
+         Simulator.externalInterruptingDevice = cause;
+      }
+
+   	/**
+   	 * Reset every attached device.  Called by Memory when it is cleared.
+   	 */
+       public static void resetDevices() {
+         ArrayList devices = new ArrayList();
+         synchronized (DeviceBus.class) {
+            for (int i = 0; i < windows.size(); i++) {
+               MemoryMappedDevice device = ((Window) windows.get(i)).device;
+               if (!devices.contains(device)) {
+                  devices.add(device);
+               }
+            }
+         }
+         for (int i = 0; i < devices.size(); i++) {
+            ((MemoryMappedDevice) devices.get(i)).reset();
+         }
+      }
+
+      // Return the window including the given byte offset into the memory mapped
+   	// I/O segment, or null.  Called by Memory for every access to the segment.
+       static Window windowAt(int offset) {
+         Window[] table = routes;
+         if (table == null || offset < 0 || offset >= SEGMENT_WORDS * Memory.WORD_LENGTH_BYTES) {
+            return null;
+         }
+         return table[offset >>> 2];
+      }
+
+       private static void buildRoutes() {
+         if (windows.isEmpty()) {
+            routes = null;
+            return;
+         }
+         Window[] table = new Window[SEGMENT_WORDS];
+         for (int i = 0; i < windows.size(); i++) {
+            Window w = (Window) windows.get(i);
+            Arrays.fill(table, w.start >>> 2, w.end >>> 2, w);
+         }
+         routes = table;
+      }
+   }
@@ -0,0 +1,336 @@
+   package mars.mips.hardware;
+   import java.util.concurrent.atomic.*;
+   import mars.Globals;
+   import mars.simulator.Exceptions;
+
+/**
+ * One hardware thread ("hart") of a simulated multiprocessor.  Each hart has its
+ * own general purpose registers, program counter, hi and lo, Coprocessor 0 and
+ * Coprocessor 1 registers and delayed branch state; all harts share Memory.
+ * <p>
+ * RegisterFile, Coprocessor0, Coprocessor1 and DelayedBranch keep their static
+ * interfaces and operate on the hart returned by current().  Hart 0 owns the
+ * Register objects declared in those classes, so the GUI and any code running
+ * outside a multi-hart simulation always see hart 0.  During a multi-hart run
+ * the simulator either selects each hart in turn on its own thread (round-robin)
+ * or binds each hart to a host thread of its own (parallel).
+ * <p>
+ * While more than one hart exists, every store to memory is made under a lock
+ * chosen by the word address and breaks the load-linked reservation of any hart
+ * on that word, so that ll/sc pairs are atomic with respect to the other harts.
+ * With a single hart, sc always succeeds, as it always has in MARS.
+ */
+
+    public class Hart {
+   	/** Scheduling of a multi-hart run: harts take turns on one host thread, one instruction each. */
+      public static final int ROUND_ROBIN = 0;
+   	/** Scheduling of a multi-hart run: each hart runs on a host thread of its own. */
+      public static final int PARALLEL = 1;
+   	/** Bytes of stack reserved for each hart; hart n starts with $sp this far below hart n-1's. */
+      public static final int STACK_SIZE = 0x10000;
+
+      private static final int NO_RESERVATION = 1; // never a word address
+      private static final int LOCK_STRIPES = 256;  // power of 2
+      private static final Object[] locks = new Object[LOCK_STRIPES];
+
+      private static final Hart primary = new Hart(0, RegisterFile.regFile, RegisterFile.programCounter,
+                                                   RegisterFile.hi, RegisterFile.lo, Coprocessor0.registers,
+                                                   Coprocessor1.registers, Coprocessor1.condition);
+      private static Hart[] harts = { primary };
+      private static AtomicIntegerArray reservations = new AtomicIntegerArray(new int[] { NO_RESERVATION });
+      // Neither needs to be volatile: both change only between runs, before the hart
+   	// threads are started, and threads outside the run fall back to hart 0 anyway.
+      private static boolean shared = false;
+      private static boolean parallel = false;
+      private static Hart selected = primary;
+      private static final ThreadLocal bound =
+          new ThreadLocal() {
+             protected Object initialValue() {
+               return primary;
+            }
+         };
+
+      static {
+         for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+         }
+      }
+
+      final int id;
+      final Register[] registers;
+      final Register programCounter, hi, lo;
+      final Register[] cp0;
+      final Register[] cp1;
+      final Register condition;
+      private int delayedBranchState = 0;
+      private int delayedBranchTarget = 0;
+      private boolean started = false;
+      private boolean finished = false;
+
+       private Hart(int id, Register[] registers, Register programCounter, Register hi, Register lo,
+                    Register[] cp0, Register[] cp1, Register condition) {
+         this.id = id;
+         this.registers = registers;
+         this.programCounter = programCounter;
+         this.hi = hi;
+         this.lo = lo;
+         this.cp0 = cp0;
+         this.cp1 = cp1;
+         this.condition = condition;
+      }
+
+      // A new hart with registers named and initialized like hart 0's.  Its stack
+   	// pointer starts STACK_SIZE bytes below that of the previous hart.
+       private Hart(int id) {
+         this(id, copy(primary.registers), copy(primary.programCounter), copy(primary.hi),
+              copy(primary.lo), copy(primary.cp0), copy(primary.cp1), copy(primary.condition));
+         Register sp = registers[RegisterFile.STACK_POINTER_REGISTER];
+         sp.changeResetValue(sp.getResetValue() - id * STACK_SIZE);
+         sp.resetValue();
+      }
+
+       private static Register copy(Register r) {
+         return new Register(r.getName(), r.getNumber(), r.getResetValue());
+      }
+
+       private static Register[] copy(Register[] r) {
+         Register[] result = new Register[r.length];
+         for (int i = 0; i < r.length; i++) {
+            result[i] = copy(r[i]);
+         }
+         return result;
+      }
+
+   	/**
+   	 * Returns the hart whose registers are used by the calling thread: the hart
+   	 * bound to it in a parallel run, the selected hart in a round-robin run and
+   	 * hart 0 otherwise.
+   	 * @return the current hart
+   	 */
+       public static Hart current() {
+         return parallel ? (Hart) bound.get() : selected;
+      }
+
+   	/**
+   	 * @return hart 0, whose registers are the ones displayed by the GUI
+   	 */
+       public static Hart getPrimary() {
+         return primary;
+      }
+
+   	/**
+   	 * Set the number of harts.  Harts that already exist keep their state, new ones
+   	 * are created in their reset state.  Call only while no simulation is running.
+   	 * @param count number of harts, at least 1
+   	 * @return all harts, hart 0 first
+   	 */
+       public static Hart[] configure(int count) {
+         count = Math.max(1, count);
+         if (count != harts.length) {
+            Hart[] newHarts = new Hart[count];
+            for (int i = 0; i < count; i++) {
+               newHarts[i] = (i < harts.length) ? harts[i] : new Hart(i);
+            }
+            harts = newHarts;
+            int[] none = new int[count];
+            java.util.Arrays.fill(none, NO_RESERVATION);
+            reservations = new AtomicIntegerArray(none);
+         }
+         shared = count > 1;
+         return harts;
+      }
+
+   	/**
+   	 * @return all harts, hart 0 first
+   	 */
+       public static Hart[] getHarts() {
+         return harts;
+      }
+
+   	/**
+   	 * @return true if more than one hart shares memory
+   	 */
+       public static boolean isShared() {
+         return shared;
+      }
+
+   	/**
+   	 * Begin or end a run in which harts execute on separate host threads.  While
+   	 * it lasts, each such thread must bind() its hart before executing.
+   	 * @param state true at the start of the run, false at its end
+   	 */
+       public static void setParallel(boolean state) {
+         parallel = state;
+         bound.remove();
+      }
+
+   	/**
+   	 * Make the given hart current for all threads of a round-robin run.
+   	 * @param hart the hart about to execute
+   	 */
+       public static void select(Hart hart) {
+         selected = hart;
+      }
+
+   	/**
+   	 * Make the given hart current for the calling thread of a parallel run.
+   	 * @param hart the hart the calling thread executes
+   	 */
+       public static void bind(Hart hart) {
+         bound.set(hart);
+      }
+
+   	/**
+   	 * @return the number of this hart, 0 for the first
+   	 */
+       public int getId() {
+         return id;
+      }
+
+   	/**
+   	 * @return this hart's general purpose registers
+   	 */
+       public Register[] getRegisters() {
+         return registers;
+      }
+
+   	/**
+   	 * @return true once the hart has started executing since its last reset
+   	 */
+       public boolean isStarted() {
+         return started;
+      }
+
+   	/**
+   	 * @param started true when the hart starts executing
+   	 */
+       public void setStarted(boolean started) {
+         this.started = started;
+      }
+
+   	/**
+   	 * @return true if the hart has run off the end of the program since its last reset
+   	 */
+       public boolean isFinished() {
+         return finished;
+      }
+
+   	/**
+   	 * @param finished true when the hart runs off the end of the program
+   	 */
+       public void setFinished(boolean finished) {
+         this.finished = finished;
+      }
+
+   	/**
+   	 * @return state of this hart's delayed branch, as encoded by DelayedBranch
+   	 */
+       public int getDelayedBranchState() {
+         return delayedBranchState;
+      }
+
+   	/**
+   	 * @return target address of this hart's delayed branch
+   	 */
+       public int getDelayedBranchTarget() {
+         return delayedBranchTarget;
+      }
+
+   	/**
+   	 * Record the delayed branch state of this hart.  For use by DelayedBranch.
+   	 * @param state state as encoded by DelayedBranch
+   	 * @param target the branch target address
+   	 */
+       public void setDelayedBranch(int state, int target) {
+         delayedBranchState = state;
+         delayedBranchTarget = target;
+      }
+
+      // Reset the registers and state of all harts but hart 0, whose registers are
+   	// reset by their own classes.  Called by RegisterFile.resetRegisters().
+       static void resetOthers() {
+         for (int i = 1; i < harts.length; i++) {
+            Hart hart = harts[i];
+            resetAll(hart.registers);
+            resetAll(hart.cp0);
+            resetAll(hart.cp1);
+            hart.hi.resetValue();
+            hart.lo.resetValue();
+            hart.condition.resetValue();
+            hart.programCounter.resetValue();
+         }
+         for (int i = 0; i < harts.length; i++) {
+            harts[i].setDelayedBranch(0, 0);
+            harts[i].started = false;
+            harts[i].finished = false;
+            reservations.set(i, NO_RESERVATION);
+         }
+      }
+
+       private static void resetAll(Register[] r) {
+         for (int i = 0; i < r.length; i++) {
+            r[i].resetValue();
+         }
+      }
+
+   	/**
+   	 * Load linked: read the word at the given address and reserve it for the
+   	 * current hart.  The reservation is broken by any later store to that word.
+   	 * @param address word address to load from
+   	 * @return the word at that address
+   	 * @throws AddressErrorException if the address is not a valid word address
+   	 */
+       public static int loadLinked(int address) throws AddressErrorException {
+         if (!shared) {
+            return Globals.memory.getWord(address);
+         }
+         synchronized (lockFor(address)) {
+            int value = Globals.memory.getWord(address);
+            reservations.set(current().id, address);
+            return value;
+         }
+      }
+
+   	/**
+   	 * Store conditional: store the word at the given address if and only if the
+   	 * current hart still holds the reservation made by its last load linked on it.
+   	 * @param address word address to store to
+   	 * @param value the word to store
+   	 * @return true if the store was made
+   	 * @throws AddressErrorException if the address is not a valid word address
+   	 */
+       public static boolean storeConditional(int address, int value) throws AddressErrorException {
+         if (!shared) {
+            Globals.memory.setWord(address, value);
+            return true;
+         }
+         if (address % Memory.WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("store address not aligned on word boundary ",
+               Exceptions.ADDRESS_EXCEPTION_STORE, address);
+         }
+         synchronized (lockFor(address)) {
+            if (reservations.get(current().id) != address) {
+               return false;
+            }
+            Globals.memory.setWord(address, value); // also breaks the reservation
+            return true;
+         }
+      }
+
+      // Lock that Memory holds while storing to the word containing the address.
+       static Object lockFor(int address) {
+         return locks[(address >>> 2) & (LOCK_STRIPES - 1)];
+      }
+
+      // Break every reservation of the word containing the address.  Memory
+   	// calls this holding lockFor(address).
+       static void breakReservations(int address) {
+         int word = address & ~(Memory.WORD_LENGTH_BYTES - 1);
+         AtomicIntegerArray held = reservations;
+         for (int i = 0; i < held.length(); i++) {
+            if (held.get(i) == word) {
+               held.compareAndSet(i, word, NO_RESERVATION);
+            }
+         }
+      }
+   }
@@ -0,0 +1,407 @@
+   package mars.mips.hardware;
+   import java.io.PrintWriter;
+   import java.util.*;
+
+/**
+ * Memory allocator for the Malloc, Free and Realloc syscalls.  Blocks are carved
+ * from the MIPS heap through Memory.allocateBytesFromHeap(), the same heap that
+ * Sbrk extends, so the two can be mixed; freed blocks are recycled instead of
+ * being lost as with Sbrk alone.
+ * <p>
+ * Requests of up to 2048 bytes are rounded up to one of a few size classes (8,
+ * 16, 24, 32, 48, 64 and so on, each 1.5 or 2 times the one before) and served
+ * from a free list per class, which is refilled by carving a span of the heap
+ * into blocks of the class.  Larger requests are rounded up to whole 4K pages and
+ * served best fit from free blocks of such size, splitting off what is left over;
+ * free blocks are not coalesced.  All blocks are 8-byte aligned.  The allocator's
+ * bookkeeping is kept here rather than in MIPS memory, so a program that writes
+ * outside its blocks cannot corrupt it, and freeing an address that is not an
+ * allocated block is detected.
+ * <p>
+ * Statistics (live and peak bytes, counts, heap used and fragmentation) are
+ * available to tools and displayed by the command line option <tt>heap</tt>.
+ * The allocator is replaced, and its statistics cleared, whenever memory is.
+ *
+ * @see Memory#getHeapAllocator()
+ */
+
+    public class HeapAllocator {
+      private static final int ALIGNMENT = 8;
+      private static final int LARGE_BLOCK_UNIT = 4096;
+      private static final int SPAN_MINIMUM_BYTES = 4096;
+      private static final int SPAN_MINIMUM_BLOCKS = 16;
+      private static final int INITIAL_CAPACITY = 64; // allocated blocks, a power of 2
+      private static final int[] CLASS_SIZES = {
+         8, 16, 24, 32, 48, 64, 96, 128, 192, 256, 384, 512, 768, 1024, 1536, 2048 };
+      private static final int LARGEST_CLASS_SIZE = CLASS_SIZES[CLASS_SIZES.length - 1];
+      // Size class of each request size, indexed by size rounded up to ALIGNMENT / ALIGNMENT.
+      private static final byte[] CLASS_OF = new byte[LARGEST_CLASS_SIZE / ALIGNMENT + 1];
+
+      static {
+         int sizeClass = 0;
+         for (int units = 0; units < CLASS_OF.length; units++) {
+            if (units * ALIGNMENT > CLASS_SIZES[sizeClass]) {
+               sizeClass++;
+            }
+            CLASS_OF[units] = (byte) sizeClass;
+         }
+      }
+
+      private final Memory memory;
+      // Free small blocks: a stack of addresses per size class.
+      private final int[][] freeBlocks = new int[CLASS_SIZES.length][];
+      private final int[] freeCounts = new int[CLASS_SIZES.length];
+      // Free large blocks: block size (Integer) -> ArrayList of addresses (Integer).
+      private final TreeMap freeLargeBlocks = new TreeMap();
+      // Allocated blocks: address -> size requested, by open addressing on the address,
+      // which is never 0, so that a Malloc or Free costs no allocation.
+      private int[] allocatedAddresses = new int[INITIAL_CAPACITY];
+      private int[] allocatedSizes = new int[INITIAL_CAPACITY];
+      private int allocatedCount;
+
+      private long liveBytes;       // sum of the sizes requested for allocated blocks
+      private long liveBlockBytes;  // sum of the sizes of allocated blocks
+      private long peakLiveBytes;
+      private long heapBytes;       // bytes of heap taken by the allocator, including alignment padding
+      private long freeBytes;       // bytes of heap in free blocks
+      private int allocations, frees, reallocations, failures;
+
+   	/**
+   	 * Create an allocator that takes its memory from the heap of the given memory.
+   	 * @param memory the MIPS memory
+   	 */
+       public HeapAllocator(Memory memory) {
+         this.memory = memory;
+      }
+
+   	/**
+   	 * Allocate a block of at least the given size, as C's malloc().  Its contents
+   	 * are not cleared; a recycled block holds what was last stored in it.
+   	 * @param size number of bytes requested.  A request of 0 bytes gets a block
+   	 * of its own like any other.
+   	 * @return address of the block, 8-byte aligned, or 0 if the heap cannot supply it
+   	 * @throws IllegalArgumentException if size is negative
+   	 */
+       public synchronized int malloc(int size) {
+         if (size < 0) {
+            throw new IllegalArgumentException("request ("+size+") is negative heap amount");
+         }
+         int address = allocateBlock(size);
+         if (address == 0) {
+            failures++;
+            return 0;
+         }
+         allocations++;
+         putAllocated(address, size);
+         liveBytes += size;
+         liveBlockBytes += blockSize(size);
+         if (liveBytes > peakLiveBytes) {
+            peakLiveBytes = liveBytes;
+         }
+         return address;
+      }
+
+   	/**
+   	 * Free a block, as C's free().  Freeing address 0 does nothing.
+   	 * @param address address of a block returned by malloc() or realloc() and not freed since
+   	 * @throws IllegalArgumentException if the address is not that of an allocated block
+   	 */
+       public synchronized void free(int address) {
+         if (address == 0) {
+            return;
+         }
+         int slot = findAllocated(address);
+         if (allocatedAddresses[slot] == 0) {
+            throw new IllegalArgumentException("address "+mars.util.Binary.intToHexString(address)
+               +" is not that of an allocated block");
+         }
+         int size = allocatedSizes[slot];
+         removeAllocated(slot);
+         frees++;
+         liveBytes -= size;
+         liveBlockBytes -= blockSize(size);
+         releaseBlock(address, blockSize(size));
+      }
+
+   	/**
+   	 * Change the size of a block, as C's realloc().  The block stays where it is
+   	 * if the new size rounds up to the same block size; otherwise a new block is
+   	 * allocated, the contents up to the smaller of the two sizes are copied to it,
+   	 * and the old block is freed.  Reallocating address 0 is the same as malloc(),
+   	 * and reallocating to size 0 the same as free().
+   	 * @param address address of an allocated block, or 0
+   	 * @param size new size in bytes
+   	 * @return address of the block, or 0 if freed or if the heap cannot supply a
+   	 * new block, in which case the old one is left allocated
+   	 * @throws IllegalArgumentException if size is negative or the address is not
+   	 * 0 or that of an allocated block
+   	 * @throws AddressErrorException if copying the contents fails
+   	 */
+       public synchronized int realloc(int address, int size) throws AddressErrorException {
+         if (address == 0) {
+            return malloc(size);
+         }
+         int slot = findAllocated(address);
+         if (allocatedAddresses[slot] == 0) {
+            throw new IllegalArgumentException("address "+mars.util.Binary.intToHexString(address)
+               +" is not that of an allocated block");
+         }
+         if (size < 0) {
+            throw new IllegalArgumentException("request ("+size+") is negative heap amount");
+         }
+         if (size == 0) {
+            free(address);
+            return 0;
+         }
+         reallocations++;
+         int oldSize = allocatedSizes[slot];
+         if (blockSize(size) == blockSize(oldSize)) {
+            allocatedSizes[slot] = size;
+            liveBytes += size - oldSize;
+            if (liveBytes > peakLiveBytes) {
+               peakLiveBytes = liveBytes;
+            }
+            return address;
+         }
+         int newAddress = malloc(size);
+         if (newAddress != 0) {
+            byte[] contents = new byte[Math.min(size, oldSize)];
+            memory.getBytes(address, contents, 0, contents.length);
+            memory.setBytes(newAddress, contents, 0, contents.length);
+            free(address);
+         }
+         return newAddress;
+      }
+
+   	/**
+   	 * @return number of bytes requested for the blocks now allocated
+   	 */
+       public synchronized long getLiveBytes() {
+         return liveBytes;
+      }
+
+   	/**
+   	 * @return largest number of bytes requested for blocks allocated at one time
+   	 */
+       public synchronized long getPeakLiveBytes() {
+         return peakLiveBytes;
+      }
+
+   	/**
+   	 * @return number of blocks now allocated
+   	 */
+       public synchronized int getLiveBlockCount() {
+         return allocatedCount;
+      }
+
+   	/**
+   	 * @return number of successful allocations, by malloc() or by realloc() moving a block
+   	 */
+       public synchronized int getAllocationCount() {
+         return allocations;
+      }
+
+   	/**
+   	 * @return number of blocks freed, by free() or by realloc()
+   	 */
+       public synchronized int getFreeCount() {
+         return frees;
+      }
+
+   	/**
+   	 * @return number of allocations that failed because the heap was exhausted
+   	 */
+       public synchronized int getFailureCount() {
+         return failures;
+      }
+
+   	/**
+   	 * @return number of bytes of the heap taken by the allocator
+   	 */
+       public synchronized long getHeapBytes() {
+         return heapBytes;
+      }
+
+   	/**
+   	 * Fragmentation, as the fraction of the heap taken by the allocator that does
+   	 * not hold requested bytes: rounding of blocks up to their size, free
+   	 * blocks, alignment padding and the ends of spans too short for a block.
+   	 * @return fragmentation, from 0 to 1; 0 if the allocator has taken no heap
+   	 */
+       public synchronized double getFragmentation() {
+         return (heapBytes == 0) ? 0 : 1.0 - (double) liveBytes / heapBytes;
+      }
+
+   	/**
+   	 * Write the statistics.
+   	 * @param out where to write them
+   	 */
+       public synchronized void writeReport(PrintWriter out) {
+         out.println("heap allocator: " + allocations + " allocations, " + frees + " frees, " +
+                     reallocations + " reallocations, " + failures + " failed");
+         out.println("live " + liveBytes + " bytes in " + allocatedCount + " blocks, peak " +
+                     peakLiveBytes + " bytes");
+         out.println("heap " + heapBytes + " bytes: " + liveBlockBytes + " in blocks, " + freeBytes +
+                     " free, " + (heapBytes - liveBlockBytes - freeBytes) + " alignment and span remainders");
+         out.println(String.format("fragmentation %.2f%% (internal %.2f%%)", 100.0 * getFragmentation(),
+                     (liveBlockBytes == 0) ? 0.0 : 100.0 * (liveBlockBytes - liveBytes) / liveBlockBytes));
+         out.flush();
+      }
+
+      // Size of the block that serves a request of the given size.
+       private static int blockSize(int size) {
+         if (size <= LARGEST_CLASS_SIZE) {
+            return CLASS_SIZES[CLASS_OF[(size + ALIGNMENT - 1) / ALIGNMENT]];
+         }
+         return (int) (((long) size + LARGE_BLOCK_UNIT - 1) / LARGE_BLOCK_UNIT * LARGE_BLOCK_UNIT);
+      }
+
+      // Take a free block for a request of the given size, carving more of the
+   	// heap if need be.  Returns 0 if the heap is exhausted.
+       private int allocateBlock(int size) {
+         if (size > Integer.MAX_VALUE - LARGE_BLOCK_UNIT) {
+            return 0;
+         }
+         int blockSize = blockSize(size);
+         if (size <= LARGEST_CLASS_SIZE) {
+            int sizeClass = CLASS_OF[(size + ALIGNMENT - 1) / ALIGNMENT];
+            if (freeCounts[sizeClass] == 0 && !carveSpan(sizeClass)) {
+               return 0;
+            }
+            freeBytes -= blockSize;
+            return freeBlocks[sizeClass][--freeCounts[sizeClass]];
+         }
+         SortedMap fits = freeLargeBlocks.tailMap(Integer.valueOf(blockSize));
+         if (fits.isEmpty()) {
+            return takeHeap(blockSize);
+         }
+         Integer fitSize = (Integer) fits.firstKey();
+         ArrayList blocks = (ArrayList) fits.get(fitSize);
+         int address = ((Integer) blocks.remove(blocks.size() - 1)).intValue();
+         if (blocks.isEmpty()) {
+            freeLargeBlocks.remove(fitSize);
+         }
+         freeBytes -= blockSize;
+         if (fitSize.intValue() > blockSize) {
+            freeBytes -= fitSize.intValue() - blockSize;
+            releaseBlock(address + blockSize, fitSize.intValue() - blockSize);
+         }
+         return address;
+      }
+
+      // Put a free block on the free list for its size.
+       private void releaseBlock(int address, int blockSize) {
+         freeBytes += blockSize;
+         if (blockSize <= LARGEST_CLASS_SIZE) {
+            int sizeClass = CLASS_OF[blockSize / ALIGNMENT];
+            if (freeBlocks[sizeClass] == null) {
+               freeBlocks[sizeClass] = new int[16];
+            }
+            else if (freeCounts[sizeClass] == freeBlocks[sizeClass].length) {
+               int[] grown = new int[2 * freeCounts[sizeClass]];
+               System.arraycopy(freeBlocks[sizeClass], 0, grown, 0, freeCounts[sizeClass]);
+               freeBlocks[sizeClass] = grown;
+            }
+            freeBlocks[sizeClass][freeCounts[sizeClass]++] = address;
+            return;
+         }
+         Integer key = Integer.valueOf(blockSize);
+         ArrayList blocks = (ArrayList) freeLargeBlocks.get(key);
+         if (blocks == null) {
+            blocks = new ArrayList();
+            freeLargeBlocks.put(key, blocks);
+         }
+         blocks.add(Integer.valueOf(address));
+      }
+
+      // Slot of the allocated block at the given address, or the empty slot where it would go.
+       private int findAllocated(int address) {
+         int mask = allocatedAddresses.length - 1;
+         int slot = homeSlot(address, mask);
+         while (allocatedAddresses[slot] != 0 && allocatedAddresses[slot] != address) {
+            slot = (slot + 1) & mask;
+         }
+         return slot;
+      }
+
+       private static int homeSlot(int address, int mask) {
+         int hash = address * 0x9E3779B9;
+         return (hash ^ (hash >>> 16)) & mask;
+      }
+
+      // Add a block not in the table, growing it to stay at most half full.
+       private void putAllocated(int address, int size) {
+         if (2 * (allocatedCount + 1) > allocatedAddresses.length) {
+            int[] oldAddresses = allocatedAddresses;
+            int[] oldSizes = allocatedSizes;
+            allocatedAddresses = new int[2 * oldAddresses.length];
+            allocatedSizes = new int[2 * oldAddresses.length];
+            for (int i = 0; i < oldAddresses.length; i++) {
+               if (oldAddresses[i] != 0) {
+                  int slot = findAllocated(oldAddresses[i]);
+                  allocatedAddresses[slot] = oldAddresses[i];
+                  allocatedSizes[slot] = oldSizes[i];
+               }
+            }
+         }
+         int slot = findAllocated(address);
+         allocatedAddresses[slot] = address;
+         allocatedSizes[slot] = size;
+         allocatedCount++;
+      }
+
+      // Empty a slot of the table, moving back any later block of its probe sequence
+   	// that could no longer be found past the hole.
+       private void removeAllocated(int slot) {
+         int mask = allocatedAddresses.length - 1;
+         int hole = slot;
+         for (int next = (slot + 1) & mask; allocatedAddresses[next] != 0; next = (next + 1) & mask) {
+            int home = homeSlot(allocatedAddresses[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+               allocatedAddresses[hole] = allocatedAddresses[next];
+               allocatedSizes[hole] = allocatedSizes[next];
+               hole = next;
+            }
+         }
+         allocatedAddresses[hole] = 0;
+         allocatedCount--;
+      }
+
+      // Carve a span of the heap into free blocks of a size class.  Returns false
+   	// if the heap is exhausted.
+       private boolean carveSpan(int sizeClass) {
+         int blockSize = CLASS_SIZES[sizeClass];
+         int spanBytes = Math.max(SPAN_MINIMUM_BYTES, SPAN_MINIMUM_BLOCKS * blockSize);
+         int address = takeHeap(spanBytes);
+         if (address == 0) {
+            return false;
+         }
+         // push in reverse, so blocks are handed out in increasing address order
+         int blocks = spanBytes / blockSize;
+         for (int i = blocks - 1; i >= 0; i--) {
+            releaseBlock(address + i * blockSize, blockSize);
+         }
+         return true;
+      }
+
+      // Extend the heap by the given number of bytes, 8-byte aligned.  Returns the
+   	// address of the first, or 0 if the heap is exhausted.  Holds the memory's lock
+   	// so that no Sbrk from another hart comes between aligning and allocating.
+       private int takeHeap(int bytes) {
+         synchronized (memory) {
+            try {
+               int padding = -Memory.heapAddress & (ALIGNMENT - 1);
+               if (padding != 0) {
+                  memory.allocateBytesFromHeap(padding);
+                  heapBytes += padding;
+               }
+               int address = memory.allocateBytesFromHeap(bytes);
+               heapBytes += bytes;
+               return address;
+            }
+                catch (IllegalArgumentException e) {
+                  return 0;
+               }
+         }
+      }
+   }
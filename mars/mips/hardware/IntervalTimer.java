@@ -0,0 +1,142 @@
+   package mars.mips.hardware;
+   import java.util.Timer;
+   import java.util.TimerTask;
+   import mars.Globals;
+   import mars.simulator.Exceptions;
+   import mars.simulator.Simulator;
+   import mars.simulator.VirtualClock;
+
+/**
+ * Memory mapped interval timer for the DeviceBus.  Once started, it ticks every
+ * period milliseconds of wall-clock time and, if enabled, raises the external
+ * interrupt Exceptions.EXTERNAL_INTERRUPT_TIMER at each tick.  Its window is
+ * three words:
+ * <ul>
+ * <li>offset 0, control: bit 1 enables the interrupt (read/write); bit 0 is set at
+ * each tick and cleared when the tick count is read (read only).
+ * <li>offset 4, period: writing n &gt; 0 (re)starts the timer with a period of n
+ * milliseconds, writing 0 stops it.
+ * <li>offset 8, ticks: number of ticks since the timer was last started; writing
+ * sets it.
+ * </ul>
+ * Byte and halfword loads and stores see or change the addressed bytes of a
+ * register, in memory's byte order.  The ticks come from a daemon thread of the timer's own, so the timer works
+ * with or without a GUI.  If the simulator has a VirtualClock, the ticks come
+ * from its alarms instead, in simulated time.
+ */
+
+    public class IntervalTimer implements MemoryMappedDevice {
+   	/** Length of the timer's window in bytes. */
+      public static final int WINDOW_LENGTH = 12;
+      private static final int CONTROL = 0, PERIOD = 4, TICKS = 8;
+      private static final int READY = 1, INTERRUPT_ENABLE = 2;
+
+      private Timer timer;
+      private VirtualClock clock;          // clock of the alarm, if the ticks are in simulated time
+      private VirtualClock.Alarm alarm;
+      private int control = 0;
+      private int period = 0;
+      private int ticks = 0;
+
+   	/**
+   	 * @return the address the command line option <tt>timer</tt> attaches the timer at:
+   	 * 0x20 bytes into the memory mapped I/O segment, after the keyboard and display
+   	 * and Digital Lab Sim registers
+   	 */
+       public static int getDefaultAddress() {
+         return Memory.memoryMapBaseAddress + 0x20;
+      }
+
+       public synchronized int read(int offset, int length) {
+         int word;
+         switch (offset & ~3) {
+            case CONTROL:
+               word = control;
+               break;
+            case PERIOD:
+               word = period;
+               break;
+            case TICKS:
+               control &= ~READY;
+               word = ticks;
+               break;
+            default:
+               return 0;
+         }
+         return (word >>> shift(offset, length)) & mask(length);
+      }
+
+       public synchronized void write(int offset, int value, int length) {
+         int shift = shift(offset, length);
+         int mask = mask(length) << shift;
+         value = (value << shift) & mask;
+         switch (offset & ~3) {
+            case CONTROL:
+               control = (control & READY) | (((control & ~mask) | value) & INTERRUPT_ENABLE);
+               break;
+            case PERIOD:
+               start((period & ~mask) | value);
+               break;
+            case TICKS:
+               ticks = (ticks & ~mask) | value;
+               break;
+         }
+      }
+
+       public synchronized void reset() {
+         start(0);
+         control = 0;
+         ticks = 0;
+      }
+
+      // Stop the timer, and restart it with the given period if positive.
+       private void start(int period) {
+         if (timer != null) {
+            timer.cancel();
+            timer = null;
+         }
+         if (alarm != null) {
+            clock.cancel(alarm);
+            alarm = null;
+         }
+         this.period = Math.max(0, period);
+         clock = Simulator.getInstance().getClock();
+         if (this.period > 0 && clock != null) {
+            ticks = 0;
+            alarm = clock.schedule(
+                   new Runnable() {
+                      public void run() {
+                         tick();
+                      }
+                   }, this.period, this.period);
+         }
+         else if (this.period > 0) {
+            ticks = 0;
+            timer = new Timer("MARS interval timer", true);
+            timer.scheduleAtFixedRate(
+                   new TimerTask() {
+                      public void run() {
+                         tick();
+                      }
+                   }, this.period, this.period);
+         }
+      }
+
+      // Position in its register word of the low order bit of the length bytes at offset.
+       private static int shift(int offset, int length) {
+         return (Globals.memory.getByteOrder() == Memory.LITTLE_ENDIAN)
+                ? (offset & 3) << 3 : (4 - length - (offset & 3)) << 3;
+      }
+
+       private static int mask(int length) {
+         return (length >= 4) ? -1 : (1 << (length << 3)) - 1;
+      }
+
+       private synchronized void tick() {
+         ticks++;
+         control |= READY;
+         if ((control & INTERRUPT_ENABLE) != 0) {
+            DeviceBus.raiseInterrupt(Exceptions.EXTERNAL_INTERRUPT_TIMER);
+         }
+      }
+   }
@@ -4,6 +4,8 @@
    import mars.simulator.*;
    import mars.mips.instructions.*;
    import java.util.*;
+   import java.nio.*;
+   import java.util.concurrent.atomic.AtomicInteger;
 	
 	/*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -90,6 +92,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static boolean byteOrder = LITTLE_ENDIAN;
    	
       public static int heapAddress;
+      private HeapAllocator heapAllocator; // for the Malloc, Free and Realloc syscalls
+      private MappedFile[] mappedFiles; // files mapped by mapFile(), null if none (the usual case)
+      private int mappingFloor; // lowest address mapped, or where the next mapping will end
+   	
+    // Incremented by every store and every memory mapped I/O read, so clients such as
+    // the simulator's LoopDetector can tell cheaply whether anything happened in memory
+    // that could influence the running program.  Not synchronized; only change matters.
+      private int modificationCount = 0;
+   
+    // Every store stamps the 4K page it writes with the current generation, so that
+    // clients can find which pages changed since they last looked: see markGeneration().
+    // Stamps are kept in a two-level table indexed by the top 10 and next 10 address
+    // bits; a table of stamps for a 4MB region is allocated on first write to it.
+    // A stamp is written, not compared, so harts may race on it harmlessly.  The
+    // generation itself is atomic, so that clients marking it at once on different
+    // threads are each given a generation of their own.
+   	/** Length in bytes of the pages whose modification Memory keeps track of. */
+      public static final int PAGE_LENGTH_BYTES = 4096;
+      private static final int PAGE_SHIFT = 12;
+      private static final int PAGES_PER_REGION = 1024;
+      private int[][] pageGenerations;
+      private final AtomicInteger generation = new AtomicInteger(1);
+      private int clearedGeneration; // generation that started when memory was last cleared
    
     // Memory will maintain a collection of observables.  Each one is associated
     // with a specific memory address or address range, and each will have at least
@@ -105,64 +130,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
       Collection observables = getNewMemoryObserversCollection();
    
-    // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
-    // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
-    // is thus 1024 entries * 4096 bytes = 4 MB.  Should be enough to cover most
-    // programs!!  Beyond that it would go to an "indirect" block (similar to Unix i-nodes),
-    // which is not implemented.
+    // Data is allocated in blocks of 1024 ints (4096 bytes).  Each block is referenced
+    // by a "block table" entry, and each block table has 1024 entries, covering a 4 MB
+    // region of the address space.  Block tables are in turn referenced by entries of
+    // the region table, which has 1024 entries and so covers the full 32-bit address
+    // space.  The data segment, heap, stack, kernel data segment and memory mapped I/O
+    // all share this structure, indexed by address: the top 10 bits select the block
+    // table, the next 10 bits the block and the next 10 bits the word.
+    //
+    // Although this scheme is an array of arrays of arrays, it is space-efficient since
+    // only the region table is created initially.  A block table is not allocated until
+    // a value is written to its region, and a 4096-byte block not until a value is written
+    // to an address within it.  Thus most small programs use only a few blocks in two or
+    // three regions (static data and heap, stack), and any address in the segments of
+    // the memory configuration can be backed on demand.  Access time is constant.
+    // The total size of the blocks allocated is limited; see setMemoryLimit().
     //
-    // Although this scheme is an array of arrays, it is relatively space-efficient since
-    // only the table is created initially. A 4096-byte block is not allocated until a value 
-    // is written to an address within it.  Thus most small programs will use only 8K bytes 
-    // of space (the table plus one block).  The index into both arrays is easily computed 
-    // from the address; access time is constant.
+    // Until MARS 4.5 the data segment, stack, kernel data segment and memory mapped I/O
+    // each had a single block table of their own, relative to their base address, which
+    // limited each of them to 4 MB (64 KB for memory mapped I/O).
     //
     // SPIM stores statically allocated data (following first .data directive) starting
     // at location 0x10010000.  This is the first Data Segment word beyond the reach of $gp
     // used in conjunction with signed 16 bit immediate offset.  $gp has value 0x10008000
     // and with the signed 16 bit offset can reach from 0x10008000 - 0xFFFF = 0x10000000 
     // (Data Segment base) to 0x10008000 + 0x7FFF = 0x1000FFFF (the byte preceding 0x10010000).
-    //
-    // Using my scheme, 0x10010000 falls at the beginning of the 17'th block -- table entry 16.
-    // SPIM uses a heap base address of 0x10040000 which is not part of the MIPS specification.
-    // (I don't have a reference for that offhand...)  Using my scheme, 0x10040000 falls at
-    // the start of the 65'th block -- table entry 64.  That leaves (1024-64) * 4096 = 3,932,160
-    // bytes of space available without going indirect.
     
       private static final int BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
+      private static final int BLOCK_LENGTH_BYTES = BLOCK_LENGTH_WORDS * WORD_LENGTH_BYTES;
       private static final int BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
-      private int[][] dataBlockTable;
-      private int[][] kernelDataBlockTable;
-    
-    // The stack is modeled similarly to the data segment.  It cannot share the same
-    // data structure because the stack base address is very large.  To store it in the
-    // same data structure would require implementation of indirect blocks, which has not
-    // been realized.  So the stack gets its own table of blocks using the same dimensions 
-    // and allocation scheme used for data segment.
-    //
-    // The other major difference is the stack grows DOWNWARD from its base address, not
-    // upward.  I.e., the stack base is the largest stack address. This turns the whole 
-    // scheme for translating memory address to block-offset on its head!  The simplest
-    // solution is to calculate relative address (offset from base) by subtracting the 
-    // desired address from the stack base address (rather than subtracting base address 
-    // from desired address).  Thus as the address gets smaller the offset gets larger.
-    // Everything else works the same, so it shares some private helper methods with
-    // data segment algorithms.
-    
-      private int[][] stackBlockTable;
-   
-    // Memory mapped I/O is simulated with a separate table using the same structure and
-    // logic as data segment.  Memory is allocated in 4K byte blocks.  But since MMIO
-    // address range is limited to 0xffff0000 to 0xfffffffc, there are only 64K bytes 
-    // total.  Thus there will be a maximum of 16 blocks, and I suspect never more than
-    // one since only the first few addresses are typically used.  The only exception
-    // may be a rogue program generating such addresses in a loop.  Note that the
-    // MMIO addresses are interpreted by Java as negative numbers since it does not 
-    // have unsigned types.  As long as the absolute address is correctly translated
-    // into a table offset, this is of no concern.
-   
-      private static final int MMIO_TABLE_LENGTH = 16; // Each entry of table points to a 4K block.
-      private int[][] memoryMapBlockTable;
+      private static final int BLOCK_SHIFT = 12;  // address bits below the block number
+      private static final int REGION_SHIFT = 22; // address bits below the region number
+      private int[][][] regionTable;
+      private int allocatedBlocks; // number of blocks allocated, for the memory limit
+   
+   	/** Default limit on the memory allocated for data, heap, stack, kernel data and
+   	 * memory mapped I/O: 256 MB. */
+      public static final long DEFAULT_MEMORY_LIMIT_BYTES = 256L * 1024 * 1024;
+      private static long memoryLimit = DEFAULT_MEMORY_LIMIT_BYTES;
    	    
     // I use a similar scheme for storing instructions.  MIPS text segment ranges from
     // 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!  So
@@ -176,21 +181,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ProgramStatement[][] kernelTextBlockTable;
     
     // Set "top" address boundary to go with each "base" address.  This determines permissable
-    // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
-    // on the table structures described above (except memory mapped IO, limited to 64KB by range).
+    // address range for user program.  Text is limited to 4MB, or 1024 * 1024 * 4 bytes based
+    // on the table structures described above.  The other segments extend to the limits of
+    // the memory configuration.
     
-      public static int dataSegmentLimitAddress = dataSegmentBaseAddress + 
-      														  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
+      public static int dataSegmentLimitAddress = MemoryConfigurations.getDefaultDataSegmentLimitAddress();
       public static int textLimitAddress        = textBaseAddress + 
       														  TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;																  
-      public static int kernelDataSegmentLimitAddress = kernelDataBaseAddress + 
-      														  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
+      public static int kernelDataSegmentLimitAddress = MemoryConfigurations.getDefaultKernelDataSegmentLimitAddress();
       public static int kernelTextLimitAddress  = kernelTextBaseAddress + 
       														  TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;																  
-      public static int stackLimitAddress       = stackBaseAddress - 
-      														  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
-      public static int memoryMapLimitAddress   = memoryMapBaseAddress + 
-                                 					  BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES;  
+      public static int stackLimitAddress       = MemoryConfigurations.getDefaultStackLimitAddress();
+      public static int memoryMapLimitAddress   = MemoryConfigurations.getMemoryMapLimitAddress();
     // This will be a Singleton class, only one instance is ever created.  Since I know the 
     // Memory object is always needed, I'll go ahead and create it at the time of class loading.
     // (greedy rather than lazy instantiation).  The constructor is private and getInstance()
@@ -216,11 +218,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
    	/**
    	 * Explicitly clear the contents of memory.  Typically done at start of assembly.
+   	 * Devices attached to the DeviceBus are reset as well.
    	 */
    	 
        public void clear() {
          setConfiguration();
          initialize(); 		
+         DeviceBus.resetDevices();
       }
    
      /**
@@ -245,24 +249,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          kernelDataBaseAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataBaseAddress(); //0x90000000;
          memoryMapBaseAddress = MemoryConfigurations.getCurrentConfiguration().getMemoryMapBaseAddress(); //0xffff0000;
          kernelHighAddress = MemoryConfigurations.getCurrentConfiguration().getKernelHighAddress(); //0xffffffff;		
-         dataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
-                                      dataSegmentBaseAddress + 
-            								  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+         dataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress();
          textLimitAddress        = Math.min(MemoryConfigurations.getCurrentConfiguration().getTextLimitAddress(),
                                       textBaseAddress + 
             								  TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);																  
-         kernelDataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress(),
-                                      kernelDataBaseAddress + 
-            								  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+         kernelDataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress();
          kernelTextLimitAddress  = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelTextLimitAddress(),
                                       kernelTextBaseAddress + 
             								  TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);																  
-         stackLimitAddress       = Math.max(MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress(),
-                                      stackBaseAddress - 
-            								  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
-         memoryMapLimitAddress   = Math.min(MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress(),
-                                      memoryMapBaseAddress + 
-                                 	  BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES);
+         stackLimitAddress       = MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress();
+         memoryMapLimitAddress   = MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress();
       /*	System.out.println("dataSegmentLimitAddress "+Binary.intToHexString(dataSegmentLimitAddress));
       	System.out.println("textLimitAddress "+Binary.intToHexString(textLimitAddress));
       	System.out.println("kernelDataSegmentLimitAddress "+Binary.intToHexString(kernelDataSegmentLimitAddress));
@@ -286,24 +282,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        private void initialize() {
          heapAddress = heapBaseAddress;
+         heapAllocator = new HeapAllocator(this);
+         mappedFiles = null;
+         mappingFloor = (int) (((long) heapBaseAddress + stackPointer) / 2) & -BLOCK_LENGTH_BYTES;
          textBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         dataBlockTable  = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
          kernelTextBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         kernelDataBlockTable  = new int[BLOCK_TABLE_LENGTH][];      
-         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
-         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+         regionTable = new int[(int) (0x100000000L >>> REGION_SHIFT)][][]; // array of null references
+         allocatedBlocks = 0;
+         pageGenerations = new int[(int) (0x100000000L / PAGE_LENGTH_BYTES / PAGES_PER_REGION)][];
+         clearedGeneration = generation.incrementAndGet();
          System.gc(); // call garbage collector on any Table memory just deallocated. 	  
       }  
      
    	/**
    	 * Returns the next available word-aligned heap address.  There is no recycling and
-   	 * no heap management!  There is however nearly 4MB of heap space available in Mars.
+   	 * no heap management!  The heap may extend to the data segment limit, but no more
+   	 * than the memory limit, nor into files mapped by mapFile().  Its memory is
+   	 * allocated as the program writes to it.
    	 *
    	 * @param numBytes Number of bytes requested.  Should be multiple of 4, otherwise next higher multiple of 4 allocated.
    	 * @return address of allocated heap storage. 
    	 * @throws IllegalArgumentException if number of requested bytes is negative or exceeds available heap storage
    	 */
-       public int allocateBytesFromHeap(int numBytes) throws IllegalArgumentException {
+       public synchronized int allocateBytesFromHeap(int numBytes) throws IllegalArgumentException {
          int result = heapAddress;
          if (numBytes < 0) {
             throw new IllegalArgumentException("request ("+numBytes+") is negative heap amount");
@@ -312,7 +313,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (newHeapAddress % 4 != 0) {
             newHeapAddress = newHeapAddress + (4 - newHeapAddress % 4) ; // next higher multiple of 4
          }
-         if (newHeapAddress >= dataSegmentLimitAddress) {
+         if (newHeapAddress >= dataSegmentLimitAddress || newHeapAddress < heapAddress
+             || (newHeapAddress & 0xFFFFFFFFL) - (heapBaseAddress & 0xFFFFFFFFL) > memoryLimit
+             || (mappedFiles != null && newHeapAddress > mappingFloor)) {
             throw new IllegalArgumentException("request ("+numBytes+") exceeds available heap storage");
          }
          heapAddress = newHeapAddress;
@@ -320,6 +323,60 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    
+   	/**
+   	 * Returns the allocator that manages heap blocks for the Malloc, Free and Realloc
+   	 * syscalls, and keeps statistics on them.  It takes its memory through
+   	 * allocateBytesFromHeap(), and is replaced when memory is cleared.
+   	 *
+   	 * @return the heap allocator
+   	 */
+       public HeapAllocator getHeapAllocator() {
+         return heapAllocator;
+      }
+
+   	/**
+   	 * Maps a file into the data segment, so that the program can read it in place
+   	 * rather than copying it through a buffer with the Read syscall.  Mappings are
+   	 * placed top-down from midway between the heap base and the stack, on 4K block
+   	 * boundaries, and the heap may not grow into them.  The file is mapped with
+   	 * FileChannel.map() and each 4K page is copied into simulated memory only when
+   	 * the program first touches it; pages only read do not count against the memory
+   	 * limit.  A store to a read-only mapping fails with an address exception.  A store
+   	 * to a writable mapping is copy-on-write: the page becomes ordinary memory and the
+   	 * file itself is never changed.  Since a page is copied only once, later changes
+   	 * to the file are seen only in pages not yet touched.  Mappings last until memory
+   	 * is cleared.
+   	 *
+   	 * @param filename name of the file to map
+   	 * @param writable true for a copy-on-write mapping, false for a read-only one
+   	 * @return address of the first byte of the file in memory
+   	 * @throws java.io.IOException if the file cannot be opened or mapped
+   	 * @throws IllegalArgumentException if there is no room for the file between the heap and the previous mapping
+   	 */
+       public synchronized int mapFile(String filename, boolean writable) throws java.io.IOException {
+         java.nio.channels.FileChannel channel = new java.io.FileInputStream(filename).getChannel();
+         try {
+            long size = channel.size();
+            long base = ((long) mappingFloor - size) & -BLOCK_LENGTH_BYTES;
+            if (base < heapAddress || base < heapBaseAddress) {
+               throw new IllegalArgumentException("no room to map file of "+size+" bytes");
+            }
+            MappedFile file = new MappedFile((int) base, (int) size, writable,
+               channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, size));
+            MappedFile[] files = new MappedFile[(mappedFiles == null) ? 1 : mappedFiles.length + 1];
+            if (mappedFiles != null) {
+               System.arraycopy(mappedFiles, 0, files, 0, mappedFiles.length);
+            }
+            files[files.length - 1] = file;
+            mappedFiles = files;
+            mappingFloor = (int) base;
+            return (int) base;
+         }
+         finally {
+            channel.close();
+         }
+      }
+   
      /**
       * Set byte order to either LITTLE_ENDIAN or BIG_ENDIAN.  Default is LITTLE_ENDIAN.
    	*
@@ -338,6 +395,39 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return byteOrder;
       }
    	
+     /**
+      * Set the limit on the memory allocated for the data segment, heap, stack, kernel
+   	* data segment and memory mapped I/O, all together.  Memory is allocated in 4K byte
+   	* blocks as the program first writes to them; a store that needs a block beyond the
+   	* limit fails with an address exception.  Default is DEFAULT_MEMORY_LIMIT_BYTES.
+   	*
+   	* @param bytes the limit in bytes
+   	*/
+       public static void setMemoryLimit(long bytes) {
+         memoryLimit = bytes;
+      }
+   	
+     /**
+      * Retrieve the limit on the memory allocated for data, heap, stack, kernel data and
+   	* memory mapped I/O.
+   	*
+   	* @return the limit in bytes
+   	* @see #setMemoryLimit(long)
+   	*/
+       public static long getMemoryLimit() {
+         return memoryLimit;
+      }
+   	
+     /**
+      * Retrieve the memory currently allocated for data, heap, stack, kernel data and
+   	* memory mapped I/O, counted in whole 4K byte blocks.
+   	*
+   	* @return the number of bytes allocated
+   	*/
+       public long getAllocatedBytes() {
+         return (long) allocatedBlocks * BLOCK_LENGTH_BYTES;
+      }
+   	
    	
    /*  *******************************  THE SETTER METHODS  ******************************/
    
@@ -356,19 +446,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
    // Allocates blocks if necessary.
        public int set(int address, int value, int length) throws AddressErrorException {
+         if (Hart.isShared()) {
+            synchronized (Hart.lockFor(address)) {
+               Hart.breakReservations(address);
+               return store(address, value, length);
+            }
+         }
+         return store(address, value, length);
+      }
+   
+      // The body of set(), which see.
+       private int store(int address, int value, int length) throws AddressErrorException {
          int oldValue = 0;
          if (Globals.debug) System.out.println("memory["+address+"] set to "+value+"("+length+" bytes)");
          int relativeByteAddress;
-         if (inDataSegment(address)) {
-           // in data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(dataBlockTable, relativeByteAddress, length, value);
-         } 
-         else if (address > stackLimitAddress && address <= stackBaseAddress) {
-           // in stack.  Handle similarly to data segment write, except relative byte
-           // address calculated "backward" because stack addresses grow down from base.
-            relativeByteAddress = stackBaseAddress - address; 
-            oldValue = storeBytesInTable(stackBlockTable, relativeByteAddress, length, value);
+         if (inDataSegment(address) || (address > stackLimitAddress && address <= stackBaseAddress)) {
+           // in data segment or stack.  Will write one byte at a time, w/o regard to boundaries.
+            oldValue = storeBytesInTable(address, length, value);
          } 
          else if (inTextSegment(address)) {
            // Burch Mod (Jan 2013): replace throw with call to setStatement 
@@ -388,14 +482,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          } 
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-           // memory mapped I/O.
+           // memory mapped I/O.  A device on the DeviceBus takes stores to its window.
             relativeByteAddress = address - memoryMapBaseAddress;
-            oldValue = storeBytesInTable(memoryMapBlockTable, relativeByteAddress, length, value);
+            DeviceBus.Window device = DeviceBus.windowAt(relativeByteAddress);
+            if (device != null) {
+               device.device.write(relativeByteAddress - device.start, value, length);
+            } 
+            else {
+               oldValue = storeBytesInTable(address, length, value);
+            }
          }
          else if (inKernelDataSegment(address)) {
            // in kernel data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(kernelDataBlockTable, relativeByteAddress, length, value);
+            oldValue = storeBytesInTable(address, length, value);
          } 
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
@@ -408,6 +507,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
+         modificationCount++;
+         markModified(address, length);
+         TraceRecorder.dataAccess(AccessNotice.WRITE, address, length);
+         CacheHierarchy.dataAccess(AccessNotice.WRITE, address, length);
          notifyAnyObservers(AccessNotice.WRITE, address, length, value);
          return oldValue;
       }
@@ -424,21 +527,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @throws AddressErrorException If address is not on word boundary.
     **/
        public int setRawWord(int address, int value) throws AddressErrorException {
-         int relative, oldValue=0;
+         if (Hart.isShared()) {
+            synchronized (Hart.lockFor(address)) {
+               Hart.breakReservations(address);
+               return storeRawWord(address, value);
+            }
+         }
+         return storeRawWord(address, value);
+      }
+   
+      // The body of setRawWord(), which see.
+       private int storeRawWord(int address, int value) throws AddressErrorException {
+         int oldValue=0;
          if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("store address not aligned on word boundary ",
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
-         if (inDataSegment(address)) {
-           // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(dataBlockTable, relative, value);
-         } 
-         else if (address > stackLimitAddress && address <= stackBaseAddress) {
-           // in stack.  Handle similarly to data segment write, except relative 
-           // address calculated "backward" because stack addresses grow down from base.
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(stackBlockTable, relative, value);
+         if (inDataSegment(address) || (address > stackLimitAddress && address <= stackBaseAddress)) {
+           // in data segment or stack
+            oldValue = storeWordInTable(address, value);
          }
          else if (inTextSegment(address)) {	
            // Burch Mod (Jan 2013): replace throw with call to setStatement 
@@ -457,14 +564,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          } 
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-           // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2; // convert byte address to word
-            oldValue = storeWordInTable(memoryMapBlockTable, relative, value);
+           // memory mapped I/O.  A device on the DeviceBus takes stores to its window.
+            DeviceBus.Window device = DeviceBus.windowAt(address - memoryMapBaseAddress);
+            if (device != null) {
+               device.device.write(address - memoryMapBaseAddress - device.start, value, WORD_LENGTH_BYTES);
+            } 
+            else {
+               oldValue = storeWordInTable(address, value);
+            }
          }
          else if (inKernelDataSegment(address)) {
-           // in data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(kernelDataBlockTable, relative, value);
+           // in kernel data segment
+            oldValue = storeWordInTable(address, value);
          }
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
@@ -477,6 +588,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("store address out of range ",
                Exceptions.ADDRESS_EXCEPTION_STORE,	address);
          }
+         modificationCount++;
+         markModified(address, WORD_LENGTH_BYTES);
+         TraceRecorder.dataAccess(AccessNotice.WRITE, address, WORD_LENGTH_BYTES);
+         CacheHierarchy.dataAccess(AccessNotice.WRITE, address, WORD_LENGTH_BYTES);
          notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
          if (Globals.getSettings().getBackSteppingEnabled()) {
             Globals.program.getBackStepper().addMemoryRestoreRawWord(address,oldValue);
@@ -577,6 +692,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
          if (Globals.debug) System.out.println("memory["+address+"] set to "+statement.getBinaryStatement());
+         modificationCount++;
+         markModified(address, WORD_LENGTH_BYTES);
          if (inTextSegment(address)) {
             storeProgramStatement(address, statement, textBaseAddress, textBlockTable);
          } 
@@ -587,6 +704,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
    
    
+   ////////////////////////////////////////////////////////////////////////////////
+   /**
+    * Reduces the memory taken by the text segment.  Each ProgramStatement stored
+    * there releases the token lists and display strings made by the assembler, which
+    * it rebuilds from its source line and binary code if they are asked for again.
+    * The binary code and operands used by the simulator are kept.  Called after
+    * assembly, both from the command line and in the IDE.
+    * @see ProgramStatement#releaseSourceDetail()
+    **/
+   
+       public void compactTextSegment() {
+         compactStatements(textBlockTable);
+         compactStatements(kernelTextBlockTable);
+      }
+   
    /********************************  THE GETTER METHODS  ******************************/
    
    //////////////////////////////////////////////////////////////////////////////////////////
@@ -607,21 +739,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private int get(int address, int length, boolean notify) throws AddressErrorException {
          int value = 0;
          int relativeByteAddress;
-         if (inDataSegment(address)) {
-           // in data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(dataBlockTable, relativeByteAddress, length);
-         } 
-         else if (address > stackLimitAddress && address <= stackBaseAddress) {
-           // in stack. Similar to data, except relative address computed "backward"
-            relativeByteAddress = stackBaseAddress - address;
-            value = fetchBytesFromTable(stackBlockTable, relativeByteAddress, length);
+         if (inDataSegment(address) || (address > stackLimitAddress && address <= stackBaseAddress)) {
+           // in data segment or stack.  Will read one byte at a time, w/o regard to boundaries.
+            value = fetchBytesFromTable(address, length);
          } 
-         
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-           // memory mapped I/O.
+           // memory mapped I/O.  A device on the DeviceBus answers the program's loads
+           // from its window; reads that do not notify (GUI, tools) see the table.
             relativeByteAddress = address - memoryMapBaseAddress;
-            value = fetchBytesFromTable(memoryMapBlockTable, relativeByteAddress, length);
+            DeviceBus.Window device = notify ? DeviceBus.windowAt(relativeByteAddress) : null;
+            if (device != null) {
+               value = device.device.read(relativeByteAddress - device.start, length);
+            } 
+            else {
+               value = fetchBytesFromTable(address, length);
+            }
+            modificationCount++;
          }
          else if (inTextSegment(address)) {
            // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement 
@@ -638,8 +771,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          } 
          else if (inKernelDataSegment(address)) {
            // in kernel data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(kernelDataBlockTable, relativeByteAddress, length);
+            value = fetchBytesFromTable(address, length);
          } 
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
@@ -652,7 +784,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
-         if (notify) notifyAnyObservers(AccessNotice.READ, address, length, value);
+         if (notify) {
+            TraceRecorder.dataAccess(AccessNotice.READ, address, length);
+            CacheHierarchy.dataAccess(AccessNotice.READ, address, length);
+            notifyAnyObservers(AccessNotice.READ, address, length, value);
+         }
          return value;
       }
    
@@ -675,25 +811,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // I decided to keep the duplicate logic.
        public int getRawWord(int address) throws AddressErrorException {
          int value = 0;
-         int relative;
          if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
-         if (inDataSegment(address)) {
-           // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(dataBlockTable, relative);
-         } 
-         else if (address > stackLimitAddress && address <= stackBaseAddress) {
-           // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordFromTable(stackBlockTable, relative);
+         if (inDataSegment(address) || (address > stackLimitAddress && address <= stackBaseAddress)) {
+           // in data segment or stack
+            value = fetchWordFromTable(address);
          }
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-           // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2;
-            value = fetchWordFromTable(memoryMapBlockTable, relative);
+           // memory mapped I/O.  Raw reads are for display, so they see the table and
+           // leave any DeviceBus device alone: reading one may change its state.
+            value = fetchWordFromTable(address);
          }
          else if (inTextSegment(address)) {
            // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement 
@@ -710,8 +839,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }  
          else if (inKernelDataSegment(address)) {
            // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(kernelDataBlockTable, relative);
+            value = fetchWordFromTable(address);
          } 
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
@@ -724,6 +852,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ", 
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
+         TraceRecorder.dataAccess(AccessNotice.READ, address, Memory.WORD_LENGTH_BYTES);
+         CacheHierarchy.dataAccess(AccessNotice.READ, address, Memory.WORD_LENGTH_BYTES);
          notifyAnyObservers(AccessNotice.READ, address, Memory.WORD_LENGTH_BYTES,value);
          return value;
       } 
@@ -752,20 +882,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 
        public Integer getRawWordOrNull(int address) throws AddressErrorException {
          Integer value = null;
-         int relative;
          if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                   Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
-         if (inDataSegment(address)) {
-              // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(dataBlockTable, relative);
-         } 
-         else if (address > stackLimitAddress && address <= stackBaseAddress) {
-              // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(stackBlockTable, relative);
+         if (inDataSegment(address) || (address > stackLimitAddress && address <= stackBaseAddress)) {
+              // in data segment or stack
+            value = fetchWordOrNullFromTable(address);
          }
          else if (inTextSegment(address) || inKernelTextSegment(address)) {
             try { 
@@ -776,8 +899,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }  
          else if (inKernelDataSegment(address)) {
               // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(kernelDataBlockTable, relative);
+            value = fetchWordOrNullFromTable(address);
          } 
          else {
               // falls outside Mars addressing range
@@ -876,6 +998,193 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return get(address, 1);
       }
    
+   ///////////////////////////////////////////////////////////////////////////////////////
+   /**
+    *  Copy bytes into memory starting at the given address: bytes[offset] is stored at
+    *  address, bytes[offset+1] at address+1 and so on, whatever the byte order.  Same
+    *  effect as calling setByte() for each byte in turn, but when the whole range lies
+    *  in memory held in the table (data segment and heap, stack or kernel data) the
+    *  segment is found once and the bytes are copied a block at a time.  Observers are
+    *  then notified afterward, of a write of each word the range touches with the value
+    *  it now holds, and the range is restored by a single backstep.
+    *
+    * @param address Address of the first byte to be set.
+    * @param bytes Bytes to be stored.
+    * @param offset Index in bytes of the first byte to be stored.
+    * @param length Number of bytes to be stored.  Nothing is stored unless positive.
+    * @throws AddressErrorException If the range includes an address that cannot be
+    * written.  Bytes below that address may have been written.
+    **/
+       public void setBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return;
+         }
+         if (Hart.isShared() || (long) address + length > tableEnd(address)) {
+            for (int i = 0; i < length; i++) {
+               setByte(address + i, bytes[offset + i]);
+            }
+            return;
+         }
+         byte[] oldBytes = null;
+         if (Globals.getSettings().getBackSteppingEnabled()) {
+            oldBytes = new byte[length];
+            copyBytes(address, oldBytes, 0, length, FETCH);
+         }
+         copyBytes(address, bytes, offset, length, STORE);
+         rangeStored(address, length, oldBytes);
+      }
+   
+    /**
+     *  Copy the remaining bytes of a buffer into memory starting at the given address,
+     *  as setBytes(int, byte[], int, int) does.  The buffer's position is advanced
+     *  past the bytes copied.
+     *
+     * @param address Address of the first byte to be set.
+     * @param buffer Buffer holding the bytes to be stored, from its position to its limit.
+     * @throws AddressErrorException If the range includes an address that cannot be written.
+     **/
+       public void setBytes(int address, ByteBuffer buffer) throws AddressErrorException {
+         int length = buffer.remaining();
+         if (buffer.hasArray()) {
+            setBytes(address, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+         } 
+         else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            setBytes(address, bytes, 0, length);
+         }
+      }
+   
+    /**
+     *  Copy bytes out of memory starting at the given address: the byte at address goes
+     *  to bytes[offset], the one at address+1 to bytes[offset+1] and so on, whatever the
+     *  byte order.  Same effect as calling getByte() for each byte in turn, but a block
+     *  at a time when the range lies in memory held in the table, observers then being
+     *  notified of a read of each word the range touches, as for setBytes().
+     *
+     * @param address Address of the first byte to be read.
+     * @param bytes Array to receive the bytes.
+     * @param offset Index in bytes of the first byte read.
+     * @param length Number of bytes to be read.  Nothing is read unless positive.
+     * @throws AddressErrorException If the range includes an address that cannot be read.
+     **/
+       public void getBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return;
+         }
+         if ((long) address + length > tableEnd(address)) {
+            for (int i = 0; i < length; i++) {
+               bytes[offset + i] = (byte) getByte(address + i);
+            }
+            return;
+         }
+         copyBytes(address, bytes, offset, length, FETCH);
+         rangeFetched(address, length);
+      }
+   
+    /**
+     *  Copy bytes out of memory starting at the given address into the remaining space
+     *  of a buffer, as getBytes(int, byte[], int, int) does.  The buffer's position is
+     *  advanced past the bytes copied.
+     *
+     * @param address Address of the first byte to be read.
+     * @param buffer Buffer to receive the bytes, from its position to its limit.
+     * @throws AddressErrorException If the range includes an address that cannot be read.
+     **/
+       public void getBytes(int address, ByteBuffer buffer) throws AddressErrorException {
+         int length = buffer.remaining();
+         if (buffer.hasArray()) {
+            getBytes(address, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+         } 
+         else {
+            byte[] bytes = new byte[length];
+            getBytes(address, bytes, 0, length);
+            buffer.put(bytes);
+         }
+      }
+   
+    /**
+     *  Set every byte of a range of memory to the low order 8 bits of the given value.
+     *  Same effect as calling setByte() for each byte in turn; whole words are filled
+     *  a block at a time when the range lies in memory held in the table, as for setBytes().
+     *
+     * @param address Address of the first byte to be set.
+     * @param value Value to be stored.  Only low order 8 bits used.
+     * @param length Number of bytes to be set.  Nothing is stored unless positive.
+     * @throws AddressErrorException If the range includes an address that cannot be
+     * written.  Bytes below that address may have been written.
+     **/
+       public void fill(int address, int value, int length) throws AddressErrorException {
+         if (length <= 0) {
+            return;
+         }
+         if (Hart.isShared() || (long) address + length > tableEnd(address)) {
+            for (int i = 0; i < length; i++) {
+               setByte(address + i, value);
+            }
+            return;
+         }
+         byte[] oldBytes = null;
+         if (Globals.getSettings().getBackSteppingEnabled()) {
+            oldBytes = new byte[length];
+            copyBytes(address, oldBytes, 0, length, FETCH);
+         }
+         fillBytes(address, value, length);
+         rangeStored(address, length, oldBytes);
+      }
+   
+    /**
+     *  Find the null byte that ends the string starting at the given address.  Same as
+     *  calling getByte() at successive addresses until it returns 0, but the string is
+     *  scanned a block at a time while it lies in memory held in the table, and observers
+     *  are notified afterward, of a read of each word of the string and its null byte.
+     *
+     * @param address Address of the first byte of the string.
+     * @param maxLength Largest number of bytes to be examined.
+     * @return Number of bytes before the null byte, or maxLength if none of the first
+     * maxLength bytes is null.
+     * @throws AddressErrorException If the string runs into an address that cannot be read.
+     **/
+       public int findNul(int address, int maxLength) throws AddressErrorException {
+         int length = scanForNul(address, maxLength);
+         if (length < 0) {
+            for (length = 0; length < maxLength && getByte(address + length) != 0; length++);
+            return length;
+         }
+         rangeFetched(address, (length < maxLength) ? length + 1 : length);
+         return length;
+      }
+   
+    /**
+     *  Read the null-terminated string starting at the given address.  Each byte becomes
+     *  the char of the same (unsigned) value, as when printed by syscall 4.  Like
+     *  findNul(), observers are notified of a read of each word, null byte included.
+     *
+     * @param address Address of the first byte of the string.
+     * @return The string, without its null byte.
+     * @throws AddressErrorException If the string runs into an address that cannot be read.
+     **/
+       public String getCString(int address) throws AddressErrorException {
+         int length = scanForNul(address, Integer.MAX_VALUE);
+         if (length < 0) {
+            StringBuffer string = new StringBuffer();
+            for (int ch = getByte(address); ch != 0; ch = getByte(++address)) {
+               string.append((char) ch);
+            }
+            return string.toString();
+         }
+         byte[] bytes = new byte[length];
+         copyBytes(address, bytes, 0, length, FETCH);
+         rangeFetched(address, length + 1);
+         char[] chars = new char[length];
+         for (int i = 0; i < length; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+         }
+         return new String(chars);
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////
    /**
     * Gets ProgramStatement from Text Segment.  
@@ -1048,6 +1357,105 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return  address >= memoryMapBaseAddress && address < kernelHighAddress;
       }   
    
+    /**
+     * Count of memory stores (including text segment writes) and memory mapped I/O
+     * reads since memory was created.  Two equal values mean no such access occurred
+     * in between.  The count wraps around.
+     * @return current modification count
+     */
+       public int getModificationCount() {
+         return modificationCount;
+      }
+   
+    /**
+     * End the current generation of memory modifications and start a new one.  A
+     * client that wants to know which pages will change from now on keeps the
+     * returned mark and later passes it to isPageModifiedSince() or getModifiedPages();
+     * it "clears" its dirty pages by taking a new mark.  Each client keeps its own
+     * mark, so any number of them can track changes independently.
+     * @return mark identifying the generation that just ended
+     */
+       public int markGeneration() {
+         return generation.getAndIncrement();
+      }
+   
+    /**
+     * Determine whether the page including the given address may have been written
+     * since the given mark was taken.  Clearing memory counts as writing every page.
+     * @param address any address in the page
+     * @param mark a value returned by markGeneration(), or 0 for "ever"
+     * @return true if the page was written (or memory cleared) since the mark
+     */
+       public boolean isPageModifiedSince(int address, int mark) {
+         if (mark < clearedGeneration) {
+            return true;
+         }
+         int[] region = pageGenerations[address >>> PAGE_SHIFT >>> 10];
+         return region != null && region[(address >>> PAGE_SHIFT) & (PAGES_PER_REGION - 1)] > mark;
+      }
+   
+    /**
+     * Find the pages in an address range written since the given mark was taken.
+     * Clearing memory counts as writing every page.
+     * @param firstAddress first address of the range
+     * @param lastAddress last address of the range, not less than firstAddress when
+     * both are taken as unsigned
+     * @param mark a value returned by markGeneration(), or 0 for "ever"
+     * @return the first address of each modified page, in increasing order
+     */
+       public int[] getModifiedPages(int firstAddress, int lastAddress, int mark) {
+         int first = firstAddress >>> PAGE_SHIFT;
+         int last = lastAddress >>> PAGE_SHIFT;
+         int[] pages = new int[last - first + 1];
+         int count = 0;
+         for (int page = first; page <= last; page++) {
+            if (isPageModifiedSince(page << PAGE_SHIFT, mark)) {
+               pages[count++] = page << PAGE_SHIFT;
+            }
+         }
+         int[] result = new int[count];
+         System.arraycopy(pages, 0, result, 0, count);
+         return result;
+      }
+   
+      // Stamp the page(s) written by a store of length bytes with the current generation.
+       private void markModified(int address, int length) {
+         int page = address >>> PAGE_SHIFT;
+         int[] region = pageGenerations[page >>> 10];
+         if (region == null) {
+            region = allocateRegion(page >>> 10);
+         }
+         region[page & (PAGES_PER_REGION - 1)] = generation.get();
+         int lastPage = (address + length - 1) >>> PAGE_SHIFT;
+         if (lastPage != page) {
+            markModified(lastPage << PAGE_SHIFT, 1);
+         }
+      }
+   
+       private synchronized int[] allocateRegion(int region) {
+         if (pageGenerations[region] == null) {
+            pageGenerations[region] = new int[PAGES_PER_REGION];
+         }
+         return pageGenerations[region];
+      }
+   
+    /**
+     * Determine whether any memory mapped I/O location has been written yet, either
+     * by the MIPS program or by a device such as a MARS tool.
+     * @return true if any part of the memory map segment has been allocated.  May also
+     * be true if memory sharing a 4K block with the segment has been written.
+     */
+       public boolean memoryMapInUse() {
+         long base = memoryMapBaseAddress & 0xFFFFFFFFL;
+         long limit = memoryMapLimitAddress & 0xFFFFFFFFL;
+         for (long address = base & -BLOCK_LENGTH_BYTES; address <= limit; address += BLOCK_LENGTH_BYTES) {
+            if (blockAt((int) address) != null) {
+               return true;
+            }
+         }
+         return false;
+      }
+   
    
    
    
@@ -1188,6 +1596,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return (address >= lowAddress && address <= highAddress-1+WORD_LENGTH_BYTES);
          }
       	
+          public boolean match(int firstAddress, int lastAddress) {
+            return (lastAddress >= lowAddress && firstAddress <= highAddress-1+WORD_LENGTH_BYTES);
+         }
+      	
           public void notifyObserver(MemoryAccessNotice notice) {
             this.setChanged();
             this.notifyObservers(notice);
@@ -1221,6 +1633,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF MIPS simulation
    // is from command mode, Globals.program is null but still want ability to observe.
        private void notifyAnyObservers(int type, int address, int length, int value) {
+         AccessEventStream.memoryAccess(type, address, length, value);
          if ((Globals.program != null || Globals.getGui()==null) && this.observables.size() > 0) {
             Iterator it = this.observables.iterator();
             MemoryObservable mo;
@@ -1233,32 +1646,59 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          } 		
       }
    
+   // As notifyAnyObservers(), for a bulk access to length bytes: each word of the
+   // range is noticed as a word access with the value it holds afterward, so that
+   // observers see what a loop of lw or sw would have shown them.  An observer is
+   // sent only the words it watches.
+       private void notifyObserversOfRange(int type, int address, int length) {
+         int first = address & -WORD_LENGTH_BYTES;
+         int last = (address + length - 1) & -WORD_LENGTH_BYTES;
+         if (AccessEventStream.anyOpen()) {
+            for (int word = first; ; word += WORD_LENGTH_BYTES) {
+               AccessEventStream.memoryAccess(type, word, WORD_LENGTH_BYTES, fetchWordFromTable(word));
+               if (word == last) break;
+            }
+         }
+         if ((Globals.program != null || Globals.getGui()==null) && this.observables.size() > 0) {
+            Iterator it = this.observables.iterator();
+            MemoryObservable mo;
+            while (it.hasNext()) {
+               mo = (MemoryObservable)it.next();
+               if (mo.match(address, address + length - 1)) {
+                  for (int word = first; ; word += WORD_LENGTH_BYTES) {
+                     if (mo.match(word)) {
+                        mo.notifyObserver(new MemoryAccessNotice(type, word, WORD_LENGTH_BYTES, fetchWordFromTable(word)));
+                     }
+                     if (word == last) break;
+                  }
+               }
+            }
+         } 		
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////
    //
-   // Helper method to store 1, 2 or 4 byte value in table that represents MIPS
-   // memory. Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.
+   // Helper method to store 1, 2 or 4 byte value in the table that represents MIPS
+   // memory.  Originally used just for data segment, but now used for every segment
+   // other than text: data, stack, kernel data and memory mapped I/O all share the
+   // one sparse table, indexed by address.
    // Modified 29 Dec 2005 to return old value of replaced bytes.
    //
       private static final boolean STORE = true;
       private static final boolean FETCH = false;
    	 
-       private int storeBytesInTable(int [][] blockTable, 
-                                   int relativeByteAddress, int length, int value) {
-         return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, value, STORE);
+       private int storeBytesInTable(int address, int length, int value) throws AddressErrorException {
+         return storeOrFetchBytesInTable(address, length, value, STORE);
       }
    	
    ////////////////////////////////////////////////////////////////////////////////
    //
-   // Helper method to fetch 1, 2 or 4 byte value from table that represents MIPS
-   // memory.  Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.
+   // Helper method to fetch 1, 2 or 4 byte value from the table that represents MIPS
+   // memory.  Bytes of blocks not yet allocated read as 0.
    //	
    
-       private int fetchBytesFromTable(int[][] blockTable, int relativeByteAddress, int length) {
-         return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, 0, FETCH);
+       private int fetchBytesFromTable(int address, int length) throws AddressErrorException {
+         return storeOrFetchBytesInTable(address, length, 0, FETCH);
       }
    
    ////////////////////////////////////////////////////////////////////////////////		
@@ -1269,47 +1709,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // client using STORE or FETCH in last arg.
    // Modified 29 Dec 2005 to return old value of replaced bytes, for STORE.
    //
-       private synchronized int storeOrFetchBytesInTable(int [][] blockTable, 
-                                   int relativeByteAddress, int length, int value, boolean op) {
-         int relativeWordAddress, block, offset, bytePositionInMemory, bytePositionInValue;
+       private int storeOrFetchBytesInTable(int address, int length, int value, boolean op) 
+                                   throws AddressErrorException {
+         int bytePositionInMemory, bytePositionInValue, offset;
+         int[] block;
          int oldValue = 0; // for STORE, return old values of replaced bytes
          int loopStopper = 3-length;
-      	// IF added DPS 22-Dec-2008. NOTE: has NOT been tested with Big-Endian.
-      	// Fix provided by Saul Spatz; comments that follow are his.
-      	// If address in stack segment is 4k + m, with 0 < m < 4, then the
-         // relativeByteAddress we want is stackBaseAddress - 4k + m, but the
-         // address actually passed in is stackBaseAddress - (4k + m), so we
-         // need to add 2m.  Because of the change in sign, we get the
-         // expression 4-delta below in place of m.
-         if (blockTable == stackBlockTable) {
-            int delta = relativeByteAddress % 4;
-            if (delta != 0) {
-               relativeByteAddress += ( 4 - delta ) << 1;
-            }
-         }
          for (bytePositionInValue = 3; bytePositionInValue > loopStopper; bytePositionInValue--) {
-            bytePositionInMemory = relativeByteAddress % 4;
-            relativeWordAddress = relativeByteAddress >> 2;
-            block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
-            offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null) {
+            bytePositionInMemory = address & 3;
+            offset = (address >>> 2) & (BLOCK_LENGTH_WORDS - 1); // Word within its block
+            block = blockAt(address);
+            if (block == null) {
                if (op==STORE) 
-                  blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-               else 
+                  block = allocateBlock(address);
+               else if ((block = mappedBlock(address)) == null)
                   return 0;
             }
             if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
             if (op == STORE) {
-               oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
+               oldValue = replaceByte(block[offset], bytePositionInMemory,
                   								oldValue, bytePositionInValue);
-               blockTable[block][offset] = replaceByte(value, bytePositionInValue, 
-                                         blockTable[block][offset], bytePositionInMemory);
+               block[offset] = replaceByte(value, bytePositionInValue, 
+                                         block[offset], bytePositionInMemory);
             } 
             else {// op == FETCH
-               value = replaceByte(blockTable[block][offset], bytePositionInMemory, 
+               value = replaceByte(block[offset], bytePositionInMemory, 
                                                           value, bytePositionInValue);
             }
-            relativeByteAddress++;
+            address++;
          }
          return (op == STORE)	? oldValue : value;
       }	
@@ -1317,74 +1744,352 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    ////////////////////////////////////////////////////////////////////////////////
    //
    // Helper method to store 4 byte value in table that represents MIPS memory.
-   // Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.  Assumes address is word aligned, no endian processing.
+   // Assumes address is word aligned, no endian processing.
    // Modified 29 Dec 2005 to return overwritten value.
          
-       private synchronized int storeWordInTable(int[][] blockTable, int relative, int value) {
-         int  block, offset, oldValue;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
+       private int storeWordInTable(int address, int value) throws AddressErrorException {
+         int offset, oldValue;
+         int[] block = blockAt(address);
+         if (block == null) {
                // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
+            block = allocateBlock(address);
          }
-         oldValue = blockTable[block][offset];
-         blockTable[block][offset] = value;
+         offset = (address >>> 2) & (BLOCK_LENGTH_WORDS - 1); 
+         oldValue = block[offset];
+         block[offset] = value;
          return oldValue;
       }
       
    ////////////////////////////////////////////////////////////////////////////////
    //
    // Helper method to fetch 4 byte value from table that represents MIPS memory.
-   // Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.  Assumes word alignment, no endian processing.
+   // Assumes word alignment, no endian processing.
    //
    
-       private synchronized int fetchWordFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
+       private int fetchWordFromTable(int address) {
+         int[] block = blockAt(address);
+         if (block == null && (block = mappedBlock(address)) == null) {
                    // first reference to an address in this block.  Assume initialized to 0.
-            value = 0;
+            return 0;
          } 
-         else {
-            value = blockTable[block][offset];
-         }
-         return value;
+         return block[(address >>> 2) & (BLOCK_LENGTH_WORDS - 1)];
       }     
        
        ////////////////////////////////////////////////////////////////////////////////
        //
        // Helper method to fetch 4 byte value from table that represents MIPS memory.
-       // Originally used just for data segment, but now also used for stack.
-       // Both use different tables but same storage method and same table size
-       // and block size.  Assumes word alignment, no endian processing.
+       // Assumes word alignment, no endian processing.
    	 //
    	 // This differs from "fetchWordFromTable()" in that it returns an Integer and
    	 // returns null instead of 0 if the 4K table has not been allocated.  Developed
    	 // by Greg Gibeling of UC Berkeley, fall 2007.
        //
        
-       private synchronized Integer fetchWordOrNullFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
+       private Integer fetchWordOrNullFromTable(int address) {
+         int[] block = blockAt(address);
+         if (block == null && (block = mappedBlock(address)) == null) {
                        // first reference to an address in this block.  Assume initialized to 0.
             return null;
          } 
-         else {
-            value = blockTable[block][offset];
+         return Integer.valueOf(block[(address >>> 2) & (BLOCK_LENGTH_WORDS - 1)]);
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Helpers for the bulk transfers setBytes(), getBytes(), fill(), findNul() and
+   // getCString().  They work directly on the table, a block at a time, for ranges
+   // that lie wholly in memory the table holds for every access: data segment (with
+   // the heap) and stack, or kernel data.  Anything else goes a byte at a time
+   // through set() and get(), which route each access.
+   //
+   // Return the end of the run of such memory starting at the given address,
+   // exclusive and as a long so that it may lie just past the highest address; the
+   // address itself if it is not in such memory (e.g. text or memory mapped I/O).
+   //
+       private long tableEnd(int address) {
+         long dataEnd = dataSegmentLimitAddress;
+         long stackEnd = (long) stackBaseAddress + 1;
+         if (inDataSegment(address)) {
+            // data segment and stack, if contiguous, form one run
+            return (dataEnd > stackLimitAddress && dataEnd <= stackBaseAddress) ? stackEnd : dataEnd;
+         }
+         if (address > stackLimitAddress && address <= stackBaseAddress) {
+            return (stackEnd >= dataSegmentBaseAddress && stackEnd < dataEnd) ? dataEnd : stackEnd;
+         }
+         if (inKernelDataSegment(address) && !(address >= memoryMapBaseAddress && address < memoryMapLimitAddress)) {
+            long kernelDataEnd = kernelDataSegmentLimitAddress;
+            return (memoryMapBaseAddress > address && memoryMapBaseAddress < kernelDataEnd)
+               ? memoryMapBaseAddress : kernelDataEnd;
+         }
+         return address;
+      }
+   
+   // Copy length bytes between memory starting at address and the array starting at
+   // offset.  Bytes before and after whole words go one at a time; the words between
+   // go through an int view of the array in memory's byte order.  Fetching from a block
+   // not yet allocated gives zeros.
+       private void copyBytes(int address, byte[] bytes, int offset, int length, boolean op) 
+                                   throws AddressErrorException {
+         ByteOrder order = (byteOrder == LITTLE_ENDIAN) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+         while (length > 0) {
+            int count = Math.min(length, BLOCK_LENGTH_BYTES - (address & (BLOCK_LENGTH_BYTES - 1)));
+            int[] block = blockAt(address);
+            if (block == null && op == FETCH && (block = mappedBlock(address)) == null) {
+               Arrays.fill(bytes, offset, offset + count, (byte) 0);
+            } 
+            else {
+               if (block == null) {
+                  block = allocateBlock(address);
+               }
+               int head = Math.min(count, -address & 3);
+               int words = (count - head) >>> 2;
+               copyBytesInBlock(block, address, bytes, offset, head, op);
+               if (words > 0) {
+                  IntBuffer view = ByteBuffer.wrap(bytes, offset + head, words << 2).order(order).asIntBuffer();
+                  int word = ((address + head) >>> 2) & (BLOCK_LENGTH_WORDS - 1);
+                  if (op == STORE) 
+                     view.get(block, word, words);
+                  else 
+                     view.put(block, word, words);
+               }
+               int done = head + (words << 2);
+               copyBytesInBlock(block, address + done, bytes, offset + done, count - done, op);
+            }
+            address += count;
+            offset += count;
+            length -= count;
+         }
+      }
+   
+   // Copy count bytes, one at a time, between one block and the array.
+       private void copyBytesInBlock(int[] block, int address, byte[] bytes, int offset, int count, boolean op) {
+         for (int i = 0; i < count; i++) {
+            if (op == STORE) 
+               putByteInBlock(block, address + i, bytes[offset + i]);
+            else 
+               bytes[offset + i] = (byte) getByteInBlock(block, address + i);
+         }
+      }
+   
+   // Set length bytes starting at address to the low order byte of value.  Whole words
+   // are filled with Arrays.fill(), a block at a time.
+       private void fillBytes(int address, int value, int length) throws AddressErrorException {
+         int pattern = (value & 0xFF) * 0x01010101;
+         while (length > 0) {
+            int count = Math.min(length, BLOCK_LENGTH_BYTES - (address & (BLOCK_LENGTH_BYTES - 1)));
+            int[] block = blockAt(address);
+            if (block == null) {
+               block = allocateBlock(address);
+            }
+            int head = Math.min(count, -address & 3);
+            int words = (count - head) >>> 2;
+            for (int i = 0; i < head; i++) {
+               putByteInBlock(block, address + i, value);
+            }
+            int word = ((address + head) >>> 2) & (BLOCK_LENGTH_WORDS - 1);
+            Arrays.fill(block, word, word + words, pattern);
+            for (int i = head + (words << 2); i < count; i++) {
+               putByteInBlock(block, address + i, value);
+            }
+            address += count;
+            length -= count;
          }
-         return new Integer(value);
+      }
+   
+   // Return the number of bytes before the first null byte at or after address, looking
+   // at no more than maxLength bytes; maxLength if there is none.  Returns -1 if the
+   // scan would first have to leave the run of memory found by tableEnd().
+       private int scanForNul(int address, int maxLength) {
+         long end = tableEnd(address);
+         int length = 0;
+         while (length < maxLength) {
+            int current = address + length;
+            if ((long) address + length >= end) {
+               return -1;
+            }
+            int[] block = blockAt(current);
+            if (block == null && (block = mappedBlock(current)) == null) {
+               return length; // not yet allocated, so reads as 0
+            }
+            int count = (int) Math.min(Math.min(maxLength - length, end - ((long) address + length)),
+                                       BLOCK_LENGTH_BYTES - (current & (BLOCK_LENGTH_BYTES - 1)));
+            for (int i = 0; i < count; i++) {
+               if (getByteInBlock(block, current + i) == 0) {
+                  return length + i;
+               }
+            }
+            length += count;
+         }
+         return maxLength;
+      }
+   
+   // Store the low order byte of value at the address, in its block, in memory's byte order.
+       private void putByteInBlock(int[] block, int address, int value) {
+         int offset = (address >>> 2) & (BLOCK_LENGTH_WORDS - 1);
+         int shift = (byteOrder == LITTLE_ENDIAN) ? (address & 3) << 3 : (3 - (address & 3)) << 3;
+         block[offset] = (block[offset] & ~(0xFF << shift)) | ((value & 0xFF) << shift);
+      }
+   
+   // Return the byte at the address, in its block, in memory's byte order.
+       private int getByteInBlock(int[] block, int address) {
+         int shift = (byteOrder == LITTLE_ENDIAN) ? (address & 3) << 3 : (3 - (address & 3)) << 3;
+         return (block[(address >>> 2) & (BLOCK_LENGTH_WORDS - 1)] >>> shift) & 0xFF;
+      }
+   
+   // After a bulk store, do once for the range what store() does after each store,
+   // and record the old bytes as a single backstep if given.
+       private void rangeStored(int address, int length, byte[] oldBytes) {
+         modificationCount++;
+         int lastPage = (address + length - 1) >>> PAGE_SHIFT;
+         for (int page = address >>> PAGE_SHIFT; page <= lastPage; page++) {
+            markModified(page << PAGE_SHIFT, 1);
+         }
+         modelRange(AccessNotice.WRITE, address, length);
+         notifyObserversOfRange(AccessNotice.WRITE, address, length);
+         if (oldBytes != null) {
+            Globals.program.getBackStepper().addMemoryRestoreBytes(address, oldBytes);
+         }
+      }
+   
+   // After a bulk fetch, do once for the range what get() does after each fetch.
+       private void rangeFetched(int address, int length) {
+         modelRange(AccessNotice.READ, address, length);
+         notifyObserversOfRange(AccessNotice.READ, address, length);
+      }
+
+   // Pass a bulk access to the trace recorder and cache models a word at a time, as the
+   // loads or stores it stands for would have been, each with the bytes of its word
+   // that the range covers.
+       private static void modelRange(int type, int address, int length) {
+         long end = (address & 0xFFFFFFFFL) + length;
+         for (long from = address & 0xFFFFFFFFL; from < end; ) {
+            long to = Math.min((from & -WORD_LENGTH_BYTES) + WORD_LENGTH_BYTES, end);
+            TraceRecorder.dataAccess(type, (int) from, (int) (to - from));
+            CacheHierarchy.dataAccess(type, (int) from, (int) (to - from));
+            from = to;
+         }
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Return the block holding the given address, or null if none has been allocated.
+   //
+       private int[] blockAt(int address) {
+         int[][] blockTable = regionTable[address >>> REGION_SHIFT];
+         return (blockTable == null) ? null : blockTable[(address >>> BLOCK_SHIFT) & (BLOCK_TABLE_LENGTH - 1)];
       }
    	   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Allocate the block holding the given address on first write to it, and the
+   // block table of its region if need be.  The table helpers above are not
+   // synchronized, so that harts running in parallel do not contend for this
+   // object on every access; only allocation is, so that two harts storing into the
+   // same new block cannot each allocate it.  Concurrent stores to one word are
+   // ordered by the lock that set() holds when harts share memory.
+   // Throws AddressErrorException if the block would take memory beyond the limit.
+   //
+       private synchronized int[] allocateBlock(int address) throws AddressErrorException {
+         int region = address >>> REGION_SHIFT;
+         if (regionTable[region] == null) {
+            regionTable[region] = new int[BLOCK_TABLE_LENGTH][];
+         }
+         int[][] blockTable = regionTable[region];
+         int block = (address >>> BLOCK_SHIFT) & (BLOCK_TABLE_LENGTH - 1);
+         if (blockTable[block] == null) {
+            MappedFile file = mappedFileAt(address);
+            if (file != null && !file.writable) {
+               throw new AddressErrorException("cannot write to read-only mapped file ",
+                  Exceptions.ADDRESS_EXCEPTION_STORE, address);
+            }
+            if ((long) (allocatedBlocks + 1) * BLOCK_LENGTH_BYTES > memoryLimit) {
+               throw new AddressErrorException("memory limit of "+memoryLimit+" bytes exceeded at ",
+                  Exceptions.ADDRESS_EXCEPTION_STORE, address);
+            }
+            if (file != null) {
+               // copy on write: the page becomes the program's own
+               blockTable[block] = mappedBlock(address);
+               file.pages[(address - file.base) >>> BLOCK_SHIFT] = null;
+            } 
+            else {
+               blockTable[block] = new int[BLOCK_LENGTH_WORDS];
+            }
+            allocatedBlocks++;
+         }
+         return blockTable[block];
+      }
+   	   
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Files mapped by mapFile().  A mapped file's pages are read from its buffer into
+   // blocks of the usual kind when first touched, and kept by the file rather than in
+   // the table, so that a store to one of them still finds no block and comes to
+   // allocateBlock(): there a read-only file refuses it, and a copy-on-write file
+   // hands the page over to the table as a block of the program's own.
+   //
+       private static final class MappedFile {
+         final int base;        // address of the first byte, on a block boundary
+         final int length;      // length of the file in bytes
+         final boolean writable;
+         final MappedByteBuffer buffer;
+         final int[][] pages;   // pages read so far, indexed by block number within the file
+          MappedFile(int base, int length, boolean writable, MappedByteBuffer buffer) {
+            this.base = base;
+            this.length = length;
+            this.writable = writable;
+            this.buffer = buffer;
+            this.pages = new int[(int) (((long) length + BLOCK_LENGTH_BYTES - 1) / BLOCK_LENGTH_BYTES)][];
+         }
+      }
+   
+   // Return the mapped file including the given address, or null if none.
+       private MappedFile mappedFileAt(int address) {
+         MappedFile[] files = mappedFiles;
+         if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+               if (address >= files[i].base && (long) address < (long) files[i].base + files[i].length) {
+                  return files[i];
+               }
+            }
+         }
+         return null;
+      }
+   
+   // Return the page of a mapped file holding the given address, reading it from the
+   // file if not yet read, or null if the address is not mapped.  Called only when the
+   // address has no block in the table, so other memory does not pay for mapping.
+       private int[] mappedBlock(int address) {
+         if (mappedFiles == null) {
+            return null;
+         }
+         MappedFile file = mappedFileAt(address);
+         if (file == null) {
+            return null;
+         }
+         int page = (address - file.base) >>> BLOCK_SHIFT;
+         int[] block = file.pages[page];
+         if (block == null) {
+            synchronized (file) {
+               block = file.pages[page];
+               if (block == null) {
+                  block = new int[BLOCK_LENGTH_WORDS];
+                  int offset = page << BLOCK_SHIFT;
+                  int count = Math.min(BLOCK_LENGTH_BYTES, file.length - offset);
+                  ByteBuffer bytes = file.buffer.duplicate();
+                  bytes.position(offset);
+                  bytes.limit(offset + count);
+                  bytes = bytes.slice().order((byteOrder == LITTLE_ENDIAN) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                  bytes.asIntBuffer().get(block, 0, count >>> 2);
+                  for (int i = count & ~3; i < count; i++) {
+                     putByteInBlock(block, file.base + offset + i, bytes.get(i));
+                  }
+                  file.pages[page] = block;
+               }
+            }
+         }
+         return block;
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////////
    // Returns result of substituting specified byte of source value into specified byte 
    // of destination value. Byte positions are 0-1-2-3, listed from most to least 
@@ -1428,6 +2133,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    
+   ///////////////////////////////////////////////////////////////////////   	
+   // Release the assembly detail of every program statement in the given text segment table.
+       private void compactStatements(ProgramStatement[][] blockTable) {
+         for (int block = 0; block < blockTable.length; block++) {
+            if (blockTable[block] != null) {
+               for (int offset = 0; offset < blockTable[block].length; offset++) {
+                  if (blockTable[block][offset] != null) {
+                     blockTable[block][offset].releaseSourceDetail();
+                  }
+               }
+            }
+         }
+      }
+   
+   
    ///////////////////////////////////////////////////////////////////////   	
    // Read a program statement from the given address.  Address has already been verified
    // as valid.  It may be either in user or kernel text segment, as specified by arguments.  
@@ -293,27 +293,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return defaultConfigurationItemValues[14];
       }   
       
-       public int getDefaultDataSegmentLimitAddress() {
+       public static int getDefaultDataSegmentLimitAddress() {
          return defaultConfigurationItemValues[15];
       }
       
-       public int getDefaultTextLimitAddress() {
+       public static int getDefaultTextLimitAddress() {
          return defaultConfigurationItemValues[16];
       }
       
-       public int getDefaultKernelDataSegmentLimitAddress() {
+       public static int getDefaultKernelDataSegmentLimitAddress() {
          return defaultConfigurationItemValues[17];
       }
       
-       public int getDefaultKernelTextLimitAddress() {
+       public static int getDefaultKernelTextLimitAddress() {
          return defaultConfigurationItemValues[18];
       }
       
-       public int getDefaultStackLimitAddress() {
+       public static int getDefaultStackLimitAddress() {
          return defaultConfigurationItemValues[19];
       }
       
-       public int getMemoryMapLimitAddress() {
+       public static int getMemoryMapLimitAddress() {
          return defaultConfigurationItemValues[20];
       } 
    
@@ -0,0 +1,39 @@
+   package mars.mips.hardware;
+
+/**
+ * A device attached to the DeviceBus.  The device owns a window of the memory
+ * mapped I/O segment: loads and stores that the MIPS program makes within the
+ * window are passed to it directly instead of going to memory.
+ * <p>
+ * The methods are called on the thread executing the program, with offsets
+ * relative to the start of the window.  Accesses by the GUI and tools that do
+ * not notify observers (e.g. Memory.getWordNoNotify()) are not passed to the
+ * device; they see the underlying memory.
+ *
+ * @see DeviceBus
+ */
+
+    public interface MemoryMappedDevice {
+
+   	/**
+   	 * Load from the device.
+   	 * @param offset byte offset within the device's window
+   	 * @param length number of bytes: 1, 2 or 4
+   	 * @return the value, in the low order length bytes
+   	 */
+       public int read(int offset, int length);
+
+   	/**
+   	 * Store to the device.
+   	 * @param offset byte offset within the device's window
+   	 * @param value the value, in the low order length bytes
+   	 * @param length number of bytes: 1, 2 or 4
+   	 */
+       public void write(int offset, int value, int length);
+
+   	/**
+   	 * Return the device to its initial state.  Called when MIPS memory is cleared,
+   	 * i.e. before a program is assembled.
+   	 */
+       public void reset();
+   }
@@ -144,6 +144,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // Method to notify any observers of register operation that has just occurred.
    //
        private void notifyAnyObservers(int type) {
+         AccessEventStream.registerAccess(type, this, value);
          if (this.countObservers() > 0){// && Globals.program != null) && Globals.program.inSteppedExecution()) {
             this.setChanged();
             this.notifyObservers(new RegisterAccessNotice(type, this.name));
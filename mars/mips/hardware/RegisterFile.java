@@ -46,7 +46,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int GLOBAL_POINTER_REGISTER = 28;
       public static final int STACK_POINTER_REGISTER = 29;
    
-      private static Register [] regFile = 
+      // Registers of hart 0.  Methods operate on the registers of Hart.current(),
+   	// which are these except in a multi-hart simulation.
+      static Register [] regFile = 
           { new Register("$zero", 0, 0), new Register("$at", 1, 0),
          	new Register("$v0", 2, 0),new Register("$v1", 3, 0),
          	new Register("$a0", 4, 0),new Register("$a1", 5, 0),
@@ -66,9 +68,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	new Register("$fp", 30, 0),new Register("$ra", 31, 0)
            };
          												  
-      private static Register programCounter= new Register("pc", 32, Memory.textBaseAddress); 
-      private static Register hi= new Register("hi", 33, 0);//this is an internal register with arbitrary number
-      private static Register lo= new Register("lo", 34, 0);// this is an internal register with arbitrary number
+      static Register programCounter= new Register("pc", 32, Memory.textBaseAddress); 
+      static Register hi= new Register("hi", 33, 0);//this is an internal register with arbitrary number
+      static Register lo= new Register("lo", 34, 0);// this is an internal register with arbitrary number
    		 
    
    	/**
@@ -93,29 +95,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static int updateRegister(int num, int val){
+         Hart hart = Hart.current();
          int old = 0;
          if(num == 0){
             //System.out.println("You can not change the value of the zero register.");
          }
          else {
-            for (int i=0; i< regFile.length; i++){
-               if(regFile[i].getNumber()== num) {
+            for (int i=0; i< hart.registers.length; i++){
+               if(hart.registers[i].getNumber()== num) {
                   old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addRegisterFileRestore(num,regFile[i].setValue(val))
-                     	: regFile[i].setValue(val);
+                        ? Globals.program.getBackStepper().addRegisterFileRestore(num,hart.registers[i].setValue(val))
+                     	: hart.registers[i].setValue(val);
                   break;
                }
             }
          }
          if(num== 33){//updates the hi register
             old = (Globals.getSettings().getBackSteppingEnabled())
-               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,hi.setValue(val))
-               			: hi.setValue(val);
+               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,hart.hi.setValue(val))
+               			: hart.hi.setValue(val);
          }
          else if(num== 34){// updates the low register
             old = (Globals.getSettings().getBackSteppingEnabled())
-               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,lo.setValue(val))
-               			: lo.setValue(val);
+               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,hart.lo.setValue(val))
+               			: hart.lo.setValue(val);
          }
          return old;
       }
@@ -146,15 +149,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
+         Hart hart = Hart.current();
          if(num==33){
-            return hi.getValue();
+            return hart.hi.getValue();
          }
          else if(num==34){
-            return lo.getValue();
+            return hart.lo.getValue();
          }
          else  
-            return regFile[num].getValue();
+            return hart.registers[num].getValue();
             
+      }
+
+      /**
+   	  *  Returns the value of the register who's number is num.  Observers are not notified.
+   	  *   @param num The register number.
+   	  *   @return The value of the given register.
+   	  **/
+   	
+       public static int getValueNoNotify(int num){
+         Hart hart = Hart.current();
+         if(num==33){
+            return hart.hi.getValueNoNotify();
+         }
+         else if(num==34){
+            return hart.lo.getValueNoNotify();
+         }
+         else  
+            return hart.registers[num].getValueNoNotify();
       }
       		
       	/**
@@ -181,7 +203,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register[] getRegisters(){
-         return regFile;
+         return Hart.current().registers;
       }
       
    	/**
@@ -191,20 +213,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register getUserRegister(String Rname) {
+         Register[] registers = Hart.current().registers;
          Register reg = null;
          if (Rname.charAt(0) == '$') {
             try {
                    // check for register number 0-31.
-               reg = regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
+               reg = registers[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
             }
                 catch (Exception e) {
                    // handles both NumberFormat and ArrayIndexOutOfBounds
                    // check for register mnemonic $zero thru $ra
                   reg = null; // just to be sure
                    // just do linear search; there aren't that many registers
-                  for (int i=0; i < regFile.length; i++) {
-                     if (Rname.equals(regFile[i].getName())) {
-                        reg = regFile[i];
+                  for (int i=0; i < registers.length; i++) {
+                     if (Rname.equals(registers[i].getName())) {
+                        reg = registers[i];
                         break;
                      }
                   }
@@ -221,7 +244,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
      
        public static void initializeProgramCounter(int value){
-         programCounter.setValue(value);
+         Hart.current().programCounter.setValue(value);
       }
    	
    	/**
@@ -239,7 +262,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             initializeProgramCounter(mainAddr);
          } 
          else {
-            initializeProgramCounter(programCounter.getResetValue());
+            initializeProgramCounter(Hart.current().programCounter.getResetValue());
          }
       }
    	
@@ -251,8 +274,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
      
        public static int setProgramCounter(int value){
-         int old = programCounter.getValue();
-         programCounter.setValue(value);
+         Register pc = Hart.current().programCounter;
+         int old = pc.getValue();
+         pc.setValue(value);
          if (Globals.getSettings().getBackSteppingEnabled()) {
             Globals.program.getBackStepper().addPCRestore(old);
          } 
@@ -265,7 +289,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	 
        public static int getProgramCounter(){
-         return programCounter.getValue();
+         return Hart.current().programCounter.getValue();
       }
    
      /**
@@ -273,7 +297,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	*  @return program counter's Register object.
    	*/
        public static Register getProgramCounterRegister() {
-         return programCounter;
+         return Hart.current().programCounter;
       }
    	
      /**
@@ -282,7 +306,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	 
        public static int getInitialProgramCounter(){
-         return programCounter.getResetValue();
+         return Hart.current().programCounter.getResetValue();
       }
    	
    	/**
@@ -292,6 +316,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *  using only the command switches, not registry settings.  It can be called
    	  *  from tools running stand-alone, and this is done in 
    	  *  <code>AbstractMarsToolAndApplication</code>.
+   	  *  The registers of the other harts of a multi-hart simulation are reset as well.
    	  **/
    	
        public static void resetRegisters(){
@@ -301,6 +326,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          initializeProgramCounter(Globals .getSettings().getStartAtMain());// replaces "programCounter.resetValue()", DPS 3/3/09
          hi.resetValue();
          lo.resetValue();
+         Hart.resetOthers();
       }
       
      /**
@@ -308,7 +334,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 **/
    
        public static void incrementPC(){
-         programCounter.setValue(programCounter.getValue() + Instruction.INSTRUCTION_LENGTH);
+         Register pc = Hart.current().programCounter;
+         pc.setValue(pc.getValue() + Instruction.INSTRUCTION_LENGTH);
       }
    
       /**
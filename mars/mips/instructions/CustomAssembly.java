@@ -1,5 +1,6 @@
    package mars.mips.instructions;
    import java.util.*;
+   import mars.mips.instructions.syscalls.RandomStreams;
 
 /**
  * Abstract class defining the template for a custom assembly language which works with LanguageLoader.
@@ -34,6 +35,17 @@ public abstract class CustomAssembly{
       instrList.addAll(instructionList);
    }
 
+   /**
+    * Random numbers for instructions of this language, from a stream kept for it by
+    * RandomStreams.  Use this rather than a new Random in an instruction: the stream is
+    * seeded by the global seed or an input recording, so runs can be repeated.
+    * @return The language's random number stream.
+    * @see RandomStreams
+    */
+   protected Random getRandom(){
+      return RandomStreams.getStream(getName());
+   }
+
    /**
     * Adds all custom-defined BasicInstructions to the instructionList ArrayList.
     * @see instructionList
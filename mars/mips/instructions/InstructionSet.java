@@ -277,6 +277,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                                                         throws ProcessingException {
          Syscall service = syscallLoader.findSyscall(number);
          if (service != null) {
+            ExecutionBudget budget = Simulator.getInstance().getExecutionBudget();
+            if (budget != null) {
+               budget.chargeSyscall();
+            }
             service.simulate(statement);
             return;
          }
@@ -614,17 +614,18 @@ public class MipsAssembly extends CustomAssembly{
                }));
          instructionList.add(
                 new BasicInstruction("ll $t1,-100($t2)",
-                "Load linked : Paired with Store Conditional (sc) to perform atomic read-modify-write.  Treated as equivalent to Load Word (lw) because MARS does not simulate multiple processors.",
+                "Load linked : Paired with Store Conditional (sc) to perform atomic read-modify-write.  Loads like Load Word (lw) and reserves the word; the reservation matters only when several harts share memory.",
             	 BasicInstructionFormat.I_FORMAT,
                 "110000 ttttt fffff ssssssssssssssss",
             	 // The ll (load link) command is supposed to be the front end of an atomic
             	 // operation completed by sc (store conditional), with success or failure
             	 // of the store depending on whether the memory block containing the
             	 // loaded word is modified in the meantime by a different processor.
-            	 // Since MARS, like SPIM simulates only a single processor, the store
-            	 // conditional will always succeed so there is no need to do anything
-            	 // special here.  In that case, ll is same as lw.  And sc does the same
-            	 // thing as sw except in addition it writes 1 into the source register.
+            	 // With a single processor, like SPIM, the store conditional always
+            	 // succeeds, so ll is the same as lw and sc does the same thing as sw
+            	 // except in addition it writes 1 into the source register.  When
+            	 // several harts share memory, Hart keeps the reservation, which any
+            	 // store to the word by any hart breaks.
                 new SimulationCode()
                {
                    public void simulate(ProgramStatement statement) throws ProcessingException
@@ -633,7 +634,7 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Hart.loadLinked(
                             RegisterFile.getValue(operands[2]) + operands[1]));
                      } 
                          catch (AddressErrorException e)
@@ -716,19 +717,20 @@ public class MipsAssembly extends CustomAssembly{
                }));
          instructionList.add(
                 new BasicInstruction("sc $t1,-100($t2)",
-                "Store conditional : Paired with Load Linked (ll) to perform atomic read-modify-write.  Stores $t1 value into effective address, then sets $t1 to 1 for success.  Always succeeds because MARS does not simulate multiple processors.",
+                "Store conditional : Paired with Load Linked (ll) to perform atomic read-modify-write.  Stores $t1 value into effective address, then sets $t1 to 1 for success.  Fails, storing nothing and setting $t1 to 0, only if several harts share memory and the word was stored to since ll.",
             	 BasicInstructionFormat.I_FORMAT,
                 "111000 ttttt fffff ssssssssssssssss",
             	 // See comments with "ll" instruction above.  "sc" is implemented
-            	 // like "sw", except that 1 is placed in the source register.
+            	 // like "sw", except that 1 (success) or 0 is placed in the source register.
                 new SimulationCode()
                {
                    public void simulate(ProgramStatement statement) throws ProcessingException
                   {
                      int[] operands = statement.getOperands();
+                     boolean stored;
                      try
                      {
-                        Globals.memory.setWord(
+                        stored = Hart.storeConditional(
                             RegisterFile.getValue(operands[2]) + operands[1],
                             RegisterFile.getValue(operands[0]));
                      } 
@@ -736,7 +738,7 @@ public class MipsAssembly extends CustomAssembly{
                         {
                            throw new ProcessingException(statement, e);
                         }
-                     RegisterFile.updateRegister(operands[0],1); // always succeeds
+                     RegisterFile.updateRegister(operands[0], stored ? 1 : 0);
                   }
                }));
          instructionList.add(
@@ -129,7 +129,7 @@ public class MIPSPlusPlus extends CustomAssembly{
                      int lower = RegisterFile.getValue(operands[1]);
                      int upper = RegisterFile.getValue(operands[2]);
 
-                     Random random = new Random();
+                     Random random = getRandom();
                      int roll = random.nextInt(upper - (lower + 1)) + lower;
                      RegisterFile.updateRegister(operands[0], result);
 
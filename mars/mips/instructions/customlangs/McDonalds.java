@@ -64,7 +64,7 @@ public class McDonalds extends CustomAssembly{
                      // $t0 stores price of order
                      int[] operands = statement.getOperands();
 
-                     Random random = new Random();
+                     Random random = getRandom();
                      int tax = random.nextInt(10) + 1;
 
                      RegisterFile.updateRegister(operands[0], tax);
@@ -122,7 +122,7 @@ public class McDonalds extends CustomAssembly{
                   {
 
                      // roll for a random toy
-                     Random random = new Random();
+                     Random random = getRandom();
                      int roll = random.nextInt(6);
                      // SystemIO.printString("Random roll: " + roll + "\n");
 
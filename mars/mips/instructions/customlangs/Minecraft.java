@@ -320,15 +320,21 @@ public class Minecraft extends CustomAssembly{
                         int[] operands = statement.getOperands();
                         int startAddress = RegisterFile.getValue(operands[1]);
                         int endAddress = RegisterFile.getValue(operands[0]) + (operands[2] << 16 >> 16);
-                        int currentAddress = startAddress;
 
-                        while (currentAddress <= endAddress) {
-                            try {
-                                Globals.memory.setWord(currentAddress, 0);
-                                currentAddress += 4;
-                            } catch (AddressErrorException e) {
-                                throw new ProcessingException(statement, e);
+                        if (startAddress > endAddress) {
+                            return;
+                        }
+                        try {
+                            if (!Memory.wordAligned(startAddress)) {
+                                throw new AddressErrorException("store address not aligned on word boundary ",
+                                        Exceptions.ADDRESS_EXCEPTION_STORE, startAddress);
                             }
+                            // Every word from startAddress up to and including the one at endAddress.
+                            long length = (((long) endAddress - startAddress) / Memory.WORD_LENGTH_BYTES + 1)
+                                    * Memory.WORD_LENGTH_BYTES;
+                            Globals.memory.fill(startAddress, 0, (int) Math.min(length, Integer.MAX_VALUE & ~3));
+                        } catch (AddressErrorException e) {
+                            throw new ProcessingException(statement, e);
                         }
                     }
                 }
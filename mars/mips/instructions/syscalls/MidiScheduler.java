@@ -0,0 +1,244 @@
+   package mars.mips.instructions.syscalls;
+   import java.io.*;
+   import javax.sound.midi.*;
+   import mars.simulator.Simulator;
+   import mars.simulator.VirtualClock;
+
+/**
+ * Plays the notes of the MidiOut syscalls, or renders them to a MIDI file.  A program
+ * that makes music may play thousands of notes, so playing one costs the simulation
+ * thread no more than putting its note on and note off events in a queue, ordered by
+ * time in arrays that grow only when more events wait than ever before.  One
+ * daemon thread of the scheduler's own sends each event to the synthesizer when its
+ * time comes, the synthesizer being opened once, on the first note.
+ * <p>
+ * Given an output file with setOutputFile(), the scheduler sends nothing to the audio
+ * device: save() writes the notes queued since the last save to the file as a
+ * standard MIDI file, timed from the first of them.  Notes for a file are timed in
+ * milliseconds by the simulator's VirtualClock if it has one, so that a run under a
+ * virtual clock renders the same file every time, without waiting for a note.  Notes
+ * for the audio device are always timed by the host, and MidiOutSync waits for each
+ * in real time, virtual clock or not.
+ */
+
+    public class MidiScheduler implements Runnable {
+      private static final int INITIAL_CAPACITY = 256; // events, a power of 2
+      private static final int CHANNEL = 0;
+      private static MidiScheduler instance = null;
+
+      // The queue, a binary heap on event time and then order of queueing.  An event
+   	// packs a short message as status | data1 << 8 | data2 << 16.
+      private long[] times = new long[INITIAL_CAPACITY];
+      private long[] orders = new long[INITIAL_CAPACITY];
+      private int[] messages = new int[INITIAL_CAPACITY];
+      private int size = 0;
+      private long queued = 0; // events queued so far, for their order
+      private int instrument = -1; // last instrument selected, in queue order
+      private File outputFile = null;
+      private Thread thread = null;
+      private Receiver receiver = null;
+      private boolean unavailable = false;
+
+      private MidiScheduler() {
+      }
+
+   	/**
+   	 * @return the one scheduler
+   	 */
+       public static synchronized MidiScheduler getInstance() {
+         if (instance == null) {
+            instance = new MidiScheduler();
+         }
+         return instance;
+      }
+
+   	/**
+   	 * Render notes to a file instead of playing them, or no longer if null.  Notes
+   	 * already queued are discarded.
+   	 * @param file the MIDI file for save() to write, or null to play notes on the
+   	 * audio device (the default)
+   	 */
+       public synchronized void setOutputFile(File file) {
+         outputFile = file;
+         size = 0;
+         instrument = -1;
+      }
+
+   	/**
+   	 * @return true if notes are rendered to a file, false if they are played on the
+   	 * audio device
+   	 */
+       public synchronized boolean isRenderingToFile() {
+         return outputFile != null;
+      }
+
+   	/**
+   	 * Queue a note, to start now.
+   	 * @param pitch pitch, 0-127 where 60 is middle C
+   	 * @param duration duration in milliseconds
+   	 * @param instrument instrument (patch), 0-127
+   	 * @param volume volume (MIDI velocity), 0-127
+   	 */
+       public synchronized void play(byte pitch, int duration, byte instrument, byte volume) {
+         long now = currentTimeMillis();
+         if (instrument != this.instrument) {
+            add(now, ShortMessage.PROGRAM_CHANGE | CHANNEL, instrument, 0);
+            this.instrument = instrument;
+         }
+         add(now, ShortMessage.NOTE_ON | CHANNEL, pitch, volume);
+         add(now + duration, ShortMessage.NOTE_OFF | CHANNEL, pitch, volume);
+         if (outputFile == null && thread == null) {
+            thread = new Thread(this, "MARS MIDI scheduler");
+            thread.setDaemon(true);
+            thread.start();
+         }
+         notify();
+      }
+
+   	/**
+   	 * Write the notes queued since the last save to the output file, if one is set
+   	 * and there are any, and start anew.
+   	 * @throws IOException if the file cannot be written
+   	 */
+       public synchronized void save() throws IOException {
+         if (outputFile == null || size == 0) {
+            return;
+         }
+         try {
+            // SMPTE 25 frames per second of 40 ticks each: a tick is a millisecond
+            Sequence sequence = new Sequence(Sequence.SMPTE_25, 40);
+            Track track = sequence.createTrack();
+            long start = times[0];
+            while (size > 0) {
+               long time = times[0];
+               track.add(new MidiEvent(toMessage(removeFirst()), time - start));
+            }
+            MidiSystem.write(sequence, 0, outputFile);
+         }
+             catch (InvalidMidiDataException e) {
+               throw new IOException(e.getMessage());
+            }
+         finally {
+            size = 0;
+            instrument = -1;
+         }
+      }
+
+   	/**
+   	 * Send the events of the queue to the synthesizer as their times come.  Run by the
+   	 * scheduler's thread.
+   	 */
+       public void run() {
+         while (true) {
+            int message;
+            synchronized (this) {
+               try {
+                  while (outputFile != null || size == 0 || times[0] > currentTimeMillis()) {
+                     if (outputFile != null || size == 0) {
+                        wait();
+                     }
+                     else {
+                        wait(Math.max(1, times[0] - currentTimeMillis()));
+                     }
+                  }
+               }
+                   catch (InterruptedException e) {
+                     return;
+                  }
+               message = removeFirst();
+            }
+            send(message);
+         }
+      }
+
+      // Send an event to the synthesizer, opening it on first use.  If there is none, say
+   	// so once and play nothing.
+       private void send(int message) {
+         if (unavailable) {
+            return;
+         }
+         try {
+            if (receiver == null) {
+               receiver = MidiSystem.getReceiver();
+            }
+            receiver.send(toMessage(message), -1);
+         }
+             catch (MidiUnavailableException mue) {
+               unavailable = true;
+               mue.printStackTrace();
+            }
+             catch (InvalidMidiDataException imde) {
+               imde.printStackTrace();
+            }
+      }
+
+       private static ShortMessage toMessage(int message) throws InvalidMidiDataException {
+         ShortMessage shortMessage = new ShortMessage();
+         shortMessage.setMessage(message & 0xFF, (message >>> 8) & 0xFF, (message >>> 16) & 0xFF);
+         return shortMessage;
+      }
+
+       private long currentTimeMillis() {
+         VirtualClock clock = Simulator.getInstance().getClock();
+         return (outputFile == null || clock == null) ? System.currentTimeMillis() : clock.currentTimeMillis();
+      }
+
+      // Add an event to the heap, growing it if full.
+       private void add(long time, int status, int data1, int data2) {
+         if (size == times.length) {
+            long[] grownTimes = new long[2 * size];
+            long[] grownOrders = new long[2 * size];
+            int[] grownMessages = new int[2 * size];
+            System.arraycopy(times, 0, grownTimes, 0, size);
+            System.arraycopy(orders, 0, grownOrders, 0, size);
+            System.arraycopy(messages, 0, grownMessages, 0, size);
+            times = grownTimes;
+            orders = grownOrders;
+            messages = grownMessages;
+         }
+         long order = queued++;
+         int i = size++;
+         while (i > 0 && times[(i - 1) / 2] > time) { // earlier events queued first go first
+            move((i - 1) / 2, i);
+            i = (i - 1) / 2;
+         }
+         times[i] = time;
+         orders[i] = order;
+         messages[i] = status | (data1 & 0xFF) << 8 | (data2 & 0xFF) << 16;
+      }
+
+      // Remove the earliest event from the heap.
+       private int removeFirst() {
+         int first = messages[0];
+         size--;
+         long time = times[size];
+         long order = orders[size];
+         int message = messages[size];
+         int i = 0;
+         while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && before(times[child + 1], orders[child + 1], times[child], orders[child])) {
+               child++;
+            }
+            if (!before(times[child], orders[child], time, order)) {
+               break;
+            }
+            move(child, i);
+            i = child;
+         }
+         times[i] = time;
+         orders[i] = order;
+         messages[i] = message;
+         return first;
+      }
+
+       private static boolean before(long time, long order, long otherTime, long otherOrder) {
+         return time < otherTime || (time == otherTime && order < otherOrder);
+      }
+
+       private void move(int from, int to) {
+         times[to] = times[from];
+         orders[to] = orders[from];
+         messages[to] = messages[from];
+      }
+   }
@@ -1,5 +1,8 @@
    package mars.mips.instructions.syscalls;
 	import java.util.HashMap;
+	import java.util.Random;
+	import java.util.SplittableRandom;
+	import mars.util.SystemIO;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -31,13 +34,146 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 /** 
- * This small class serves only to hold a static HashMap for storing
- * random number generators for use by all the random number generator
- * syscalls.
+ * This small class holds the random number generators for use by all the random
+ * number generator syscalls, and by the instructions of custom languages.
+ * <p>
+ * Syscall streams are numbered by the index the program gives in $a0 and kept in a
+ * table keyed by that int, so that finding a stream costs no allocation.  A custom
+ * language has a stream of its own, found by its name.  A stream the program does
+ * not seed itself (with syscall 40) gets its seed from SystemIO.newRandomSeed(), which
+ * takes it from an input recording when replaying one, and otherwise from the seed
+ * generator here.  That generator is seeded unpredictably unless a global seed is set
+ * (the command line option <tt>seed&lt;n&gt;</tt>), in which case each run starts it
+ * afresh from the global seed, and so creates the same streams in the same order.
+ * <p>
+ * The streams are java.util.Random, so that a program that seeds its streams gets
+ * the numbers it always has.
  */
  
     public class RandomStreams {
-      /** Collection of pseudorandom number streams available for use in Rand-type syscalls.
-       * The streams are by default not seeded. */
-		 static final HashMap randomStreams = new HashMap();
+      private static final int INITIAL_CAPACITY = 16; // a power of 2
+      // Syscall streams, by open addressing on the stream index.
+      private static int[] indexes = new int[INITIAL_CAPACITY];
+      private static Random[] streams = new Random[INITIAL_CAPACITY];
+      private static int streamCount = 0;
+      private static int lastIndex;         // the stream last found, which is usually
+      private static Random lastStream = null; // the one wanted next
+      // Custom language streams, by language name.
+      private static final HashMap namedStreams = new HashMap();
+      private static Long globalSeed = null;
+      private static SplittableRandom seedSource = new SplittableRandom();
+		 
+      /** Return the stream of the given index, creating it if need be.  A stream is
+       * created with a seed from SystemIO.newRandomSeed(), so that input recording can
+       * save it and a replay can use it again.
+       * @param index the index of the stream
+       * @return the stream */
+       static synchronized Random getStream(int index) {
+         if (lastStream != null && lastIndex == index) {
+            return lastStream;
+         }
+         int slot = find(index);
+         Random stream = streams[slot];
+         if (stream == null) {
+            stream = new Random(SystemIO.newRandomSeed());
+            put(index, stream);
+         }
+         lastIndex = index;
+         lastStream = stream;
+         return stream;
+      }
+
+      /** Seed the stream of the given index, creating it if need be.
+       * @param index the index of the stream
+       * @param seed the seed */
+       static synchronized void setSeed(int index, long seed) {
+         Random stream = streams[find(index)];
+         if (stream == null) {
+            put(index, new Random(seed));
+         } 
+         else {
+            stream.setSeed(seed);
+         }
+      }
+
+      /** Return the stream of a custom language, creating it if need be, seeded as the
+       * syscall streams are.  Instructions should use it rather than creating a
+       * generator each time they execute, which costs time and gives numbers that a
+       * global seed or a replay cannot repeat.
+       * @param name the name of the language
+       * @return the stream */
+       public static synchronized Random getStream(String name) {
+         Random stream = (Random) namedStreams.get(name);
+         if (stream == null) {
+            stream = new Random(SystemIO.newRandomSeed());
+            namedStreams.put(name, stream);
+         }
+         return stream;
+      }
+
+      /** Return a seed for a new stream from the seed generator.  Used by
+       * SystemIO.newRandomSeed() when not replaying a recording.
+       * @return the seed */
+       public static synchronized long nextSeed() {
+         return seedSource.nextLong();
+      }
+
+      /** Set the global seed, from which each run seeds the streams it does not seed
+       * itself, or set none so that they are seeded unpredictably.  Takes effect at once
+       * and then at every reset().
+       * @param seed the global seed, or null for none (the default) */
+       public static synchronized void setGlobalSeed(Long seed) {
+         globalSeed = seed;
+         reset();
+      }
+
+      /** @return the global seed, or null if none is set */
+       public static synchronized Long getGlobalSeed() {
+         return globalSeed;
+      }
+		
+      /** Discard all streams, so that each is created anew when next used, and start
+       * the seed generator again from the global seed if one is set. */
+       public static synchronized void reset() {
+         indexes = new int[INITIAL_CAPACITY];
+         streams = new Random[INITIAL_CAPACITY];
+         streamCount = 0;
+         lastStream = null;
+         namedStreams.clear();
+         if (globalSeed != null) {
+            seedSource = new SplittableRandom(globalSeed.longValue());
+         }
+      }
+
+      // Slot of the stream of the given index, or the empty slot where it would go.
+       private static int find(int index) {
+         int mask = streams.length - 1;
+         int slot = (index * 0x9E3779B9) >>> 16 & mask;
+         while (streams[slot] != null && indexes[slot] != index) {
+            slot = (slot + 1) & mask;
+         }
+         return slot;
+      }
+
+      // Add a stream not in the table, growing it to stay at most half full.
+       private static int put(int index, Random stream) {
+         if (2 * (streamCount + 1) > streams.length) {
+            int[] oldIndexes = indexes;
+            Random[] oldStreams = streams;
+            indexes = new int[2 * oldStreams.length];
+            streams = new Random[2 * oldStreams.length];
+            for (int i = 0; i < oldStreams.length; i++) {
+               if (oldStreams[i] != null) {
+                  int slot = find(oldIndexes[i]);
+                  indexes[slot] = oldIndexes[i];
+                  streams[slot] = oldStreams[i];
+               }
+            }
+         }
+         int slot = find(index);
+         indexes[slot] = index;
+         streams[slot] = stream;
+         streamCount++;
+         return slot;
+      }
    }
\ No newline at end of file
@@ -0,0 +1,36 @@
+   package mars.mips.instructions.syscalls;
+   import mars.simulator.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to free the heap block whose address is in $a0, as allocated by Malloc
+ * or Realloc.  Freeing address 0 does nothing; freeing any other address that is
+ * not that of an allocated block, e.g. a second time, is an error.
+ *
+ * @see HeapAllocator
+ */
+ 
+    public class SyscallFree extends AbstractSyscall {
+   /**
+    * Build an instance of the Free syscall.  Default service number
+    * is 62 and name is "Free".
+    */
+       public SyscallFree() {
+         super(62, "Free");
+      }
+      
+   /**
+   * Performs syscall function to free the heap block whose address is in $a0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         try {
+            Globals.memory.getHeapAllocator().free(RegisterFile.getValue(4));
+         } 
+             catch (IllegalArgumentException iae) {
+               throw new ProcessingException(statement,
+                                       iae.getMessage()+" (syscall "+this.getNumber()+")",
+                                       Exceptions.SYSCALL_EXCEPTION);
+            }
+      }
+   }
@@ -0,0 +1,27 @@
+   package mars.mips.instructions.syscalls;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to write any output buffered for the file whose descriptor is in $a0 and
+ * force it to the storage device.  $v0 is set to 0, or -1 if error.  Output to a
+ * file is otherwise written when its buffer fills and when the file is closed.
+ */
+ 
+    public class SyscallFsync extends AbstractSyscall {
+   /**
+    * Build an instance of the Fsync syscall.  Default service number
+    * is 65 and name is "Fsync".
+    */
+       public SyscallFsync() {
+         super(65, "Fsync");
+      }
+      
+   /**
+   * Performs syscall function to flush file descriptor $a0 to its file.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         RegisterFile.updateRegister(2, SystemIO.syncFile(RegisterFile.getValue(4)));
+      }
+   }
@@ -0,0 +1,27 @@
+   package mars.mips.instructions.syscalls;
+   import mars.simulator.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to put the number of the executing hart into $v0 and the number of
+ * harts sharing memory into $v1.  Outside a multi-hart simulation these are 0 and 1.
+ */
+ 
+    public class SyscallHartId extends AbstractSyscall {
+   /**
+    * Build an instance of the HartId syscall.  Default service number
+    * is 60 and name is "HartId".
+    */
+       public SyscallHartId() {
+         super(60, "HartId");
+      }
+      
+   /**
+   * Performs syscall function to put the hart number into $v0 and the hart count into $v1.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         RegisterFile.updateRegister(2, Hart.current().getId());
+         RegisterFile.updateRegister(3, Hart.getHarts().length);
+      }
+   }
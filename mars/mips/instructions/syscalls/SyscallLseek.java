@@ -0,0 +1,32 @@
+   package mars.mips.instructions.syscalls;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to set the position of the next read or write in the file whose descriptor
+ * is in $a0.  $a1 is the offset and $a2 what it is relative to: 0 the start of the
+ * file, 1 the current position, 2 the end.  The new position, or -1 if error, is
+ * put into $v0.  Standard input and output cannot be repositioned.
+ */
+ 
+    public class SyscallLseek extends AbstractSyscall {
+   /**
+    * Build an instance of the Lseek syscall.  Default service number
+    * is 64 and name is "Lseek".
+    */
+       public SyscallLseek() {
+         super(64, "Lseek");
+      }
+      
+   /**
+   * Performs syscall function to reposition file descriptor $a0 by offset $a1 from whence $a2.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int position = SystemIO.seekFile(
+                                 RegisterFile.getValue(4), // fd
+                                 RegisterFile.getValue(5), // offset
+                                 RegisterFile.getValue(6)); // whence
+         RegisterFile.updateRegister(2, position);
+      }
+   }
@@ -0,0 +1,38 @@
+   package mars.mips.instructions.syscalls;
+   import mars.simulator.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to allocate a block of at least the number of bytes in $a0 from the heap,
+ * putting its address into $v0, or 0 if the heap is exhausted.  Unlike Sbrk, the
+ * block can be given back with Free.
+ *
+ * @see HeapAllocator
+ */
+ 
+    public class SyscallMalloc extends AbstractSyscall {
+   /**
+    * Build an instance of the Malloc syscall.  Default service number
+    * is 61 and name is "Malloc".
+    */
+       public SyscallMalloc() {
+         super(61, "Malloc");
+      }
+      
+   /**
+   * Performs syscall function to allocate a block of the size in $a0, putting its address into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int address = 0;
+         try {
+            address = Globals.memory.getHeapAllocator().malloc(RegisterFile.getValue(4));
+         } 
+             catch (IllegalArgumentException iae) {
+               throw new ProcessingException(statement,
+                                       iae.getMessage()+" (syscall "+this.getNumber()+")",
+                                       Exceptions.SYSCALL_EXCEPTION);
+            }
+         RegisterFile.updateRegister(2, address);
+      }
+   }
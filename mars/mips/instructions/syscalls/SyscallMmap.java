@@ -0,0 +1,55 @@
+   package mars.mips.instructions.syscalls;
+   import mars.simulator.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+   import java.io.IOException;
+
+/** 
+ * Service to map the file whose null-terminated name is at the address in $a0 into
+ * the data segment, so that its contents can be read in place without a Read into a
+ * buffer.  $a1 is 0 for a read-only mapping, to which stores fail with an address
+ * exception, or 1 for a copy-on-write mapping, whose stores change memory but never
+ * the file.  The address of the first byte, or -1 if error, is put into $v0 and the
+ * length of the file into $v1.  Each 4K page is copied from the file the first time
+ * it is touched, so later changes to the file show only in pages not yet touched.
+ * Mappings last until memory is cleared.
+ *
+ * @see Memory#mapFile(String, boolean)
+ */
+ 
+    public class SyscallMmap extends AbstractSyscall {
+   /**
+    * Build an instance of the Mmap syscall.  Default service number
+    * is 66 and name is "Mmap".
+    */
+       public SyscallMmap() {
+         super(66, "Mmap");
+      }
+      
+   /**
+   * Performs syscall function to map the file named at $a0, putting its address into $v0 and length into $v1.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         String filename;
+         try {
+            filename = Globals.memory.getCString(RegisterFile.getValue(4));
+         } 
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+         int address = -1;
+         int length = 0;
+         try {
+            address = Globals.memory.mapFile(filename, RegisterFile.getValue(5) != 0);
+            length = (int) new java.io.File(filename).length();
+         } 
+             catch (IOException e) {
+               // like Open, leave it to the program to check for -1
+            }
+             catch (IllegalArgumentException e) {
+               // no room left for the file, likewise
+            }
+         RegisterFile.updateRegister(2, address);
+         RegisterFile.updateRegister(3, length);
+      }
+   }
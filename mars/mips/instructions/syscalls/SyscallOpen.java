@@ -69,7 +69,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 			 // Write/append  flag = 9
           // This code implements the modes:
           // NO MODES IMPLEMENTED  -- MODE IS IGNORED
-          // Returns in $v0: a "file descriptor" in the range 0 to SystemIO.SYSCALL_MAXFILES-1,
+          // Returns in $v0: a "file descriptor" in the range 0 to SystemIO.SYSCALL_MAXOPENFILES-1,
           // or -1 if error
          String filename = new String(); // = "";
          int byteAddress = RegisterFile.getValue(4);
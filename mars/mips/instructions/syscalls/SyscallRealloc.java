@@ -0,0 +1,43 @@
+   package mars.mips.instructions.syscalls;
+   import mars.simulator.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to change the size of the heap block whose address is in $a0 to the
+ * number of bytes in $a1, putting the block's (possibly new) address into $v0.
+ * Contents are kept up to the smaller of the two sizes.  If $a0 is 0 this is the
+ * same as Malloc; if $a1 is 0 the block is freed and $v0 is 0.  If the heap is
+ * exhausted $v0 is 0 and the block is left as it was.
+ *
+ * @see HeapAllocator
+ */
+ 
+    public class SyscallRealloc extends AbstractSyscall {
+   /**
+    * Build an instance of the Realloc syscall.  Default service number
+    * is 63 and name is "Realloc".
+    */
+       public SyscallRealloc() {
+         super(63, "Realloc");
+      }
+      
+   /**
+   * Performs syscall function to resize the heap block at $a0 to $a1 bytes, putting its address into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int address = 0;
+         try {
+            address = Globals.memory.getHeapAllocator().realloc(RegisterFile.getValue(4), RegisterFile.getValue(5));
+         } 
+             catch (IllegalArgumentException iae) {
+               throw new ProcessingException(statement,
+                                       iae.getMessage()+" (syscall "+this.getNumber()+")",
+                                       Exceptions.SYSCALL_EXCEPTION);
+            }
+             catch (AddressErrorException e) {
+               throw new ProcessingException(statement, e);
+            }
+         RegisterFile.updateRegister(2, address);
+      }
+   }
@@ -36,6 +36,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 /**
  * Service to cause the MARS Java thread to sleep for (at least) the specified number of milliseconds.
  * This timing will not be precise as the Java implementation will add some overhead.
+ * If the simulator has a VirtualClock, the clock is advanced instead and no time passes.
  *
  */
 
@@ -53,7 +54,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
           // Input arguments: $a0 is the length of time to sleep in milliseconds.
-
+               VirtualClock clock = Simulator.getInstance().getClock();
+               if (clock != null)
+               {
+                  clock.sleep(RegisterFile.getValue(4));
+                  return;
+               }
                try
                {
                   Thread.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
@@ -0,0 +1,371 @@
+   package mars.simulator;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Timing model of a two-level cache hierarchy: split level 1 instruction and data
+ * caches backed by a unified level 2 cache and main memory.  Attached to the
+ * Simulator, it sees every instruction fetch and every data load and store of the
+ * running program and produces an estimated cycle count, from which CPI and
+ * average memory access time (AMAT) follow.
+ * <p>
+ * Each cache has a size, block size, set size (associativity) and hit latency, and
+ * replaces the least recently used block of a set.  The data side caches are
+ * write-back or write-through, and write-allocate or not, independently.  A read
+ * miss costs the hit latency plus the time to read the block from the next level;
+ * main memory costs a fixed latency.  Writes sent to the next level (write-through
+ * stores, stores that are not allocated, and write-backs of dirty blocks) are
+ * assumed absorbed by a write buffer: they update the lower levels and are counted,
+ * but add no cycles.  Every instruction takes one cycle plus the cycles its fetch
+ * and data access take beyond a level 1 hit.
+ * <p>
+ * All state and counters are kept in primitive arrays so the model can keep up
+ * with full-speed simulation.
+ */
+
+    public class CacheHierarchy {
+   	/** Cache identifier: level 1 instruction cache */
+      public static final int L1I = 0;
+   	/** Cache identifier: level 1 data cache */
+      public static final int L1D = 1;
+   	/** Cache identifier: unified level 2 cache */
+      public static final int L2 = 2;
+      private static final int MEMORY = 3;
+      private static final int CACHES = 3;
+      private static final String[] NAMES = {"L1I", "L1D", "L2"};
+
+   	/** Counter: reads (instruction fetches count as reads) */
+      public static final int READS = 0;
+   	/** Counter: reads that missed */
+      public static final int READ_MISSES = 1;
+   	/** Counter: writes */
+      public static final int WRITES = 2;
+   	/** Counter: writes that missed */
+      public static final int WRITE_MISSES = 3;
+   	/** Counter: dirty blocks written back to the next level when replaced */
+      public static final int WRITEBACKS = 4;
+      private static final int COUNTERS = 5;
+
+      // Hierarchy receiving data accesses from Memory; set while installed in the Simulator.
+      private static volatile CacheHierarchy current = null;
+
+      // Configuration, indexed by cache.
+      private final int[] sizeInBytes = new int[CACHES];
+      private final int[] blockSizeInBytes = new int[CACHES];
+      private final int[] setSizeInBlocks = new int[CACHES];
+      private final int[] hitLatency = new int[CACHES];
+      private final boolean[] writeBack = new boolean[CACHES];
+      private final boolean[] writeAllocate = new boolean[CACHES];
+      private final int[] offsetBits = new int[CACHES];
+      private final int[] setMask = new int[CACHES];
+      private final int[] tagShift = new int[CACHES];
+      private int memoryLatency;
+
+      // Block state, indexed by cache then block.
+      private final int[][] tags = new int[CACHES][];
+      private final boolean[][] valid = new boolean[CACHES][];
+      private final boolean[][] dirty = new boolean[CACHES][];
+      private final long[][] lastUsed = new long[CACHES][];
+      private final long[] clock = new long[CACHES];
+
+      private final long[] counts = new long[CACHES * COUNTERS];
+      private long memoryReads, memoryWrites;
+      private long instructions, cycles;
+      private long fetchCycles, dataAccesses, dataCycles;
+
+   	/**
+   	 * Create a hierarchy with a typical configuration: 8 KB 2-way L1 caches with
+   	 * 32-byte blocks and 1-cycle hits, a 256 KB 8-way L2 with 64-byte blocks and
+   	 * 10-cycle hits, both write-back and write-allocate, and 100-cycle memory.
+   	 */
+       public CacheHierarchy() {
+         configure(L1I, 8192, 32, 2, 1);
+         configure(L1D, 8192, 32, 2, 1);
+         configure(L2, 256 * 1024, 64, 8, 10);
+         setWritePolicy(L1D, true, true);
+         setWritePolicy(L2, true, true);
+         memoryLatency = 100;
+      }
+
+   	/**
+   	 * Configure one cache.  The cache is emptied.
+   	 * @param cache L1I, L1D or L2
+   	 * @param sizeInBytes total capacity, a power of 2
+   	 * @param blockSizeInBytes block size, a power of 2 and at least a word
+   	 * @param setSizeInBlocks associativity, a power of 2 (1 for direct mapped)
+   	 * @param hitLatency cycles taken by a hit
+   	 * @throws IllegalArgumentException if the configuration is not valid
+   	 */
+       public void configure(int cache, int sizeInBytes, int blockSizeInBytes, int setSizeInBlocks, int hitLatency) {
+         if (!powerOf2(sizeInBytes) || !powerOf2(blockSizeInBytes) || !powerOf2(setSizeInBlocks) ||
+             blockSizeInBytes < Memory.WORD_LENGTH_BYTES || sizeInBytes < blockSizeInBytes * setSizeInBlocks ||
+             hitLatency < 0) {
+            throw new IllegalArgumentException("invalid "+NAMES[cache]+" configuration: "+sizeInBytes+" bytes, "+
+                                               blockSizeInBytes+"-byte blocks, "+setSizeInBlocks+"-way");
+         }
+         int blocks = sizeInBytes / blockSizeInBytes;
+         this.sizeInBytes[cache] = sizeInBytes;
+         this.blockSizeInBytes[cache] = blockSizeInBytes;
+         this.setSizeInBlocks[cache] = setSizeInBlocks;
+         this.hitLatency[cache] = hitLatency;
+         offsetBits[cache] = Integer.numberOfTrailingZeros(blockSizeInBytes);
+         setMask[cache] = blocks / setSizeInBlocks - 1;
+         tagShift[cache] = offsetBits[cache] + Integer.numberOfTrailingZeros(blocks / setSizeInBlocks);
+         tags[cache] = new int[blocks];
+         valid[cache] = new boolean[blocks];
+         dirty[cache] = new boolean[blocks];
+         lastUsed[cache] = new long[blocks];
+      }
+
+   	/**
+   	 * Set the write policies of a data-side cache.  The instruction cache is never written.
+   	 * @param cache L1D or L2
+   	 * @param writeBack true for write-back, false for write-through
+   	 * @param writeAllocate true to read the block into the cache on a write miss
+   	 */
+       public void setWritePolicy(int cache, boolean writeBack, boolean writeAllocate) {
+         this.writeBack[cache] = writeBack;
+         this.writeAllocate[cache] = writeAllocate;
+      }
+
+   	/**
+   	 * @param cycles cycles taken to read a block from main memory
+   	 */
+       public void setMemoryLatency(int cycles) {
+         memoryLatency = cycles;
+      }
+
+       private static boolean powerOf2(int n) {
+         return n > 0 && (n & (n - 1)) == 0;
+      }
+
+   	/**
+   	 * Empty all caches and clear all counters.
+   	 */
+       public void reset() {
+         for (int c = 0; c < CACHES; c++) {
+            Arrays.fill(valid[c], false);
+            Arrays.fill(dirty[c], false);
+            Arrays.fill(lastUsed[c], 0);
+            clock[c] = 0;
+         }
+         Arrays.fill(counts, 0);
+         memoryReads = memoryWrites = 0;
+         instructions = cycles = 0;
+         fetchCycles = dataAccesses = dataCycles = 0;
+      }
+
+      // Called by Simulator.setCacheHierarchy().
+       static void install(CacheHierarchy caches) {
+         current = caches;
+      }
+
+   	/**
+   	 * Called by Memory for every data load and store, whether or not Observers
+   	 * are registered.  Only accesses by the executing MIPS program are timed.
+   	 * @param type AccessNotice.READ or AccessNotice.WRITE
+   	 * @param address memory address accessed
+   	 * @param length number of bytes accessed
+   	 */
+       public static void dataAccess(int type, int address, int length) {
+         CacheHierarchy caches = current;
+         if (caches != null && Simulator.isExecutionThread()) {
+            int time = (type == AccessNotice.WRITE) ? caches.write(L1D, address) : caches.read(L1D, address);
+            caches.dataAccesses++;
+            caches.dataCycles += time;
+            caches.cycles += time - caches.hitLatency[L1D];
+         }
+      }
+
+   	/**
+   	 * Time the fetch of the instruction at pc, and the instruction's base cycle.
+   	 * Called from the simulation loop.
+   	 * @param pc address of the instruction about to be executed
+   	 */
+       public void fetch(int pc) {
+         int time = read(L1I, pc);
+         instructions++;
+         fetchCycles += time;
+         cycles += 1 + time - hitLatency[L1I];
+      }
+
+      // Read the block containing address from a cache, filling it on a miss.
+   	// Returns the cycles taken.
+       private int read(int cache, int address) {
+         if (cache == MEMORY) {
+            memoryReads++;
+            return memoryLatency;
+         }
+         counts[cache * COUNTERS + READS]++;
+         int block = lookup(cache, address);
+         if (block >= 0) {
+            return hitLatency[cache];
+         }
+         counts[cache * COUNTERS + READ_MISSES]++;
+         int time = hitLatency[cache] + read(next(cache), address);
+         fill(cache, address);
+         return time;
+      }
+
+      // Write a word of the block containing address to a cache, according to its
+   	// write policies.  Returns the cycles taken, excluding buffered writes below.
+       private int write(int cache, int address) {
+         if (cache == MEMORY) {
+            memoryWrites++;
+            return 0;
+         }
+         counts[cache * COUNTERS + WRITES]++;
+         int time = hitLatency[cache];
+         int block = lookup(cache, address);
+         if (block < 0) {
+            counts[cache * COUNTERS + WRITE_MISSES]++;
+            if (!writeAllocate[cache]) {
+               write(next(cache), address);
+               return time;
+            }
+            time += read(next(cache), address);
+            block = fill(cache, address);
+         }
+         if (writeBack[cache]) {
+            dirty[cache][block] = true;
+         }
+         else {
+            write(next(cache), address);
+         }
+         return time;
+      }
+
+       private static int next(int cache) {
+         return (cache == L2) ? MEMORY : L2;
+      }
+
+      // Returns the block of the cache holding address, marking it used, or -1.
+       private int lookup(int cache, int address) {
+         int tag = address >>> tagShift[cache];
+         int first = ((address >>> offsetBits[cache]) & setMask[cache]) * setSizeInBlocks[cache];
+         int last = first + setSizeInBlocks[cache];
+         int[] blockTags = tags[cache];
+         boolean[] blockValid = valid[cache];
+         for (int block = first; block < last; block++) {
+            if (blockValid[block] && blockTags[block] == tag) {
+               lastUsed[cache][block] = ++clock[cache];
+               return block;
+            }
+         }
+         return -1;
+      }
+
+      // Place the block containing address in the cache, replacing the least recently
+   	// used block of its set and writing it back first if dirty.  Returns the block.
+       private int fill(int cache, int address) {
+         int set = (address >>> offsetBits[cache]) & setMask[cache];
+         int first = set * setSizeInBlocks[cache];
+         int last = first + setSizeInBlocks[cache];
+         long[] used = lastUsed[cache];
+         int victim = first;
+         for (int block = first; block < last; block++) {
+            if (!valid[cache][block]) {
+               victim = block;
+               break;
+            }
+            if (used[block] < used[victim]) {
+               victim = block;
+            }
+         }
+         if (valid[cache][victim] && dirty[cache][victim]) {
+            counts[cache * COUNTERS + WRITEBACKS]++;
+            write(next(cache), (tags[cache][victim] << tagShift[cache]) | (set << offsetBits[cache]));
+         }
+         tags[cache][victim] = address >>> tagShift[cache];
+         valid[cache][victim] = true;
+         dirty[cache][victim] = false;
+         used[victim] = ++clock[cache];
+         return victim;
+      }
+
+   	/**
+   	 * @param cache L1I, L1D or L2
+   	 * @param counter READS, READ_MISSES, WRITES, WRITE_MISSES or WRITEBACKS
+   	 * @return value of the counter
+   	 */
+       public long getCount(int cache, int counter) {
+         return counts[cache * COUNTERS + counter];
+      }
+
+   	/**
+   	 * @param cache L1I, L1D or L2
+   	 * @return misses divided by accesses, 0 if there were none
+   	 */
+       public double getMissRate(int cache) {
+         long accesses = getCount(cache, READS) + getCount(cache, WRITES);
+         long misses = getCount(cache, READ_MISSES) + getCount(cache, WRITE_MISSES);
+         return (accesses == 0) ? 0.0 : misses / (double) accesses;
+      }
+
+   	/** @return number of blocks read from main memory */
+       public long getMemoryReadCount() {
+         return memoryReads;
+      }
+   	/** @return number of writes that reached main memory */
+       public long getMemoryWriteCount() {
+         return memoryWrites;
+      }
+   	/** @return number of instructions timed */
+       public long getInstructionCount() {
+         return instructions;
+      }
+   	/** @return estimated number of cycles taken by the instructions timed */
+       public long getCycleCount() {
+         return cycles;
+      }
+   	/** @return estimated cycles per instruction, 0 if none were timed */
+       public double getCPI() {
+         return (instructions == 0) ? 0.0 : cycles / (double) instructions;
+      }
+   	/** @return average cycles per instruction fetch */
+       public double getInstructionAMAT() {
+         return (instructions == 0) ? 0.0 : fetchCycles / (double) instructions;
+      }
+   	/** @return average cycles per data load or store */
+       public double getDataAMAT() {
+         return (dataAccesses == 0) ? 0.0 : dataCycles / (double) dataAccesses;
+      }
+   	/** @return average cycles per memory access of either kind */
+       public double getAMAT() {
+         long accesses = instructions + dataAccesses;
+         return (accesses == 0) ? 0.0 : (fetchCycles + dataCycles) / (double) accesses;
+      }
+
+   	/**
+   	 * Write the configuration, per-cache counts and timing estimates.
+   	 * @param out destination; flushed but not closed
+   	 */
+       public void writeReport(PrintWriter out) {
+         out.println("cache   size  block  ways  policy  latency     accesses       misses  miss rate  writebacks");
+         for (int c = 0; c < CACHES; c++) {
+            String policy = (c == L1I) ? "  -     " : ("  " + (writeBack[c] ? "WB" : "WT") + "/" + (writeAllocate[c] ? "WA " : "NWA"));
+            out.println(NAMES[c] + pad(sizeInBytes[c], 12 - NAMES[c].length()) + pad(blockSizeInBytes[c], 7) +
+                        pad(setSizeInBlocks[c], 6) + policy + pad(hitLatency[c], 9) +
+                        pad(getCount(c, READS) + getCount(c, WRITES), 13) +
+                        pad(getCount(c, READ_MISSES) + getCount(c, WRITE_MISSES), 13) +
+                        String.format("%10.2f%%", 100.0 * getMissRate(c)) + pad(getCount(c, WRITEBACKS), 12));
+         }
+         out.println("memory: " + memoryLatency + "-cycle latency, " + memoryReads + " block reads, " +
+                     memoryWrites + " writes");
+         out.println("instructions " + instructions + ", estimated cycles " + cycles +
+                     String.format(", CPI %.3f", getCPI()));
+         out.println(String.format("AMAT %.3f cycles (instruction fetch %.3f, data %.3f)",
+                     getAMAT(), getInstructionAMAT(), getDataAMAT()));
+         out.flush();
+      }
+
+       private static String pad(long value, int width) {
+         String s = Long.toString(value);
+         StringBuffer result = new StringBuffer();
+         for (int i = s.length(); i < width; i++) {
+            result.append(' ');
+         }
+         return result.append(s).toString();
+      }
+   }
@@ -0,0 +1,232 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Record of which instructions have been executed.  Once installed with
+ * Simulator.setCoverage(), the simulation loop calls executed() after every MIPS
+ * instruction, which sets one bit in a bitset over the text segment.  Coverage
+ * accumulates across runs of the same assembled program and is cleared
+ * automatically when a different (or reassembled) program is run.
+ * <p>
+ * Coverage is rendered by source line: a line is covered if any basic instruction
+ * generated from it was executed.  The text segment display shades lines this way,
+ * and writeLcov() produces a tracefile in the LCOV format understood by common
+ * coverage tools.
+ */
+
+    public class Coverage {
+      private ArrayList program;  // machine list of the program being covered
+      private int textBase;
+      private long[] textBits;
+      private long[] kernelBits;
+      private boolean executedAny;
+
+   	/**
+   	 * Create empty coverage.
+   	 */
+       public Coverage() {
+         reset();
+      }
+
+   	/**
+   	 * Forget all executed instructions.
+   	 */
+       public synchronized void reset() {
+         program = null;
+         textBase = Memory.textBaseAddress;
+         textBits = new long[0];
+         kernelBits = new long[0];
+         executedAny = false;
+      }
+
+   	/**
+   	 * Called by the simulator when execution (re)starts.  Coverage is kept if the
+   	 * program is the one covered so far, otherwise it is reset.
+   	 * @param p the MIPSprogram about to be simulated
+   	 */
+       public synchronized void start(MIPSprogram p) {
+         ArrayList machineList = (p == null) ? null : p.getMachineList();
+         if (machineList != program || textBase != Memory.textBaseAddress) {
+            reset();
+            program = machineList;
+            int programEnd = textBase;
+            try {
+               programEnd = Globals.memory.getAddressOfFirstNull(textBase, Memory.textLimitAddress);
+            }
+                catch (AddressErrorException aee) { } // text base is always word aligned
+            textBits = new long[(((programEnd - textBase) >> 2) + 63) >> 6];
+         }
+      }
+
+   	/**
+   	 * Mark the instruction at pc as executed.  Called from the simulation loop, and
+   	 * not synchronized: other threads only read the bits.
+   	 * @param pc address of the instruction just executed
+   	 */
+       public void executed(int pc) {
+         int offset = (pc - textBase) >> 2;
+         if (offset >= 0 && (offset >> 6) < textBits.length) {
+            textBits[offset >> 6] |= 1L << offset;
+         }
+         else if (Memory.inTextSegment(pc)) {
+            textBits = grow(textBits, (offset >> 6) + 1);
+            textBits[offset >> 6] |= 1L << offset;
+         }
+         else if (Memory.inKernelTextSegment(pc)) {
+            offset = (pc - Memory.kernelTextBaseAddress) >> 2;
+            kernelBits = grow(kernelBits, (offset >> 6) + 1);
+            kernelBits[offset >> 6] |= 1L << offset;
+         }
+         executedAny = true;
+      }
+
+       private static long[] grow(long[] bits, int minLength) {
+         if (bits.length >= minLength) {
+            return bits;
+         }
+         return Arrays.copyOf(bits, Math.max(minLength, bits.length * 2));
+      }
+
+   	/**
+   	 * @return true if any instruction has been executed since the last reset
+   	 */
+       public boolean hasExecuted() {
+         return executedAny;
+      }
+
+   	/**
+   	 * Determine whether the instruction at the given address has been executed.
+   	 * @param address text or kernel text segment address
+   	 * @return true if it has been executed
+   	 */
+       public boolean isCovered(int address) {
+         long[] bits = textBits;
+         int offset = (address - textBase) >> 2;
+         if (Memory.inKernelTextSegment(address)) {
+            bits = kernelBits;
+            offset = (address - Memory.kernelTextBaseAddress) >> 2;
+         }
+         else if (!Memory.inTextSegment(address)) {
+            return false;
+         }
+         return offset >= 0 && (offset >> 6) < bits.length && (bits[offset >> 6] & (1L << offset)) != 0;
+      }
+
+   	/**
+   	 * Add the instructions executed according to another Coverage of the same program.
+   	 * @param other coverage to merge into this one
+   	 */
+       public synchronized void merge(Coverage other) {
+         synchronized (other) {
+            textBits = or(textBits, other.textBits);
+            kernelBits = or(kernelBits, other.kernelBits);
+            executedAny |= other.executedAny;
+         }
+      }
+
+       private static long[] or(long[] bits, long[] more) {
+         bits = grow(bits, more.length);
+         for (int i = 0; i < more.length; i++) {
+            bits[i] |= more[i];
+         }
+         return bits;
+      }
+
+   	/**
+   	 * Determine which source lines of the program have been covered.
+   	 * @param p the assembled program
+   	 * @return map from source file name to a TreeMap from Integer line number to
+   	 * Boolean, true if the line was covered
+   	 */
+       public synchronized Map getLineCoverage(MIPSprogram p) {
+         TreeMap files = new TreeMap();
+         ArrayList machineList = p.getMachineList();
+         for (int i = 0; machineList != null && i < machineList.size(); i++) {
+            ProgramStatement statement = (ProgramStatement) machineList.get(i);
+            String file = statement.getSourceFile();
+            if (file == null || statement.getSourceLine() <= 0)
+               continue;
+            TreeMap lines = (TreeMap) files.get(file);
+            if (lines == null) {
+               lines = new TreeMap();
+               files.put(file, lines);
+            }
+            Integer line = Integer.valueOf(statement.getSourceLine());
+            if (isCovered(statement.getAddress()) || lines.get(line) == Boolean.TRUE) {
+               lines.put(line, Boolean.TRUE);
+            }
+            else {
+               lines.put(line, Boolean.FALSE);
+            }
+         }
+         return files;
+      }
+
+   	/**
+   	 * Write line coverage of the program as an LCOV tracefile.  Each line's hit count
+   	 * is 1 if it was covered, plus its count in the previous tracefile if one is
+   	 * given, so a tracefile can accumulate the number of runs covering each line.
+   	 * @param p the assembled program
+   	 * @param out destination
+   	 * @param previous hit counts from an earlier tracefile as returned by readLcov(), or null
+   	 */
+       public void writeLcov(MIPSprogram p, PrintWriter out, Map previous) {
+         Map files = getLineCoverage(p);
+         out.println("TN:");
+         Iterator fileIt = files.entrySet().iterator();
+         while (fileIt.hasNext()) {
+            Map.Entry file = (Map.Entry) fileIt.next();
+            Map previousLines = (previous == null) ? null : (Map) previous.get(file.getKey());
+            int found = 0, hit = 0;
+            out.println("SF:" + file.getKey());
+            Iterator lineIt = ((Map) file.getValue()).entrySet().iterator();
+            while (lineIt.hasNext()) {
+               Map.Entry line = (Map.Entry) lineIt.next();
+               long count = (line.getValue() == Boolean.TRUE) ? 1 : 0;
+               if (previousLines != null && previousLines.get(line.getKey()) != null) {
+                  count += ((Long) previousLines.get(line.getKey())).longValue();
+               }
+               out.println("DA:" + line.getKey() + "," + count);
+               found++;
+               if (count > 0)
+                  hit++;
+            }
+            out.println("LH:" + hit);
+            out.println("LF:" + found);
+            out.println("end_of_record");
+         }
+         out.flush();
+      }
+
+   	/**
+   	 * Read the line hit counts from an LCOV tracefile.
+   	 * @param in source of the tracefile
+   	 * @return map from source file name to a Map from Integer line number to Long hit count
+   	 * @throws IOException if the tracefile cannot be read
+   	 */
+       public static Map readLcov(BufferedReader in) throws IOException {
+         HashMap files = new HashMap();
+         HashMap lines = null;
+         String record;
+         while ((record = in.readLine()) != null) {
+            if (record.startsWith("SF:")) {
+               lines = (HashMap) files.get(record.substring(3));
+               if (lines == null) {
+                  lines = new HashMap();
+                  files.put(record.substring(3), lines);
+               }
+            }
+            else if (record.startsWith("DA:") && lines != null) {
+               String[] fields = record.substring(3).split(",");
+               try {
+                  lines.put(Integer.valueOf(fields[0].trim()), Long.valueOf(fields[1].trim()));
+               }
+                   catch (RuntimeException e) { } // ignore malformed records
+            }
+         }
+         return files;
+      }
+   }
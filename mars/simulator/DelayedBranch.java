@@ -1,4 +1,5 @@
 package mars.simulator;
+import mars.mips.hardware.Hart;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -54,6 +55,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  *
  * Since only one pending delayed branch can be taken at a time, everything
  * here is done with statics.  The class itself represents the potential branch.
+ * The state belongs to the current Hart, so in a multi-hart simulation each
+ * hart has its own pending branch.
  * 
  * @author Pete Sanderson
  * @version June 2007
@@ -65,10 +68,7 @@ public class DelayedBranch {
 	private static final int REGISTERED = 1;
 	private static final int TRIGGERED  = 2;
 
-   // Initially nothing is happening.
-	
-	private static int state = CLEARED;
-	private static int branchTargetAddress = 0;
+   // Initially nothing is happening.  State is kept by the current hart.
 	
 	/**
     *  Register the fact that a successful branch is to occur.  This is called in
@@ -82,11 +82,13 @@ public class DelayedBranch {
 	 *  @param targetAddress The address to branch to after executing the next instruction
 	 */
 	public static void register(int targetAddress) {
+	  Hart hart = Hart.current();
 	  // About as clean as a switch statement can be!
-	  switch (state) {
-	    case CLEARED    :  branchTargetAddress = targetAddress;
+	  switch (hart.getDelayedBranchState()) {
+	    case CLEARED    :  hart.setDelayedBranch(REGISTERED, targetAddress);
+		                    break;
 		 case REGISTERED :
-		 case TRIGGERED  :  state = REGISTERED;
+		 case TRIGGERED  :  hart.setDelayedBranch(REGISTERED, hart.getDelayedBranchTarget());
 	  }          
 	}
 
@@ -103,10 +105,11 @@ public class DelayedBranch {
 	 *
 	 */
 	 static void trigger() {
+	  Hart hart = Hart.current();
 	  // About as clean as a switch statement can be!
-	  switch (state) {
+	  switch (hart.getDelayedBranchState()) {
 		 case REGISTERED :
-		 case TRIGGERED  :  state = TRIGGERED;
+		 case TRIGGERED  :  hart.setDelayedBranch(TRIGGERED, hart.getDelayedBranchTarget());
 		 case CLEARED    :
 	  }          
 	}
@@ -116,8 +119,7 @@ public class DelayedBranch {
 	 *  program counter to the target address.  This method has package visibility.
 	 */
 	 static void clear() {
-	  state = CLEARED;
-	  branchTargetAddress = 0; 
+	  Hart.current().setDelayedBranch(CLEARED, 0);
 	}
 
    /**
@@ -129,7 +131,7 @@ public class DelayedBranch {
 	 */
 
     static boolean isRegistered() {
-	   return state == REGISTERED;
+	   return Hart.current().getDelayedBranchState() == REGISTERED;
 	}
 	
    /**
@@ -140,7 +142,7 @@ public class DelayedBranch {
 	 */
 
    static boolean isTriggered() {
-	   return state == TRIGGERED;
+	   return Hart.current().getDelayedBranchState() == TRIGGERED;
 	}	
 
 
@@ -153,7 +155,7 @@ public class DelayedBranch {
 	*  @return Target address of the delayed branch.
 	*/
 	 static int getBranchTargetAddress() {
-	    return branchTargetAddress;
+	    return Hart.current().getDelayedBranchTarget();
 	}
 	
 }  // DelayedBranch
\ No newline at end of file
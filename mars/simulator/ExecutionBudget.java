@@ -0,0 +1,155 @@
+   package mars.simulator;
+
+/**
+ * Per-run resource limits for a simulated execution: instructions executed,
+ * wall-clock time, syscalls performed and bytes of program output.  A limit of
+ * zero or less means no limit.  When any limit is exceeded the simulation
+ * terminates with reason Simulator.BUDGET_EXCEEDED.  Optionally the run can also
+ * watch for tight loops whose state repeats exactly, in which case it terminates
+ * with reason Simulator.INFINITE_LOOP (see LoopDetector).
+ * <p>
+ * Install a budget with Simulator.setExecutionBudget(); it applies to every
+ * subsequent run until replaced or cleared.  Usage counters are reset at the
+ * start of each run.  The counting methods are called on the simulation thread.
+ */
+
+    public class ExecutionBudget {
+      private long maxInstructions;
+      private long maxMillis;
+      private long maxSyscalls;
+      private long maxOutputBytes;
+      private boolean detectInfiniteLoops;
+
+      // usage for the current run
+      private long syscalls;
+      private long outputBytes;
+      private long deadline;
+      private String exceededLimit;
+
+   	/**
+   	 * Create a budget with no limits and no loop detection.
+   	 */
+       public ExecutionBudget() {
+         this(0, 0, 0, 0, false);
+      }
+
+   	/**
+   	 * Create a budget with the given limits.  Zero or less means no limit.
+   	 * @param maxInstructions maximum number of MIPS instructions to execute
+   	 * @param maxMillis maximum wall-clock duration of the run, in milliseconds
+   	 * @param maxSyscalls maximum number of syscalls the program may perform
+   	 * @param maxOutputBytes maximum number of bytes the program may output
+   	 * @param detectInfiniteLoops whether to terminate tight loops whose state repeats
+   	 */
+       public ExecutionBudget(long maxInstructions, long maxMillis, long maxSyscalls, long maxOutputBytes, boolean detectInfiniteLoops) {
+         this.maxInstructions = maxInstructions;
+         this.maxMillis = maxMillis;
+         this.maxSyscalls = maxSyscalls;
+         this.maxOutputBytes = maxOutputBytes;
+         this.detectInfiniteLoops = detectInfiniteLoops;
+      }
+
+       public long getMaxInstructions() {
+         return maxInstructions;
+      }
+       public void setMaxInstructions(long maxInstructions) {
+         this.maxInstructions = maxInstructions;
+      }
+       public long getMaxMillis() {
+         return maxMillis;
+      }
+       public void setMaxMillis(long maxMillis) {
+         this.maxMillis = maxMillis;
+      }
+       public long getMaxSyscalls() {
+         return maxSyscalls;
+      }
+       public void setMaxSyscalls(long maxSyscalls) {
+         this.maxSyscalls = maxSyscalls;
+      }
+       public long getMaxOutputBytes() {
+         return maxOutputBytes;
+      }
+       public void setMaxOutputBytes(long maxOutputBytes) {
+         this.maxOutputBytes = maxOutputBytes;
+      }
+       public boolean getDetectInfiniteLoops() {
+         return detectInfiniteLoops;
+      }
+       public void setDetectInfiniteLoops(boolean detectInfiniteLoops) {
+         this.detectInfiniteLoops = detectInfiniteLoops;
+      }
+
+   	/**
+   	 * @return number of syscalls performed so far in the current run
+   	 */
+       public long getSyscallCount() {
+         return syscalls;
+      }
+
+   	/**
+   	 * @return number of output bytes produced so far in the current run
+   	 */
+       public long getOutputByteCount() {
+         return outputBytes;
+      }
+
+   	/**
+   	 * @return description of the limit that terminated the run, or null if none was exceeded
+   	 */
+       public String getExceededLimit() {
+         return exceededLimit;
+      }
+
+      // Called by the simulation thread when a run starts.
+       void start() {
+         syscalls = 0;
+         outputBytes = 0;
+         exceededLimit = null;
+         deadline = (maxMillis > 0) ? System.currentTimeMillis() + maxMillis : Long.MAX_VALUE;
+      }
+
+      // Instruction limit as tested in the run loop; Long.MAX_VALUE if none.
+       long instructionLimit() {
+         return (maxInstructions > 0) ? maxInstructions : Long.MAX_VALUE;
+      }
+
+      // Polled periodically (not every instruction) by the run loop.
+       boolean clockExpired() {
+         if (System.currentTimeMillis() >= deadline) {
+            exceededLimit = "time limit of "+maxMillis+" ms";
+            return true;
+         }
+         return false;
+      }
+
+       void instructionsExhausted() {
+         exceededLimit = "instruction limit of "+maxInstructions;
+      }
+
+      // Set when a syscall or output charge goes over its limit; tested by the run loop.
+       boolean isExceeded() {
+         return exceededLimit != null;
+      }
+
+   	/**
+   	 * Record that the program performed a syscall.
+   	 */
+       public void chargeSyscall() {
+         syscalls++;
+         if (maxSyscalls > 0 && syscalls > maxSyscalls && exceededLimit == null) {
+            exceededLimit = "syscall limit of "+maxSyscalls;
+         }
+      }
+
+   	/**
+   	 * Record that the program wrote the given number of bytes of output.
+   	 * @param bytes number of bytes written
+   	 */
+       public void chargeOutput(int bytes) {
+         outputBytes += bytes;
+         if (maxOutputBytes > 0 && outputBytes > maxOutputBytes && exceededLimit == null) {
+            exceededLimit = "output limit of "+maxOutputBytes+" bytes";
+         }
+      }
+   }
@@ -0,0 +1,79 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+
+/**
+ * Cheap detector for MIPS programs stuck in a loop that can never exit.  It is
+ * consulted only when control transfers backward (the target is at or below
+ * the address of the instruction just executed), and hashes the register state
+ * together with the branch target.  If the same hash recurs while nothing else
+ * that could influence the program has happened -- no memory store, no memory
+ * mapped I/O read and no syscall -- the program is deterministically repeating
+ * itself and will never terminate.
+ * <p>
+ * Recent states are kept in a small direct-mapped table, so loops whose period
+ * is very long may go unnoticed; the detector never reports a loop that could
+ * still make progress, apart from a 64-bit hash collision.  Programs that use
+ * memory mapped I/O are never flagged since they may be waiting for a device.
+ */
+
+    public class LoopDetector {
+      private static final int TABLE_SIZE = 1024; // power of 2
+      private final long[] hashes = new long[TABLE_SIZE];
+      private final int[] epochs = new int[TABLE_SIZE];
+      private int epoch = 1;
+      private int lastModificationCount = -1;
+      private long lastSyscallCount = -1;
+      private boolean memoryMapUsed = false;
+      private final ExecutionBudget budget;
+      private final Register[] registers;
+      private final Register[] fpRegisters;
+
+   	/**
+   	 * @param budget budget of the current run, whose syscall count reveals syscall activity
+   	 */
+       public LoopDetector(ExecutionBudget budget) {
+         this.budget = budget;
+         this.registers = RegisterFile.getRegisters();
+         this.fpRegisters = Coprocessor1.getRegisters();
+      }
+
+   	/**
+   	 * Called when control has transferred backward to the given address.
+   	 * @param target address of the next instruction to execute
+   	 * @return true if the program state at this point exactly repeats an earlier
+   	 * one with no intervening side effects
+   	 */
+       public boolean repeats(int target) {
+         if (memoryMapUsed || (memoryMapUsed = Globals.memory.memoryMapInUse())) {
+            return false;
+         }
+         int modifications = Globals.memory.getModificationCount();
+         long syscalls = budget.getSyscallCount();
+         if (modifications != lastModificationCount || syscalls != lastSyscallCount) {
+            // Something observable happened since the last backward branch, so states
+         	// recorded before it can no longer be compared.  Start a new epoch.
+            lastModificationCount = modifications;
+            lastSyscallCount = syscalls;
+            epoch++;
+         }
+         long hash = target;
+         for (int i = 0; i < registers.length; i++) {
+            hash = hash * 0x9E3779B97F4A7C15L + registers[i].getValueNoNotify();
+         }
+         hash = hash * 0x9E3779B97F4A7C15L + RegisterFile.getValueNoNotify(33);
+         hash = hash * 0x9E3779B97F4A7C15L + RegisterFile.getValueNoNotify(34);
+         for (int i = 0; i < fpRegisters.length; i++) {
+            hash = hash * 0x9E3779B97F4A7C15L + fpRegisters[i].getValueNoNotify();
+         }
+         hash = hash * 0x9E3779B97F4A7C15L + Coprocessor1.getConditionFlags();
+         hash ^= (hash >>> 29);
+         int slot = (int) (hash ^ (hash >>> 32)) & (TABLE_SIZE - 1);
+         if (epochs[slot] == epoch && hashes[slot] == hash) {
+            return true;
+         }
+         epochs[slot] = epoch;
+         hashes[slot] = hash;
+         return false;
+      }
+   }
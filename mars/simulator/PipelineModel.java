@@ -0,0 +1,501 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Cycle-approximate timing model of the classic five-stage MIPS pipeline (IF, ID,
+ * EX, MEM, WB), layered on the instruction-at-a-time simulation.  Once installed
+ * with Simulator.setPipelineModel(), the simulation loop calls executed() after
+ * every instruction, and the model works out the cycle in which the instruction
+ * would have entered ID on a pipelined implementation with full forwarding:
+ * <ul>
+ * <li>A value loaded from memory reaches EX one cycle too late for the next
+ * instruction: a load-use hazard costs one stall cycle.</li>
+ * <li>Branches compare their operands in ID, so a branch (or jr/jalr) that needs
+ * the result of the instruction just before it stalls one cycle, or two if that
+ * instruction is a load, and one cycle if a load two instructions earlier.</li>
+ * <li>Branches and jumps are resolved in ID.  With delayed branching enabled the
+ * delay slot hides the penalty; otherwise every taken branch and every jump
+ * flushes the instruction fetched after it, costing one cycle.</li>
+ * <li>Store data is forwarded to MEM, so a store right after the load of its data
+ * does not stall.</li>
+ * </ul>
+ * HI and LO are tracked like registers, floating point registers are not, and all
+ * instructions take one cycle in EX.  Cycles are counted from the first fetch to the
+ * last write-back.  Execution counts and stall cycles are kept per text segment
+ * instruction so the report can break them down by instruction and by basic block.
+ * <p>
+ * Instructions are decoded from their binary encoding once and cached per text
+ * segment word, and all counters are primitive arrays, so the model runs at full
+ * simulation speed.
+ */
+
+    public class PipelineModel {
+   	/** Stall category: instruction waits for a loaded value */
+      public static final int LOAD_USE = 0;
+   	/** Stall category: branch or jump register waits for its operands in ID */
+      public static final int BRANCH_OPERAND = 1;
+   	/** Stall category: instruction fetched after a taken branch or jump is flushed */
+      public static final int CONTROL = 2;
+      private static final String[] STALL_NAMES = {"load-use", "branch operand", "control"};
+
+      // Instruction kinds.  0 marks a text segment word not decoded yet.
+      private static final byte ALU = 1, LOAD = 2, STORE = 3, BRANCH = 4, JUMP = 5, JUMP_REGISTER = 6, OTHER = 7;
+      private static final int HI = 32, LO = 33;
+
+      private ArrayList program;  // machine list of the program being timed
+      private int textBase;
+      private boolean delayedBranching;
+
+      // Decoded instructions, indexed by text segment word
+      private int[] binaries;
+      private byte[] kinds;
+      private long[] sourcesEX, sourcesID, sourcesMEM, destinations;
+      // Per-instruction counts, indexed by text segment word
+      private long[] executions;
+      private long[][] stalls;
+
+      // Decoder output
+      private byte kind;
+      private long sourceEX, sourceID, sourceMEM, destination;
+
+      // Pipeline state
+      private long issue;  // cycle in which the last instruction entered ID
+      private final long[] ready = new long[34]; // first cycle in which each register can be used in EX
+      private int penalty; // control stall cycles owed by the next instruction
+      private long instructions;
+      private final long[] stallTotals = new long[3];
+
+   	/**
+   	 * Create an empty model.
+   	 */
+       public PipelineModel() {
+         reset();
+      }
+
+   	/**
+   	 * Forget all timing and counts.
+   	 */
+       public synchronized void reset() {
+         program = null;
+         textBase = Memory.textBaseAddress;
+         allocate(0);
+         issue = 0;
+         Arrays.fill(ready, 0);
+         penalty = 0;
+         instructions = 0;
+         Arrays.fill(stallTotals, 0);
+      }
+
+       private void allocate(int words) {
+         binaries = new int[words];
+         kinds = new byte[words];
+         sourcesEX = new long[words];
+         sourcesID = new long[words];
+         sourcesMEM = new long[words];
+         destinations = new long[words];
+         executions = new long[words];
+         stalls = new long[3][words];
+      }
+
+   	/**
+   	 * Called by the simulator when execution (re)starts.  Timing continues if the
+   	 * program is the one timed so far, otherwise the model is reset.
+   	 * @param p the MIPSprogram about to be simulated
+   	 */
+       public synchronized void start(MIPSprogram p) {
+         ArrayList machineList = (p == null) ? null : p.getMachineList();
+         if (machineList != program || textBase != Memory.textBaseAddress) {
+            reset();
+            program = machineList;
+            int programEnd = textBase;
+            try {
+               programEnd = Globals.memory.getAddressOfFirstNull(textBase, Memory.textLimitAddress);
+            }
+                catch (AddressErrorException aee) { } // text base is always word aligned
+            allocate((programEnd - textBase) >> 2);
+         }
+         delayedBranching = Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED);
+      }
+
+   	/**
+   	 * Time an instruction.  Called from the simulation loop after the instruction
+   	 * (and any delayed branch it completes) has executed, and not synchronized:
+   	 * other threads only read the counts.
+   	 * @param pc address of the instruction
+   	 * @param binary its binary encoding
+   	 * @param nextPc address of the instruction executed next
+   	 */
+       public void executed(int pc, int binary, int nextPc) {
+         int offset = (pc - textBase) >> 2;
+         boolean inText = offset >= 0 && offset < kinds.length;
+         if (inText && kinds[offset] != 0 && binaries[offset] == binary) {
+            kind = kinds[offset];
+            sourceEX = sourcesEX[offset];
+            sourceID = sourcesID[offset];
+            sourceMEM = sourcesMEM[offset];
+            destination = destinations[offset];
+         }
+         else {
+            decode(binary);
+            if (inText) {
+               binaries[offset] = binary;
+               kinds[offset] = kind;
+               sourcesEX[offset] = sourceEX;
+               sourcesID[offset] = sourceID;
+               sourcesMEM[offset] = sourceMEM;
+               destinations[offset] = destination;
+            }
+         }
+         long cycle = issue + 1 + penalty;
+         int controlStall = penalty;
+         penalty = 0;
+         long earliest = cycle;
+         for (long m = sourceEX; m != 0; m &= m - 1) {
+            earliest = Math.max(earliest, ready[Long.numberOfTrailingZeros(m)] - 1);
+         }
+         for (long m = sourceID; m != 0; m &= m - 1) {
+            earliest = Math.max(earliest, ready[Long.numberOfTrailingZeros(m)]);
+         }
+         for (long m = sourceMEM; m != 0; m &= m - 1) {
+            earliest = Math.max(earliest, ready[Long.numberOfTrailingZeros(m)] - 2);
+         }
+         int dataStall = (int) (earliest - cycle);
+         issue = earliest;
+         long available = issue + ((kind == LOAD) ? 3 : 2);
+         for (long m = destination; m != 0; m &= m - 1) {
+            ready[Long.numberOfTrailingZeros(m)] = available;
+         }
+         if (!delayedBranching && nextPc != pc + Instruction.INSTRUCTION_LENGTH &&
+             (kind == BRANCH || kind == JUMP || kind == JUMP_REGISTER)) {
+            penalty = 1;
+         }
+         int category = (kind == BRANCH || kind == JUMP_REGISTER) ? BRANCH_OPERAND : LOAD_USE;
+         instructions++;
+         stallTotals[category] += dataStall;
+         stallTotals[CONTROL] += controlStall;
+         if (inText) {
+            executions[offset]++;
+            stalls[category][offset] += dataStall;
+            stalls[CONTROL][offset] += controlStall;
+         }
+      }
+
+       private static long bit(int register) {
+         return 1L << register;
+      }
+
+      // Sets kind and the register masks from a binary instruction.  Register $zero
+   	// is never a dependence.  Unknown encodings are treated as ALU instructions
+   	// reading rs and rt.
+       private void decode(int binary) {
+         int op = binary >>> 26;
+         int rs = (binary >>> 21) & 0x1F;
+         int rt = (binary >>> 16) & 0x1F;
+         int rd = (binary >>> 11) & 0x1F;
+         int funct = binary & 0x3F;
+         kind = ALU;
+         sourceEX = sourceID = sourceMEM = destination = 0;
+         switch (op) {
+            case 0x00 : // SPECIAL
+               switch (funct) {
+                  case 0x00 : case 0x02 : case 0x03 : // sll, srl, sra
+                     sourceEX = bit(rt);
+                     destination = bit(rd);
+                     break;
+                  case 0x08 : // jr
+                     kind = JUMP_REGISTER;
+                     sourceID = bit(rs);
+                     break;
+                  case 0x09 : // jalr
+                     kind = JUMP_REGISTER;
+                     sourceID = bit(rs);
+                     destination = bit(rd);
+                     break;
+                  case 0x0C : case 0x0D : // syscall, break
+                     kind = OTHER;
+                     break;
+                  case 0x10 : // mfhi
+                     sourceEX = bit(HI);
+                     destination = bit(rd);
+                     break;
+                  case 0x12 : // mflo
+                     sourceEX = bit(LO);
+                     destination = bit(rd);
+                     break;
+                  case 0x11 : // mthi
+                     sourceEX = bit(rs);
+                     destination = bit(HI);
+                     break;
+                  case 0x13 : // mtlo
+                     sourceEX = bit(rs);
+                     destination = bit(LO);
+                     break;
+                  case 0x18 : case 0x19 : case 0x1A : case 0x1B : // mult, multu, div, divu
+                     sourceEX = bit(rs) | bit(rt);
+                     destination = bit(HI) | bit(LO);
+                     break;
+                  case 0x30 : case 0x31 : case 0x32 : case 0x33 : case 0x34 : case 0x36 : // traps
+                     sourceEX = bit(rs) | bit(rt);
+                     break;
+                  default :
+                     sourceEX = bit(rs) | bit(rt);
+                     destination = bit(rd);
+               }
+               break;
+            case 0x01 : // REGIMM
+               if (rt <= 0x03 || (rt >= 0x10 && rt <= 0x13)) { // bltz, bgez, ..., bltzal, bgezal, ...
+                  kind = BRANCH;
+                  sourceID = bit(rs);
+                  if (rt >= 0x10) {
+                     destination = bit(31);
+                  }
+               }
+               else { // trap immediate
+                  sourceEX = bit(rs);
+               }
+               break;
+            case 0x02 : // j
+               kind = JUMP;
+               break;
+            case 0x03 : // jal
+               kind = JUMP;
+               destination = bit(31);
+               break;
+            case 0x04 : case 0x05 : case 0x14 : case 0x15 : // beq, bne, beql, bnel
+               kind = BRANCH;
+               sourceID = bit(rs) | bit(rt);
+               break;
+            case 0x06 : case 0x07 : case 0x16 : case 0x17 : // blez, bgtz, blezl, bgtzl
+               kind = BRANCH;
+               sourceID = bit(rs);
+               break;
+            case 0x0F : // lui
+               destination = bit(rt);
+               break;
+            case 0x08 : case 0x09 : case 0x0A : case 0x0B : case 0x0C : case 0x0D : case 0x0E : // immediate ALU
+               sourceEX = bit(rs);
+               destination = bit(rt);
+               break;
+            case 0x10 : // COP0
+               if (rs == 0x00) { // mfc0
+                  destination = bit(rt);
+               }
+               else if (rs == 0x04) { // mtc0
+                  sourceEX = bit(rt);
+               }
+               else if (funct == 0x18) { // eret
+                  kind = JUMP;
+               }
+               break;
+            case 0x11 : // COP1
+               if (rs == 0x00) { // mfc1
+                  destination = bit(rt);
+               }
+               else if (rs == 0x04) { // mtc1
+                  sourceEX = bit(rt);
+               }
+               else if (rs == 0x08) { // bc1f, bc1t
+                  kind = BRANCH;
+               }
+               break;
+            case 0x1C : // SPECIAL2
+               if (funct == 0x00 || funct == 0x01 || funct == 0x04 || funct == 0x05) { // madd, maddu, msub, msubu
+                  sourceEX = bit(rs) | bit(rt) | bit(HI) | bit(LO);
+                  destination = bit(HI) | bit(LO);
+               }
+               else if (funct == 0x20 || funct == 0x21) { // clz, clo
+                  sourceEX = bit(rs);
+                  destination = bit(rd);
+               }
+               else { // mul
+                  sourceEX = bit(rs) | bit(rt);
+                  destination = bit(rd);
+               }
+               break;
+            case 0x20 : case 0x21 : case 0x23 : case 0x24 : case 0x25 : case 0x30 : // lb, lh, lw, lbu, lhu, ll
+               kind = LOAD;
+               sourceEX = bit(rs);
+               destination = bit(rt);
+               break;
+            case 0x22 : case 0x26 : // lwl, lwr merge into rt
+               kind = LOAD;
+               sourceEX = bit(rs);
+               sourceMEM = bit(rt);
+               destination = bit(rt);
+               break;
+            case 0x31 : case 0x35 : // lwc1, ldc1
+               kind = LOAD;
+               sourceEX = bit(rs);
+               break;
+            case 0x28 : case 0x29 : case 0x2A : case 0x2B : case 0x2E : // sb, sh, swl, sw, swr
+               kind = STORE;
+               sourceEX = bit(rs);
+               sourceMEM = bit(rt);
+               break;
+            case 0x38 : // sc writes its success flag at the end of MEM, like a load
+               kind = LOAD;
+               sourceEX = bit(rs);
+               sourceMEM = bit(rt);
+               destination = bit(rt);
+               break;
+            case 0x39 : case 0x3D : // swc1, sdc1
+               kind = STORE;
+               sourceEX = bit(rs);
+               break;
+            default :
+               sourceEX = bit(rs) | bit(rt);
+         }
+         sourceEX &= ~1L;
+         sourceID &= ~1L;
+         sourceMEM &= ~1L;
+         destination &= ~1L;
+      }
+
+   	/** @return number of instructions timed */
+       public long getInstructionCount() {
+         return instructions;
+      }
+
+   	/** @return estimated cycles from the first fetch to the last write-back */
+       public long getCycleCount() {
+         return (instructions == 0) ? 0 : issue + 4;
+      }
+
+   	/** @return estimated cycles per instruction, 0 if none were timed */
+       public double getCPI() {
+         return (instructions == 0) ? 0.0 : getCycleCount() / (double) instructions;
+      }
+
+   	/**
+   	 * @param category LOAD_USE, BRANCH_OPERAND or CONTROL
+   	 * @return total stall cycles of that category
+   	 */
+       public long getStallCount(int category) {
+         return stallTotals[category];
+      }
+
+   	/**
+   	 * Write a timing report: totals, then basic blocks and instructions ranked by
+   	 * the cycles they take and the stall cycles they cause.  Call while the
+   	 * program is not running.
+   	 * @param out destination
+   	 * @param maxEntries maximum number of basic blocks and of instructions to list
+   	 */
+       public synchronized void writeReport(PrintWriter out, int maxEntries) {
+         out.println("Pipeline (5 stages, forwarding, delayed branching " + (delayedBranching ? "on" : "off") + "):");
+         out.println("instructions " + instructions + ", estimated cycles " + getCycleCount() +
+                     String.format(", CPI %.3f", getCPI()));
+         out.println("stall cycles: " + STALL_NAMES[LOAD_USE] + " " + stallTotals[LOAD_USE] + ", " +
+                     STALL_NAMES[BRANCH_OPERAND] + " " + stallTotals[BRANCH_OPERAND] + ", " +
+                     STALL_NAMES[CONTROL] + " " + stallTotals[CONTROL]);
+         // Basic blocks: a block starts at the first instruction, at each branch or jump
+      	// target, and after each branch or jump (and its delay slot).
+         int words = kinds.length;
+         boolean[] leader = new boolean[words + 2];
+         if (words > 0) {
+            leader[0] = true;
+         }
+         for (int i = 0; i < words; i++) {
+            int address = textBase + (i << 2);
+            int binary;
+            try {
+               ProgramStatement statement = Globals.memory.getStatementNoNotify(address);
+               if (statement == null) {
+                  continue;
+               }
+               binary = statement.getBinaryStatement();
+            }
+                catch (AddressErrorException aee) {
+                  continue;
+               }
+            decode(binary);
+            int target = -1;
+            if (kind == BRANCH) {
+               target = address + Instruction.INSTRUCTION_LENGTH + (((short) binary) << 2);
+            }
+            else if (kind == JUMP && (binary >>> 26) != 0x10) {
+               target = ((address + Instruction.INSTRUCTION_LENGTH) & 0xF0000000) | ((binary & 0x03FFFFFF) << 2);
+            }
+            if (kind == BRANCH || kind == JUMP || kind == JUMP_REGISTER) {
+               leader[i + (delayedBranching ? 2 : 1)] = true;
+            }
+            int targetOffset = (target - textBase) >> 2;
+            if (target != -1 && targetOffset >= 0 && targetOffset < words) {
+               leader[targetOffset] = true;
+            }
+         }
+         ArrayList blocks = new ArrayList(); // long[] {cycles, executions, first word, length, stalls by category}
+         long[] block = null;
+         for (int i = 0; i < words; i++) {
+            if (leader[i] || block == null) {
+               block = new long[] {0, 0, i, 0, 0, 0, 0};
+               blocks.add(block);
+            }
+            block[0] += executions[i] + stalls[LOAD_USE][i] + stalls[BRANCH_OPERAND][i] + stalls[CONTROL][i];
+            block[1] += executions[i];
+            block[3]++;
+            for (int c = 0; c < 3; c++) {
+               block[4 + c] += stalls[c][i];
+            }
+         }
+         Collections.sort(blocks,
+               new Comparator() {
+                  public int compare(Object a, Object b) {
+                     return Long.compare(((long[]) b)[0], ((long[]) a)[0]);
+                  }
+               });
+         out.println();
+         out.println("     cycles  instructions    CPI  load-use    branch   control  block");
+         for (int i = 0; i < blocks.size() && i < maxEntries; i++) {
+            long[] b = (long[]) blocks.get(i);
+            if (b[0] == 0)
+               break;
+            int first = textBase + ((int) b[2] << 2);
+            int last = first + (((int) b[3] - 1) << 2);
+            String name = Profiler.functionName(first);
+            out.println(pad(Long.toString(b[0]), 11) + pad(Long.toString(b[1]), 14) +
+                        pad(String.format("%.3f", (b[1] == 0) ? 0.0 : b[0] / (double) b[1]), 7) +
+                        pad(Long.toString(b[4]), 10) + pad(Long.toString(b[5]), 10) + pad(Long.toString(b[6]), 10) +
+                        "  " + Binary.intToHexString(first) + "-" + Binary.intToHexString(last) +
+                        (name.startsWith("0x") ? "" : " " + name));
+         }
+         ArrayList hot = new ArrayList(); // long[] {total stalls, word}
+         for (int i = 0; i < words; i++) {
+            long total = stalls[LOAD_USE][i] + stalls[BRANCH_OPERAND][i] + stalls[CONTROL][i];
+            if (total > 0) {
+               hot.add(new long[] {total, i});
+            }
+         }
+         Collections.sort(hot,
+               new Comparator() {
+                  public int compare(Object a, Object b) {
+                     return Long.compare(((long[]) b)[0], ((long[]) a)[0]);
+                  }
+               });
+         out.println();
+         out.println("     stalls  load-use    branch   control    executed  address     line  source");
+         for (int i = 0; i < hot.size() && i < maxEntries; i++) {
+            long[] entry = (long[]) hot.get(i);
+            int w = (int) entry[1];
+            int address = textBase + (w << 2);
+            out.println(pad(Long.toString(entry[0]), 11) + pad(Long.toString(stalls[LOAD_USE][w]), 10) +
+                        pad(Long.toString(stalls[BRANCH_OPERAND][w]), 10) + pad(Long.toString(stalls[CONTROL][w]), 10) +
+                        pad(Long.toString(executions[w]), 12) + "  " + Binary.intToHexString(address) + "  " +
+                        Profiler.sourceOf(address));
+         }
+         out.flush();
+      }
+
+       private static String pad(String s, int width) {
+         StringBuffer result = new StringBuffer();
+         for (int i = s.length(); i < width; i++) {
+            result.append(' ');
+         }
+         return result.append(s).toString();
+      }
+   }
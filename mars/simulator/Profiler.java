@@ -0,0 +1,389 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.assembler.*;
+   import mars.mips.hardware.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Low-overhead execution profiler.  Once installed with Simulator.setProfiler(), the
+ * simulation loop calls executed() after every MIPS instruction, which increments an
+ * int counter indexed by the instruction's text segment offset.  No observers or
+ * notices are involved.
+ * <p>
+ * Calls and returns are tracked semantically so this works for custom languages too:
+ * a control transfer that leaves $ra holding the address following the transferring
+ * instruction is a call (jal, jalr, or their delay slot), and a transfer to the return
+ * address on top of the call stack is a return (jr $ra).  Samples are also counted per
+ * calling context, which gives the per-function rollup and the collapsed stacks
+ * consumed by flame graph tools.  Function names come from text labels in the
+ * SymbolTable.
+ */
+
+    public class Profiler {
+      private static final int MAX_STACK_DEPTH = 4096; // deeper calls are charged to the deepest frame
+      private static final int RETURN_ADDRESS_REGISTER = 31;
+
+      // Everything counted.  Only the simulation thread updates it, without locking; the
+   	// slow paths that grow its tables or add to its maps, and the readers, hold the
+   	// profiler's lock.  reset() replaces it as a whole, so the simulation thread never
+   	// sees one half cleared.
+       private static final class Profile {
+         int textBase = Memory.textBaseAddress;
+         int[] counts = new int[0];       // per-instruction counters for the user text segment
+         int[] kernelCounts = new int[0]; // same, for the kernel text segment
+         HashMap otherCounts = new HashMap(); // Integer address -> long[1], for code executed elsewhere
+         long total;
+      
+         // Calling context tree.  Node 0 is the root, the function where execution began.
+         int[] nodeParent = new int[64];
+         int[] nodeFunction = new int[64];
+         long[] nodeSamples = new long[64];
+         int nodeCount;
+         HashMap children = new HashMap();  // Long (parent node << 32 | callee address) -> Integer node
+      
+         // Shadow call stack
+         int[] stackNode = new int[64];
+         int[] stackReturn = new int[64];
+         int depth;
+         int currentNode;
+         boolean started;
+      }
+
+      private volatile Profile profile = new Profile();
+
+   	/**
+   	 * Create an empty profiler.
+   	 */
+       public Profiler() {
+      }
+
+   	/**
+   	 * Discard all counts and the call stack.  May be called while the program runs.
+   	 */
+       public synchronized void reset() {
+         profile = new Profile();
+      }
+
+   	/**
+   	 * Called by the simulator when execution (re)starts.  The first call establishes
+   	 * the root of the call tree; later calls, as after a pause or step, continue
+   	 * with the existing call stack.
+   	 * @param pc address of the first instruction to be executed
+   	 */
+       public synchronized void start(int pc) {
+         Profile p = profile;
+         if (p.started) {
+            return;
+         }
+         p.started = true;
+         p.textBase = Memory.textBaseAddress;
+         int programEnd = p.textBase;
+         try {
+            programEnd = Globals.memory.getAddressOfFirstNull(p.textBase, Memory.textLimitAddress);
+         }
+             catch (AddressErrorException aee) { } // text base is always word aligned
+         p.counts = new int[Math.max(1, (programEnd - p.textBase) >> 2)];
+         p.nodeFunction[0] = pc;
+         p.nodeParent[0] = -1;
+         p.nodeCount = 1;
+         p.currentNode = 0;
+      }
+
+   	/**
+   	 * Count one execution of the instruction at pc.  Called from the simulation loop,
+   	 * and takes no lock unless the instruction lies outside the program or is a call.
+   	 * @param pc address of the instruction just executed
+   	 * @param nextPc address of the next instruction to execute
+   	 */
+       public void executed(int pc, int nextPc) {
+         Profile p = profile;
+         int[] counts = p.counts;
+         int offset = (pc - p.textBase) >> 2;
+         if (offset >= 0 && offset < counts.length) {
+            counts[offset]++;
+         }
+         else {
+            countOutsideProgram(p, pc);
+         }
+         p.nodeSamples[p.currentNode]++;
+         p.total++;
+         if (nextPc != pc + Memory.WORD_LENGTH_BYTES) {
+            transfer(p, pc, nextPc);
+         }
+      }
+
+      // Slow path for instructions beyond the assembled program: self-modifying code,
+   	// kernel text (exception handler) or code in the data segment.
+       private synchronized void countOutsideProgram(Profile p, int pc) {
+         if (Memory.inTextSegment(pc)) {
+            p.counts = grow(p.counts, ((pc - p.textBase) >> 2) + 1);
+            p.counts[(pc - p.textBase) >> 2]++;
+         }
+         else if (Memory.inKernelTextSegment(pc)) {
+            int offset = (pc - Memory.kernelTextBaseAddress) >> 2;
+            p.kernelCounts = grow(p.kernelCounts, offset + 1);
+            p.kernelCounts[offset]++;
+         }
+         else {
+            Integer key = Integer.valueOf(pc);
+            long[] count = (long[]) p.otherCounts.get(key);
+            if (count == null) {
+               count = new long[1];
+               p.otherCounts.put(key, count);
+            }
+            count[0]++;
+         }
+      }
+
+       private static int[] grow(int[] array, int minLength) {
+         if (array.length >= minLength) {
+            return array;
+         }
+         return Arrays.copyOf(array, Math.max(minLength, array.length * 2));
+      }
+
+      // Control did not fall through to the next instruction: classify as return, call or neither.
+       private void transfer(Profile p, int pc, int nextPc) {
+         if (p.depth > 0 && p.stackReturn[p.depth-1] == nextPc) {
+            p.depth--;
+            p.currentNode = p.stackNode[p.depth];
+            return;
+         }
+         if (RegisterFile.getValueNoNotify(RETURN_ADDRESS_REGISTER) == pc + Memory.WORD_LENGTH_BYTES
+             && p.depth < MAX_STACK_DEPTH) {
+            if (p.depth == p.stackNode.length) {
+               p.stackNode = Arrays.copyOf(p.stackNode, p.depth * 2);
+               p.stackReturn = Arrays.copyOf(p.stackReturn, p.depth * 2);
+            }
+            p.stackNode[p.depth] = p.currentNode;
+            p.stackReturn[p.depth] = pc + Memory.WORD_LENGTH_BYTES;
+            p.depth++;
+            p.currentNode = child(p, p.currentNode, nextPc);
+         }
+      }
+
+       private synchronized int child(Profile p, int parent, int function) {
+         Long key = Long.valueOf(((long) parent << 32) | (function & 0xFFFFFFFFL));
+         Integer node = (Integer) p.children.get(key);
+         if (node != null) {
+            return node.intValue();
+         }
+         if (p.nodeCount == p.nodeParent.length) {
+            p.nodeParent = Arrays.copyOf(p.nodeParent, p.nodeCount * 2);
+            p.nodeFunction = Arrays.copyOf(p.nodeFunction, p.nodeCount * 2);
+            p.nodeSamples = Arrays.copyOf(p.nodeSamples, p.nodeCount * 2);
+         }
+         p.nodeParent[p.nodeCount] = parent;
+         p.nodeFunction[p.nodeCount] = function;
+         p.children.put(key, Integer.valueOf(p.nodeCount));
+         return p.nodeCount++;
+      }
+
+   	/**
+   	 * @return total number of instructions counted
+   	 */
+       public long getTotalCount() {
+         return profile.total;
+      }
+
+   	/**
+   	 * Get the execution count of the instruction at the given address.
+   	 * @param address text segment address
+   	 * @return number of times it was executed
+   	 */
+       public synchronized long getCount(int address) {
+         Profile p = profile;
+         if (Memory.inTextSegment(address)) {
+            int offset = (address - p.textBase) >> 2;
+            return (offset >= 0 && offset < p.counts.length) ? p.counts[offset] : 0;
+         }
+         if (Memory.inKernelTextSegment(address)) {
+            int offset = (address - Memory.kernelTextBaseAddress) >> 2;
+            return (offset < p.kernelCounts.length) ? p.kernelCounts[offset] : 0;
+         }
+         long[] count = (long[]) p.otherCounts.get(Integer.valueOf(address));
+         return (count == null) ? 0 : count[0];
+      }
+
+   	/**
+   	 * Name of the function starting at the given address: its text label if it has
+   	 * one, otherwise the address in hex.
+   	 * @param address function entry address
+   	 * @return display name
+   	 */
+       public static String functionName(int address) {
+         Symbol symbol = null;
+         try {
+            ProgramStatement statement = Globals.memory.getStatementNoNotify(address);
+            if (statement != null && statement.getSourceMIPSprogram() != null) {
+               symbol = statement.getSourceMIPSprogram().getLocalSymbolTable()
+                                 .getSymbolGivenAddressLocalOrGlobal(Integer.toString(address));
+            }
+         }
+             catch (AddressErrorException aee) { }
+         if (symbol == null && Globals.symbolTable != null) {
+            symbol = Globals.symbolTable.getSymbolGivenAddress(Integer.toString(address));
+         }
+         return (symbol == null) ? Binary.intToHexString(address) : symbol.getName();
+      }
+
+      // Semicolon-separated function names from root to the given node.
+       private static String stackOf(Profile p, int node, HashMap names) {
+         StringBuffer path = new StringBuffer();
+         for (int n = node; n >= 0; n = p.nodeParent[n]) {
+            String name = nameOf(p.nodeFunction[n], names);
+            path.insert(0, (n == node) ? name : name + ";");
+         }
+         return path.toString();
+      }
+
+       private static String nameOf(int address, HashMap names) {
+         Integer key = Integer.valueOf(address);
+         String name = (String) names.get(key);
+         if (name == null) {
+            name = functionName(address);
+            names.put(key, name);
+         }
+         return name;
+      }
+
+   	/**
+   	 * Write the samples of every calling context in the "collapsed stack" format
+   	 * used by flame graph tools: one line per stack, function names separated by
+   	 * semicolons from outermost to innermost, then a space and the sample count.
+   	 * @param out destination
+   	 */
+       public synchronized void writeCollapsedStacks(PrintWriter out) {
+         Profile p = profile;
+         HashMap names = new HashMap();
+         for (int node = 0; node < p.nodeCount; node++) {
+            if (p.nodeSamples[node] > 0) {
+               out.println(stackOf(p, node, names) + " " + p.nodeSamples[node]);
+            }
+         }
+         out.flush();
+      }
+
+   	/**
+   	 * Write a hot-spot report: a per-function table of self and inclusive counts
+   	 * followed by the most frequently executed instructions, both sorted by count.
+   	 * @param out destination
+   	 * @param maxInstructions maximum number of instructions to list
+   	 */
+       public synchronized void writeReport(PrintWriter out, int maxInstructions) {
+         Profile p = profile;
+         long total = p.total;
+         HashMap names = new HashMap();
+         out.println("Instructions executed: " + total);
+         // Roll up calling contexts by function.  Inclusive counts charge each node's
+      	// samples once to every distinct function on its stack (recursion counted once).
+         TreeMap selfByFunction = new TreeMap();
+         TreeMap inclusiveByFunction = new TreeMap();
+         HashSet onStack = new HashSet();
+         for (int node = 0; node < p.nodeCount; node++) {
+            long samples = p.nodeSamples[node];
+            if (samples == 0)
+               continue;
+            addTo(selfByFunction, nameOf(p.nodeFunction[node], names), samples);
+            onStack.clear();
+            for (int n = node; n >= 0; n = p.nodeParent[n]) {
+               String name = nameOf(p.nodeFunction[n], names);
+               if (onStack.add(name)) {
+                  addTo(inclusiveByFunction, name, samples);
+               }
+            }
+         }
+         ArrayList functions = new ArrayList(inclusiveByFunction.keySet());
+         final TreeMap self = selfByFunction;
+         Collections.sort(functions,
+               new Comparator() {
+                  public int compare(Object a, Object b) {
+                     return Long.compare(count(self, (String) b), count(self, (String) a));
+                  }
+               });
+         out.println();
+         out.println("       self     self%   inclusive  function");
+         for (int i = 0; i < functions.size(); i++) {
+            String name = (String) functions.get(i);
+            long selfCount = count(selfByFunction, name);
+            out.println(pad(Long.toString(selfCount), 11) + pad(percent(selfCount, total), 10) +
+                        pad(Long.toString(count(inclusiveByFunction, name)), 12) + "  " + name);
+         }
+         // Hot instructions
+         ArrayList hot = new ArrayList();
+         addHot(hot, p.counts, p.textBase);
+         addHot(hot, p.kernelCounts, Memory.kernelTextBaseAddress);
+         Iterator it = p.otherCounts.entrySet().iterator();
+         while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            hot.add(new long[] {((long[]) entry.getValue())[0], ((Integer) entry.getKey()).intValue()});
+         }
+         Collections.sort(hot,
+               new Comparator() {
+                  public int compare(Object a, Object b) {
+                     return Long.compare(((long[]) b)[0], ((long[]) a)[0]);
+                  }
+               });
+         out.println();
+         out.println("      count    count%  address     line  source");
+         for (int i = 0; i < hot.size() && i < maxInstructions; i++) {
+            long[] entry = (long[]) hot.get(i);
+            int address = (int) entry[1];
+            out.println(pad(Long.toString(entry[0]), 11) + pad(percent(entry[0], total), 10) + "  " +
+                        Binary.intToHexString(address) + "  " + sourceOf(address));
+         }
+         out.flush();
+      }
+
+       private static void addHot(ArrayList hot, int[] table, int base) {
+         for (int i = 0; i < table.length; i++) {
+            if (table[i] != 0) {
+               hot.add(new long[] {table[i], base + (i << 2)});
+            }
+         }
+      }
+
+       private static void addTo(TreeMap map, String key, long amount) {
+         long[] sum = (long[]) map.get(key);
+         if (sum == null) {
+            sum = new long[1];
+            map.put(key, sum);
+         }
+         sum[0] += amount;
+      }
+
+       private static long count(TreeMap map, String key) {
+         long[] sum = (long[]) map.get(key);
+         return (sum == null) ? 0 : sum[0];
+      }
+
+       private static String percent(long count, long total) {
+         return (total == 0) ? "0.00%" : String.format("%.2f%%", 100.0 * count / total);
+      }
+
+       private static String pad(String s, int width) {
+         StringBuffer result = new StringBuffer();
+         for (int i = s.length(); i < width; i++) {
+            result.append(' ');
+         }
+         return result.append(s).toString();
+      }
+
+      // Line number and source of the instruction at address, for reports.
+       static String sourceOf(int address) {
+         try {
+            ProgramStatement statement = Globals.memory.getStatementNoNotify(address);
+            if (statement != null) {
+               String source = (statement.getSource() == null) ? "" : statement.getSource().trim();
+               if (source.length() == 0) {
+                  source = statement.getPrintableBasicAssemblyStatement();
+               }
+               return pad(Integer.toString(statement.getSourceLine()), 5) + "  " + source;
+            }
+         }
+             catch (AddressErrorException aee) { }
+         return "";
+      }
+   }
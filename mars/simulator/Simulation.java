@@ -0,0 +1,135 @@
+   package mars.simulator;
+   import java.util.concurrent.*;
+
+/**
+ * Handle to a simulated execution started by
+ * {@link Simulator#startSimulation(mars.MIPSprogram, int, int, int[], Executor)}.
+ * It lets the caller pause, resume or stop the running MIPS program and
+ * obtain its {@link SimulationResult} without going through the GUI.
+ * Requests are honored between MIPS instructions, the same way the
+ * Pause and Stop buttons are.
+ * <p>
+ * The handle is a Future, so it can be waited on directly, or
+ * {@link #getCompletion()} can be used to chain further work.
+ * Note that MIPS memory and registers are global, so only one simulation
+ * should be running at any time; embedders driving several programs from
+ * their own executor should run them one after the other.
+ */
+
+    public class Simulation implements Future<SimulationResult> {
+      static final int RUNNING = 0;
+      static final int PAUSED  = 1;
+      static final int STOPPED = 2;
+
+      private final Simulator simulator;
+      private final CompletableFuture<SimulationResult> completion = new CompletableFuture<SimulationResult>();
+      // Tested by the execution thread after every MIPS instruction.
+      volatile int control = RUNNING;
+
+       Simulation(Simulator simulator) {
+         this.simulator = simulator;
+      }
+
+   	/**
+   	 * Suspend execution after the current MIPS instruction.  The execution
+   	 * thread waits, holding no locks, until resume() or stop() is called.
+   	 */
+       public synchronized void pause() {
+         if (control == RUNNING) {
+            control = PAUSED;
+         }
+      }
+
+   	/**
+   	 * Continue an execution suspended by pause().
+   	 */
+       public synchronized void resume() {
+         if (control == PAUSED) {
+            control = RUNNING;
+            notifyAll();
+         }
+      }
+
+   	/**
+   	 * Stop execution after the current MIPS instruction.  The result will
+   	 * carry reason Simulator.PAUSE_OR_STOP.  As with the Stop button, the
+   	 * simulator's stop listeners are told, so a program waiting for input
+   	 * is released.
+   	 */
+       public void stop() {
+         synchronized (this) {
+            control = STOPPED;
+            notifyAll();
+         }
+         simulator.notifyStopListeners();
+      }
+
+   	/**
+   	 * @return true if pause() has been requested and not yet resumed
+   	 */
+       public boolean isPaused() {
+         return control == PAUSED;
+      }
+
+   	/**
+   	 * The underlying future, completed when execution leaves the run loop.
+   	 * @return CompletableFuture that yields the SimulationResult
+   	 */
+       public CompletableFuture<SimulationResult> getCompletion() {
+         return completion;
+      }
+
+   	/**
+   	 * Stops the simulation, as stop() does, and cancels this future, so that
+   	 * get() throws CancellationException instead of yielding the result.  The
+   	 * execution thread may still be finishing its current MIPS instruction when
+   	 * cancel() returns; to wait for it and get the result, call stop() and then
+   	 * get() instead.
+   	 */
+       public boolean cancel(boolean mayInterruptIfRunning) {
+         if (completion.isDone() || !completion.cancel(false)) {
+            return false; // already completed or cancelled
+         }
+         stop();
+         return true;
+      }
+
+       public boolean isCancelled() {
+         return completion.isCancelled();
+      }
+
+       public boolean isDone() {
+         return completion.isDone();
+      }
+
+       public SimulationResult get() throws InterruptedException, ExecutionException {
+         return completion.get();
+      }
+
+       public SimulationResult get(long timeout, TimeUnit unit)
+       throws InterruptedException, ExecutionException, TimeoutException {
+         return completion.get(timeout, unit);
+      }
+
+      // Called by the execution thread when it sees PAUSED.  Blocks until
+   	// resumed or stopped; returns true if execution should continue.
+       synchronized boolean awaitResume() {
+         while (control == PAUSED) {
+            try {
+               wait();
+            }
+                catch (InterruptedException e) {
+                  control = STOPPED;
+               }
+         }
+         return control == RUNNING;
+      }
+
+       void complete(SimulationResult result) {
+         completion.complete(result);
+      }
+
+       void completeExceptionally(Throwable t) {
+         completion.completeExceptionally(t);
+      }
+   }
@@ -0,0 +1,73 @@
+   package mars.simulator;
+   import mars.*;
+
+/**
+ * Outcome of one simulated execution, delivered through a {@link Simulation}
+ * handle once the execution thread has left its run loop.  The reason code
+ * is one of the termination constants defined in {@link Simulator}
+ * (BREAKPOINT, EXCEPTION, MAX_STEPS, NORMAL_TERMINATION, CLIFF_TERMINATION,
+ * PAUSE_OR_STOP).
+ */
+
+    public class SimulationResult {
+      private final int reason;
+      private final boolean done;
+      private final int programCounter;
+      private final long instructionCount;
+      private final ProcessingException pe;
+
+       SimulationResult(int reason, boolean done, int programCounter, long instructionCount, ProcessingException pe) {
+         this.reason = reason;
+         this.done = done;
+         this.programCounter = programCounter;
+         this.instructionCount = instructionCount;
+         this.pe = pe;
+      }
+
+   	/**
+   	 * Why execution left the run loop.
+   	 * @return one of the Simulator termination constants, e.g. Simulator.NORMAL_TERMINATION
+   	 */
+       public int getReason() {
+         return reason;
+      }
+
+   	/**
+   	 * Whether the MIPS program is finished, as opposed to suspended at a
+   	 * breakpoint, step limit or user stop from which it could be resumed.
+   	 * @return true if execution completed (normally or due to error)
+   	 */
+       public boolean isDone() {
+         return done;
+      }
+
+   	/**
+   	 * Program counter value at the time execution stopped.
+   	 * @return the MIPS program counter
+   	 */
+       public int getProgramCounter() {
+         return programCounter;
+      }
+
+   	/**
+   	 * Number of MIPS basic instructions executed by this run.
+   	 * @return executed instruction count
+   	 */
+       public long getInstructionCount() {
+         return instructionCount;
+      }
+
+   	/**
+   	 * Runtime error that terminated execution, if any.
+   	 * @return the ProcessingException, or null if none occurred
+   	 */
+       public ProcessingException getProcessingException() {
+         return pe;
+      }
+
+       public String toString() {
+         return "reason " + reason + (done ? " done" : " suspended") +
+                " pc " + mars.util.Binary.intToHexString(programCounter) +
+                " instructions " + instructionCount;
+      }
+   }
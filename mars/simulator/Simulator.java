@@ -59,6 +59,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int NORMAL_TERMINATION = 4;
       public static final int CLIFF_TERMINATION = 5; // run off bottom of program
       public static final int PAUSE_OR_STOP = 6;
+      public static final int BUDGET_EXCEEDED = 7; // an ExecutionBudget limit other than maxSteps was reached
+      public static final int INFINITE_LOOP = 8; // LoopDetector found a loop that can never exit
+      private static final int QUANTUM_EXPIRED = 0; // a hart of a round-robin run used up its turn
+      private static final int NO_HALT = -1; // no hart of a parallel run has ended it yet
+      private ExecutionBudget executionBudget = null;
+      private Profiler profiler = null;
+      private Coverage coverage = null;
+      private TraceRecorder traceRecorder = null;
+      private CacheHierarchy cacheHierarchy = null;
+      private PipelineModel pipelineModel = null;
+      private VirtualClock clock = null;
+      // The thread executing the MIPS program, while a run is under way.  See isExecutionThread().
+      private static volatile Thread executionThread = null;
+      private int hartCount = 1;
+      private int hartScheduling = Hart.ROUND_ROBIN;
+      private int nextHart = 0; // hart to resume a round-robin run with
    
       /**
    	 * Returns the Simulator object
@@ -85,6 +101,173 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    
    
+   /**
+    *  Install resource limits to be enforced on every subsequent simulated execution.
+    *  @param budget the limits to enforce, or null for none (the default)
+    */
+       public void setExecutionBudget(ExecutionBudget budget) {
+         executionBudget = budget;
+      }
+   
+   /**
+    *  Get the resource limits currently enforced on simulated execution.  Syscalls
+    *  and output routines use this to charge their usage to the running program.
+    *  @return the current ExecutionBudget, or null if there is none
+    */
+       public ExecutionBudget getExecutionBudget() {
+         return executionBudget;
+      }
+   
+   /**
+    *  Tells whether the current thread is the one executing the MIPS program, be it the
+    *  "MIPS" thread the simulator starts or a thread of an executor given to
+    *  startSimulation().  Memory and register accesses made on it are the program's own.
+    *  Harts running in parallel execute on threads of their own, which are not it.
+    *  @return true if called from the thread executing the MIPS program
+    */
+       public static boolean isExecutionThread() {
+         return Thread.currentThread() == executionThread;
+      }
+   
+   /**
+    *  Install a virtual clock, advanced by the instructions of subsequent runs, for the
+    *  Sleep and Time syscalls and timer devices to use instead of host time.
+    *  @param clock the VirtualClock, or null for host time (the default)
+    */
+       public void setClock(VirtualClock clock) {
+         this.clock = clock;
+      }
+   
+   /**
+    *  Get the virtual clock in use.
+    *  @return the current VirtualClock, or null if host time is used
+    */
+       public VirtualClock getClock() {
+         return clock;
+      }
+   
+   /**
+    *  Install a profiler to count every instruction executed by subsequent runs.
+    *  @param profiler the Profiler to update, or null for none (the default)
+    */
+       public void setProfiler(Profiler profiler) {
+         this.profiler = profiler;
+      }
+   
+   /**
+    *  Get the profiler currently counting executed instructions.
+    *  @return the current Profiler, or null if there is none
+    */
+       public Profiler getProfiler() {
+         return profiler;
+      }
+   
+   /**
+    *  Install a Coverage to record the instructions executed by subsequent runs.
+    *  @param coverage the Coverage to update, or null for none (the default)
+    */
+       public void setCoverage(Coverage coverage) {
+         this.coverage = coverage;
+      }
+   
+   /**
+    *  Get the Coverage currently recording executed instructions.
+    *  @return the current Coverage, or null if there is none
+    */
+       public Coverage getCoverage() {
+         return coverage;
+      }
+   
+   /**
+    *  Install a TraceRecorder to record the memory references of subsequent runs.
+    *  @param recorder the TraceRecorder to write to, or null for none (the default)
+    */
+       public void setTraceRecorder(TraceRecorder recorder) {
+         traceRecorder = recorder;
+         TraceRecorder.install(recorder);
+      }
+   
+   /**
+    *  Get the TraceRecorder currently recording memory references.
+    *  @return the current TraceRecorder, or null if there is none
+    */
+       public TraceRecorder getTraceRecorder() {
+         return traceRecorder;
+      }
+   
+   /**
+    *  Install a CacheHierarchy to time the memory references of subsequent runs.
+    *  @param caches the CacheHierarchy to update, or null for none (the default)
+    */
+       public void setCacheHierarchy(CacheHierarchy caches) {
+         cacheHierarchy = caches;
+         CacheHierarchy.install(caches);
+      }
+   
+   /**
+    *  Get the CacheHierarchy currently timing memory references.
+    *  @return the current CacheHierarchy, or null if there is none
+    */
+       public CacheHierarchy getCacheHierarchy() {
+         return cacheHierarchy;
+      }
+   
+   /**
+    *  Install a PipelineModel to estimate the pipelined timing of subsequent runs.
+    *  @param pipeline the PipelineModel to update, or null for none (the default)
+    */
+       public void setPipelineModel(PipelineModel pipeline) {
+         pipelineModel = pipeline;
+      }
+   
+   /**
+    *  Get the PipelineModel currently timing executed instructions.
+    *  @return the current PipelineModel, or null if there is none
+    */
+       public PipelineModel getPipelineModel() {
+         return pipelineModel;
+      }
+   
+   /**
+    *  Simulate several harts (hardware threads) sharing memory in subsequent runs.
+    *  Each hart has its own registers, Coprocessor 0 and 1 registers and delayed
+    *  branch state, and starts at the same address as hart 0, with its stack pointer
+    *  Hart.STACK_SIZE bytes below that of the hart before it.  Round-robin scheduling
+    *  executes one instruction of each hart in turn on the simulation thread, which is
+    *  deterministic.  Parallel scheduling runs each hart on a host thread of its own,
+    *  so harts execute simultaneously on separate processor cores; the profiler,
+    *  coverage, trace, cache and pipeline add-ons are not updated in this mode.
+    *  <p>
+    *  A run ends when a hart exits, gets an exception that is not handled, reaches a
+    *  breakpoint or exceeds the budget, or when every hart has either run off the end
+    *  of the program or executed maxSteps instructions; maxSteps and the instruction
+    *  limit of the ExecutionBudget apply to each hart separately.  External interrupts
+    *  are taken by hart 0.  Backstepping and infinite loop detection are not available.
+    *  @param count number of harts, 1 (the default) for a single processor
+    *  @param scheduling Hart.ROUND_ROBIN or Hart.PARALLEL
+    */
+       public void setHarts(int count, int scheduling) {
+         hartCount = Math.max(1, count);
+         hartScheduling = scheduling;
+         nextHart = 0;
+      }
+   
+   /**
+    *  Get the number of harts simulated by subsequent runs.
+    *  @return the number of harts, 1 unless set by setHarts()
+    */
+       public int getHartCount() {
+         return hartCount;
+      }
+   
+   /**
+    *  Get the scheduling of the harts of subsequent runs.
+    *  @return Hart.ROUND_ROBIN or Hart.PARALLEL
+    */
+       public int getHartScheduling() {
+         return hartScheduling;
+      }
+   
    /**
     *  Determine whether or not the next instruction to be executed is in a
     *  "delay slot".  This means delayed branching is enabled, the branch
@@ -113,23 +296,68 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
        public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
          simulatorThread = new SimThread(p,pc,maxSteps,breakPoints,actor);
-         simulatorThread.start();
+         Simulation simulation = simulatorThread.getSimulation();
+         launch(simulatorThread, null);
       	
       	// Condition should only be true if run from command-line instead of GUI.
       	// If so, just stick around until execution thread is finished.
          if (actor == null) {
-            Object dun = simulatorThread.get(); // this should emulate join()
-            ProcessingException pe = simulatorThread.pe;
-            boolean done = simulatorThread.done;
-            if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
+            SimulationResult result = awaitResult(simulation);
+            if (result.isDone()) SystemIO.resetFiles(); // close any files opened in MIPS progra
             this.simulatorThread = null;
-            if (pe != null) {
-               throw pe;
+            if (result.getProcessingException() != null) {
+               throw result.getProcessingException();
             }
-            return done;
+            return result.isDone();
          }
          return true;
       }
+   
+   /**
+    * Start simulated execution of given MIPS program without blocking and without
+    * involving the GUI.  The returned handle can pause, resume or stop the execution
+    * and yields a SimulationResult (reason, program counter, instruction count) when
+    * it ends.  The program must have already been assembled.
+    * @param p The MIPSprogram to be simulated.
+    * @param pc address of first instruction to simulate; this goes into program counter
+    * @param maxSteps maximum number of steps to perform before stopping with reason MAX_STEPS (0 or less means no max)
+    * @param breakPoints array of breakpoint program counter values, use null if none
+    * @param executor runs the simulation; if null a dedicated "MIPS" thread is started
+    * @return Simulation handle for the started execution
+    **/
+    
+       public Simulation startSimulation(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, java.util.concurrent.Executor executor) {
+         SimThread thread = new SimThread(p,pc,maxSteps,breakPoints,null);
+         simulatorThread = thread;
+         launch(thread, executor);
+         return thread.getSimulation();
+      }
+   
+      // Run the simulation either on the given executor or on its own thread.  The
+   	// own thread runs at slightly lower priority so the GUI stays responsive.
+       private void launch(SimThread thread, java.util.concurrent.Executor executor) {
+         if (executor == null) {
+            Thread t = new Thread(thread, "MIPS");
+            t.setPriority(Thread.NORM_PRIORITY-1);
+            t.start();
+         } 
+         else {
+            executor.execute(thread);
+         }
+      }
+   
+      // Wait for the execution thread to finish, in the manner of Thread.join().
+       private SimulationResult awaitResult(Simulation simulation) {
+         try {
+            return simulation.getCompletion().join();
+         } 
+             catch (java.util.concurrent.CompletionException e) {
+               Throwable cause = e.getCause();
+               if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+               if (cause instanceof Error) throw (Error) cause;
+               throw e;
+            }
+      }
    		
    
        /**
@@ -142,10 +370,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void stopExecution(AbstractAction actor) {
       
          if (simulatorThread != null) {
-            simulatorThread.setStop(actor);
-            for (StopListener l : stopListeners) {
-               l.stopped(this);
-            }
+            simulatorThread.setStop(actor); // also notifies the stop listeners
             simulatorThread = null;
          }
       }
@@ -160,11 +385,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
       private ArrayList<StopListener> stopListeners = new ArrayList<StopListener>(1);
        public void addStopListener(StopListener l) {
-         stopListeners.add(l);
+         synchronized (stopListeners) {
+            stopListeners.add(l);
+         }
       }
    
        public void removeStopListener(StopListener l) {
-         stopListeners.remove(l);
+         synchronized (stopListeners) {
+            stopListeners.remove(l);
+         }
+      }
+   
+      // Tell the stop listeners that execution is being stopped.  Called by the
+   	// Simulation handle, from whatever thread stops it.
+       void notifyStopListeners() {
+         StopListener[] listeners;
+         synchronized (stopListeners) {
+            listeners = stopListeners.toArray(new StopListener[stopListeners.size()]);
+         }
+         for (StopListener l : listeners) {
+            l.stopped(this);
+         }
       }
    
    	 // The Simthread object will call this method when it enters and returns from
@@ -188,25 +429,40 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 
    	 
    	/**
-   	 * SwingWorker subclass to perform the simulated execution in background thread.
-   	 * It is "interrupted" when main thread sets the "stop" variable to true.
-   	 * The variable is tested before the next MIPS instruction is simulated.  Thus
-   	 * interruption occurs in a tightly controlled fashion.
-   	 *
-   	 * See SwingWorker.java for more details on its functionality and usage.  It is
-   	 * provided by Sun Microsystems for download and is not part of the Swing library.
+   	 * Runnable to perform the simulated execution in background thread.
+   	 * It is "interrupted" when main thread pauses or stops its Simulation handle.
+   	 * The handle is tested before the next MIPS instruction is simulated.  Thus
+   	 * interruption occurs in a tightly controlled fashion.  When the run loop is
+   	 * left, the handle is completed and, if started from the GUI, finished() is
+   	 * invoked on the event dispatching thread.
    	 */ 	
    		
-       class SimThread extends SwingWorker {
+       class SimThread implements Runnable {
          private MIPSprogram p;
          private int pc, maxSteps;
          private int[] breakPoints;
          private boolean done;
          private ProcessingException pe;
-         private volatile boolean stop = false;
+         private final Simulation simulation;
          private volatile AbstractAction stopper;
          private AbstractAction starter;
          private int constructReturnReason;
+         private long executed; // count of MIPS instructions simulated so far
+         private ExecutionBudget budget;
+         private Profiler profiler;
+         private Coverage coverage;
+         private TraceRecorder trace;
+         private CacheHierarchy caches;
+         private PipelineModel pipeline;
+         private VirtualClock clock;
+         private int hartCount, hartScheduling;
+         private long instructionLimit;
+         private LoopDetector loopDetector;
+         private long[] executedBy;  // instructions executed, per hart
+         private ProcessingException[] errorBy;  // exception that ended the run, per hart
+         private int lastPc;  // address of the instruction hart 0 executed last
+         private int haltReason;  // first reason a hart gave for ending a parallel run
+         private Throwable hartFailure;  // unexpected exception thrown by a hart thread
       
       
          /**
@@ -219,7 +475,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	 *  @param starter the GUI component responsible for this call, usually GO or STEP.  null if none.
       	 */
           SimThread(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter) {
-            super(Globals.getGui()!=null);  
+            this.simulation = new Simulation(Simulator.this);
             this.p = p;
             this.pc = pc;
             this.maxSteps = maxSteps;
@@ -228,35 +484,78 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             this.pe = null;
             this.starter = starter;
             this.stopper = null;
+            this.executed = 0;
+            this.budget = Simulator.this.executionBudget;
+            this.profiler = Simulator.this.profiler;
+            this.coverage = Simulator.this.coverage;
+            this.trace = Simulator.this.traceRecorder;
+            this.caches = Simulator.this.cacheHierarchy;
+            this.pipeline = Simulator.this.pipelineModel;
+            this.clock = Simulator.this.clock;
+            this.hartCount = Simulator.this.hartCount;
+            this.hartScheduling = Simulator.this.hartScheduling;
+         }
+      	
+      	/**
+      	 * @return the handle through which this execution is controlled and its result delivered
+      	 */
+          Simulation getSimulation() {
+            return simulation;
          }
       	
       	/**
-      	 * Sets to "true" the volatile boolean variable that is tested after each
+      	 * Stops the Simulation handle that is tested after each
       	 * MIPS instruction is executed.  After calling this method, the next test
-      	 * will yield "true" and "construct" will return.
+      	 * will see the stop request and "construct" will return.
       	 *
       	 * @param actor the Swing component responsible for this call.  
       	 */
           public void setStop(AbstractAction actor) {
-            stop = true;
             stopper = actor;
+            simulation.stop();
          }
       	
+      	/**
+      	 *  Simulates the program execution in the background, then completes the
+      	 *  Simulation handle and schedules the GUI update, if any.
+      	 */
+          public void run() {
+            executionThread = Thread.currentThread();
+            try {
+               construct();
+            } 
+                catch (RuntimeException e) {
+                  simulation.completeExceptionally(e);
+                  throw e;
+               } 
+                catch (Error e) {
+                  simulation.completeExceptionally(e);
+                  throw e;
+               }
+            finally {
+               executionThread = null;
+            }
+            simulation.complete(new SimulationResult(constructReturnReason, done,
+                                   RegisterFile.getProgramCounter(), executed, pe));
+            if (starter != null && Globals.getGui() != null) {
+               SwingUtilities.invokeLater(
+                     new Runnable() {
+                        public void run() { finished(); }
+                     });
+            }
+         }
       
       	/**
-      	 *  This is comparable to the Runnable "run" method (it is called by
-      	 *  SwingWorker's "run" method).  It simulates the program
-      	 *  execution in the backgorund.
+      	 *  Called by run() to simulate the program execution.
       	 *
       	 *  @return  boolean value true if execution done, false otherwise
       	 */
       	
-          public Object construct() {
-            // The next two statements are necessary for GUI to be consistently updated
-         	// before the simulation gets underway.  Without them, this happens only intermittently,
+          private Object construct() {
+            // The next statement is necessary for GUI to be consistently updated
+         	// before the simulation gets underway.  Without it, this happens only intermittently,
          	// with a consequence that some simulations are interruptable using PAUSE/STOP and others
          	// are not (because one or the other or both is not yet enabled).
-            Thread.currentThread().setPriority(Thread.NORM_PRIORITY-1);
             Thread.yield();  // let the main thread run a bit to finish updating the GUI
          	
             if (breakPoints == null || breakPoints.length == 0) {
@@ -267,29 +566,198 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
             
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
-         	
-            RegisterFile.initializeProgramCounter(pc);
-            ProgramStatement statement = null;
-            try {
-               statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+            
+            // Budget limits are tested only if a budget is installed.  The clock is
+         	// polled every 1024 instructions to keep the per-instruction cost negligible.
+            instructionLimit = Long.MAX_VALUE;
+            loopDetector = null;
+            if (budget != null) {
+               budget.start();
+               instructionLimit = budget.instructionLimit();
+               if (budget.getDetectInfiniteLoops() && hartCount == 1) {
+                  loopDetector = new LoopDetector(budget);
+               }
+            }
+            if (profiler != null) {
+               profiler.start(pc);
+            }
+            if (coverage != null) {
+               coverage.start(p);
+            }
+            if (pipeline != null) {
+               pipeline.start(p);
+            }
+            
+            Hart[] harts = Hart.configure(hartCount);
+            executedBy = new long[harts.length];
+            errorBy = new ProcessingException[harts.length];
+            lastPc = pc;
+            int reason;
+            if (harts.length == 1) {
+               RegisterFile.initializeProgramCounter(pc);
+               reason = execute(harts[0], Long.MAX_VALUE);
+               this.pe = errorBy[0];
             } 
-                catch (AddressErrorException e) {
-                  ErrorList el = new ErrorList();
-                  el.add(new ErrorMessage((MIPSprogram)null,0,0,"invalid program counter value: "+Binary.intToHexString(RegisterFile.getProgramCounter())));
-                  this.pe = new ProcessingException(el, e);
-						// Next statement is a hack.  Previous statement sets EPC register to ProgramCounter-4
-						// because it assumes the bad address comes from an operand so the ProgramCounter has already been
-						// incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
-						// not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
-                  Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getProgramCounter());
-                  this.constructReturnReason = EXCEPTION;
-                  this.done = true;
-                  SystemIO.resetFiles(); // close any files opened in MIPS program
-                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                  return new Boolean(done);
+            else {
+               reason = (hartScheduling == Hart.PARALLEL) ? runParallel(harts) : runRoundRobin(harts);
+            }
+            for (int i = 0; i < executedBy.length; i++) {
+               executed += executedBy[i];
+            }
+            this.constructReturnReason = reason;
+            this.done = reason != PAUSE_OR_STOP && reason != BREAKPOINT && reason != MAX_STEPS;
+            SystemIO.flushOutput();
+            if (done) {
+               SystemIO.resetFiles(); // close any files opened in MIPS program
+            }
+            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, lastPc);
+            return Boolean.valueOf(done);
+         }
+      
+         // Make each hart that has not started yet begin at the starting address, and
+      	// hart 0 in any case, as in a single-hart run.  Backstepping cannot tell the
+      	// harts apart, so it is turned off.
+          private void startHarts(Hart[] harts) {
+            for (int i = 0; i < harts.length; i++) {
+               if (i == 0 || !harts[i].isStarted()) {
+                  Hart.select(harts[i]);
+                  RegisterFile.initializeProgramCounter(pc);
+                  harts[i].setStarted(true);
                }
-            int steps = 0;
-         	
+            }
+            Hart.select(harts[0]);
+            if (Globals.program != null && Globals.program.getBackStepper() != null) {
+               Globals.program.getBackStepper().setEnabled(false);
+            }
+         }
+      
+         // Run the harts on this thread, one instruction each in turn, until one of them
+      	// ends the run (exit, error, breakpoint, stop...) or all have either run off the
+      	// end of the program or executed maxSteps instructions.
+          private int runRoundRobin(Hart[] harts) {
+            startHarts(harts);
+            int remaining = 0;
+            boolean[] waiting = new boolean[harts.length];
+            for (int i = 0; i < harts.length; i++) {
+               waiting[i] = !harts[i].isFinished();
+               if (waiting[i]) remaining++;
+            }
+            boolean stepped = false;
+            int reason = CLIFF_TERMINATION;
+            int i = nextHart % harts.length;
+            while (remaining > 0) {
+               if (waiting[i]) {
+                  Hart.select(harts[i]);
+                  int r = execute(harts[i], 1);
+                  if (r == CLIFF_TERMINATION || r == MAX_STEPS) {
+                     harts[i].setFinished(r == CLIFF_TERMINATION);
+                     stepped |= r == MAX_STEPS;
+                     waiting[i] = false;
+                     remaining--;
+                  } 
+                  else if (r != QUANTUM_EXPIRED) {
+                     reason = r;
+                     this.pe = errorBy[i];
+                     nextHart = i + 1;
+                     break;
+                  }
+               }
+               i = (i + 1) % harts.length;
+            }
+            if (remaining == 0 && stepped) {
+               reason = MAX_STEPS;
+            }
+            Hart.select(harts[0]);
+            return reason;
+         }
+      
+         // Run each hart on a host thread of its own until one of them ends the run, which
+      	// stops the others, or all have run off the end or executed maxSteps instructions.
+      	// These threads are not the execution thread, so the Memory hooks of the trace
+      	// recorder and cache hierarchy ignore them; the other add-ons are not updated either.
+          private int runParallel(final Hart[] harts) {
+            startHarts(harts);
+            profiler = null;
+            coverage = null;
+            trace = null;
+            caches = null;
+            pipeline = null;
+            haltReason = NO_HALT;
+            hartFailure = null;
+            final int[] reasons = new int[harts.length];
+            Thread[] threads = new Thread[harts.length];
+            Hart.setParallel(true);
+            for (int i = 0; i < harts.length; i++) {
+               final int id = i;
+               reasons[id] = CLIFF_TERMINATION;
+               if (harts[id].isFinished()) {
+                  continue;
+               }
+               threads[id] = new Thread(
+                     new Runnable() {
+                        public void run() {
+                           Hart.bind(harts[id]);
+                           try {
+                              reasons[id] = execute(harts[id], Long.MAX_VALUE);
+                              if (reasons[id] != CLIFF_TERMINATION && reasons[id] != MAX_STEPS) {
+                                 halt(reasons[id], errorBy[id], null);
+                              }
+                           } 
+                               catch (RuntimeException e) {
+                                 halt(EXCEPTION, null, e);
+                              } 
+                               catch (Error e) {
+                                 halt(EXCEPTION, null, e);
+                              }
+                        }
+                     }, "MARS hart " + id);
+               threads[id].start();
+            }
+            for (int i = 0; i < threads.length; i++) {
+               while (threads[i] != null && threads[i].isAlive()) {
+                  try {
+                     threads[i].join();
+                  } 
+                      catch (InterruptedException e) {
+                        simulation.stop();
+                     }
+               }
+            }
+            Hart.setParallel(false);
+            if (hartFailure instanceof RuntimeException) throw (RuntimeException) hartFailure;
+            if (hartFailure instanceof Error) throw (Error) hartFailure;
+            boolean stepped = false;
+            for (int i = 0; i < harts.length; i++) {
+               harts[i].setFinished(reasons[i] == CLIFF_TERMINATION);
+               stepped |= reasons[i] == MAX_STEPS;
+            }
+            if (haltReason != NO_HALT) {
+               return haltReason;
+            }
+            return stepped ? MAX_STEPS : CLIFF_TERMINATION;
+         }
+      
+         // Record the first reason a hart gives for ending a parallel run, and stop the
+      	// other harts.  They then end with PAUSE_OR_STOP, which is not recorded.
+          private synchronized void halt(int reason, ProcessingException e, Throwable failure) {
+            if (haltReason == NO_HALT) {
+               haltReason = reason;
+               this.pe = e;
+               hartFailure = failure;
+               simulation.stop();
+            }
+         }
+      
+      	/**
+      	 *  Executes instructions of the given hart, which must be current, until the
+      	 *  run ends for it or it has executed the given number of instructions.
+      	 *
+      	 *  @param hart the hart to execute
+      	 *  @param quantum maximum number of instructions to execute, Long.MAX_VALUE for no maximum
+      	 *  @return the reason for returning, QUANTUM_EXPIRED if quantum instructions were executed
+      	 */
+      	
+          private int execute(Hart hart, long quantum) {
          	// *******************  PS addition 26 July 2006  **********************
          	// A couple statements below were added for the purpose of assuring that when
          	// "back stepping" is enabled, every instruction will have at least one entry
@@ -320,176 +788,211 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// This is noticeable in stepped mode.
          	// *********************************************************************
          	
-            int pc = 0;  // added: 7/26/06 (explanation above)
-         
-            while (statement != null) {
-               pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
-               RegisterFile.incrementPC();           	
-            	// Perform the MIPS instruction in synchronized block.  If external threads agree
-            	// to access MIPS memory and registers only through synchronized blocks on same 
-            	// lock variable, then full (albeit heavy-handed) protection of MIPS memory and 
-            	// registers is assured.  Not as critical for reading from those resources.
-               synchronized (Globals.memoryAndRegistersLock) {
-                  try {                      
-                     if (Simulator.externalInterruptingDevice != NO_DEVICE) {
-                        int deviceInterruptCode = externalInterruptingDevice;
-                        Simulator.externalInterruptingDevice = NO_DEVICE;
-                        throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
-                     }
-                     BasicInstruction instruction = (BasicInstruction)statement.getInstruction();
-                     if (instruction == null) {
-                        throw new ProcessingException(statement,
-                            "undefined instruction ("+Binary.intToHexString(statement.getBinaryStatement())+")",
-                            Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+            int id = hart.getId();
+            long count = executedBy[id];  // instructions executed by this hart during this run
+            long quantumEnd = (quantum == Long.MAX_VALUE) ? Long.MAX_VALUE : count + quantum;
+            // Harts running in parallel must not all take the same lock for every instruction.
+            Object lock = (hartCount > 1 && hartScheduling == Hart.PARALLEL) ? (Object) hart : Globals.memoryAndRegistersLock;
+            // Harts running in parallel take time side by side, so only hart 0 advances the clock.
+            boolean ticks = clock != null && (id == 0 || lock == Globals.memoryAndRegistersLock);
+            int pc = lastPc;  // added: 7/26/06 (explanation above)
+            ProgramStatement statement = null;
+            try {
+               while (true) {
+                  // Get the next instruction.
+                  try {
+                     statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+                  } 
+                      catch (AddressErrorException e) {
+                        ErrorList el = new ErrorList();
+                        el.add(new ErrorMessage((MIPSprogram)null,0,0,"invalid program counter value: "+Binary.intToHexString(RegisterFile.getProgramCounter())));
+                        errorBy[id] = new ProcessingException(el,e);
+							   // Next statement is a hack.  Previous statement sets EPC register to ProgramCounter-4
+							   // because it assumes the bad address comes from an operand so the ProgramCounter has already been
+							   // incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
+							   // not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
+                        Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getProgramCounter());
+                        return EXCEPTION;
                      }
-                     // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
-                     instruction.getSimulationCode().simulate(statement);
-                  	
-                  	// IF statement added 7/26/06 (explanation above)
-                     if (Globals.getSettings().getBackSteppingEnabled()) {
-                        Globals.program.getBackStepper().addDoNothing(pc);
+                  if (statement == null) {
+                     // DPS July 2007.  This "if" statement is needed for correct program
+                  	// termination if delayed branching on and last statement in
+                  	// program is a branch/jump.  Program will terminate rather than branch,
+                  	// because that's what MARS does when execution drops off the bottom.
+                     if (DelayedBranch.isTriggered() || DelayedBranch.isRegistered()) {
+                        DelayedBranch.clear();
                      }
-                  } 
-                      catch (ProcessingException pe) {
-                        if (pe.errors() == null) {
-                           this.constructReturnReason = NORMAL_TERMINATION;
-                           this.done = true;
-                           SystemIO.resetFiles(); // close any files opened in MIPS program
-                           Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                           return new Boolean(done); // execution completed without error.
-                        } 
-                        else {
-                           // See if an exception handler is present.  Assume this is the case
-                        	// if and only if memory location Memory.exceptionHandlerAddress
-                        	// (e.g. 0x80000180) contains an instruction.  If so, then set the
-                        	// program counter there and continue.  Otherwise terminate the
-                        	// MIPS program with appropriate error message.
-                           ProgramStatement exceptionHandler = null;
-                           try {
-                              exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
-                           } 
-                               catch (AddressErrorException aee) { } // will not occur with this well-known addres
-                           if (exceptionHandler != null) {
-                              RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+                  	// A null statement means the program counter "fell off the end" of the program.
+                     return CLIFF_TERMINATION;
+                  }
+               
+                  pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
+                  if (trace != null) {
+                     trace.fetch(pc);
+                  }
+                  if (caches != null) {
+                     caches.fetch(pc);
+                  }
+                  RegisterFile.incrementPC();           	
+                  count++;
+                  if (ticks) {
+                     clock.executed();
+                  }
+               	// Perform the MIPS instruction in synchronized block.  If external threads agree
+               	// to access MIPS memory and registers only through synchronized blocks on same 
+               	// lock variable, then full (albeit heavy-handed) protection of MIPS memory and 
+               	// registers is assured.  Not as critical for reading from those resources.
+                  synchronized (lock) {
+                     try {                      
+                        if (Simulator.externalInterruptingDevice != NO_DEVICE && id == 0) {
+                           int deviceInterruptCode = externalInterruptingDevice;
+                           Simulator.externalInterruptingDevice = NO_DEVICE;
+                           throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                        }
+                        BasicInstruction instruction = (BasicInstruction)statement.getInstruction();
+                        if (instruction == null) {
+                           throw new ProcessingException(statement,
+                               "undefined instruction ("+Binary.intToHexString(statement.getBinaryStatement())+")",
+                               Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                        }
+                        // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
+                        instruction.getSimulationCode().simulate(statement);
+                     	
+                     	// IF statement added 7/26/06 (explanation above)
+                        if (Globals.getSettings().getBackSteppingEnabled()) {
+                           Globals.program.getBackStepper().addDoNothing(pc);
+                        }
+                     } 
+                         catch (ProcessingException pe) {
+                           if (pe.errors() == null) {
+                              if (profiler != null) {
+                                 profiler.executed(pc, pc + Instruction.INSTRUCTION_LENGTH); // the exit syscall itself
+                              }
+                              if (coverage != null) {
+                                 coverage.executed(pc); // the exit syscall itself
+                              }
+                              if (pipeline != null) {
+                                 pipeline.executed(pc, statement.getBinaryStatement(), pc + Instruction.INSTRUCTION_LENGTH);
+                              }
+                              return NORMAL_TERMINATION; // execution completed without error.
                            } 
                            else {
-                              this.constructReturnReason = EXCEPTION;
-                              this.pe = pe;
-                              this.done = true;
-                              SystemIO.resetFiles(); // close any files opened in MIPS program
-                              Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                              return new Boolean(done);
+                              // See if an exception handler is present.  Assume this is the case
+                           	// if and only if memory location Memory.exceptionHandlerAddress
+                           	// (e.g. 0x80000180) contains an instruction.  If so, then set the
+                           	// program counter there and continue.  Otherwise terminate the
+                           	// MIPS program with appropriate error message.
+                              ProgramStatement exceptionHandler = null;
+                              try {
+                                 exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
+                              } 
+                                  catch (AddressErrorException aee) { } // will not occur with this well-known addres
+                              if (exceptionHandler != null) {
+                                 RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+                              } 
+                              else {
+                                 errorBy[id] = pe;
+                                 return EXCEPTION;
+                              }
                            }
                         }
+                  }// end synchronized block
+               	
+               	///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
+                  if (DelayedBranch.isTriggered()) {
+                     RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
+                     DelayedBranch.clear();
+                  } 
+                  else if (DelayedBranch.isRegistered()) {
+                     DelayedBranch.trigger();
+                  }//////////////////////////////////////////////////////////////////////
+                  
+                  if (profiler != null) {
+                     profiler.executed(pc, RegisterFile.getProgramCounter());
+                  }
+                  if (coverage != null) {
+                     coverage.executed(pc);
+                  }
+                  if (pipeline != null) {
+                     pipeline.executed(pc, statement.getBinaryStatement(), RegisterFile.getProgramCounter());
+                  }
+               	
+               	// Volatile control variable of the Simulation handle, set by the main thread or
+               	// the embedder.  Used to stop or pause a running MIPS program.  See stopExecution()
+               	// above.  A paused handle blocks here until it is resumed or stopped.
+                  int control = simulation.control;
+                  if (control != Simulation.RUNNING && 
+                      (control == Simulation.STOPPED || !simulation.awaitResume())) { 
+                     return PAUSE_OR_STOP;
+                  }
+               	// Return if the execution budget is spent.
+                  if (budget != null) {
+                     if (count >= instructionLimit) {
+                        budget.instructionsExhausted();
+                     }
+                     if (budget.isExceeded() || ((count & 0x3FF) == 0 && budget.clockExpired())) {
+                        return BUDGET_EXCEEDED;
+                     }
+               	   // Return if control went backward into a state that repeats with no side effects.
+                     if (loopDetector != null && RegisterFile.getProgramCounter() <= pc &&
+                         loopDetector.repeats(RegisterFile.getProgramCounter())) {
+                        return INFINITE_LOOP;
                      }
-               }// end synchronized block
-            	
-            	///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
-               if (DelayedBranch.isTriggered()) {
-                  RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
-                  DelayedBranch.clear();
-               } 
-               else if (DelayedBranch.isRegistered()) {
-                  DelayedBranch.trigger();
-               }//////////////////////////////////////////////////////////////////////
-            	
-            	// Volatile variable initialized false but can be set true by the main thread.
-            	// Used to stop or pause a running MIPS program.  See stopSimulation() above.
-               if (stop == true) { 
-                  this.constructReturnReason = PAUSE_OR_STOP;
-                  this.done = false;
-                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                  return new Boolean(done);
-               }
-            	//	Return if we've reached a breakpoint.					
-               if((breakPoints != null) && 
-               (Arrays.binarySearch(breakPoints,RegisterFile.getProgramCounter()) >= 0)) {
-                  this.constructReturnReason = BREAKPOINT;
-                  this.done = false;
-                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                  return new Boolean(done); // false;
-               }
-            	// Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
-               if (maxSteps > 0) {
-                  steps++;
-                  if (steps >= maxSteps) {
-                     this.constructReturnReason = MAX_STEPS;
-                     this.done = false;
-                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                     return new Boolean(done);// false;
                   }
-               }
-            	
-            	// schedule GUI update only if: there is in fact a GUI! AND
-            	//                              using Run,  not Step (maxSteps > 1) AND
-            	//                              running slowly enough for GUI to keep up
-               //if (Globals.getGui() != null && maxSteps != 1 &&             
-               if (interactiveGUIUpdater != null && maxSteps != 1 && 
-                          RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
-                  SwingUtilities.invokeLater(interactiveGUIUpdater);
-               }
-               if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
-                  if (maxSteps != 1 && 
-                          RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
-                     try { Thread.sleep((int)(1000/RunSpeedPanel.getInstance().getRunSpeed())); // make sure it's never zero!
-                     } 
-                         catch (InterruptedException e) {}
+               	//	Return if we've reached a breakpoint.					
+                  if((breakPoints != null) && 
+                  (Arrays.binarySearch(breakPoints,RegisterFile.getProgramCounter()) >= 0)) {
+                     return BREAKPOINT;
                   }
-               }
-               
-            
-               // Get next instruction in preparation for next iteration.
-            
-               try {
-                  statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
-               } 
-                   catch (AddressErrorException e) {
-                     ErrorList el = new ErrorList();
-                     el.add(new ErrorMessage((MIPSprogram)null,0,0,"invalid program counter value: "+Binary.intToHexString(RegisterFile.getProgramCounter())));
-                     this.pe = new ProcessingException(el,e);
-						   // Next statement is a hack.  Previous statement sets EPC register to ProgramCounter-4
-						   // because it assumes the bad address comes from an operand so the ProgramCounter has already been
-						   // incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
-						   // not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
-                     Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getProgramCounter());
-                     this.constructReturnReason = EXCEPTION;
-                     this.done = true;
-                     SystemIO.resetFiles(); // close any files opened in MIPS program
-                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                     return  new Boolean(done);
+               	// Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
+                  if (maxSteps > 0) {
+                     if (count >= maxSteps) {
+                        return MAX_STEPS;
+                     }
                   }
+               	
+               	// schedule GUI update only if: there is in fact a GUI! AND
+               	//                              using Run,  not Step (maxSteps > 1) AND
+               	//                              running slowly enough for GUI to keep up
+                  //if (Globals.getGui() != null && maxSteps != 1 &&             
+                  if (interactiveGUIUpdater != null && maxSteps != 1 && 
+                             RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
+                     SwingUtilities.invokeLater(interactiveGUIUpdater);
+                  }
+                  if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
+                     if (maxSteps != 1 && 
+                             RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
+                        try { Thread.sleep((int)(1000/RunSpeedPanel.getInstance().getRunSpeed())); // make sure it's never zero!
+                        } 
+                            catch (InterruptedException e) {}
+                     }
+                  }
+                  if (count >= quantumEnd) {
+                     return QUANTUM_EXPIRED;
+                  }
+               }
+            } 
+            finally {
+               executedBy[id] = count;
+               if (id == 0) {
+                  lastPc = pc;
+               }
             }
-            // DPS July 2007.  This "if" statement is needed for correct program
-         	// termination if delayed branching on and last statement in
-         	// program is a branch/jump.  Program will terminate rather than branch,
-         	// because that's what MARS does when execution drops off the bottom.
-            if (DelayedBranch.isTriggered() || DelayedBranch.isRegistered()) {
-               DelayedBranch.clear();
-            }
-         	// If we got here it was due to null statement, which means program
-         	// counter "fell off the end" of the program.  NOTE: Assumes the 
-         	// "while" loop contains no "break;" statements.
-            this.constructReturnReason = CLIFF_TERMINATION;
-            this.done = true;
-            SystemIO.resetFiles(); // close any files opened in MIPS program
-            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-            return new Boolean(done); // true;  // execution completed
          }
          
       	
       	/**
-      	 *   This method is invoked by the SwingWorker when the "construct" method returns.  
-      	 *   It will update the GUI appropriately.  According to Sun's documentation, it 
-      	 *   is run in the main thread so should work OK with Swing components (which are 
-      	 *   not thread-safe).
+      	 *   This method is invoked by run() when the "construct" method returns.  
+      	 *   It will update the GUI appropriately.  It is run in the event dispatching
+      	 *   thread so should work OK with Swing components (which are not thread-safe).
       	 *
       	 *   Its action depends on what caused the return from construct() and what
       	 *   action led to the call of construct() in the first place.
       	 */
       	 
           public void finished() {
-           // If running from the command-line, then there is no GUI to update.
-            if (Globals.getGui() == null) {
+           // If running from the command-line or not started by the GUI, then there is no GUI to update.
+            if (Globals.getGui() == null || starter == null) {
                return;
             }
             String starterName = (String) starter.getValue(AbstractAction.NAME);
@@ -504,7 +1007,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   ((RunGoAction)starter).paused(done,constructReturnReason,pe);
                } 
                else {
-                  String stopperName = (String) stopper.getValue(AbstractAction.NAME);
+                  String stopperName = (stopper == null) ? "Stop" : (String) stopper.getValue(AbstractAction.NAME);
                   if ("Pause".equals(stopperName)) {
                      ((RunGoAction)starter).paused(done,constructReturnReason,pe);
                   }
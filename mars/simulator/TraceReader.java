@@ -0,0 +1,134 @@
+   package mars.simulator;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/**
+ * Reads a memory reference trace written by TraceRecorder, one record at a time:
+ * <pre>
+ *    TraceReader trace = new TraceReader(file);
+ *    while (trace.next()) {
+ *       if (trace.getKind() != TraceRecorder.FETCH)
+ *          simulateAccess(trace.getAddress(), trace.getSize(), trace.getKind() == TraceRecorder.WRITE);
+ *    }
+ *    trace.close();
+ * </pre>
+ * The reader keeps no per-record objects, so traces of any length can be replayed quickly.
+ */
+
+    public class TraceReader implements Closeable {
+      private final FileChannel channel;
+      private final ByteBuffer buffer;
+      private boolean endOfFile;
+      private int lastFetch, lastData;
+      private int kind, address, size, programCounter;
+
+   	/**
+   	 * Open a trace file and check its header.
+   	 * @param file the trace file
+   	 * @throws IOException if the file cannot be read or is not a trace file
+   	 */
+       public TraceReader(File file) throws IOException {
+         channel = new FileInputStream(file).getChannel();
+         buffer = ByteBuffer.allocateDirect(1 << 16);
+         buffer.flip();
+         fill();
+         if (buffer.remaining() < 8) {
+            channel.close();
+            throw new IOException(file + " is not a memory trace");
+         }
+         for (int i = 0; i < TraceRecorder.MAGIC.length; i++) {
+            if (buffer.get() != TraceRecorder.MAGIC[i]) {
+               channel.close();
+               throw new IOException(file + " is not a memory trace");
+            }
+         }
+         int version = buffer.getInt();
+         if (version != TraceRecorder.VERSION) {
+            channel.close();
+            throw new IOException(file + " has unsupported trace version " + version);
+         }
+      }
+
+      // Keep at least one full record in the buffer unless the file is exhausted.
+       private void fill() throws IOException {
+         if (buffer.remaining() >= 16 || endOfFile)
+            return;
+         buffer.compact();
+         while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+               endOfFile = true;
+               break;
+            }
+         }
+         buffer.flip();
+      }
+
+   	/**
+   	 * Advance to the next record.
+   	 * @return false if there are no more records
+   	 * @throws IOException if reading fails or the trace is truncated
+   	 */
+       public boolean next() throws IOException {
+         fill();
+         if (!buffer.hasRemaining())
+            return false;
+         int tag = buffer.get();
+         kind = tag & 0x03;
+         if (kind == TraceRecorder.FETCH) {
+            address = ((tag & TraceRecorder.SEQUENTIAL) != 0) ? lastFetch + 4 : lastFetch + getDelta();
+            size = 4;
+            lastFetch = address;
+            programCounter = address;
+         }
+         else if (kind == TraceRecorder.READ || kind == TraceRecorder.WRITE) {
+            size = 1 << ((tag >> 2) & 0x03);
+            address = lastData + getDelta();
+            lastData = address;
+            programCounter = lastFetch;
+         }
+         else {
+            throw new IOException("corrupt trace record");
+         }
+         return true;
+      }
+
+       private int getDelta() throws IOException {
+         int zigzag = 0;
+         for (int shift = 0; ; shift += 7) {
+            if (!buffer.hasRemaining() || shift > 28) {
+               throw new IOException("truncated trace record");
+            }
+            int b = buffer.get();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+               break;
+         }
+         return (zigzag >>> 1) ^ -(zigzag & 1);
+      }
+
+   	/** @return kind of the current record: TraceRecorder.FETCH, READ or WRITE */
+       public int getKind() {
+         return kind;
+      }
+   	/** @return address fetched, loaded or stored by the current record */
+       public int getAddress() {
+         return address;
+      }
+   	/** @return number of bytes accessed by the current record */
+       public int getSize() {
+         return size;
+      }
+   	/** @return address of the instruction responsible for the current record */
+       public int getProgramCounter() {
+         return programCounter;
+      }
+
+   	/**
+   	 * Close the trace file.
+   	 * @throws IOException if closing fails
+   	 */
+       public void close() throws IOException {
+         channel.close();
+      }
+   }
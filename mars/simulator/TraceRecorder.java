@@ -0,0 +1,200 @@
+   package mars.simulator;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/**
+ * Records the memory reference stream of a running MIPS program to a compact
+ * binary trace file for offline analysis: every instruction fetch and every data
+ * load and store, with the address of the instruction that made it.  The trace can
+ * be replayed any number of times with a TraceReader, e.g. for cache experiments,
+ * without simulating the program again.
+ * <p>
+ * Install a recorder with Simulator.setTraceRecorder().  Records are encoded into a
+ * direct buffer and written through a FileChannel whenever it fills, so the cost
+ * on the simulation thread is a few bytes of encoding per reference.  Call close()
+ * when done to write the remainder.  Recording and close() hold the recorder's lock,
+ * so close() may be called while the program runs, as when the tool recording it is
+ * disconnected; references made after it are not recorded.
+ * <p>
+ * File format: the 4 bytes "MTRC", a 4-byte big-endian version number, then one
+ * record per reference.  A record starts with a tag byte whose low 2 bits give the
+ * kind (FETCH, READ or WRITE).  A fetch whose address is 4 more than the previous
+ * fetch has bit 2 set and nothing else; other fetches are followed by the
+ * difference from the previous fetch address.  For reads and writes, bits 2-3 hold
+ * log2 of the access size, and the tag is followed by the difference from the
+ * previous data address.  Differences are zigzag-encoded variable-length integers
+ * (7 bits per byte, low-order group first).  Data references belong to the most
+ * recent fetch.  Addresses start at 0.
+ */
+
+    public class TraceRecorder implements Closeable {
+   	/** Record kind: instruction fetch */
+      public static final int FETCH = 0;
+   	/** Record kind: data load */
+      public static final int READ = 1;
+   	/** Record kind: data store */
+      public static final int WRITE = 2;
+
+      static final byte[] MAGIC = {'M', 'T', 'R', 'C'};
+      static final int VERSION = 1;
+      static final int SEQUENTIAL = 0x04;
+      private static final int MAX_RECORD_BYTES = 6; // tag plus 5-byte varint
+
+      // Recorder receiving data accesses from Memory; set while installed in the Simulator.
+      private static volatile TraceRecorder current = null;
+
+      private final FileChannel channel;
+      private final ByteBuffer buffer;
+      private final String fileName;
+      private int lastFetch;
+      private int lastData;
+      private long fetches, reads, writes;
+      private IOException error;
+      private boolean closed;
+
+   	/**
+   	 * Create the trace file and write its header.
+   	 * @param file trace file to create; an existing file is overwritten
+   	 * @throws IOException if the file cannot be created
+   	 */
+       public TraceRecorder(File file) throws IOException {
+         fileName = file.getPath();
+         channel = new FileOutputStream(file).getChannel();
+         buffer = ByteBuffer.allocateDirect(1 << 16);
+         buffer.put(MAGIC).putInt(VERSION);
+      }
+
+      // Called by Simulator.setTraceRecorder().
+       static void install(TraceRecorder recorder) {
+         current = recorder;
+      }
+
+   	/**
+   	 * Called by Memory for every data load and store, whether or not Observers
+   	 * are registered.  Only accesses by the executing MIPS program are recorded.
+   	 * @param type AccessNotice.READ or AccessNotice.WRITE
+   	 * @param address memory address accessed
+   	 * @param length number of bytes accessed
+   	 */
+       public static void dataAccess(int type, int address, int length) {
+         TraceRecorder recorder = current;
+         if (recorder != null && Simulator.isExecutionThread()) {
+            recorder.data((type == AccessNotice.WRITE) ? WRITE : READ, address, length);
+         }
+      }
+
+   	/**
+   	 * Record the fetch of the instruction at pc.  Called from the simulation loop.
+   	 * @param pc address of the instruction about to be executed
+   	 */
+       public synchronized void fetch(int pc) {
+         if (!ensureRoom())
+            return;
+         if (pc == lastFetch + Memory.WORD_LENGTH_BYTES) {
+            buffer.put((byte) (FETCH | SEQUENTIAL));
+         }
+         else {
+            buffer.put((byte) FETCH);
+            putDelta(pc - lastFetch);
+         }
+         lastFetch = pc;
+         fetches++;
+      }
+
+       private synchronized void data(int kind, int address, int length) {
+         if (!ensureRoom())
+            return;
+         int sizeCode = (length >= 8) ? 3 : (length >= 4) ? 2 : (length >= 2) ? 1 : 0;
+         buffer.put((byte) (kind | (sizeCode << 2)));
+         putDelta(address - lastData);
+         lastData = address;
+         if (kind == WRITE)
+            writes++;
+         else
+            reads++;
+      }
+
+       private void putDelta(int delta) {
+         int zigzag = (delta << 1) ^ (delta >> 31);
+         while ((zigzag & ~0x7F) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+         }
+         buffer.put((byte) zigzag);
+      }
+
+      // Make room for one record, writing out the buffer if needed.  An I/O error
+   	// ends recording; it is reported by getError().
+       private boolean ensureRoom() {
+         if (error != null || closed)
+            return false;
+         if (buffer.remaining() < MAX_RECORD_BYTES) {
+            try {
+               drain();
+            }
+                catch (IOException e) {
+                  error = e;
+                  return false;
+               }
+         }
+         return true;
+      }
+
+       private void drain() throws IOException {
+         buffer.flip();
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+         buffer.clear();
+      }
+
+   	/**
+   	 * Write any buffered records and close the trace file.
+   	 * @throws IOException if writing fails, or if an earlier write failed
+   	 */
+       public synchronized void close() throws IOException {
+         if (closed)
+            return;
+         closed = true;
+         if (current == this) {
+            current = null;
+         }
+         try {
+            if (error == null) {
+               drain();
+            }
+         }
+         finally {
+            channel.close();
+         }
+         if (error != null) {
+            throw error;
+         }
+      }
+
+   	/**
+   	 * @return the I/O error that stopped recording, or null if none
+   	 */
+       public IOException getError() {
+         return error;
+      }
+
+   	/** @return name of the trace file */
+       public String getFileName() {
+         return fileName;
+      }
+   	/** @return number of instruction fetches recorded */
+       public long getFetchCount() {
+         return fetches;
+      }
+   	/** @return number of data loads recorded */
+       public long getReadCount() {
+         return reads;
+      }
+   	/** @return number of data stores recorded */
+       public long getWriteCount() {
+         return writes;
+      }
+   }
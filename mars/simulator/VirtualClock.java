@@ -0,0 +1,150 @@
+   package mars.simulator;
+   import java.util.ArrayList;
+
+/**
+ * Simulated time, for runs that should not depend on the host.  Once installed with
+ * Simulator.setClock(), time advances by a fixed number of nanoseconds for every
+ * instruction executed, and by the time a program asks to sleep, which then takes no
+ * host time at all.  The Time syscall reads this clock instead of the host's, and
+ * devices such as the IntervalTimer are driven by its alarms, so a program that
+ * animates with delays runs at full simulation speed and does the same every run.
+ * <p>
+ * The clock starts at 0 milliseconds (1 January 1970) and runs on across runs until
+ * reset() is called.  Instructions are counted on the simulation thread; in a run of
+ * harts in parallel, only those of hart 0 are.  Alarms go off on the thread that
+ * advances the clock past them.
+ */
+
+    public class VirtualClock {
+      private final long nanosPerInstruction;
+      private long now = 0;                    // nanoseconds since the clock started
+      private long nextAlarm = Long.MAX_VALUE; // time of the earliest alarm
+      private final ArrayList alarms = new ArrayList();
+
+   	/**
+   	 * An action to take when the clock reaches a time, and then periodically if a
+   	 * period is given.
+   	 */
+       public static final class Alarm {
+         private final Runnable action;
+         private final long period;
+         private long time;
+          private Alarm(Runnable action, long time, long period) {
+            this.action = action;
+            this.time = time;
+            this.period = period;
+         }
+      }
+
+   	/**
+   	 * Create a clock.
+   	 * @param nanosPerInstruction nanoseconds each instruction takes, at least 0
+   	 */
+       public VirtualClock(long nanosPerInstruction) {
+         this.nanosPerInstruction = Math.max(0, nanosPerInstruction);
+      }
+
+   	/**
+   	 * Advance the clock by the time of one instruction.  Called by the simulator
+   	 * for each instruction executed.
+   	 */
+       public void executed() {
+         now += nanosPerInstruction;
+         if (now >= nextAlarm) {
+            ring();
+         }
+      }
+
+   	/**
+   	 * Advance the clock as a program sleeps.
+   	 * @param millis time to sleep in milliseconds; nothing happens if not positive
+   	 */
+       public void sleep(long millis) {
+         if (millis > 0) {
+            now += millis * 1000000L;
+            ring();
+         }
+      }
+
+   	/**
+   	 * @return the current time in nanoseconds since the clock started
+   	 */
+       public long nanoTime() {
+         return now;
+      }
+
+   	/**
+   	 * @return the current time in milliseconds, as System.currentTimeMillis() would
+   	 * give it, counting from 1 January 1970 when the clock started
+   	 */
+       public long currentTimeMillis() {
+         return now / 1000000L;
+      }
+
+   	/**
+   	 * Set an alarm.
+   	 * @param action what to do when it goes off
+   	 * @param delayMillis milliseconds from now when it first goes off
+   	 * @param periodMillis milliseconds between later times it goes off, 0 to go off once
+   	 * @return the alarm, for cancel()
+   	 */
+       public synchronized Alarm schedule(Runnable action, long delayMillis, long periodMillis) {
+         Alarm alarm = new Alarm(action, now + Math.max(0, delayMillis) * 1000000L, Math.max(0, periodMillis) * 1000000L);
+         alarms.add(alarm);
+         nextAlarm = Math.min(nextAlarm, alarm.time);
+         return alarm;
+      }
+
+   	/**
+   	 * Cancel an alarm.
+   	 * @param alarm an alarm from schedule(); nothing happens if it already went off for good
+   	 */
+       public synchronized void cancel(Alarm alarm) {
+         alarms.remove(alarm);
+         updateNextAlarm();
+      }
+
+   	/**
+   	 * Set the clock back to 0 and cancel all alarms.
+   	 */
+       public synchronized void reset() {
+         now = 0;
+         alarms.clear();
+         nextAlarm = Long.MAX_VALUE;
+      }
+
+      // Take the actions of the alarms that are due, in the order of their times.  An
+   	// alarm that went off more than a period ago goes off once for each period.
+       private void ring() {
+         while (true) {
+            Alarm due = null;
+            synchronized (this) {
+               for (int i = 0; i < alarms.size(); i++) {
+                  Alarm alarm = (Alarm) alarms.get(i);
+                  if (alarm.time <= now && (due == null || alarm.time < due.time)) {
+                     due = alarm;
+                  }
+               }
+               if (due == null) {
+                  return;
+               }
+               if (due.period > 0) {
+                  due.time += due.period;
+               }
+               else {
+                  alarms.remove(due);
+               }
+               updateNextAlarm();
+            }
+            due.action.run(); // outside the lock, as the action may set or cancel alarms
+         }
+      }
+
+       private void updateNextAlarm() {
+         long next = Long.MAX_VALUE;
+         for (int i = 0; i < alarms.size(); i++) {
+            next = Math.min(next, ((Alarm) alarms.get(i)).time);
+         }
+         nextAlarm = next;
+      }
+   }
@@ -74,6 +74,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// For MarsTool, is set true when "Connect" clicked, false when "Disconnect" clicked.
    	// For app, is set true when "Assemble and Run" clicked, false when program terminates.
       private volatile boolean observing = false;
+   	// Optional batched alternative to Observer notification; see addAsEventStreamConsumer().
+      private AccessEventStream eventStream = null;
+      private static final int EVENT_STREAM_CAPACITY = 1 << 16;
    
    	// Several structures required for stand-alone use only (not MarsTool use)
       private File mostRecentlyOpenedFile = null; 
@@ -553,6 +556,50 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 
        protected void deleteAsObserver() {
          Globals.memory.deleteObserver(thisMarsApp);
+         deleteAsEventStreamConsumer();
+      }
+   
+      /**
+   	 *  Receive accesses to the specified subrange of MIPS memory in batches through
+   	 *  processAccessEvents(), instead of one notice at a time through processMIPSUpdate().
+   	 *  Events are buffered and delivered on a separate thread, so the tool does not slow
+   	 *  down the simulation.  Call this from an overridden addAsObserver(); the default
+   	 *  deleteAsObserver() closes the stream.
+   	 *  @param lowEnd low end of memory address range.
+   	 *  @param highEnd high end of memory address range; must be >= lowEnd
+   	 *  @param registers true to receive register accesses as well
+   	 *  @param policy what to do when the tool falls behind: AccessEventStream.BLOCK, DROP or SAMPLE
+   	 */
+       protected void addAsEventStreamConsumer(int lowEnd, int highEnd, boolean registers, int policy) {
+         deleteAsEventStreamConsumer();
+         eventStream = new AccessEventStream(EVENT_STREAM_CAPACITY, lowEnd, highEnd, registers, policy, 16,
+               new AccessEventStream.Consumer() {
+                  public void accessEvents(AccessEventStream events, int count) {
+                     processAccessEvents(events, count);
+                     updateDisplay();
+                  }
+               });
+         eventStream.open();
+      }
+   
+      /**
+   	 *  Stop receiving access events, if addAsEventStreamConsumer() was used.
+   	 */
+       protected void deleteAsEventStreamConsumer() {
+         if (eventStream != null) {
+            eventStream.close();
+            eventStream = null;
+         }
+      }
+   
+      /**
+   	 *  Override this method to process a batch of access events received through
+   	 *  addAsEventStreamConsumer().  It is called on the stream's own thread, and
+   	 *  updateDisplay() is called after each batch.  Does nothing by default.
+   	 *  @param events the event stream, whose accessors give the events of this batch
+   	 *  @param count number of events in the batch
+   	 */
+       protected void processAccessEvents(AccessEventStream events, int count) {
       }
    
       /**
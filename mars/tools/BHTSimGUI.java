@@ -29,6 +29,7 @@ package mars.tools;//.bhtsim;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -55,6 +56,7 @@ import javax.swing.table.DefaultTableCellRenderer;
  * <li>A configuration panel to select the number of entries and the history size
  * <li>A information panel that displays the most recent branch instruction including its address and BHT index
  * <li>A table representing the BHT with all entries and their internal state and statistics
+ * <li>A table comparing the accuracy of several other branch predictors on the same branches
  * <li>A log panel that summarizes the predictions in a textual form
  * </ul>
  * 
@@ -84,6 +86,9 @@ public class BHTSimGUI extends JPanel {
 	/** the table representing the BHT */
 	private JTable m_tabBHT;
 	
+	/** the table comparing the predictors of the predictor bench */
+	private JTable m_tabPredictors;
+	
 	/** text field for log output */
 	private JTextArea m_taLog;
 	
@@ -115,10 +120,17 @@ public class BHTSimGUI extends JPanel {
 		setLayout(layout);
 		
 		m_tabBHT = createAndInitTable();
+		m_tabPredictors = createAndInitTable();
+		
+		JPanel tablePanel = new JPanel(new BorderLayout(0, 10));
+		tablePanel.add(new JScrollPane(m_tabBHT), BorderLayout.CENTER);
+		JScrollPane predictorPane = new JScrollPane(m_tabPredictors);
+		predictorPane.setPreferredSize(new Dimension(400, 120));
+		tablePanel.add(predictorPane, BorderLayout.SOUTH);
 		
 		add(buildConfigPanel(), BorderLayout.NORTH);
 		add(buildInfoPanel(), BorderLayout.WEST);
-		add(new JScrollPane(m_tabBHT), BorderLayout.CENTER);
+		add(tablePanel, BorderLayout.CENTER);
 		add(buildLogPanel(), BorderLayout.SOUTH);			
 	}
 	
@@ -147,6 +159,7 @@ public class BHTSimGUI extends JPanel {
 		
 		theTable.setDefaultRenderer(Double.class, doubleRenderer);
 		theTable.setDefaultRenderer(Integer.class, defRenderer);
+		theTable.setDefaultRenderer(Long.class, defRenderer);
 		theTable.setDefaultRenderer(String.class, defRenderer);
 		
 		theTable.setSelectionBackground(BHTSimGUI.COLOR_PREPREDICTION);
@@ -302,6 +315,16 @@ public class BHTSimGUI extends JPanel {
 	}
 
 	
+	/***
+	 * Returns the table comparing the predictors of the predictor bench.
+	 * 
+	 * @return the reference to the table
+	 */
+	public JTable getTabPredictors() {
+		return m_tabPredictors;
+	}
+
+	
 	/***
 	 * Returns the text area for log purposes.
 	 * 
@@ -32,6 +32,8 @@ import java.awt.event.ActionListener;
 import java.util.Observable;
 
 import javax.swing.JComponent;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
 
 import mars.ProgramStatement;
 import mars.mips.hardware.AccessNotice;
@@ -55,6 +57,11 @@ import mars.mips.hardware.RegisterFile;
  * <p>
  * The tool can be used to show how branch prediction works in case of loops and how effective such simple methods are. 
  * In case of nested loops the difference of BHT with 1 or 2 Bit history can be explored and visualized.
+ * <p>
+ * The same branch stream is fed to a {@link BranchPredictorBench} comparing more elaborate predictors 
+ * (bimodal, gshare, local history, tournament and perceptron), whose accuracy and MPKI are shown in a second table.
+ * The display is refreshed periodically rather than on each branch, so the tool does not slow down a running program. 
+ * The log describes a branch in detail if it was the only one since the last refresh, e.g. when stepping.
  * 
  * @author ingo.kofler@itec.uni-klu.ac.at
  */
@@ -79,6 +86,9 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 	
 	/** the heading of the tool */
 	public static final String BHT_HEADING = "Branch History Table Simulator";
+	
+	/** interval between display refreshes in milliseconds */
+	public static final int BHT_REFRESH_INTERVAL = 250;
 		
 	/** the GUI of the BHT simulator */
 	private BHTSimGUI m_gui; 	
@@ -86,12 +96,30 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 	/** the model of the BHT */
 	private BHTableModel m_bhtModel;
 			
-	/** state variable that indicates that the last instruction was a branch instruction (if address != 0) or not (address == 0) */
-	private int m_pendingBranchInstAddress;
+	/** the predictors compared on the same branch stream */
+	private BranchPredictorBench m_bench;
+	
+	/** table model presenting the accuracy of the predictors */
+	private AbstractTableModel m_benchModel;
+	
+	/** timer that refreshes the display while the tool is connected */
+	private Timer m_refreshTimer;
+	
+	/** the most recent branch instruction, or null if there was none since the last reset */
+	private ProgramStatement m_lastBranchStmt;
+	
+	/** BHT index of the most recent branch */
+	private int m_lastBranchIdx;
+	
+	/** BHT prediction made for the most recent branch */
+	private boolean m_lastBranchPrediction;
 	
 	/** state variable that signals if the last branch was taken */
 	private boolean m_lastBranchTaken;
 	
+	/** number of branches executed since the display was last refreshed */
+	private int m_branchesSinceRefresh;
+	
 	
 	/**
 	 * Creates a BHT Simulator with given name and heading.
@@ -102,11 +130,21 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 	
 	
 	/**
-	 *  Adds BHTSimulator as observer of the text segment.
+	 *  Adds BHTSimulator as observer of the text segment and starts the periodic display refresh.
 	 */
 	protected void addAsObserver() { 
 		addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
-		addAsObserver(RegisterFile.getProgramCounterRegister());
+		m_refreshTimer.start();
+	}
+	
+	
+	/**
+	 *  Stops observing the text segment and shows the final state.
+	 */
+	protected void deleteAsObserver() {
+		super.deleteAsObserver();
+		m_refreshTimer.stop();
+		refreshDisplay();
 	}
 	
 	
@@ -119,6 +157,9 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 		m_bhtModel = new BHTableModel(BHTSimulator.BHT_DEFAULT_SIZE, BHTSimulator.BHT_DEFAULT_HISTORY, BHT_DEFAULT_INITVAL);		
 		
 		m_gui.getTabBHT().setModel(m_bhtModel);														
+		m_bench = new BranchPredictorBench();
+		m_benchModel = new BenchTableModel();
+		m_gui.getTabPredictors().setModel(m_benchModel);
 		m_gui.getCbBHThistory().setSelectedItem(new Integer(BHTSimulator.BHT_DEFAULT_HISTORY));
 		m_gui.getCbBHTentries().setSelectedItem(new Integer(BHTSimulator.BHT_DEFAULT_SIZE));
 		
@@ -126,6 +167,12 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 		m_gui.getCbBHThistory().addActionListener(this);		
 		m_gui.getCbBHTinitVal().addActionListener(this);
 		
+		m_refreshTimer = new Timer(BHT_REFRESH_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				refreshDisplay();
+			}
+		});
+		
 		return m_gui;
 	}
 
@@ -162,78 +209,74 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 	
 	
 	/**
-	 * Resets the simulator by clearing the GUI elements and resetting the BHT.  
+	 * Resets the simulator by clearing the GUI elements and resetting the BHT and the predictors.  
 	 */
 	protected void resetSimulator() {
 		m_gui.getTfInstruction().setText("");
 		m_gui.getTfAddress().setText("");
 		m_gui.getTfIndex().setText("");
 		m_gui.getTaLog().setText("");
-		m_bhtModel.initBHT(((Integer)m_gui.getCbBHTentries().getSelectedItem()).intValue(), 
-				((Integer)m_gui.getCbBHThistory().getSelectedItem()).intValue(), 
-				((String)m_gui.getCbBHTinitVal().getSelectedItem()).equals(BHTSimGUI.BHT_TAKE_BRANCH));		
-		
-		m_pendingBranchInstAddress = 0;
-		m_lastBranchTaken = false;
+		m_gui.getTabBHT().clearSelection();
+		synchronized (this) {
+			m_bhtModel.initBHT(((Integer)m_gui.getCbBHTentries().getSelectedItem()).intValue(), 
+					((Integer)m_gui.getCbBHThistory().getSelectedItem()).intValue(), 
+					((String)m_gui.getCbBHTinitVal().getSelectedItem()).equals(BHTSimGUI.BHT_TAKE_BRANCH));		
+			m_bench.reset();
+			m_lastBranchStmt = null;
+			m_lastBranchTaken = false;
+			m_branchesSinceRefresh = 0;
+		}
+		m_benchModel.fireTableDataChanged();
 	}
 	
 	
 	/**
-	 * Handles the execution branch instruction.
-	 * This method is called each time a branch instruction is executed.
-	 * Based on the address of the instruction the corresponding index into the BHT is calculated.
-	 * The prediction is obtained from the BHT at the calculated index and is visualized appropriately. 
-	 *  
-	 * @param stmt the branch statement that is executed 
+	 * Refreshes the display with the state reached by the simulation.
+	 * Called periodically on the event dispatch thread while the tool is connected.
+	 * The most recent branch is shown in the text fields and highlighted in the BHT, 
+	 * colored according to the correctness of its prediction.
 	 */
-	protected void handlePreBranchInst(ProgramStatement stmt) {
+	protected void refreshDisplay() {
+		ProgramStatement stmt;
+		int idx, branches;
+		boolean prediction, branchTaken;
+		synchronized (this) {
+			if (m_branchesSinceRefresh == 0) return;
+			stmt = m_lastBranchStmt;
+			idx = m_lastBranchIdx;
+			prediction = m_lastBranchPrediction;
+			branchTaken = m_lastBranchTaken;
+			branches = m_branchesSinceRefresh;
+			m_branchesSinceRefresh = 0;
+		}
 		
 		String strStmt = stmt.getBasicAssemblyStatement();
 		int address = stmt.getAddress();
-		int idx = m_bhtModel.getIdxForAddress(address);		
+		boolean correctPrediction = prediction == branchTaken;
 		
 		// update the GUI
 		m_gui.getTfInstruction().setText(strStmt);
 		m_gui.getTfAddress().setText("0x" + Integer.toHexString(address));
 		m_gui.getTfIndex().setText("" + idx);		
-						
-		// mark the affected BHT row
-		m_gui.getTabBHT().setSelectionBackground(BHTSimGUI.COLOR_PREPREDICTION);
-		m_gui.getTabBHT().addRowSelectionInterval(idx, idx);
-		
-		// add output to log
-		m_gui.getTaLog().append("instruction " + strStmt + " at address 0x" + Integer.toHexString(address) + ", maps to index " + idx + "\n");
-		m_gui.getTaLog().append("branches to address 0x" + BHTSimulator.extractBranchAddress(stmt) + "\n");		
-		m_gui.getTaLog().append("prediction is: " + (m_bhtModel.getPredictionAtIdx(idx) ? "take" : "do not take") + "...\n");
-		m_gui.getTaLog().setCaretPosition(m_gui.getTaLog().getDocument().getLength());
-				
-	}
-			
-	
-	/**
-	 * Handles the execution of the branch instruction. 
-	 * The correctness of the prediction is visualized in both the table and the log message area.
-	 * The BHT is updated based on the information if the branch instruction was taken or not.  
-	 * 
-	 * @param branchInstAddr the address of the branch instruction 
-	 * @param branchTaken the information if the branch is taken or not (determined in a step before)
-	 */
-	protected void handleExecBranchInst(int branchInstAddr, boolean branchTaken) {
-										
-		// determine the index in the BHT for the branch instruction
-		int idx = m_bhtModel.getIdxForAddress(branchInstAddr);
-		
-		// check if the prediction is correct 
-		boolean correctPrediction = m_bhtModel.getPredictionAtIdx(idx) == branchTaken;
 		
+		// refresh the tables and mark the BHT row of the most recent branch
+		m_bhtModel.fireTableDataChanged();
+		m_benchModel.fireTableDataChanged();
 		m_gui.getTabBHT().setSelectionBackground(correctPrediction ? BHTSimGUI.COLOR_PREDICTION_CORRECT: BHTSimGUI.COLOR_PREDICTION_INCORRECT);
-				
-		// add some output at the log
-		m_gui.getTaLog().append("branch " + (branchTaken ? "taken" : "not taken") + ", prediction was " + ( correctPrediction ? "correct" : "incorrect") + "\n\n");		
-		m_gui.getTaLog().setCaretPosition(m_gui.getTaLog().getDocument().getLength());
+		m_gui.getTabBHT().setRowSelectionInterval(idx, idx);
 		
-		// update the BHT -> causes refresh of the table
-		m_bhtModel.updatePredictionAtIdx(idx, branchTaken);				
+		// add output to log
+		if (branches == 1) {
+			m_gui.getTaLog().append("instruction " + strStmt + " at address 0x" + Integer.toHexString(address) + ", maps to index " + idx + "\n");
+			m_gui.getTaLog().append("branches to address 0x" + Integer.toHexString(BHTSimulator.extractBranchAddress(stmt)) + "\n");		
+			m_gui.getTaLog().append("prediction is: " + (prediction ? "take" : "do not take") + "...\n");
+			m_gui.getTaLog().append("branch " + (branchTaken ? "taken" : "not taken") + ", prediction was " + ( correctPrediction ? "correct" : "incorrect") + "\n\n");
+		} 
+		else {
+			m_gui.getTaLog().append(branches + " branches executed, " + m_bench.getBranchCount() + " in total; most recent " 
+					+ strStmt + " at address 0x" + Integer.toHexString(address) + "\n");
+		}
+		m_gui.getTaLog().setCaretPosition(m_gui.getTaLog().getDocument().getLength());
 	}
 	
 	
@@ -272,8 +315,8 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 		int rs = stmt.getBinaryStatement() >>> (32-6-5) & 0x1F;
 		int rt = stmt.getBinaryStatement() >>> (32-6-5-5) & 0x1F;
 		
-		int valRS = RegisterFile.getRegisters()[rs].getValue();
-		int valRT = RegisterFile.getRegisters()[rt].getValue();
+		int valRS = RegisterFile.getRegisters()[rs].getValueNoNotify();
+		int valRT = RegisterFile.getRegisters()[rt].getValueNoNotify();
 					
 		
 		if (opCode == 0x01) {
@@ -282,6 +325,10 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 			case 0x01: return valRS >= 0; // bgez
 			case 0x02: return valRS < 0; // bltzl
 			case 0x03: return valRS >= 0; // bgezl			
+			case 0x10: return valRS < 0; // bltzal
+			case 0x11: return valRS >= 0; // bgezal
+			case 0x12: return valRS < 0; // bltzall
+			case 0x13: return valRS >= 0; // bgezall
 			}
 		}
 
@@ -319,8 +366,9 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 	 * Callback for text segment access by the MIPS simulator.
 	 * 
 	 * The method is called each time the text segment is accessed to fetch the next instruction.
-	 * If the next instruction to execute was a branch instruction, the branch prediction is performed and visualized.
-	 * In case the last instruction was a branch instruction, the outcome of the branch prediction is analyzed and visualized.
+	 * Every instruction is passed to the predictor bench.  If the instruction is a branch instruction, 
+	 * the BHT prediction is compared with the outcome and the BHT is updated.  
+	 * The display is not updated here but periodically by {@link #refreshDisplay()}.
 	 *
 	 * @param resource the observed resource
 	 * @param notice signals the type of access (memory, register etc.)
@@ -341,40 +389,19 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 				
 				// necessary to handle possible null pointers at the end of the program 
 				// (e.g., if the simulator tries to execute the next instruction after the last instruction in the text segment) 
-				if (stmt != null) {								
-					
-					boolean clearTextFields = true;
-					
-					// first, check if there's a pending branch to handle
-					if (m_pendingBranchInstAddress != 0) {						
-						handleExecBranchInst(m_pendingBranchInstAddress, m_lastBranchTaken);
-						clearTextFields = false;
-						m_pendingBranchInstAddress = 0;
-					}
-					
-					
-					// if current instruction is branch instruction
-					if (BHTSimulator.isBranchInstruction(stmt)) {						
-						handlePreBranchInst(stmt);
-						m_lastBranchTaken = willBranch(stmt);
-						m_pendingBranchInstAddress = stmt.getAddress();
-						clearTextFields = false;
-					}
-
-					
-					// clear text fields and selection
-					if (clearTextFields) {
-						m_gui.getTfInstruction().setText("");
-						m_gui.getTfAddress().setText("");
-						m_gui.getTfIndex().setText("");
-						m_gui.getTabBHT().clearSelection();						
-					}
-				}					
-				else {
-					// check if there's a pending branch to handle
-					if (m_pendingBranchInstAddress != 0) {						
-						handleExecBranchInst(m_pendingBranchInstAddress, m_lastBranchTaken);						
-						m_pendingBranchInstAddress = 0;
+				if (stmt == null) return;
+				
+				m_bench.instruction(stmt);
+				if (BHTSimulator.isBranchInstruction(stmt)) {
+					boolean branchTaken = willBranch(stmt);
+					synchronized (this) {
+						int idx = m_bhtModel.getIdxForAddress(stmt.getAddress());
+						m_lastBranchStmt = stmt;
+						m_lastBranchIdx = idx;
+						m_lastBranchPrediction = m_bhtModel.getPredictionAtIdx(idx);
+						m_lastBranchTaken = branchTaken;
+						m_branchesSinceRefresh++;
+						m_bhtModel.updatePredictionAtIdx(idx, branchTaken);
 					}
 				}
 			} 
@@ -384,4 +411,44 @@ public class BHTSimulator extends AbstractMarsToolAndApplication implements Acti
 					
 		}
 	}
+	
+	
+	/**
+	 * Table model presenting the statistics of each predictor of the bench.
+	 */
+	private class BenchTableModel extends AbstractTableModel {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** name of the table columns */
+		private String m_columnNames[] = { "Predictor", "Correct", "Incorrect", "Precision", "MPKI" };
+		
+		/** type of the table columns */
+		private Class m_columnClasses[] = { String.class, Long.class, Long.class, Double.class, Double.class };
+		
+		public String getColumnName(int i) {
+			return m_columnNames[i];
+		}
+		
+		public Class getColumnClass(int i) {
+			return m_columnClasses[i];
+		}
+		
+		public int getColumnCount() {
+			return m_columnNames.length;
+		}
+		
+		public int getRowCount() {
+			return m_bench.getPredictors().length;
+		}
+		
+		public Object getValueAt(int row, int col) {
+			if (col == 0) return m_bench.getPredictors()[row].getName();
+			if (col == 1) return Long.valueOf(m_bench.getBranchCount() - m_bench.getMispredictionCount(row));
+			if (col == 2) return Long.valueOf(m_bench.getMispredictionCount(row));
+			if (col == 3) return Double.valueOf(m_bench.getAccuracy(row));
+			if (col == 4) return Double.valueOf(m_bench.getMPKI(row));
+			return "";
+		}
+	}
 }
@@ -49,7 +49,8 @@ import javax.swing.table.AbstractTableModel;
  * </ul>
  * <p>
  * Additionally it serves as TableModel that can be directly used to render the state of the BHT in a JTable.
- * Feedback provided to the BHT causes a change of the internal state and a repaint of the table(s) associated to this model. 
+ * Feedback provided to the BHT only changes the internal state; the table(s) associated to this model are repainted 
+ * when {@link #fireTableDataChanged()} is called, so a display can be refreshed periodically instead of on each branch. 
  * 
  * @author ingo.kofler@itec.uni-klu.ac.at
  */
@@ -222,7 +223,7 @@ public class BHTableModel extends AbstractTableModel {
 	
 	/**
 	 * Updates the BHT entry with the outcome of the branch instruction. 
-	 * This causes a change in the model and signals to update the connected table(s). 
+	 * This changes the model without notifying the connected table(s). 
 	 * 
 	 * @param index the index of the entry in the BHT 
 	 * @param branchTaken 
@@ -232,7 +233,6 @@ public class BHTableModel extends AbstractTableModel {
 			throw new IllegalArgumentException("Only indexes in the range 0 to " + (m_entryCnt-1) + " allowed");
 		
 		((BHTEntry) m_entries.elementAt(index)).updatePrediction(branchTaken);
-		fireTableRowsUpdated(index, index);
 	}
 
 }
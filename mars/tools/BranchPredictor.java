@@ -0,0 +1,312 @@
+package mars.tools;
+
+import java.util.Arrays;
+
+/**
+ * Base class of the dynamic branch predictors compared by the {@link BranchPredictorBench}.
+ * <p>
+ * A predictor is consulted and trained once for each executed conditional branch:
+ * {@link #predict(int)} is called with the address of the branch instruction, and then
+ * {@link #update(int, boolean)} with the same address and the actual outcome.
+ * Predictors keep their state in primitive arrays so that a whole set of them can be
+ * evaluated on every branch of a running program.
+ * <p>
+ * The nested classes implement the classic schemes: bimodal, gshare, local history,
+ * tournament and perceptron.  Table sizes must be powers of 2.
+ */
+public abstract class BranchPredictor {
+
+	/**
+	 * Returns a short descriptive name including the configuration, e.g. "gshare 4K/12".
+	 * @return the name of the predictor
+	 */
+	public abstract String getName();
+
+	/**
+	 * Predicts the outcome of a branch.
+	 * @param address the address of the branch instruction
+	 * @return true if the branch is predicted taken
+	 */
+	public abstract boolean predict(int address);
+
+	/**
+	 * Trains the predictor with the actual outcome of the branch last passed to {@link #predict(int)}.
+	 * @param address the address of the branch instruction
+	 * @param taken true if the branch was taken
+	 */
+	public abstract void update(int address, boolean taken);
+
+	/**
+	 * Returns the predictor to its initial state.
+	 */
+	public abstract void reset();
+
+	/**
+	 * Creates the default set of predictors of about 1K entries each.
+	 * @return one predictor of each kind
+	 */
+	public static BranchPredictor[] createDefaultSet() {
+		return new BranchPredictor[] {
+				new Bimodal(1024),
+				new Gshare(1024, 10),
+				new LocalHistory(1024, 10),
+				new Tournament(1024, 10),
+				new Perceptron(256, 16) };
+	}
+
+	/** Index into a table of the given size (a power of 2) from the word address of a branch. */
+	static int index(int address, int size) {
+		return (address >>> 2) & (size - 1);
+	}
+
+	static String size(int entries) {
+		return (entries >= 1024 && entries % 1024 == 0) ? (entries / 1024) + "K" : Integer.toString(entries);
+	}
+
+	static void checkSize(int size) {
+		if (size <= 0 || (size & (size - 1)) != 0)
+			throw new IllegalArgumentException("Table size must be a positive power of 2.");
+	}
+
+	/** Updates a 2-bit saturating counter (0 and 1 predict not taken, 2 and 3 taken). */
+	static void train(byte[] counters, int i, boolean taken) {
+		if (taken) {
+			if (counters[i] < 3) counters[i]++;
+		} else {
+			if (counters[i] > 0) counters[i]--;
+		}
+	}
+
+
+	/**
+	 * Table of 2-bit saturating counters indexed by branch address.
+	 */
+	public static class Bimodal extends BranchPredictor {
+		private final byte[] m_counters;
+
+		/**
+		 * @param entries number of counters
+		 */
+		public Bimodal(int entries) {
+			checkSize(entries);
+			m_counters = new byte[entries];
+			reset();
+		}
+
+		public String getName() {
+			return "bimodal " + size(m_counters.length);
+		}
+
+		public boolean predict(int address) {
+			return m_counters[index(address, m_counters.length)] >= 2;
+		}
+
+		public void update(int address, boolean taken) {
+			train(m_counters, index(address, m_counters.length), taken);
+		}
+
+		public void reset() {
+			Arrays.fill(m_counters, (byte) 1);
+		}
+	}
+
+
+	/**
+	 * Table of 2-bit counters indexed by the branch address XORed with the global
+	 * history of recent branch outcomes.
+	 */
+	public static class Gshare extends BranchPredictor {
+		private final byte[] m_counters;
+		private final int m_historyBits;
+		private int m_history;
+
+		/**
+		 * @param entries number of counters
+		 * @param historyBits number of global outcomes remembered
+		 */
+		public Gshare(int entries, int historyBits) {
+			checkSize(entries);
+			m_counters = new byte[entries];
+			m_historyBits = historyBits;
+			reset();
+		}
+
+		public String getName() {
+			return "gshare " + size(m_counters.length) + "/" + m_historyBits;
+		}
+
+		private int idx(int address) {
+			return ((address >>> 2) ^ m_history) & (m_counters.length - 1);
+		}
+
+		public boolean predict(int address) {
+			return m_counters[idx(address)] >= 2;
+		}
+
+		public void update(int address, boolean taken) {
+			train(m_counters, idx(address), taken);
+			m_history = ((m_history << 1) | (taken ? 1 : 0)) & ((1 << m_historyBits) - 1);
+		}
+
+		public void reset() {
+			Arrays.fill(m_counters, (byte) 1);
+			m_history = 0;
+		}
+	}
+
+
+	/**
+	 * Two-level predictor: a table of per-branch outcome histories, indexed by branch
+	 * address, selects a 2-bit counter in a pattern table.
+	 */
+	public static class LocalHistory extends BranchPredictor {
+		private final int[] m_histories;
+		private final byte[] m_patterns;
+		private final int m_historyBits;
+
+		/**
+		 * @param entries number of per-branch histories
+		 * @param historyBits outcomes per history; the pattern table has 2^historyBits counters
+		 */
+		public LocalHistory(int entries, int historyBits) {
+			checkSize(entries);
+			m_histories = new int[entries];
+			m_patterns = new byte[1 << historyBits];
+			m_historyBits = historyBits;
+			reset();
+		}
+
+		public String getName() {
+			return "local " + size(m_histories.length) + "/" + m_historyBits;
+		}
+
+		public boolean predict(int address) {
+			return m_patterns[m_histories[index(address, m_histories.length)]] >= 2;
+		}
+
+		public void update(int address, boolean taken) {
+			int i = index(address, m_histories.length);
+			train(m_patterns, m_histories[i], taken);
+			m_histories[i] = ((m_histories[i] << 1) | (taken ? 1 : 0)) & (m_patterns.length - 1);
+		}
+
+		public void reset() {
+			Arrays.fill(m_histories, 0);
+			Arrays.fill(m_patterns, (byte) 1);
+		}
+	}
+
+
+	/**
+	 * Combines a local history and a gshare predictor, choosing between them with a
+	 * table of 2-bit counters indexed by branch address that learn which one is right.
+	 */
+	public static class Tournament extends BranchPredictor {
+		private final LocalHistory m_local;
+		private final Gshare m_global;
+		private final byte[] m_choosers;
+		private boolean m_localPrediction, m_globalPrediction;
+
+		/**
+		 * @param entries number of entries of each component table
+		 * @param historyBits history length of both components
+		 */
+		public Tournament(int entries, int historyBits) {
+			m_local = new LocalHistory(entries, historyBits);
+			m_global = new Gshare(entries, historyBits);
+			m_choosers = new byte[entries];
+			reset();
+		}
+
+		public String getName() {
+			return "tournament " + size(m_choosers.length);
+		}
+
+		public boolean predict(int address) {
+			m_localPrediction = m_local.predict(address);
+			m_globalPrediction = m_global.predict(address);
+			// counter values 2 and 3 select the global predictor
+			return (m_choosers[index(address, m_choosers.length)] >= 2) ? m_globalPrediction : m_localPrediction;
+		}
+
+		public void update(int address, boolean taken) {
+			if (m_localPrediction != m_globalPrediction)
+				train(m_choosers, index(address, m_choosers.length), m_globalPrediction == taken);
+			m_local.update(address, taken);
+			m_global.update(address, taken);
+		}
+
+		public void reset() {
+			m_local.reset();
+			m_global.reset();
+			Arrays.fill(m_choosers, (byte) 2);
+		}
+	}
+
+
+	/**
+	 * Perceptron predictor (Jim&eacute;nez and Lin): a table of weight vectors indexed by
+	 * branch address, whose dot product with the global history gives the prediction.
+	 * Weights are trained on a misprediction or when the output is below the threshold.
+	 */
+	public static class Perceptron extends BranchPredictor {
+		private final int[] m_weights; // entries x (historyLength + 1), bias first
+		private final int m_entries, m_historyLength, m_threshold;
+		private long m_history; // bit i set if the i-th most recent branch was taken
+		private int m_output;
+
+		/**
+		 * @param entries number of perceptrons
+		 * @param historyLength global outcomes used, at most 63
+		 */
+		public Perceptron(int entries, int historyLength) {
+			checkSize(entries);
+			if (historyLength < 1 || historyLength > 63)
+				throw new IllegalArgumentException("Perceptron history length must be between 1 and 63.");
+			m_entries = entries;
+			m_historyLength = historyLength;
+			m_threshold = (int) (1.93 * historyLength + 14);
+			m_weights = new int[entries * (historyLength + 1)];
+			reset();
+		}
+
+		public String getName() {
+			return "perceptron " + size(m_entries) + "/" + m_historyLength;
+		}
+
+		public boolean predict(int address) {
+			int base = index(address, m_entries) * (m_historyLength + 1);
+			int y = m_weights[base];
+			for (int i = 0; i < m_historyLength; i++) {
+				if ((m_history & (1L << i)) != 0)
+					y += m_weights[base + 1 + i];
+				else
+					y -= m_weights[base + 1 + i];
+			}
+			m_output = y;
+			return y >= 0;
+		}
+
+		public void update(int address, boolean taken) {
+			if ((m_output >= 0) != taken || Math.abs(m_output) <= m_threshold) {
+				int base = index(address, m_entries) * (m_historyLength + 1);
+				m_weights[base] = clamp(m_weights[base] + (taken ? 1 : -1));
+				for (int i = 0; i < m_historyLength; i++) {
+					boolean agrees = ((m_history & (1L << i)) != 0) == taken;
+					m_weights[base + 1 + i] = clamp(m_weights[base + 1 + i] + (agrees ? 1 : -1));
+				}
+			}
+			m_history = (m_history << 1) | (taken ? 1 : 0);
+		}
+
+		private static int clamp(int weight) {
+			return Math.max(-128, Math.min(127, weight));
+		}
+
+		public void reset() {
+			Arrays.fill(m_weights, 0);
+			m_history = 0;
+			m_output = 0;
+		}
+	}
+}
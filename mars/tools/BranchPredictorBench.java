@@ -0,0 +1,293 @@
+package mars.tools;
+
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import mars.ProgramStatement;
+import mars.util.Binary;
+
+/**
+ * Evaluates a set of {@link BranchPredictor}s simultaneously on the branch stream of a program.
+ * <p>
+ * The bench is fed every executed instruction through {@link #instruction(ProgramStatement)},
+ * before the instruction is executed.  For each conditional branch, the outcome is determined
+ * from the current register contents, every predictor is asked for its prediction and then
+ * trained with the outcome.  Mispredictions are counted for each predictor, both overall and
+ * per branch instruction address, so accuracy and mispredictions per thousand instructions
+ * (MPKI) can be reported.  The bench has no GUI; the BHT Simulator tool and the command line
+ * option <tt>bp</tt> both use it.
+ * <p>
+ * All counters are primitive arrays.  The methods are synchronized so that a GUI may read
+ * the counters while the simulation updates them.
+ *
+ * @see BHTSimulator
+ */
+public class BranchPredictorBench {
+
+	/** the predictors being compared */
+	private BranchPredictor[] m_predictors;
+
+	/** number of instructions executed */
+	private long m_instructions;
+
+	/** number of conditional branches executed */
+	private long m_branches;
+
+	/** number of mispredictions, per predictor */
+	private long[] m_mispredictions;
+
+	/** maps branch address to its row in the per-branch arrays, by open addressing:
+	 *  each slot holds a row + 1, or 0 if empty, and is kept at most half full */
+	private int[] m_rowSlots = new int[128];
+
+	/** per-branch address, execution count, taken count */
+	private int[] m_branchAddresses = new int[64];
+	private long[] m_branchExecutions = new long[64];
+	private long[] m_branchTaken = new long[64];
+
+	/** per-branch mispredictions, indexed by row * number of predictors + predictor */
+	private long[] m_branchMispredictions;
+
+	/** number of rows in use */
+	private int m_rowCount;
+
+
+	/**
+	 * Creates a bench comparing the given predictors.
+	 *
+	 * @param predictors the predictors to evaluate, each in its initial state
+	 */
+	public BranchPredictorBench(BranchPredictor[] predictors) {
+		m_predictors = predictors;
+		m_mispredictions = new long[predictors.length];
+		m_branchMispredictions = new long[64 * predictors.length];
+	}
+
+
+	/**
+	 * Creates a bench comparing the default set of predictors.
+	 */
+	public BranchPredictorBench() {
+		this(BranchPredictor.createDefaultSet());
+	}
+
+
+	/**
+	 * Processes an instruction about to be executed.  Non-branch instructions are only counted.
+	 *
+	 * @param stmt the statement about to be executed
+	 */
+	public synchronized void instruction(ProgramStatement stmt) {
+		m_instructions++;
+		if (BHTSimulator.isBranchInstruction(stmt)) {
+			branch(stmt.getAddress(), BHTSimulator.willBranch(stmt));
+		}
+	}
+
+
+	/**
+	 * Processes the execution of a conditional branch with known outcome.
+	 *
+	 * @param address the address of the branch instruction
+	 * @param taken true if the branch is taken
+	 */
+	public synchronized void branch(int address, boolean taken) {
+		int row = rowFor(address);
+		m_branches++;
+		m_branchExecutions[row]++;
+		if (taken) m_branchTaken[row]++;
+		int base = row * m_predictors.length;
+		for (int p = 0; p < m_predictors.length; p++) {
+			BranchPredictor predictor = m_predictors[p];
+			if (predictor.predict(address) != taken) {
+				m_mispredictions[p]++;
+				m_branchMispredictions[base + p]++;
+			}
+			predictor.update(address, taken);
+		}
+	}
+
+
+	/** Returns the row of the per-branch arrays for the address, adding one if needed. */
+	private int rowFor(int address) {
+		int slot = slotFor(address);
+		if (m_rowSlots[slot] != 0) return m_rowSlots[slot] - 1;
+		if (m_rowCount == m_branchAddresses.length) {
+			int capacity = 2 * m_rowCount;
+			m_branchAddresses = copyOf(m_branchAddresses, capacity);
+			m_branchExecutions = copyOf(m_branchExecutions, capacity);
+			m_branchTaken = copyOf(m_branchTaken, capacity);
+			m_branchMispredictions = copyOf(m_branchMispredictions, capacity * m_predictors.length);
+		}
+		m_branchAddresses[m_rowCount] = address;
+		if (2 * (m_rowCount + 1) > m_rowSlots.length) {
+			m_rowSlots = new int[2 * m_rowSlots.length];
+			for (int row = 0; row < m_rowCount; row++) {
+				m_rowSlots[slotFor(m_branchAddresses[row])] = row + 1;
+			}
+			slot = slotFor(address);
+		}
+		m_rowSlots[slot] = m_rowCount + 1;
+		return m_rowCount++;
+	}
+
+	/** Returns the slot holding the row of the address, or the empty slot where it would go. */
+	private int slotFor(int address) {
+		int mask = m_rowSlots.length - 1;
+		int hash = address * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (m_rowSlots[slot] != 0 && m_branchAddresses[m_rowSlots[slot] - 1] != address) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int[] copyOf(int[] a, int length) {
+		int[] result = new int[length];
+		System.arraycopy(a, 0, result, 0, a.length);
+		return result;
+	}
+
+	private static long[] copyOf(long[] a, int length) {
+		long[] result = new long[length];
+		System.arraycopy(a, 0, result, 0, a.length);
+		return result;
+	}
+
+
+	/**
+	 * Resets all predictors and clears all statistics.
+	 */
+	public synchronized void reset() {
+		for (int p = 0; p < m_predictors.length; p++) {
+			m_predictors[p].reset();
+		}
+		m_instructions = m_branches = 0;
+		Arrays.fill(m_mispredictions, 0);
+		Arrays.fill(m_rowSlots, 0);
+		m_rowCount = 0;
+		Arrays.fill(m_branchExecutions, 0);
+		Arrays.fill(m_branchTaken, 0);
+		Arrays.fill(m_branchMispredictions, 0);
+	}
+
+
+	/**
+	 * Returns the predictors being compared.
+	 *
+	 * @return the predictors, in report order
+	 */
+	public BranchPredictor[] getPredictors() {
+		return m_predictors;
+	}
+
+
+	/**
+	 * @return the number of instructions executed
+	 */
+	public synchronized long getInstructionCount() {
+		return m_instructions;
+	}
+
+
+	/**
+	 * @return the number of conditional branches executed
+	 */
+	public synchronized long getBranchCount() {
+		return m_branches;
+	}
+
+
+	/**
+	 * @param predictor index of the predictor
+	 * @return the number of branches the predictor mispredicted
+	 */
+	public synchronized long getMispredictionCount(int predictor) {
+		return m_mispredictions[predictor];
+	}
+
+
+	/**
+	 * @param predictor index of the predictor
+	 * @return percentage of branches predicted correctly (0 if there were none)
+	 */
+	public synchronized double getAccuracy(int predictor) {
+		return (m_branches == 0) ? 0 : 100.0 * (m_branches - m_mispredictions[predictor]) / m_branches;
+	}
+
+
+	/**
+	 * @param predictor index of the predictor
+	 * @return mispredictions per thousand instructions executed
+	 */
+	public synchronized double getMPKI(int predictor) {
+		return (m_instructions == 0) ? 0 : 1000.0 * m_mispredictions[predictor] / m_instructions;
+	}
+
+
+	/**
+	 * Writes a report: accuracy and MPKI per predictor, then the most frequently
+	 * executed branches with their misprediction counts per predictor.
+	 *
+	 * @param out destination of the report
+	 * @param maxBranches maximum number of branch addresses to list
+	 */
+	public synchronized void writeReport(PrintWriter out, int maxBranches) {
+		out.println(m_instructions + " instructions, " + m_branches + " conditional branches");
+		out.println(pad("predictor", -20) + pad("mispredicted", 14) + pad("accuracy", 10) + pad("MPKI", 10));
+		for (int p = 0; p < m_predictors.length; p++) {
+			out.println(pad(m_predictors[p].getName(), -20) + pad(Long.toString(m_mispredictions[p]), 14)
+					+ pad(format(getAccuracy(p)) + "%", 10) + pad(format(getMPKI(p)), 10));
+		}
+
+		Integer[] rows = new Integer[m_rowCount];
+		for (int i = 0; i < m_rowCount; i++) rows[i] = Integer.valueOf(i);
+		Arrays.sort(rows, new Comparator() {
+			public int compare(Object a, Object b) {
+				long x = m_branchExecutions[((Integer) a).intValue()];
+				long y = m_branchExecutions[((Integer) b).intValue()];
+				return (x > y) ? -1 : (x < y) ? 1 : 0;
+			}
+		});
+		int shown = Math.min(maxBranches, m_rowCount);
+		if (shown == 0) {
+			out.flush();
+			return;
+		}
+		out.println();
+		out.println("mispredictions of the " + shown + " most executed branches:");
+		StringBuffer header = new StringBuffer(pad("address", -12) + pad("executed", 12) + pad("taken", 9));
+		for (int p = 0; p < m_predictors.length; p++) {
+			String name = m_predictors[p].getName();
+			header.append(pad(name.substring(0, name.indexOf(' ')), 12));
+		}
+		out.println(header);
+		for (int i = 0; i < shown; i++) {
+			int row = rows[i].intValue();
+			StringBuffer line = new StringBuffer(pad(Binary.intToHexString(m_branchAddresses[row]), -12)
+					+ pad(Long.toString(m_branchExecutions[row]), 12)
+					+ pad(format(100.0 * m_branchTaken[row] / m_branchExecutions[row]) + "%", 9));
+			for (int p = 0; p < m_predictors.length; p++) {
+				line.append(pad(Long.toString(m_branchMispredictions[row * m_predictors.length + p]), 12));
+			}
+			out.println(line);
+		}
+		out.flush();
+	}
+
+	private static String format(double value) {
+		return new DecimalFormat("0.00").format(value);
+	}
+
+	/** Pads to the given width: right-aligned if positive, left-aligned if negative. */
+	private static String pad(String s, int width) {
+		StringBuffer result = new StringBuffer();
+		int n = Math.abs(width) - s.length();
+		if (width < 0) result.append(s);
+		for (int i = 0; i < n; i++) result.append(' ');
+		if (width > 0) result.append(s);
+		return result.toString();
+	}
+}
@@ -0,0 +1,181 @@
+   package mars.tools;
+   import java.util.*;
+   import mars.mips.hardware.*;
+
+/**
+ * Headless model of one cache configuration, extracted from the Data Cache
+ * Simulator so it can also be driven without a GUI (see CacheSweep).  It models
+ * any of the well-known organizations: direct mapped (set size 1), fully
+ * associative (set size equal to the number of blocks) or n-way set associative,
+ * with LRU or random replacement.  Only the placement of blocks is simulated,
+ * not their contents.
+ * <p>
+ * Physical memory address is partitioned as [ tag | set | word | byte ], where
+ * byte is log2 of the bytes in a word, word is log2 of the words in a block and set
+ * is log2 of the number of sets; for direct mapping the set field is the block
+ * number and for full associativity it is empty.  Block count, block size and set
+ * size must be powers of 2.  The state of each block is kept in primitive arrays.
+ */
+
+    public class CacheModel {
+   	/** Replacement policy: least recently used block of the set */
+      public static final int LRU = 0;
+   	/** Replacement policy: randomly chosen block of the set */
+      public static final int RANDOM = 1;
+
+      private final int numberOfBlocks, blockSizeInWords, setSizeInBlocks, numberOfSets;
+      private final int offsetBits, setMask, tagShift;
+      private int replacementPolicy;
+      private final boolean[] valid;
+      private final int[] tags;
+      private final long[] lastAccessTime;
+      private final Random random = new Random(0);
+      private long accessCount, hitCount;
+      private int lastBlock;
+
+   	/**
+   	 * Create an empty cache.
+   	 * @param numberOfBlocks total number of blocks in the cache
+   	 * @param blockSizeInWords number of words per block
+   	 * @param setSizeInBlocks number of blocks per set (1 for direct mapped,
+   	 * numberOfBlocks for fully associative)
+   	 * @param replacementPolicy LRU or RANDOM
+   	 */
+       public CacheModel(int numberOfBlocks, int blockSizeInWords, int setSizeInBlocks, int replacementPolicy) {
+         if (!powerOf2(numberOfBlocks) || !powerOf2(blockSizeInWords) || !powerOf2(setSizeInBlocks) ||
+             setSizeInBlocks > numberOfBlocks) {
+            throw new IllegalArgumentException("invalid cache configuration: "+numberOfBlocks+" blocks of "+
+                                               blockSizeInWords+" words, "+setSizeInBlocks+" blocks per set");
+         }
+         this.numberOfBlocks = numberOfBlocks;
+         this.blockSizeInWords = blockSizeInWords;
+         this.setSizeInBlocks = setSizeInBlocks;
+         this.numberOfSets = numberOfBlocks / setSizeInBlocks;
+         this.offsetBits = Integer.numberOfTrailingZeros(Memory.WORD_LENGTH_BYTES * blockSizeInWords);
+         this.setMask = numberOfSets - 1;
+         this.tagShift = offsetBits + Integer.numberOfTrailingZeros(numberOfSets);
+         this.replacementPolicy = replacementPolicy;
+         this.valid = new boolean[numberOfBlocks];
+         this.tags = new int[numberOfBlocks];
+         this.lastAccessTime = new long[numberOfBlocks];
+      }
+
+       private static boolean powerOf2(int n) {
+         return n > 0 && (n & (n - 1)) == 0;
+      }
+
+       public int getNumberOfBlocks() {
+         return numberOfBlocks;
+      }
+       public int getNumberOfSets() {
+         return numberOfSets;
+      }
+       public int getSetSizeInBlocks() {
+         return setSizeInBlocks;
+      }
+       public int getBlockSizeInWords() {
+         return blockSizeInWords;
+      }
+       public int getCacheSizeInWords() {
+         return numberOfBlocks * blockSizeInWords;
+      }
+       public int getCacheSizeInBytes() {
+         return numberOfBlocks * blockSizeInWords * Memory.WORD_LENGTH_BYTES;
+      }
+       public int getReplacementPolicy() {
+         return replacementPolicy;
+      }
+   	/**
+   	 * Change the replacement policy.  Takes effect at the next replacement.
+   	 * @param replacementPolicy LRU or RANDOM
+   	 */
+       public void setReplacementPolicy(int replacementPolicy) {
+         this.replacementPolicy = replacementPolicy;
+      }
+
+   	/** @return number of accesses since creation or reset */
+       public long getAccessCount() {
+         return accessCount;
+      }
+   	/** @return number of hits since creation or reset */
+       public long getHitCount() {
+         return hitCount;
+      }
+   	/** @return number of misses since creation or reset */
+       public long getMissCount() {
+         return accessCount - hitCount;
+      }
+   	/** @return hits divided by accesses, 0 if there were none */
+       public double getHitRate() {
+         return (accessCount == 0) ? 0.0 : hitCount / (double) accessCount;
+      }
+   	/** @return the block in which the most recent access was found or placed */
+       public int getLastBlock() {
+         return lastBlock;
+      }
+
+   	/**
+   	 * Empty the cache and clear the counts.
+   	 */
+       public void reset() {
+         Arrays.fill(valid, false);
+         Arrays.fill(tags, 0);
+         Arrays.fill(lastAccessTime, 0);
+         accessCount = 0;
+         hitCount = 0;
+         lastBlock = 0;
+      }
+
+   	/**
+   	 * Look up the block containing an address, reading it into the cache on a miss.
+   	 * The block that was hit or filled is available from getLastBlock().
+   	 * @param address memory address accessed
+   	 * @return true if the access was a hit
+   	 */
+       public boolean access(int address) {
+         accessCount++;
+         int tag = address >>> tagShift;
+         int first = ((address >>> offsetBits) & setMask) * setSizeInBlocks;
+         int last = first + setSizeInBlocks;
+         // Sequential rather than associative search.  An empty block ends the search
+      	// since blocks of a set are filled in order.
+         for (int block = first; block < last; block++) {
+            if (!valid[block]) {
+               valid[block] = true;
+               tags[block] = tag;
+               lastAccessTime[block] = accessCount;
+               lastBlock = block;
+               return false;
+            }
+            if (tags[block] == tag) {
+               lastAccessTime[block] = accessCount;
+               lastBlock = block;
+               hitCount++;
+               return true;
+            }
+         }
+         int victim = selectBlockToReplace(first, last - 1);
+         tags[victim] = tag;
+         lastAccessTime[victim] = accessCount;
+         lastBlock = victim;
+         return false;
+      }
+
+      // Called if all blocks in the set are full.  If the set contains more than one block,
+   	// picks one to replace based on the replacement policy.
+       private int selectBlockToReplace(int first, int last) {
+         if (first == last) {
+            return first;
+         }
+         if (replacementPolicy == RANDOM) {
+            return first + random.nextInt(last - first + 1);
+         }
+         int replaceBlock = first;
+         for (int block = first + 1; block <= last; block++) {
+            if (lastAccessTime[block] < lastAccessTime[replaceBlock]) {
+               replaceBlock = block;
+            }
+         }
+         return replaceBlock;
+      }
+   }
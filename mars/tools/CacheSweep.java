@@ -0,0 +1,206 @@
+   package mars.tools;
+   import java.io.*;
+   import java.util.*;
+   import java.util.concurrent.*;
+   import mars.simulator.*;
+
+/**
+ * Headless engine that evaluates a whole grid of cache configurations over one
+ * stream of memory accesses: every combination of block size, number of blocks,
+ * set size and replacement policy, each modeled by a CacheModel.  Accesses are
+ * collected into chunks, and each chunk is run through all configurations at once,
+ * with the configurations split across the available processor cores.  The result
+ * is a table of hit rates, best first.
+ * <p>
+ * Access streams come from a running program (MarsLaunch option <tt>cachesweep</tt>)
+ * or from a trace file recorded by TraceRecorder:
+ * <tt>java mars.tools.CacheSweep trace-file [i]</tt>, where "i" includes
+ * instruction fetches in the stream.
+ */
+
+    public class CacheSweep {
+   	/** Default block sizes, in words. */
+      public static final int[] DEFAULT_BLOCK_SIZES = {1, 2, 4, 8, 16, 32};
+   	/** Default numbers of blocks. */
+      public static final int[] DEFAULT_BLOCK_COUNTS = {8, 16, 32, 64, 128, 256, 512, 1024};
+   	/** Default set sizes in blocks.  0 stands for fully associative. */
+      public static final int[] DEFAULT_SET_SIZES = {1, 2, 4, 0};
+      private static final int CHUNK_SIZE = 1 << 16;
+
+      private final CacheModel[] caches;
+      private final ExecutorService pool;
+      private final ArrayList slices = new ArrayList(); // one Callable per thread
+      private int[] chunk = new int[CHUNK_SIZE];
+      private int chunkLength = 0;
+
+   	/**
+   	 * Create a sweep over the default grid.
+   	 */
+       public CacheSweep() {
+         this(DEFAULT_BLOCK_SIZES, DEFAULT_BLOCK_COUNTS, DEFAULT_SET_SIZES);
+      }
+
+   	/**
+   	 * Create a sweep over every valid combination of the given parameters, each
+   	 * with LRU and random replacement (direct mapped caches have no choice).
+   	 * @param blockSizes block sizes in words, powers of 2
+   	 * @param blockCounts numbers of blocks, powers of 2
+   	 * @param setSizes set sizes in blocks, powers of 2, or 0 for fully associative
+   	 */
+       public CacheSweep(int[] blockSizes, int[] blockCounts, int[] setSizes) {
+         ArrayList configurations = new ArrayList();
+         HashSet seen = new HashSet();
+         for (int b = 0; b < blockSizes.length; b++) {
+            for (int n = 0; n < blockCounts.length; n++) {
+               for (int s = 0; s < setSizes.length; s++) {
+                  int setSize = (setSizes[s] == 0) ? blockCounts[n] : setSizes[s];
+                  if (setSize > blockCounts[n])
+                     continue;
+                  for (int policy = CacheModel.LRU; policy <= CacheModel.RANDOM; policy++) {
+                     if (policy == CacheModel.RANDOM && setSize == 1)
+                        continue;
+                     String key = blockSizes[b] + "/" + blockCounts[n] + "/" + setSize + "/" + policy;
+                     if (seen.add(key)) {
+                        configurations.add(new CacheModel(blockCounts[n], blockSizes[b], setSize, policy));
+                     }
+                  }
+               }
+            }
+         }
+         caches = (CacheModel[]) configurations.toArray(new CacheModel[configurations.size()]);
+         int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), caches.length));
+         pool = Executors.newFixedThreadPool(threads,
+               new ThreadFactory() {
+                  public Thread newThread(Runnable r) {
+                     Thread thread = new Thread(r, "MARS cache sweep");
+                     thread.setDaemon(true);
+                     return thread;
+                  }
+               });
+         for (int t = 0; t < threads; t++) {
+            final int first = caches.length * t / threads;
+            final int last = caches.length * (t + 1) / threads;
+            slices.add(
+               new Callable() {
+                  public Object call() {
+                     int[] addresses = chunk;
+                     int length = chunkLength;
+                     for (int c = first; c < last; c++) {
+                        CacheModel cache = caches[c];
+                        for (int i = 0; i < length; i++) {
+                           cache.access(addresses[i]);
+                        }
+                     }
+                     return null;
+                  }
+               });
+         }
+      }
+
+   	/**
+   	 * @return the cache configurations being evaluated
+   	 */
+       public CacheModel[] getCaches() {
+         return caches;
+      }
+
+   	/**
+   	 * Add one access to the stream.
+   	 * @param address memory address accessed
+   	 */
+       public void access(int address) {
+         chunk[chunkLength++] = address;
+         if (chunkLength == chunk.length) {
+            runChunk();
+         }
+      }
+
+      // Run the buffered accesses through every configuration, in parallel.
+       private void runChunk() {
+         if (chunkLength == 0)
+            return;
+         try {
+            List results = pool.invokeAll(slices);
+            for (int i = 0; i < results.size(); i++) {
+               ((Future) results.get(i)).get();
+            }
+         }
+             catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+             catch (ExecutionException e) {
+               throw new RuntimeException(e.getCause());
+            }
+         chunkLength = 0;
+      }
+
+   	/**
+   	 * Process any accesses still buffered and release the worker threads.  Call
+   	 * once at the end of the stream, before reading results.
+   	 */
+       public void finish() {
+         runChunk();
+         pool.shutdown();
+      }
+
+   	/**
+   	 * Print a table of results, best hit rate first (smaller cache first among equals).
+   	 * @param out destination
+   	 */
+       public void printTable(PrintStream out) {
+         CacheModel[] sorted = caches.clone();
+         Arrays.sort(sorted,
+               new Comparator() {
+                  public int compare(Object a, Object b) {
+                     CacheModel x = (CacheModel) a, y = (CacheModel) b;
+                     if (x.getHitCount() != y.getHitCount())
+                        return (x.getHitCount() > y.getHitCount()) ? -1 : 1;
+                     return x.getCacheSizeInBytes() - y.getCacheSizeInBytes();
+                  }
+               });
+         long accesses = (caches.length == 0) ? 0 : caches[0].getAccessCount();
+         out.println(caches.length + " cache configurations, " + accesses + " accesses");
+         out.println("   bytes  words/block  blocks  blocks/set  policy        hits      misses  hit rate");
+         for (int i = 0; i < sorted.length; i++) {
+            CacheModel c = sorted[i];
+            out.println(pad(c.getCacheSizeInBytes(), 8) + pad(c.getBlockSizeInWords(), 13) +
+                        pad(c.getNumberOfBlocks(), 8) + pad(c.getSetSizeInBlocks(), 12) +
+                        ((c.getSetSizeInBlocks() == 1) ? "  -     " : (c.getReplacementPolicy() == CacheModel.LRU) ? "  LRU   " : "  Random") +
+                        pad(c.getHitCount(), 12) + pad(c.getMissCount(), 12) +
+                        "  " + String.format("%7.2f%%", 100.0 * c.getHitRate()));
+         }
+      }
+
+       private static String pad(long value, int width) {
+         String s = Long.toString(value);
+         StringBuffer result = new StringBuffer();
+         for (int i = s.length(); i < width; i++) {
+            result.append(' ');
+         }
+         return result.append(s).toString();
+      }
+
+   	/**
+   	 * Run the default sweep over a recorded trace and print the table.
+   	 * @param args trace file name, optionally followed by "i" to include instruction fetches
+   	 */
+       public static void main(String[] args) throws IOException {
+         if (args.length < 1) {
+            System.out.println("Usage: java mars.tools.CacheSweep trace-file [i]");
+            System.out.println("  where trace-file was recorded using the MARS trace option and");
+            System.out.println("  i includes instruction fetches (default is data accesses only).");
+            return;
+         }
+         boolean fetches = args.length > 1 && args[1].equalsIgnoreCase("i");
+         TraceReader trace = new TraceReader(new File(args[0]));
+         CacheSweep sweep = new CacheSweep();
+         while (trace.next()) {
+            if (fetches || trace.getKind() != TraceRecorder.FETCH) {
+               sweep.access(trace.getAddress());
+            }
+         }
+         trace.close();
+         sweep.finish();
+         sweep.printTable(System.out);
+      }
+   }
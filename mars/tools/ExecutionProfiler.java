@@ -0,0 +1,141 @@
+package mars.tools;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Observable;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+import mars.simulator.Profiler;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
+
+/**
+ * Execution profiler tool.  While connected, every instruction executed is
+ * counted by a {@link Profiler} installed in the simulator, which is much
+ * cheaper than observing memory reads the way the Instruction Counter does.
+ * Whenever the program stops, the tool shows which functions and which
+ * instructions the program spent its time in.  The profile can also be saved
+ * as collapsed call stacks for use with flame graph tools.
+ */
+public class ExecutionProfiler extends AbstractMarsToolAndApplication {
+	private static final long serialVersionUID = 1L;
+	private static String name    = "Execution Profiler";
+	private static String version = "Version 1.0";
+	private static String heading = "Where is the program spending its instructions?";
+	private static final int HOT_INSTRUCTIONS = 50;
+
+	private Profiler profiler = new Profiler();
+	private JTextArea reportArea;
+
+	/**
+	 * Simple constructor, likely used to run a stand-alone profiler.
+	 * @param title String containing title for title bar
+	 * @param heading String containing text for heading shown in upper part of window.
+	 */
+	public ExecutionProfiler(String title, String heading) {
+		super(title, heading);
+	}
+
+	/**
+	 * Simple construction, likely used by the MARS Tools menu mechanism.
+	 */
+	public ExecutionProfiler() {
+		super(name + ", " + version, heading);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	protected JComponent buildMainDisplayArea() {
+		JPanel panel = new JPanel(new BorderLayout());
+		reportArea = new JTextArea(24, 80);
+		reportArea.setEditable(false);
+		reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		panel.add(new JScrollPane(reportArea), BorderLayout.CENTER);
+		JButton saveButton = new JButton("Save Collapsed Stacks...");
+		saveButton.setToolTipText("Write the profile in collapsed stack format for flame graph tools");
+		saveButton.addActionListener(
+			new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					saveCollapsedStacks();
+				}
+			});
+		JPanel buttons = new JPanel();
+		buttons.add(saveButton);
+		panel.add(buttons, BorderLayout.SOUTH);
+		return panel;
+	}
+
+	/**
+	 * Installs the profiler in the simulator and watches for the program stopping,
+	 * rather than observing memory.
+	 */
+	protected void addAsObserver() {
+		Simulator.getInstance().setProfiler(profiler);
+		Simulator.getInstance().addObserver(this);
+	}
+
+	protected void deleteAsObserver() {
+		Simulator.getInstance().setProfiler(null);
+		Simulator.getInstance().deleteObserver(this);
+	}
+
+	/**
+	 * Only simulator start/stop notices arrive here; the report is refreshed when
+	 * the program stops.  The notice is delivered on the simulation thread.
+	 */
+	public void update(Observable resource, Object notice) {
+		if (notice instanceof SimulatorNotice
+				&& ((SimulatorNotice) notice).getAction() == SimulatorNotice.SIMULATOR_STOP) {
+			SwingUtilities.invokeLater(
+				new Runnable() {
+					public void run() {
+						updateDisplay();
+					}
+				});
+		}
+	}
+
+	protected void reset() {
+		profiler.reset();
+		updateDisplay();
+	}
+
+	protected void updateDisplay() {
+		StringWriter report = new StringWriter();
+		profiler.writeReport(new PrintWriter(report), HOT_INSTRUCTIONS);
+		reportArea.setText(report.toString());
+		reportArea.setCaretPosition(0);
+	}
+
+	private void saveCollapsedStacks() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("profile.folded"));
+		if (chooser.showSaveDialog(theWindow) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		try {
+			PrintWriter out = new PrintWriter(new FileWriter(chooser.getSelectedFile()));
+			profiler.writeCollapsedStacks(out);
+			out.close();
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(theWindow, "Error writing collapsed stacks: " + e.getMessage());
+		}
+	}
+}
@@ -170,7 +170,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (baseAddress < 0 && highAddress > -4) {
             highAddress = -4;
          }
-         addAsObserver(baseAddress, highAddress);
+         // Counting is done in batches on a separate thread so full-speed runs are not slowed down.
+         addAsEventStreamConsumer(baseAddress, highAddress, false, AccessEventStream.BLOCK);
       }
    
       
@@ -204,6 +205,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          updateDisplay();
       }
    	
+      /**
+   	 * Update counts for a batch of (data) memory accesses by the connected MIPS program.
+   	 * @param events the event stream
+   	 * @param count number of events in the batch
+   	 */
+       protected void processAccessEvents(AccessEventStream events, int count) {
+         for (int i = 0; i < count; i++) {
+            incrementReferenceCountForAddress(events.getAddress(i));
+         }
+      }
+   	
    
    	/** 
    	 *  Initialize all JComboBox choice structures not already initialized at declaration.	
@@ -0,0 +1,147 @@
+package mars.tools;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.Observable;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
+import mars.simulator.TraceRecorder;
+
+/**
+ * Memory trace recorder tool.  While connected, every instruction fetch and
+ * data load and store of the running program is recorded to a compact binary
+ * trace file by a {@link TraceRecorder}.  The trace is complete when the tool
+ * is disconnected or closed, and can be replayed with
+ * {@link mars.simulator.TraceReader} for offline cache experiments.
+ */
+public class MemoryTraceRecorder extends AbstractMarsToolAndApplication {
+	private static final long serialVersionUID = 1L;
+	private static String name    = "Memory Trace Recorder";
+	private static String version = "Version 1.0";
+	private static String heading = "Record the memory reference stream to a file";
+
+	private TraceRecorder recorder;
+	private JTextField fileField;
+	private JLabel statusLabel;
+
+	/**
+	 * Simple constructor, likely used to run a stand-alone trace recorder.
+	 * @param title String containing title for title bar
+	 * @param heading String containing text for heading shown in upper part of window.
+	 */
+	public MemoryTraceRecorder(String title, String heading) {
+		super(title, heading);
+	}
+
+	/**
+	 * Simple construction, likely used by the MARS Tools menu mechanism.
+	 */
+	public MemoryTraceRecorder() {
+		super(name + ", " + version, heading);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	protected JComponent buildMainDisplayArea() {
+		JPanel panel = new JPanel(new BorderLayout());
+		JPanel filePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		filePanel.add(new JLabel("Trace file: "));
+		fileField = new JTextField(new File("memory.trace").getAbsolutePath(), 30);
+		filePanel.add(fileField);
+		JButton browseButton = new JButton("Browse...");
+		browseButton.addActionListener(
+			new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					JFileChooser chooser = new JFileChooser();
+					chooser.setSelectedFile(new File(fileField.getText()));
+					if (chooser.showSaveDialog(theWindow) == JFileChooser.APPROVE_OPTION) {
+						fileField.setText(chooser.getSelectedFile().getAbsolutePath());
+					}
+				}
+			});
+		filePanel.add(browseButton);
+		panel.add(filePanel, BorderLayout.NORTH);
+		statusLabel = new JLabel("Not recording.  Connect to start recording; disconnect to finish the trace.");
+		panel.add(statusLabel, BorderLayout.SOUTH);
+		return panel;
+	}
+
+	/**
+	 * Starts recording to the chosen file, rather than observing memory.
+	 */
+	protected void addAsObserver() {
+		try {
+			recorder = new TraceRecorder(new File(fileField.getText()));
+		} catch (IOException e) {
+			recorder = null;
+			statusLabel.setText("Cannot create trace file: " + e.getMessage());
+			return;
+		}
+		Simulator.getInstance().setTraceRecorder(recorder);
+		Simulator.getInstance().addObserver(this);
+		fileField.setEditable(false);
+		updateDisplay();
+	}
+
+	/**
+	 * Stops recording and completes the trace file.
+	 */
+	protected void deleteAsObserver() {
+		Simulator.getInstance().deleteObserver(this);
+		if (recorder == null) {
+			return;
+		}
+		Simulator.getInstance().setTraceRecorder(null);
+		try {
+			recorder.close();
+			statusLabel.setText("Trace complete: " + counts());
+		} catch (IOException e) {
+			statusLabel.setText("Error writing trace file: " + e.getMessage());
+		}
+		recorder = null;
+		fileField.setEditable(true);
+	}
+
+	/**
+	 * Only simulator start/stop notices arrive here; the counts are refreshed when
+	 * the program stops.
+	 */
+	public void update(Observable resource, Object notice) {
+		if (notice instanceof SimulatorNotice
+				&& ((SimulatorNotice) notice).getAction() == SimulatorNotice.SIMULATOR_STOP) {
+			SwingUtilities.invokeLater(
+				new Runnable() {
+					public void run() {
+						updateDisplay();
+					}
+				});
+		}
+	}
+
+	protected void updateDisplay() {
+		TraceRecorder current = recorder;
+		if (current != null) {
+			statusLabel.setText("Recording: " + counts());
+		}
+	}
+
+	private String counts() {
+		return recorder.getFetchCount() + " fetches, " + recorder.getReadCount() + " loads, "
+				+ recorder.getWriteCount() + " stores";
+	}
+}
@@ -0,0 +1,89 @@
+   package mars.util;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Records the input a program is given during a run, and the seeds of the random
+ * number streams it creates, so that the run can be repeated exactly and unattended
+ * by giving the recording to the command line option <tt>in</tt> (see InputScript).
+ * Each input of a line-oriented syscall is recorded as a line; input read from STDIN
+ * is recorded as given.
+ * <p>
+ * SystemIO saves the recording whenever the program stops, whatever the reason,
+ * replacing the file.  A program that is paused or reaches a step limit and is then
+ * resumed goes on with the same recording; the next run of the program starts a new
+ * one.  Nothing is saved for a run that was given no input and created no random
+ * number streams.
+ *
+ * @see SystemIO#setInputRecorder(InputRecorder)
+ */
+
+    public class InputRecorder {
+   	/** First line of a recording. */
+      public static final String HEADER = "# MARS input recording";
+   	/** Start of a line holding the seed of a random number stream. */
+      public static final String SEED_PREFIX = "# seed ";
+   	/** Line after which the input follows, up to the end of the file. */
+      public static final String INPUT_LINE = "# input";
+
+      private final File file;
+      private final StringBuffer input = new StringBuffer();
+      private final ArrayList seeds = new ArrayList();
+
+   	/**
+   	 * Create a recorder.
+   	 * @param file the file to save recordings in, or null to save each next to the
+   	 * program's source file, with ".replay" added to its name
+   	 */
+       public InputRecorder(File file) {
+         this.file = file;
+      }
+
+   	/**
+   	 * Record input given to the program.
+   	 * @param text the input, with a newline at the end of each line
+   	 */
+       public synchronized void recordInput(String text) {
+         input.append(text);
+      }
+
+   	/**
+   	 * Record the seed of a random number stream the program created.
+   	 * @param seed the seed
+   	 */
+       public synchronized void recordSeed(long seed) {
+         seeds.add(Long.valueOf(seed));
+      }
+
+   	/**
+   	 * Save what has been recorded since the recorder was last cleared, if anything.
+   	 * @param programFilename name of the program's source file, used if no file was given
+   	 * @throws IOException if the recording cannot be written
+   	 */
+       public synchronized void save(String programFilename) throws IOException {
+         if (input.length() == 0 && seeds.isEmpty()) {
+            return;
+         }
+         File target = (file != null) ? file : new File(programFilename + ".replay");
+         Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), "UTF-8"));
+         try {
+            out.write(HEADER + "\n");
+            for (int i = 0; i < seeds.size(); i++) {
+               out.write(SEED_PREFIX + seeds.get(i) + "\n");
+            }
+            out.write(INPUT_LINE + "\n");
+            out.write(input.toString());
+         }
+         finally {
+            out.close();
+         }
+      }
+
+   	/**
+   	 * Discard what has been recorded, to start a new recording.
+   	 */
+       public synchronized void clear() {
+         input.setLength(0);
+         seeds.clear();
+      }
+   }
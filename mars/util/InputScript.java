@@ -0,0 +1,132 @@
+   package mars.util;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Program input read from a file instead of the keyboard, for running interactive
+ * programs unattended.  The input syscalls take their lines from the script and reads
+ * from STDIN take its bytes, just as if the file were redirected to standard input.
+ * SystemIO rewinds the script at the start of each run, so every run of a program
+ * sees the same input.
+ * <p>
+ * A script may also be a recording made by InputRecorder, recognized by its first
+ * line.  A recording holds, besides the input, the seeds of the random number streams
+ * the program created, which are then used in the same order, so that the run is
+ * repeated exactly.
+ *
+ * @see SystemIO#setInputScript(InputScript)
+ * @see InputRecorder
+ */
+
+    public class InputScript {
+      private final String input;
+      private final long[] seeds;
+      private int position = 0;
+      private int nextSeed = 0;
+
+   	/**
+   	 * Read a script, or a recording, from a file.
+   	 * @param file the file
+   	 * @throws IOException if the file cannot be read or is a malformed recording
+   	 */
+       public InputScript(File file) throws IOException {
+         String text = readFile(file);
+         ArrayList seedList = new ArrayList();
+         if (text.startsWith(InputRecorder.HEADER + "\n")) {
+            int start = InputRecorder.HEADER.length() + 1;
+            while (true) {
+               int end = text.indexOf('\n', start);
+               if (end < 0) {
+                  throw new IOException(file + ": recording has no " + InputRecorder.INPUT_LINE + " line");
+               }
+               String line = text.substring(start, end);
+               start = end + 1;
+               if (line.equals(InputRecorder.INPUT_LINE)) {
+                  break;
+               }
+               if (!line.startsWith(InputRecorder.SEED_PREFIX)) {
+                  throw new IOException(file + ": unrecognized line in recording: " + line);
+               }
+               try {
+                  seedList.add(Long.valueOf(line.substring(InputRecorder.SEED_PREFIX.length()).trim()));
+               }
+                   catch (NumberFormatException e) {
+                     throw new IOException(file + ": bad seed in recording: " + line);
+                  }
+            }
+            text = text.substring(start);
+         }
+         input = text;
+         seeds = new long[seedList.size()];
+         for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = ((Long) seedList.get(i)).longValue();
+         }
+      }
+
+   	/**
+   	 * Start again from the beginning of the input and the first seed.
+   	 */
+       public synchronized void rewind() {
+         position = 0;
+         nextSeed = 0;
+      }
+
+   	/**
+   	 * Take the next line of input.
+   	 * @return the line, without its terminating newline, or null at the end of the input
+   	 */
+       public synchronized String readLine() {
+         if (position >= input.length()) {
+            return null;
+         }
+         int end = input.indexOf('\n', position);
+         String line = input.substring(position, (end < 0) ? input.length() : end);
+         position = (end < 0) ? input.length() : end + 1;
+         return line;
+      }
+
+   	/**
+   	 * Take up to the given number of bytes of input, as a read from STDIN would.
+   	 * @param buffer where to put the bytes
+   	 * @param length number of bytes wanted
+   	 * @return number of bytes taken, 0 at the end of the input
+   	 */
+       public synchronized int read(byte[] buffer, int length) {
+         length = Math.min(length, buffer.length);
+         int count = 0;
+         while (count < length && position < input.length()) {
+            byte[] bytes = input.substring(position, position + 1).getBytes();
+            if (count + bytes.length > length) {
+               break;
+            }
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+            position++;
+         }
+         return count;
+      }
+
+   	/**
+   	 * Take the seed for the next random number stream the program creates.
+   	 * @return the seed recorded for it, or null if there is none
+   	 */
+       public synchronized Long nextSeed() {
+         return (nextSeed < seeds.length) ? Long.valueOf(seeds[nextSeed++]) : null;
+      }
+
+       private static String readFile(File file) throws IOException {
+         Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+         try {
+            StringBuffer text = new StringBuffer();
+            char[] chars = new char[8192];
+            int count;
+            while ((count = in.read(chars)) > 0) {
+               text.append(chars, 0, count);
+            }
+            return text.toString().replace("\r\n", "\n");
+         }
+         finally {
+            in.close();
+         }
+      }
+   }
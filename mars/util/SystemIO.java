@@ -1,8 +1,12 @@
    package mars.util;
    import mars.*;
+   import mars.simulator.*;
    import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
    import javax.swing.*;
    import java.util.*;
+   import mars.mips.instructions.syscalls.RandomStreams;
 	
 	/*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -46,8 +50,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    {
     /** Buffer size for syscalls for file I/O */
       public static final int SYSCALL_BUFSIZE = 128;
-    /** Maximum number of files that can be open */
+    /** Initial size of the table of file descriptors, which grows as files are opened */
       public static final int SYSCALL_MAXFILES = 32;
+    /** Maximum number of files that can be open, to which the table of file descriptors may grow */
+      public static final int SYSCALL_MAXOPENFILES = 1024;
+    /** Most times a second the output of the print syscalls is passed on to the console */
+      public static final int OUTPUT_FRAMES_PER_SECOND = 30;
     /** String used for description of file error */
       public static String fileErrorString = new String("File operation OK");
    
@@ -68,6 +76,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// Added by DPS 28 Feb 2008.  See getInputReader() below.
       private static BufferedReader inputReader = null;
    
+      // Input script replacing the keyboard, and recorder of input, if set.  See
+   	// setInputScript() and setInputRecorder().
+      private static InputScript inputScript = null;
+      private static InputRecorder inputRecorder = null;
+      private static InputRecorder settingRecorder = null; // used in the IDE by the Record input setting
+   
     /**
      * Implements syscall to read an integer value.  
      * Client is responsible for catching NumberFormatException.
@@ -78,11 +92,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static int readInteger(int serviceNumber)
       {
          String input = "0";
-         if (Globals.getGui() == null)
+         ConsoleOutput.flush();
+         if (Globals.getGui() == null || inputScript != null)
          {
             try
             {  
-               input = getInputReader().readLine();
+               input = readInputLine();
             } 
                 catch (IOException e)
                {}
@@ -98,6 +113,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          }
       
+         recordInputLine(input);
         // Client is responsible for catching NumberFormatException
          return new Integer(input.trim()).intValue();
       }
@@ -113,11 +129,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static float readFloat(int serviceNumber)
       {
          String input = "0";
-         if (Globals.getGui() == null)
+         ConsoleOutput.flush();
+         if (Globals.getGui() == null || inputScript != null)
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readInputLine();
             } 
                 catch (IOException e)
                {}
@@ -132,6 +149,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
          }
+         recordInputLine(input);
          return new Float(input.trim()).floatValue();
       
       }
@@ -147,11 +165,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static double readDouble(int serviceNumber)
       {
          String input = "0";
-         if (Globals.getGui() == null)
+         ConsoleOutput.flush();
+         if (Globals.getGui() == null || inputScript != null)
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readInputLine();
             } 
                 catch (IOException e)
                {}
@@ -166,25 +185,56 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
          }
+         recordInputLine(input);
          return new Double(input.trim()).doubleValue();
       
       }
     
     
+    // Number of bytes a string takes when written out in the default encoding, as
+    // System.out writes it, so that printed output is charged in bytes as writes are.
+       private static int encodedLength(String string) {
+         for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+               return string.getBytes().length;
+            }
+         }
+         return string.length();
+      }
+   
+    // Charge output bytes against the execution budget of the running program, if any.
+       private static void chargeOutput(int bytes) {
+         ExecutionBudget budget = Simulator.getInstance().getExecutionBudget();
+         if (budget != null) {
+            budget.chargeOutput(bytes);
+         }
+      }
+   
     /**
-     * Implements syscall having 4 in $v0, to print a string.
+     * Implements syscall having 4 in $v0, to print a string.  The print syscalls
+     * all come here.  Output is collected and passed on to System.out or the Messages
+     * pane at most OUTPUT_FRAMES_PER_SECOND times a second, so that programs printing
+     * a little at a time are not held up by the console.  It is passed on at once
+     * before input is read, before a write to STDOUT or STDERR, and when the
+     * program stops.
      */
        public static void printString(String string)
       {
-         if (Globals.getGui() == null)
-         {
-            System.out.print(string);
-         } 
-         else
-         {
-            Globals.getGui().getMessagesPane().postRunMessage(string);
-         }
-      
+         chargeOutput(encodedLength(string));
+         ConsoleOutput.append(string);
+      }
+   
+    /**
+     * Pass output of the print syscalls not yet passed on to System.out or the Messages
+     * pane, and write the bytes buffered for the files the program has open.  Called by
+     * the simulator when the program stops for any reason, so that nothing is lost if
+     * MARS exits without the files being closed, e.g. at a step limit.
+     */
+       public static void flushOutput()
+      {
+         ConsoleOutput.flush();
+         FileIOData.flushFiles();
+         saveRecording();
       }
    	
    	
@@ -197,11 +247,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static String readString(int serviceNumber, int maxLength)
       {
          String input = "";
-         if (Globals.getGui() == null)
+         ConsoleOutput.flush();
+         if (Globals.getGui() == null || inputScript != null)
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readInputLine();
             } 
                 catch (IOException e)
                {}
@@ -220,6 +271,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
             }
          }
+         recordInputLine(input);
       	
          if (input.length() > maxLength) {
             // Modified DPS 13-July-2011.  Originally: return input.substring(0, maxLength);
@@ -240,11 +292,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       {
          String input = "0";
          int returnValue = 0;
-         if (Globals.getGui() == null)
+         ConsoleOutput.flush();
+         if (Globals.getGui() == null || inputScript != null)
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readInputLine();
             } 
                 catch (IOException e)
                {}
@@ -259,6 +312,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                input = Globals.getGui().getMessagesPane().getInputString(1);
             }
          }
+         recordInputLine(input);
          // The whole try-catch is not really necessary in this case since I'm
       	// just propagating the runtime exception (the default behavior), but 
       	// I want to make it explicit.  The client needs to catch it.
@@ -276,7 +330,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    
-    /** Write bytes to file.
+    /** Write bytes to file.  Bytes written to a disk file are buffered, and reach
+     * the file when its buffer fills, or at the latest when it is synced or closed
+     * (closing happens when the program exits or the run ends).  STDOUT and STDERR
+     * are flushed at every write, so that output interleaves with other syscalls.
      *
      * @param fd file descriptor
      * @param myBuffer byte array containing characters to write
@@ -286,6 +343,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested)
       {
+         chargeOutput(lengthRequested);
+         if (fd==STDOUT || fd==STDERR) {
+            ConsoleOutput.flush(); // keep the order of output from print syscalls
+         }
        /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
        /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane. 
          if ((fd==STDOUT || fd==STDERR) && Globals.getGui() != null) {
@@ -302,27 +363,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                     "File descriptor " + fd + " is not open for writing");
             return -1;
          }
-         // retrieve FileOutputStream from storage
-         OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
          try
          {
-            // Oct. 9 2005 Ken Vollmar
-            // Observation: made a call to outputStream.write(myBuffer, 0, lengthRequested)
-            //     with myBuffer containing 6(ten) 32-bit-words <---> 24(ten) bytes, where the
-            //     words are MIPS integers with values such that many of the bytes are ZEROES.
-            //     The effect is apparently that the write stops after encountering a zero-valued
-            //     byte. (The method write does not return a value and so this can't be verified
-            //     by the return value.)
-            // Writes up to lengthRequested bytes of data to this output stream from an array of bytes.
-            // outputStream.write(myBuffer, 0, lengthRequested); // write is a void method -- no verification value returned
-            
-            // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
-            // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++)
-            {
-               outputStream.write(myBuffer[ii]); 
-            }
-            outputStream.flush();// DPS 7-Jan-2013
+            // Oct. 9 2005 Ken Vollmar observed that the bytes must be written as
+            // requested even though they may include many ZERO values.  Whole
+            // array writes do so.
+            FileIOData.write(fd, myBuffer, lengthRequested);
          } 
              catch (IOException e)
             {
@@ -342,7 +388,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       } // end writeToFile
    
    
-     /** Read bytes from file.
+     /** Read bytes from file.  Disk files are read through a buffer, a block at a time.
      *
      * @param fd file descriptor
      * @param myBuffer byte array to contain bytes read
@@ -352,10 +398,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested)
       {
          int retValue = -1;  
+         if (fd==STDIN) {
+            ConsoleOutput.flush(); // so that a prompt is seen
+         }
+         if (fd==STDIN && inputScript != null) {
+            retValue = inputScript.read(myBuffer, lengthRequested);
+            recordInput(new String(myBuffer, 0, retValue));
+            return retValue;
+         }
        /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
        /// Read from STDIN file descriptor while using IDE - get input from Messages pane. 
          if (fd==STDIN && Globals.getGui() != null) {
             String input = Globals.getGui().getMessagesPane().getInputString(lengthRequested);
+            recordInput(input);
             byte[] bytesRead = input.getBytes();;
             for (int i=0; i < myBuffer.length; i++) {
                myBuffer[i] = (i < bytesRead.length) ? bytesRead[i] : 0 ;
@@ -371,17 +426,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                     "File descriptor " + fd + " is not open for reading");
             return -1;
          }
-        // retrieve FileInputStream from storage
-         InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
          try
          {
-            // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
-            retValue = InputStream.read(myBuffer, 0, lengthRequested);
+            // Reads up to lengthRequested bytes of data into an array of bytes.
+            retValue = FileIOData.read(fd, myBuffer, lengthRequested);
          	// This method will return -1 upon EOF, but our spec says that negative
          	// value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (retValue == -1) {
                retValue = 0;
             }
+            if (fd==STDIN) {
+               recordInput(new String(myBuffer, 0, retValue));
+            }
          } 
              catch (IOException e)
             {
@@ -406,19 +462,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *
     * @param filename string containing filename
     * @param flag 0 for read, 1 for write
-    * @return file descriptor in the range 0 to SYSCALL_MAXFILES-1, or -1 if error
+    * @return file descriptor, the lowest not in use (the table of descriptors grows
+    * as needed, up to SYSCALL_MAXOPENFILES), or -1 if error
     * @author Ken Vollmar
     */
        public static int openFile(String filename, int flags)
       {
         // Internally, a "file descriptor" is an index into a table
-        // of the filename, flag, and the File???putStream associated with
+        // of the filename, flag, and the channel associated with
         // that file descriptor.
       
          int retValue = -1;
-         char ch[] = { ' '}; // Need an array to convert to String
-         FileInputStream inputStream;
-         FileOutputStream outputStream;
          int fdToUse;
       
         // Check internal plausibility of opening this file
@@ -434,29 +488,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          {
             try
             {
-                // Set up input stream from disk file
-               inputStream = new FileInputStream(filename);
-               FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
+                // Set up channel from disk file
+               FileIOData.setStreamInUse(fdToUse, new FileInputStream(filename).getChannel()); // Save channel for later use
             } 
                 catch (FileNotFoundException e)
                {
                   fileErrorString = new String(
                         "File " + filename + " not found, open for input.");
+                  FileIOData.close(fdToUse);
                   retValue = -1;
                }
          } 
          else if ( (flags & O_WRONLY) != 0 ) // Open for writing only
          {
-            // Set up output stream to disk file
+            // Set up channel to disk file
             try
             { 
-               outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0) );
-               FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
+               FileIOData.setStreamInUse(fdToUse, 
+                  new FileOutputStream(filename, ((flags & O_APPEND) != 0) ).getChannel()); // Save channel for later use
             } 
                 catch (FileNotFoundException e)
                {
                   fileErrorString = new String(
                         "File " + filename + " not found, open for output.");
+                  FileIOData.close(fdToUse);
                   retValue = -1;
                }
          }
@@ -464,21 +519,144 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
       }
    
-    /** Close the file with specified file descriptor 
-     *
-     * @param fd the file descriptor of an open file
-     */
+   /**
+    * Set the position in a disk file at which the next read or write begins.  A file
+    * opened for appending is still written at its end, whatever the position.
+    *
+    * @param fd the file descriptor of an open disk file
+    * @param offset number of bytes to move the position by
+    * @param whence what the offset is relative to: 0 the start of the file, 1 the
+    * current position, 2 the end of the file
+    * @return the new position, or -1 if error (e.g. the descriptor is that of standard
+    * I/O, or the new position would be negative or beyond 2GB)
+    */
+       public static int seekFile(int fd, int offset, int whence)
+      {
+         if (fd <= STDERR || !(FileIOData.fdInUse(fd, 0) || FileIOData.fdInUse(fd, 1)))
+         {
+            fileErrorString = new String(
+                    "File descriptor " + fd + " is not that of an open disk file");
+            return -1;
+         }
+         try
+         {
+            long position = FileIOData.seek(fd, offset, whence);
+            if (position < 0)
+            {
+               fileErrorString = new String(
+                    "Invalid position or whence on seek of file with fd " + fd);
+            }
+            return (int) position;
+         } 
+             catch (IOException e)
+            {
+               fileErrorString = new String(
+                    "IO Exception on seek of file with fd " + fd);
+               return -1;
+            }
+      }
+   
+   /**
+    * Write any bytes buffered for a file to it, and force them to the storage device.
+    *
+    * @param fd the file descriptor of an open file
+    * @return 0, or -1 if error
+    */
+       public static int syncFile(int fd)
+      {
+         if (!(FileIOData.fdInUse(fd, 0) || FileIOData.fdInUse(fd, 1)))
+         {
+            fileErrorString = new String(
+                    "File descriptor " + fd + " is not open");
+            return -1;
+         }
+         try
+         {
+            FileIOData.sync(fd);
+         } 
+             catch (IOException e)
+            {
+               fileErrorString = new String(
+                    "IO Exception on sync of file with fd " + fd);
+               return -1;
+            }
+         return 0;
+      }
+   
+   /** Close the file with specified file descriptor, writing any bytes buffered for it.
+    *
+    * @param fd the file descriptor of an open file
+    */
        public static void closeFile(int fd)
       {
          FileIOData.close(fd);
       }
    
-    /** 
-     * Reset all files -- clears out the file descriptor table.
-     */
+   /** 
+    * Reset all files -- closes all open files, writing any bytes buffered for them,
+    * and clears out the file descriptor table.
+    */
        public static void resetFiles()
       {
          FileIOData.resetFiles();
+         if (inputScript != null) {
+            inputScript.rewind();
+         }
+         // the recording was saved when the program stopped
+         InputRecorder recorder = getActiveRecorder();
+         if (recorder != null) {
+            recorder.clear();
+         }
+         // streams created before recording began could not be replayed, and a replay or
+         // a global seed must give each run the same streams
+         if (recorder != null || inputScript != null || RandomStreams.getGlobalSeed() != null) {
+            RandomStreams.reset();
+         }
+      }
+   
+    /**
+     * Take program input from a script instead of the keyboard, the Run I/O window or
+     * dialogs, or no longer if null.  The script is rewound by resetFiles(), which is
+     * called when a program is assembled and when a run ends, so each run of the
+     * program gets the whole script.
+     *
+     * @param script the script, or null
+     */
+       public static void setInputScript(InputScript script)
+      {
+         inputScript = script;
+      }
+   
+    /**
+     * Record program input and the seeds of random number streams, or no longer if
+     * null.  The recording is saved whenever the program stops, and a new one is
+     * started by resetFiles().  In the IDE, the Record input setting provides a
+     * recorder when none is set.
+     *
+     * @param recorder the recorder, or null
+     */
+       public static void setInputRecorder(InputRecorder recorder)
+      {
+         inputRecorder = recorder;
+      }
+   
+    /**
+     * Returns the seed for a random number stream that the program creates without
+     * giving one: the next seed of a recording given as input script if there is one,
+     * otherwise the next seed from RandomStreams, which a global seed makes the same
+     * every run.  The seed is recorded if input is being recorded.
+     *
+     * @return the seed
+     */
+       public static long newRandomSeed()
+      {
+         Long seed = (inputScript == null) ? null : inputScript.nextSeed();
+         long value = (seed == null) ? RandomStreams.nextSeed() : seed.longValue();
+         InputRecorder recorder = getActiveRecorder();
+         if (recorder != null) {
+            recorder.recordSeed(value);
+         }
+         return value;
       }
    
      /**
@@ -497,6 +675,64 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// These are all equivalent in the eyes of the program because they are 
    	// transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
    	
+       // Read a line of keyboard, redirected or piped input, or of the input script if
+   	// there is one.  Returns null at the end of the input.
+       private static String readInputLine() throws IOException {
+         if (inputScript != null) {
+            return inputScript.readLine();
+         }
+         return getInputReader().readLine();
+      }
+   
+       // Record the input of a line-oriented syscall as a line, if recording.  There
+   	// is no input to record at the end of the input.
+       private static void recordInputLine(String input) {
+         if (input != null) {
+            recordInput(input.endsWith("\n") ? input : input + "\n");
+         }
+      }
+   
+       private static void recordInput(String input) {
+         InputRecorder recorder = getActiveRecorder();
+         if (recorder != null) {
+            recorder.recordInput(input);
+         }
+      }
+   
+       // Save the input recording, if recording.  Called when the program stops.
+       private static void saveRecording() {
+         InputRecorder recorder = getActiveRecorder();
+         if (recorder != null) {
+            try {
+               recorder.save((Globals.program == null) ? null : Globals.program.getFilename());
+            } 
+                catch (IOException e) {
+                  String message = "Could not save input recording: " + e.getMessage() + "\n";
+                  if (Globals.getGui() == null) {
+                     System.err.print(message);
+                  } 
+                  else {
+                     Globals.getGui().getMessagesPane().postRunMessage(message);
+                  }
+               }
+         }
+      }
+   
+       // The recorder set, or in the IDE one saving next to the program when the
+   	// Record input setting is on, or null.
+       private static InputRecorder getActiveRecorder() {
+         if (inputRecorder != null || Globals.getGui() == null) {
+            return inputRecorder;
+         }
+         if (!Globals.getSettings().getBooleanSetting(Settings.RECORD_INPUT)) {
+            return null;
+         }
+         if (settingRecorder == null) {
+            settingRecorder = new InputRecorder(null);
+         }
+         return settingRecorder;
+      }
+   
        private static BufferedReader getInputReader() {
          if (inputReader == null) {
             inputReader = new BufferedReader(new InputStreamReader(System.in));  
@@ -505,20 +741,83 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    	
    	
+    // //////////////////////////////////////////////////////////////////////////////
+    // Collects the output of the print syscalls.  Text is appended to a buffer, and a
+    // daemon timer passes the buffer on to System.out or the Messages pane one frame
+    // after the first text since the last flush; a full buffer is passed on at once.
+    // The simulator may run several harts, so all methods are synchronized.
+   
+       private static class ConsoleOutput
+      {
+         private static final int BUFFER_SIZE = 64 * 1024;
+         private static final StringBuffer buffer = new StringBuffer(BUFFER_SIZE);
+         private static java.util.Timer timer = null;
+         private static boolean flushScheduled = false;
+      
+          static synchronized void append(String string)
+         {
+            buffer.append(string);
+            if (buffer.length() >= BUFFER_SIZE)
+            {
+               flush();
+            }
+            else if (!flushScheduled)
+            {
+               if (timer == null)
+               {
+                  timer = new java.util.Timer("MARS console output", true);
+               }
+               timer.schedule(
+                      new TimerTask() {
+                         public void run() {
+                           flush();
+                        }
+                     }, 1000 / OUTPUT_FRAMES_PER_SECOND);
+               flushScheduled = true;
+            }
+         }
+      
+          static synchronized void flush()
+         {
+            flushScheduled = false; // a task already scheduled will find nothing to do
+            if (buffer.length() == 0)
+            {
+               return;
+            }
+            String string = buffer.toString();
+            buffer.setLength(0);
+            if (Globals.getGui() == null)
+            {
+               System.out.print(string);
+               System.out.flush();
+            } 
+            else
+            {
+               Globals.getGui().getMessagesPane().postRunMessage(string);
+            }
+         }
+      }
+   
     // //////////////////////////////////////////////////////////////////////////////
     // Maintain information on files in use. The index to the arrays is the "file descriptor."
     // Ken Vollmar, August 2005
-    
+    // Disk files are FileChannels, each with a buffer of its own; standard I/O keeps
+    // its streams.  A write buffer holds bytes not yet written between 0 and its
+    // position; a read buffer holds bytes not yet read between its position and limit.
+    // The arrays grow when every descriptor is in use.
+   
        private static class FileIOData
       {
+         private static final int BUFFER_SIZE = 64 * 1024;
          private static String[] fileNames = new String[ SYSCALL_MAXFILES ]; // The filenames in use. Null if file descriptor i is not in use.
          private static int[] fileFlags = new int[ SYSCALL_MAXFILES ]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-         private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+         private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams or channels in use, associated with the filenames
+         private static ByteBuffer[] buffers = new ByteBuffer[SYSCALL_MAXFILES]; // The buffers of the channels
       
         // Reset all file information. Closes any open files and resets the arrays
           private static void resetFiles()
          {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++)
+            for (int i = 0; i < fileNames.length; i++)
             {
                close(i);
             }
@@ -539,34 +838,181 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             System.err.flush();
          }
       
-        // Preserve a stream that is in use
-          private static void setStreamInUse(int fd, Object s)
+        // Preserve a channel that is in use, and give it an empty buffer.
+          private static void setStreamInUse(int fd, FileChannel channel)
          {
-            streams[fd] = s;
-         
+            streams[fd] = channel;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            if (fileFlags[fd] == O_RDONLY)
+            {
+               buffer.flip(); // nothing read yet
+            }
+            buffers[fd] = buffer;
          }
       
-        // Retrieve a stream for use
-          private static Object getStreamInUse(int fd)
+        // Write length bytes to an open fd.
+          private static void write(int fd, byte[] bytes, int length) throws IOException
          {
-            return streams[fd];
-         
+            if (!(streams[fd] instanceof FileChannel))
+            {
+               OutputStream outputStream = (OutputStream) streams[fd];
+               outputStream.write(bytes, 0, length);
+               outputStream.flush();// DPS 7-Jan-2013
+               return;
+            }
+            if (length < 0 || length > bytes.length)
+            {
+               throw new IndexOutOfBoundsException();
+            }
+            ByteBuffer buffer = buffers[fd];
+            if (length > buffer.remaining())
+            {
+               flush(fd);
+               if (length > buffer.remaining())
+               {
+                  writeFully((FileChannel) streams[fd], ByteBuffer.wrap(bytes, 0, length));
+                  return;
+               }
+            }
+            buffer.put(bytes, 0, length);
+         }
+      
+        // Read up to length bytes from an open fd.  Returns the number read, -1 at EOF.
+          private static int read(int fd, byte[] bytes, int length) throws IOException
+         {
+            if (!(streams[fd] instanceof FileChannel))
+            {
+               return ((InputStream) streams[fd]).read(bytes, 0, length);
+            }
+            if (length < 0 || length > bytes.length)
+            {
+               throw new IndexOutOfBoundsException();
+            }
+            FileChannel channel = (FileChannel) streams[fd];
+            ByteBuffer buffer = buffers[fd];
+            int count = 0;
+            while (count < length)
+            {
+               if (!buffer.hasRemaining())
+               {
+                  if (length - count >= buffer.capacity())
+                  {
+                     // read straight into the caller's array
+                     int n = channel.read(ByteBuffer.wrap(bytes, count, length - count));
+                     if (n <= 0) break;
+                     count += n;
+                     continue;
+                  }
+                  buffer.clear();
+                  int n = channel.read(buffer);
+                  buffer.flip();
+                  if (n <= 0) break;
+               }
+               int n = Math.min(length - count, buffer.remaining());
+               buffer.get(bytes, count, n);
+               count += n;
+            }
+            return (count == 0 && length > 0) ? -1 : count;
+         }
+      
+        // Move the position of an open disk file.  Returns the new position, or -1
+      	// if it would be invalid.
+          private static long seek(int fd, int offset, int whence) throws IOException
+         {
+            FileChannel channel = (FileChannel) streams[fd];
+            ByteBuffer buffer = buffers[fd];
+            long position;
+            if (fileFlags[fd] == O_RDONLY)
+            {
+               position = channel.position() - buffer.remaining(); // where the program is
+            } 
+            else
+            {
+               flush(fd);
+               position = channel.position();
+            }
+            switch (whence)
+            {
+               case 0: position = offset; break;
+               case 1: position += offset; break;
+               case 2: position = channel.size() + offset; break;
+               default: return -1;
+            }
+            if (position < 0 || position > Integer.MAX_VALUE)
+            {
+               return -1;
+            }
+            channel.position(position);
+            if (fileFlags[fd] == O_RDONLY)
+            {
+               buffer.clear();
+               buffer.flip(); // discard what was read ahead
+            }
+            return position;
+         }
+      
+        // Write the bytes buffered for an open fd and force them to the device.
+          private static void sync(int fd) throws IOException
+         {
+            if (streams[fd] instanceof FileChannel)
+            {
+               flush(fd);
+               ((FileChannel) streams[fd]).force(false);
+            } 
+            else if (streams[fd] instanceof OutputStream)
+            {
+               ((OutputStream) streams[fd]).flush();
+            }
+         }
+      
+        // Write the bytes buffered for every open disk file, leaving the files open.
+          private static void flushFiles()
+         {
+            for (int fd = STDERR + 1; fd < fileNames.length; fd++)
+            {
+               if (streams[fd] instanceof FileChannel)
+               {
+                  try {
+                     flush(fd);
+                  } 
+                      catch (IOException ioe) {
+                     // not concerned with this exception
+                     }
+               }
+            }
+         }
+      
+        // Write the bytes buffered for an open disk file, if opened for writing.
+          private static void flush(int fd) throws IOException
+         {
+            ByteBuffer buffer = buffers[fd];
+            if (fileFlags[fd] != O_RDONLY && buffer.position() > 0)
+            {
+               buffer.flip();
+               writeFully((FileChannel) streams[fd], buffer);
+               buffer.clear();
+            }
+         }
+      
+          private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException
+         {
+            while (bytes.hasRemaining())
+            {
+               channel.write(bytes);
+            }
          }
       
         // Determine whether a given filename is already in use.
           private static boolean filenameInUse(String requestedFilename)
          {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++)
+            for (int i = 0; i < fileNames.length; i++)
             {
                if (fileNames[i] != null
                         && fileNames[i].equals(requestedFilename))
                {
-                    // System.out.println("Mars.SystemIO.FileIOData.filenameInUse: rtng TRUE for " + requestedFilename);
                   return true;
                }
             }
-         
-            // System.out.println("Mars.SystemIO.FileIOData.filenameInUse: rtng TRUE for " + requestedFilename);
             return false;
          
          }
@@ -574,7 +1020,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         // Determine whether a given fd is already in use with the given flag.
           private static boolean fdInUse(int fd, int flag)
          {
-            if (fd < 0 || fd >= SYSCALL_MAXFILES)
+            if (fd < 0 || fd >= fileNames.length)
             {
                return false;
             } 
@@ -590,27 +1036,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          
          }
       
-        // Close the file with file descriptor fd. No errors are recoverable -- if the user's
-        // made an error in the call, it will come back to him.
+        // Close the file with file descriptor fd, writing any bytes buffered for it. No errors
+        // are recoverable -- if the user's made an error in the call, it will come back to him.
           private static void close(int fd)
          {
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
-            if (fd <= STDERR || fd >= SYSCALL_MAXFILES) 
+            if (fd <= STDERR || fd >= fileNames.length) 
                return;
                
             fileNames[fd] = null;
          	// All this code will be executed only if the descriptor is open.
             if (streams[fd] != null)
             {
-               int keepFlag = fileFlags[fd];
-               Object keepStream = streams[fd];
+               FileChannel keepChannel = (FileChannel) streams[fd];
+               try {
+                  flush(fd);
+               } 
+                   catch (IOException ioe) {
+                  // not concerned with this exception
+                  }
                fileFlags[fd] = -1;
                streams[fd] = null;
+               buffers[fd] = null;
                try {
-                  if (keepFlag == O_RDONLY)
-                     ((FileInputStream)keepStream).close();
-                  else
-                     ((FileOutputStream)keepStream).close();
+                  keepChannel.close();
                } 
                    catch (IOException ioe) {
                   // not concerned with this exception
@@ -621,9 +1070,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          }
       
+        // Double the size of the table of file descriptors, up to SYSCALL_MAXOPENFILES.
+          private static void grow()
+         {
+            int length = fileNames.length;
+            int newLength = Math.min(2 * length, SYSCALL_MAXOPENFILES);
+            String[] newNames = new String[newLength];
+            int[] newFlags = new int[newLength];
+            Object[] newStreams = new Object[newLength];
+            ByteBuffer[] newBuffers = new ByteBuffer[newLength];
+            System.arraycopy(fileNames, 0, newNames, 0, length);
+            System.arraycopy(fileFlags, 0, newFlags, 0, length);
+            System.arraycopy(streams, 0, newStreams, 0, length);
+            System.arraycopy(buffers, 0, newBuffers, 0, length);
+            fileNames = newNames;
+            fileFlags = newFlags;
+            streams = newStreams;
+            buffers = newBuffers;
+         }
+      
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
-        // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
-        // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
+        // Check that filename is not in use and flag is reasonable; the table grows if no descriptor is free,
+        // up to SYSCALL_MAXOPENFILES.
+        // Return: file descriptor, or -1 if error
           private static int nowOpening(String filename, int flag)
          {
             int i = 0;
@@ -642,19 +1111,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                return -1;
             }
          
-            while (fileNames[i] != null && i < SYSCALL_MAXFILES)
+            while (i < fileNames.length && fileNames[i] != null)
             {
                i++;
             } // Attempt to find available file descriptor
          
-            if (i >= SYSCALL_MAXFILES) // no available file descriptors
+            if (i >= SYSCALL_MAXOPENFILES) // no available file descriptors
             {
                fileErrorString = new String(
                         "File name " + filename
                         + " exceeds maximum open file limit of "
-                        + SYSCALL_MAXFILES);
+                        + SYSCALL_MAXOPENFILES);
                return -1;
             }    
+            if (i >= fileNames.length)
+            {
+               grow();
+            }    
          
             // Must be OK -- put filename in table
             fileNames[i] = new String(filename); // our table has its own copy of filename
@@ -74,6 +74,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean asciiDisplay = false;
       private int addressRow, addressColumn, addressRowFirstAddress;
       private Settings settings;
+   	// What the table showed at its last update, so updateValues() can skip unchanged pages.
+      private int displayedAddress, displayedValueBase = -1, displayedMark;
    	
       int firstAddress;
       int homeAddress;
@@ -468,6 +470,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public void clearWindow() {
          tablePanel.removeAll();
          disableAllButtons();
+         displayedValueBase = -1;
       }
       
    	/**
@@ -502,44 +505,51 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return; // ignore if no content to change
          int valueBase = getValueDisplayFormat();
          int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-         int address = firstAddr;
-         TableModel dataModel = dataTable.getModel();
+         displayedMark = Globals.memory.markGeneration();
+         displayedAddress = firstAddr;
+         displayedValueBase = valueBase;
          for (int row=0; row<NUMBER_OF_ROWS; row++) {
-            ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase),row,ADDRESS_COLUMN);
-            for (int column=1; column<NUMBER_OF_COLUMNS; column++) {
-               try {
-                  ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(Globals.memory.getWordNoNotify(address), valueBase),row,column);
-               } 
-                  catch (AddressErrorException aee) {
-                     // Bit of a hack here.  Memory will throw an exception if you try to read directly from text segment when the
-                  	// self-modifying code setting is disabled.  This is a good thing if it is the executing MIPS program trying to
-                  	// read.  But not a good thing if it is the DataSegmentDisplay trying to read.  I'll trick Memory by 
-                  	// temporarily enabling the setting as "non persistent" so it won't write through to the registry.
-                     if (Memory.inTextSegment(address)) {
-                        int displayValue = 0;
-                        if (!Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
-                           Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, true);
-                           try {
-                              displayValue = Globals.memory.getWordNoNotify(address);
-                           } 
-                              catch (AddressErrorException e) { 
-                              // Still got an exception?  Doesn't seem possible but if we drop through it will write default value 0.
-                              }
-                           Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, false);
-                        }
-                        ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(displayValue, valueBase),row,column);
-                     } 
-							// Bug Fix: the following line of code disappeared during the release 4.4 mods, but is essential to
-							// display values of 0 for valid MIPS addresses that are outside the MARS simulated address space.  Such
-							// addresses cause an AddressErrorException.  Prior to 4.4, they performed this line of code unconditionally.  
-							// With 4.4, I added the above IF statement to work with the text segment but inadvertently removed this line!
-							// Now it becomes the "else" part, executed when not in text segment.  DPS 8-July-2014.
-                     else {
-                        ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(0, valueBase),row,column);
+            updateModelForRow(row, firstAddr + row * BYTES_PER_ROW, valueBase, addressBase);
+         }
+      }
+   
+   	// Update one row of the table model with the contents of memory starting at address.
+      private void updateModelForRow(int row, int address, int valueBase, int addressBase) {
+         TableModel dataModel = dataTable.getModel();
+         ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase),row,ADDRESS_COLUMN);
+         for (int column=1; column<NUMBER_OF_COLUMNS; column++) {
+            try {
+               ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(Globals.memory.getWordNoNotify(address), valueBase),row,column);
+            } 
+               catch (AddressErrorException aee) {
+                  // Bit of a hack here.  Memory will throw an exception if you try to read directly from text segment when the
+               	// self-modifying code setting is disabled.  This is a good thing if it is the executing MIPS program trying to
+               	// read.  But not a good thing if it is the DataSegmentDisplay trying to read.  I'll trick Memory by 
+               	// temporarily enabling the setting as "non persistent" so it won't write through to the registry.
+                  if (Memory.inTextSegment(address)) {
+                     int displayValue = 0;
+                     if (!Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
+                        Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, true);
+                        try {
+                           displayValue = Globals.memory.getWordNoNotify(address);
+                        } 
+                           catch (AddressErrorException e) { 
+                           // Still got an exception?  Doesn't seem possible but if we drop through it will write default value 0.
+                           }
+                        Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, false);
                      }
+                     ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(displayValue, valueBase),row,column);
+                  } 
+						// Bug Fix: the following line of code disappeared during the release 4.4 mods, but is essential to
+						// display values of 0 for valid MIPS addresses that are outside the MARS simulated address space.  Such
+						// addresses cause an AddressErrorException.  Prior to 4.4, they performed this line of code unconditionally.  
+						// With 4.4, I added the above IF statement to work with the text segment but inadvertently removed this line!
+						// Now it becomes the "else" part, executed when not in text segment.  DPS 8-July-2014.
+                  else {
+                     ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(0, valueBase),row,column);
                   }
-               address += BYTES_PER_VALUE;
-            }
+               }
+            address += BYTES_PER_VALUE;
          }
       }
    	 
@@ -582,11 +592,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    	
       /**
-   	 * Update data display to show all values
+   	 * Update data display to show all values.  If the table still shows the same range
+   	 * in the same format as at its last update, only rows in memory pages modified since
+   	 * then are read again.
    	 */
    	 
       public void updateValues(){
-         updateModelForMemoryRange(this.firstAddress);
+         if (tablePanel.getComponentCount() == 0 || this.firstAddress != displayedAddress
+             || getValueDisplayFormat() != displayedValueBase) {
+            updateModelForMemoryRange(this.firstAddress);
+            return;
+         }
+         int mark = displayedMark;
+         displayedMark = Globals.memory.markGeneration();
+         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
+         for (int row=0; row<NUMBER_OF_ROWS; row++) {
+            int address = this.firstAddress + row * BYTES_PER_ROW;
+            if (Globals.memory.isPageModifiedSince(address, mark)
+                || Globals.memory.isPageModifiedSince(address + BYTES_PER_ROW - 1, mark)) {
+               updateModelForRow(row, address, displayedValueBase, addressBase);
+            }
+         }
       }
    
       /**
@@ -610,6 +636,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          }
          disableAllButtons();
+         displayedValueBase = -1; // table no longer shows memory
       }
    
    	/*
@@ -0,0 +1,129 @@
+   package mars.venus;
+   import java.io.*;
+
+/**
+ * Text held as a ring of lines, for the Run I/O pane.  Appending costs the same
+ * however much text is held: once the ring holds its limit of lines, each new line
+ * replaces the oldest.  A line longer than MAXIMUM_LINE_LENGTH is held as several,
+ * so that no one line is costly to display.  Lines keep their terminating newline,
+ * so writeTo() gives back exactly the text appended since the oldest line held.
+ * <p>
+ * Lines are numbered from 0, the oldest held; getFirstLineNumber() tells how many
+ * have been dropped since the buffer was last cleared, so that a viewer can keep its
+ * place as the ring turns.  Not synchronized; the Run I/O pane uses it only on the
+ * event dispatching thread.
+ */
+
+    public class LineRingBuffer {
+   	/** Length of the longest line held; longer lines are split. */
+      public static final int MAXIMUM_LINE_LENGTH = 1024;
+      private static final int INITIAL_CAPACITY = 1024;
+
+      private final int maximumLines;
+      private String[] lines; // grows to maximumLines
+      private int first = 0;  // index in lines of the oldest line
+      private int count = 0;  // number of complete lines held
+      private long dropped = 0;
+      private final StringBuffer partial = new StringBuffer(); // last line, not yet terminated
+
+   	/**
+   	 * Create an empty buffer.
+   	 * @param maximumLines the most lines to hold, at least 1
+   	 */
+       public LineRingBuffer(int maximumLines) {
+         this.maximumLines = Math.max(1, maximumLines);
+         this.lines = new String[Math.min(INITIAL_CAPACITY, this.maximumLines)];
+      }
+
+   	/**
+   	 * Append text, dropping the oldest lines if need be.
+   	 * @param text the text; lines end with '\n'
+   	 */
+       public void append(String text) {
+         int start = 0;
+         while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = (end < 0) ? text.length() : end + 1;
+            end = Math.min(end, start + MAXIMUM_LINE_LENGTH - partial.length());
+            partial.append(text, start, end);
+            if (partial.charAt(partial.length() - 1) == '\n' || partial.length() >= MAXIMUM_LINE_LENGTH) {
+               add(partial.toString());
+               partial.setLength(0);
+            }
+            start = end;
+         }
+      }
+
+   	/**
+   	 * @return number of lines held, including a last line not yet terminated
+   	 */
+       public int getLineCount() {
+         return (partial.length() == 0) ? count : count + 1;
+      }
+
+   	/**
+   	 * @param line line number, from 0 for the oldest held
+   	 * @return the line, with its terminating newline if any
+   	 * @throws IndexOutOfBoundsException if there is no such line
+   	 */
+       public String getLine(int line) {
+         if (line < 0 || line >= getLineCount()) {
+            throw new IndexOutOfBoundsException("line " + line);
+         }
+         if (line == count) {
+            return partial.toString();
+         }
+         return lines[(first + line) % lines.length];
+      }
+
+   	/**
+   	 * @return number of lines dropped since the buffer was last cleared
+   	 */
+       public long getFirstLineNumber() {
+         return dropped;
+      }
+
+   	/**
+   	 * Remove all text.
+   	 */
+       public void clear() {
+         lines = new String[Math.min(INITIAL_CAPACITY, maximumLines)];
+         first = 0;
+         count = 0;
+         dropped = 0;
+         partial.setLength(0);
+      }
+
+   	/**
+   	 * Write all the text held.
+   	 * @param out where to write it
+   	 * @throws IOException if the write fails
+   	 */
+       public void writeTo(Writer out) throws IOException {
+         for (int i = 0; i < count; i++) {
+            out.write(lines[(first + i) % lines.length]);
+         }
+         out.write(partial.toString());
+      }
+
+      // Add a complete line, growing the ring up to its limit and then replacing the oldest.
+       private void add(String line) {
+         if (count == lines.length && lines.length < maximumLines) {
+            String[] grown = new String[(int) Math.min((long) lines.length * 2, maximumLines)];
+            for (int i = 0; i < count; i++) {
+               grown[i] = lines[(first + i) % lines.length];
+            }
+            lines = grown;
+            first = 0;
+         }
+         if (count == lines.length) {
+            lines[first] = line;
+            first = (first + 1) % lines.length;
+            dropped++;
+         }
+         else {
+            lines[(first + count) % lines.length] = line;
+            count++;
+         }
+      }
+   }
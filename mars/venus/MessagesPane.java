@@ -48,13 +48,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       JTextArea assemble, run;
       JPanel assembleTab, runTab;
    	// These constants are designed to keep scrolled contents of the 
-   	// two message areas from becoming overwhelmingly large (which
+   	// assembler message area from becoming overwhelmingly large (which
    	// seems to slow things down as new text is appended).  Once it
    	// reaches MAXIMUM_SCROLLED_CHARACTERS in length then cut off 
    	// the first NUMBER_OF_CHARACTERS_TO_CUT characters.  The latter
    	// must obviously be smaller than the former.
       public static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
       public static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters/10 ; // 10%
+   	
+   	// The Run I/O text is kept in runOutput, up to Globals.maximumRunLines lines.  The
+   	// run text area shows only the lines that fit in it, chosen by runScrollBar, so
+   	// appending costs the same however much has been output.  While the program waits
+   	// for input in the text area, the user edits its document and it is not replaced;
+   	// the input is added to runOutput when done.  All on the event dispatching thread.
+      private LineRingBuffer runOutput = new LineRingBuffer(Globals.maximumRunLines);
+      private JScrollBar runScrollBar;
+      private JScrollPane runScrollPane;
+      private long runTopLine = 0;          // number of the first line shown, counting dropped lines
+      private boolean runFollowing = true;  // whether to keep showing the last lines as output arrives
+      private boolean runAsking = false;    // whether an Asker is taking input in the text area
+      private boolean runAdjusting = false; // whether runScrollBar is being set by showRunLines()
    
    /**
      *  Constructor for the class, sets up two fresh tabbed text areas for program feedback.
@@ -158,13 +171,57 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          runTabClearButton.addActionListener(
                 new ActionListener() {
                    public void actionPerformed(ActionEvent e){ 
-                     run.setText("");
+                     runOutput.clear();
+                     runFollowing = true;
+                     showRunLines();
+                  }
+               });
+         JButton runTabSaveButton = new JButton("Save");
+         runTabSaveButton.setToolTipText("Save all of the Run I/O text to a file");
+         runTabSaveButton.addActionListener(
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e){ 
+                     saveRunOutput();
                   }
                });
+         runScrollBar = new JScrollBar(JScrollBar.VERTICAL);
+         runScrollBar.addAdjustmentListener(
+                new AdjustmentListener() {
+                   public void adjustmentValueChanged(AdjustmentEvent e) {
+                     if (runAdjusting || runAsking) {
+                        return;
+                     }
+                     runFollowing = runScrollBar.getValue() + runScrollBar.getVisibleAmount() >= runScrollBar.getMaximum();
+                     runTopLine = runOutput.getFirstLineNumber() + runScrollBar.getValue();
+                     showRunLines();
+                  }
+               });
+         run.addMouseWheelListener(
+                new MouseWheelListener() {
+                   public void mouseWheelMoved(MouseWheelEvent e) {
+                     if (!runAsking) {
+                        runScrollBar.setValue(runScrollBar.getValue() + 
+                           e.getUnitsToScroll() * runScrollBar.getUnitIncrement());
+                     }
+                  }
+               });
+         runScrollPane = new JScrollPane(run, ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER, 
+                       ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+         runScrollPane.getViewport().addComponentListener(
+                new ComponentAdapter() {
+                   public void componentResized(ComponentEvent e) {
+                     if (!runAsking) {
+                        showRunLines();
+                     }
+                  }
+               });
+         Box runTabButtons = Box.createVerticalBox();
+         runTabButtons.add(createBoxForButton(runTabClearButton));
+         runTabButtons.add(createBoxForButton(runTabSaveButton));
          runTab = new JPanel(new BorderLayout());
-         runTab.add(createBoxForButton(runTabClearButton),BorderLayout.WEST);
-         runTab.add(new JScrollPane(run, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED, 
-                       ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED), BorderLayout.CENTER);				
+         runTab.add(runTabButtons,BorderLayout.WEST);
+         runTab.add(runScrollPane, BorderLayout.CENTER);				
+         runTab.add(runScrollBar, BorderLayout.EAST);				
          this.addTab("Mars Messages", assembleTab);
          this.addTab("Run I/O", runTab);
          this.setToolTipTextAt(0,"Messages produced by Run menu. Click on assemble error message to select erroneous line");
@@ -304,22 +361,68 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                 new Runnable() { 
                    public void run() { 
                      setSelectedComponent(runTab);
-                     run.append(mess);
-                  // can do some crude cutting here.  If the document gets "very large", 
-                  // let's cut off the oldest text. This will limit scrolling but the limit 
-                  // can be set reasonably high.
-                     if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
-                        try {
-                           run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
-                        } 
-                            catch (BadLocationException ble) { 
-                           // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
-                           }
+                     runOutput.append(mess);
+                     if (!runAsking) {
+                        showRunLines();
                      }
                   } 
                });
       }
    	
+   	// Show the lines of runOutput that fit in the run text area: the last ones if
+   	// following the output, otherwise those from runTopLine on.  A line split for
+   	// length is shown as several.  When the last line is terminated, an empty line
+   	// follows it, where input will be typed.
+       private void showRunLines() {
+         int lines = runOutput.getLineCount();
+         int total = (lines > 0 && runOutput.getLine(lines - 1).endsWith("\n")) ? lines + 1 : lines;
+         int rows = Math.max(1, runScrollPane.getViewport().getExtentSize().height 
+                                / run.getFontMetrics(run.getFont()).getHeight());
+         int top = runFollowing ? total - rows 
+                                : (int) Math.min(runTopLine - runOutput.getFirstLineNumber(), total - rows);
+         top = Math.max(0, top);
+         runTopLine = runOutput.getFirstLineNumber() + top;
+         int end = Math.min(total, top + rows);
+         runAdjusting = true;
+         runScrollBar.setValues(top, end - top, 0, total);
+         runScrollBar.setBlockIncrement(Math.max(1, rows - 1));
+         runAdjusting = false;
+         StringBuffer text = new StringBuffer();
+         for (int i = top; i < end && i < lines; i++) {
+            String line = runOutput.getLine(i);
+            if (i == end - 1 && line.endsWith("\n") && end < total) {
+               line = line.substring(0, line.length() - 1); // next line not shown
+            }
+            text.append(line);
+            if (i < end - 1 && !line.endsWith("\n")) {
+               text.append('\n');
+            }
+         }
+         run.setText(text.toString());
+         run.setCaretPosition(runFollowing ? text.length() : 0);
+      }
+   	
+   	// Let the user choose a file, and write all of the Run I/O text held to it.
+       private void saveRunOutput() {
+         JFileChooser chooser = new JFileChooser();
+         chooser.setDialogTitle("Save Run I/O");
+         if (chooser.showSaveDialog(Globals.getGui()) != JFileChooser.APPROVE_OPTION) {
+            return;
+         }
+         try {
+            java.io.Writer out = new java.io.BufferedWriter(new java.io.FileWriter(chooser.getSelectedFile()));
+            try {
+               runOutput.writeTo(out);
+            } 
+            finally {
+               out.close();
+            }
+         } 
+             catch (java.io.IOException e) {
+               JOptionPane.showMessageDialog(Globals.getGui(), "Could not save Run I/O: " + e.getMessage());
+            }
+      }
+   	
    	/**
    	 * Make the assembler message tab current (up front)
    	 */
@@ -453,6 +556,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             };
           public void run() { // must be invoked from the GUI thread
             setSelectedComponent(runTab);
+            runFollowing = true;
+            showRunLines();
+            runAsking = true;
+            runScrollBar.setEnabled(false);
             run.setEditable(true);
             run.requestFocusInWindow();
             run.setCaretPosition(run.getDocument().getLength());
@@ -468,8 +575,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                         run.getDocument().removeDocumentListener(listener);
                         run.setEditable(false);
                         run.setNavigationFilter(null);
-                        run.setCaretPosition(run.getDocument().getLength());
                         Simulator.getInstance().removeStopListener(stopListener);
+                        // the input typed becomes part of the Run I/O text
+                        try {
+                           int p = Math.min(initialPos, run.getDocument().getLength());
+                           runOutput.append(run.getText(p, run.getDocument().getLength() - p));
+                        } 
+                            catch (BadLocationException ex) {
+                              // this cannot happen
+                           }
+                        runAsking = false;
+                        runScrollBar.setEnabled(true);
+                        showRunLines();
                      }
                   });
          }
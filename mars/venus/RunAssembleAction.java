@@ -100,6 +100,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                if (warnings.warningsOccurred()) {
                   mainUI.messagesPane.postMarsMessage(warnings.generateWarningReport());
                }
+               // Drop the assembly detail kept in the text segment; statements rebuild what
+               // the Text Segment window shows on demand.  Large programs take much less heap.
+               for (int i = 0; i < MIPSprogramsToAssemble.size(); i++) {
+                  ((MIPSprogram) MIPSprogramsToAssemble.get(i)).releaseTokens();
+               }
+               Globals.memory.compactTextSegment();
                mainUI.messagesPane.postMarsMessage(
                           name+": operation completed successfully.\n\n");
                FileStatus.setAssembled(true);
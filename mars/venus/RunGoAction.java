@@ -75,6 +75,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                mainUI.setMenuState(FileStatus.RUNNING);
                try {
                   int[] breakPoints = executePane.getTextSegmentWindow().getSortedBreakPointsArray();
+                  Simulator.getInstance().setExecutionBudget(Globals.getSettings().getExecutionBudget());
                   boolean done = Globals.program.simulateFromPC(breakPoints,maxSteps,this);
                } 
                    catch (ProcessingException pe) {
@@ -176,6 +177,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                              "\n"+name+": execution step limit of "+maxSteps+" exceeded.\n\n");
                mainUI.getMessagesPane().selectMarsMessageTab();
                break;
+            case Simulator.BUDGET_EXCEEDED :
+               mainUI.getMessagesPane().postMarsMessage(
+                             "\n"+name+": execution terminated when "+
+                             Simulator.getInstance().getExecutionBudget().getExceededLimit()+" was exceeded.\n\n");
+               mainUI.getMessagesPane().selectMarsMessageTab();
+               break;
+            case Simulator.INFINITE_LOOP :
+               mainUI.getMessagesPane().postMarsMessage(
+                             "\n"+name+": execution terminated due to infinite loop.\n\n");
+               mainUI.getMessagesPane().selectMarsMessageTab();
+               break;
             case Simulator.BREAKPOINT : // should never get here
                break;
          }
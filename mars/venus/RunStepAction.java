@@ -90,6 +90,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             mainUI.getMessagesPane().postMarsMessage(
                              "\n"+name+": execution "+
 									  ((reason==Simulator.CLIFF_TERMINATION) ? "terminated due to null instruction."
+									 : (reason==Simulator.BUDGET_EXCEEDED) ? "terminated when "+
+									          Simulator.getInstance().getExecutionBudget().getExceededLimit()+" was exceeded."
+									 : (reason==Simulator.INFINITE_LOOP) ? "terminated due to infinite loop."
 									                                         : "completed successfully.")+"\n\n");
             mainUI.getMessagesPane().postRunMessage(
                              "\n-- program is finished running "+
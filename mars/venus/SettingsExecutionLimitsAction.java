@@ -0,0 +1,158 @@
+   package mars.venus;
+   import mars.simulator.*;
+   import mars.*;
+   import java.util.*;
+   import java.awt.*;
+   import java.awt.event.*;
+   import javax.swing.*;
+   import javax.swing.border.*;
+	
+	/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+	
+   /**
+    * Action class for the Settings menu item to set the execution limits
+	 * applied to each run started with Go: instructions executed, run time,
+	 * syscalls and bytes of output, and whether a loop that can never exit
+	 * terminates the run.  These correspond to the command line options
+	 * il, tl, sl, ol and lp.
+    */
+    public class SettingsExecutionLimitsAction extends GuiAction  {
+      private static final long serialVersionUID = 1L;
+    
+      JDialog limitsDialog;
+      JTextField[] limitFields;
+      JCheckBox loopDetectionSetting;
+   
+      private static final String[] limitLabels = { "Maximum instructions executed",
+                                                    "Maximum run time (milliseconds)",
+                                                    "Maximum syscalls",
+                                                    "Maximum output (bytes)" };
+   	  
+       public SettingsExecutionLimitsAction(String name, Icon icon, String descrip,
+                             Integer mnemonic, KeyStroke accel, VenusUI gui) {
+         super(name, icon, descrip, mnemonic, accel, gui);
+      }
+   	 
+   	 // launch dialog for setting the limits
+       public void actionPerformed(ActionEvent e) {
+         limitsDialog = new JDialog(Globals.getGui(), "Execution Limits", true);
+         limitsDialog.setContentPane(buildDialogPanel());
+         limitsDialog.setDefaultCloseOperation(
+                        JDialog.DO_NOTHING_ON_CLOSE);
+         limitsDialog.addWindowListener(
+                new WindowAdapter() {
+                   public void windowClosing(WindowEvent we) {
+                     closeDialog();
+                  }
+               });
+         limitsDialog.pack();
+         limitsDialog.setLocationRelativeTo(Globals.getGui());
+         limitsDialog.setVisible(true);
+      }
+   		  
+      // The dialog box that appears when menu item is selected.
+       private JPanel buildDialogPanel() {
+         ExecutionBudget budget = Globals.getSettings().getExecutionBudget();
+         if (budget == null) {
+            budget = new ExecutionBudget();
+         }
+         long[] limits = { budget.getMaxInstructions(), budget.getMaxMillis(), 
+                           budget.getMaxSyscalls(), budget.getMaxOutputBytes() };
+         JPanel contents = new JPanel(new BorderLayout(20,20));
+         contents.setBorder(new EmptyBorder(10,10,10,10));
+      	// Top row - explanation
+         contents.add(new JLabel("Limits apply to each run started with Go.  Zero means no limit."), BorderLayout.NORTH);
+      	// Middle rows - one labeled text field per limit, then the loop detection check box
+         JPanel limitsPanel = new JPanel(new GridLayout(limitLabels.length+1, 2, 10, 5));
+         limitFields = new JTextField[limitLabels.length];
+         for (int i=0; i<limitLabels.length; i++) {
+            limitFields[i] = new JTextField(Long.toString(limits[i] > 0 ? limits[i] : 0), 10);
+            limitsPanel.add(new JLabel(limitLabels[i]));
+            limitsPanel.add(limitFields[i]);
+         }
+         loopDetectionSetting = new JCheckBox("Terminate loops that can never exit");
+         loopDetectionSetting.setSelected(budget.getDetectInfiniteLoops());
+         limitsPanel.add(loopDetectionSetting);
+         contents.add(limitsPanel, BorderLayout.CENTER);
+      	// Bottom row - the control buttons for OK and Cancel
+         Box controlPanel = Box.createHorizontalBox();
+         JButton okButton = new JButton("OK");
+         okButton.addActionListener(
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e) {
+                     if (performOK()) {
+                        closeDialog();
+                     }
+                  }
+               });
+         JButton cancelButton = new JButton("Cancel");
+         cancelButton.addActionListener(
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e) {
+                     closeDialog();
+                  }
+               });	
+         controlPanel.add(Box.createHorizontalGlue());
+         controlPanel.add(okButton);
+         controlPanel.add(Box.createHorizontalGlue());
+         controlPanel.add(cancelButton);
+         controlPanel.add(Box.createHorizontalGlue());
+         contents.add(controlPanel,BorderLayout.SOUTH);
+         return contents;
+      }  
+   	
+   	// User has clicked "OK" button, so record the limits.  Returns false, leaving
+   	// the dialog open, if a limit is not a non-negative number.
+       private boolean performOK() {
+         long[] limits = new long[limitFields.length];
+         for (int i=0; i<limitFields.length; i++) {
+            try {
+               limits[i] = Long.parseLong(limitFields[i].getText().trim());
+            } 
+                catch (NumberFormatException nfe) {
+                  limits[i] = -1;
+               }
+            if (limits[i] < 0) {
+               JOptionPane.showMessageDialog(limitsDialog, limitLabels[i]+" must be a number, 0 for no limit.");
+               limitFields[i].requestFocus();
+               return false;
+            }
+         }
+         Globals.getSettings().setExecutionBudget(new ExecutionBudget(limits[0], limits[1], limits[2], limits[3],
+                                                   loopDetectionSetting.isSelected()));
+         return true;
+      }
+   	
+   	// We're finished with this modal dialog.
+       private void closeDialog() {
+         limitsDialog.setVisible(false);
+         limitsDialog.dispose();
+      }
+   	   	
+   }
@@ -69,6 +69,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int highlightAddress;
       private TableModelListener tableModelListener;
       private boolean inDelaySlot; // Added 25 June 2007
+      private boolean[] rowCovered; // index is table model row; null unless code coverage is shown
    	
       private static String[] columnNames = {"Bkpt", "Address", "Code", "Basic", "Source"};
       private static final int BREAK_COLUMN = 0;
@@ -80,6 +81,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final Font monospacedPlain12Point = new Font("Monospaced",Font.PLAIN,12);
    	// The following is displayed in the Basic and Source columns if existing code is overwritten using self-modifying code feature 
       private static final String modifiedCodeMarker = " ------ ";
+   	// Background of Basic and Source columns when showing code coverage 
+      private static final Color coveredBackground = new Color(0xCCEECC);
+      private static final Color notCoveredBackground = new Color(0xF4CCCC);
    	     
    	/**
    	  *  Constructor, sets up a new JInternalFrame.
@@ -97,6 +101,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          programArgumentsTextField = new JTextField(PROGRAM_ARGUMENT_TEXTFIELD_COLUMNS);
          programArgumentsTextField.setToolTipText("Arguments provided to program at runtime via $a0 (argc) and $a1 (argv)");
          programArgumentsPanel.add(programArgumentsTextField);
+         installCoverage();
       }
    
      
@@ -195,6 +200,48 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
             addAsTextSegmentObserver();
          }
+         rowCovered = null;
+      }
+   	
+   	////////////  Support for code coverage //////////////
+   	
+   	// Install or remove the simulator's Coverage according to the setting.
+       private void installCoverage() {
+         if (!Globals.getSettings().getBooleanSetting(Settings.CODE_COVERAGE)) {
+            Simulator.getInstance().setCoverage(null);
+            rowCovered = null;
+         } 
+         else if (Simulator.getInstance().getCoverage() == null) {
+            Simulator.getInstance().setCoverage(new Coverage());
+         }
+      }
+   	
+   	/**
+   	 *  Recompute which rows to shade as covered: every row whose source line (by file
+   	 *  and line number) generated at least one executed instruction.  Called after
+   	 *  execution stops while code coverage is enabled.
+   	 */
+       public void updateCoverage() {
+         Coverage coverage = Simulator.getInstance().getCoverage();
+         if (coverage == null || table == null || !coverage.hasExecuted()) {
+            rowCovered = null;
+            return;
+         }
+         ArrayList sourceStatementList = Globals.program.getMachineList();
+         HashSet coveredLines = new HashSet();
+         for (int i = 0; i < sourceStatementList.size(); i++) {
+            ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i);
+            if (coverage.isCovered(statement.getAddress())) {
+               coveredLines.add(statement.getSourceFile() + ":" + statement.getSourceLine());
+            }
+         }
+         boolean[] covered = new boolean[sourceStatementList.size()];
+         for (int i = 0; i < covered.length; i++) {
+            ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i);
+            covered[i] = coveredLines.contains(statement.getSourceFile() + ":" + statement.getSourceLine());
+         }
+         rowCovered = covered;
+         table.repaint();
       }
    	
    	////////////  Support for program arguments added DPS 17-July-2008 //////////////
@@ -313,12 +360,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   addAsTextSegmentObserver();
                }
             } 
+            else if (Simulator.getInstance().getCoverage() != null) {
+               // Execution stopped; this notice comes from the simulation thread.
+               SwingUtilities.invokeLater(
+                     new Runnable() {
+                        public void run() {
+                           updateCoverage();
+                        }
+                     });
+            }
          } 
          else if (observable == Globals.getSettings()) { 
             deleteAsTextSegmentObserver();
             if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
                addAsTextSegmentObserver();
             }
+            installCoverage();
+            if (table != null) {
+               updateCoverage();
+               table.repaint();
+            }
          }
          else if (obj instanceof MemoryAccessNotice) { 
          	// NOTE: observable != Memory.getInstance() because Memory class delegates notification duty.
@@ -847,6 +908,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                cell.setBackground( settings.getColorSettingByPosition(Settings.ODD_ROW_BACKGROUND) );
                cell.setForeground( settings.getColorSettingByPosition(Settings.ODD_ROW_FOREGROUND) );				
                cell.setFont( settings.getFontByPosition(Settings.ODD_ROW_FONT) );
+            }
+            boolean[] covered = rowCovered;
+            if (covered != null && row < covered.length &&
+                !(highlighting && textSegment.getIntCodeAddressAtRow(row) == highlightAddress)) {
+               cell.setBackground(covered[row] ? coveredBackground : notCoveredBackground);
             }				
             return cell;
          }  
@@ -920,8 +986,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          as a TableModelListener by calling the TextSegmentWindow's registerTableModelListener
          method.  Then it is notified when the table model changes, and this occurs whenever
          the user clicks on a breakpoint checkbox!  Using this approach, the SimThread registers
-         similarly.  A "GUI guard" is not needed in SimThread because it extends SwingWorker and
-         thus is only invoked when the IDE is present (never when running MARS in command mode).
+         similarly.  SimThread is a plain Runnable that also runs in command mode and for embedders
+         (see Simulator.startSimulation), so it would need to register only when started from the IDE.
          
          *****************************************************/
          }
@@ -77,8 +77,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
       private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase,
               settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsWarningsAreErrors, settingsStartAtMain,
-      		  settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode;
-      private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration;
+      		  settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode, settingsCodeCoverage,
+              settingsRecordInput;
+      private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration,
+              settingsExecutionLimits;
       private JMenuItem helpHelp, helpAbout;
          
       // components of the toolbar
@@ -102,7 +104,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction,
       					settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction,
       					settingsDelayedBranchingAction, settingsExceptionHandlerAction, settingsEditorAction,
-      					settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction;    
+      					settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction,
+                     settingsCodeCoverageAction, settingsRecordInputAction, settingsExecutionLimitsAction;    
       private Action helpHelpAction, helpAboutAction;
    
    
@@ -425,6 +428,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                									  "If set, the MIPS program can write and branch to both text and data segments.",
                									  null,null,
                									  mainUI);
+            settingsCodeCoverageAction  = new SettingsCodeCoverageAction("Code coverage",
+                                            null,
+               									  "If set, source lines in the Text Segment are shaded by whether they have been executed.",
+               									  null,null,
+               									  mainUI);
+            settingsRecordInputAction  = new SettingsRecordInputAction("Record input for replay",
+                                            null,
+               									  "If set, each run's input is saved next to the source file, for replay with the command line option 'in'.",
+               									  null,null,
+               									  mainUI);
+            settingsExecutionLimitsAction  = new SettingsExecutionLimitsAction("Execution limits...",
+                                            null,
+               									  "View and modify limits on instructions, time, syscalls and output, and infinite loop detection, for each run.",
+               									  null,null,
+               									  mainUI);
             settingsEditorAction          = new SettingsEditorAction("Editor...",
                                             null,
                									  "View and modify text editor settings.",
@@ -594,6 +612,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          settingsDelayedBranching.setSelected(Globals.getSettings().getDelayedBranchingEnabled());
          settingsSelfModifyingCode = new JCheckBoxMenuItem(settingsSelfModifyingCodeAction);
          settingsSelfModifyingCode.setSelected(Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+         settingsCodeCoverage = new JCheckBoxMenuItem(settingsCodeCoverageAction);
+         settingsCodeCoverage.setSelected(Globals.getSettings().getBooleanSetting(Settings.CODE_COVERAGE));
+         settingsRecordInput = new JCheckBoxMenuItem(settingsRecordInputAction);
+         settingsRecordInput.setSelected(Globals.getSettings().getBooleanSetting(Settings.RECORD_INPUT));
          settingsAssembleOnOpen = new JCheckBoxMenuItem(settingsAssembleOnOpenAction);
          settingsAssembleOnOpen.setSelected(Globals.getSettings().getAssembleOnOpenEnabled());
          settingsAssembleAll = new JCheckBoxMenuItem(settingsAssembleAllAction);
@@ -608,10 +630,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          settingsHighlighting = new JMenuItem(settingsHighlightingAction);
          settingsExceptionHandler = new JMenuItem(settingsExceptionHandlerAction);
          settingsMemoryConfiguration = new JMenuItem(settingsMemoryConfigurationAction);
+         settingsExecutionLimits = new JMenuItem(settingsExecutionLimitsAction);
       	
          settings.add(settingsLabel);
          settings.add(settingsProgramArguments);
          settings.add(settingsPopupInput);
+         settings.add(settingsRecordInput);
          settings.add(settingsAddressDisplayBase);
          settings.add(settingsValueDisplayBase);
          settings.addSeparator();
@@ -623,11 +647,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          settings.add(settingsExtended);
          settings.add(settingsDelayedBranching);
          settings.add(settingsSelfModifyingCode);
+         settings.add(settingsCodeCoverage);
          settings.addSeparator();
          settings.add(settingsEditor);
          settings.add(settingsHighlighting);
          settings.add(settingsExceptionHandler);
          settings.add(settingsMemoryConfiguration);
+         settings.add(settingsExecutionLimits);
       			
          helpHelp = new JMenuItem(helpHelpAction);
          helpHelp.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath+"Help16.png"))));//"Help16.gif"))));